@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A map for the common case of a handful of entries.  Up to
+ * INFLATE_THRESHOLD entries are kept in two flat arrays, {@code kv} with
+ * each key followed by its value and {@code hashes} with their hashes, and
+ * found by a linear scan of the hashes.  Entries are in insertion order
+ * until one is removed, which moves the last entry into its place; after
+ * that the order is unspecified.  There is no table and there are no
+ * nodes, so a map of 3 entries is three objects: the map and its two
+ * arrays.  The arrays start at MIN_CAPACITY and double.
+ *
+ * <p>The put that would go past INFLATE_THRESHOLD moves the entries into
+ * an {@link ArrayBinHashMap}, and from then on every operation is passed
+ * to it.  A map does not go back to the small form when entries are
+ * removed, except by {@code clear}.
+ *
+ * <p>Null keys and values are permitted.
+ */
+public class AdaptiveSmallMap<K,V> extends AbstractMap<K,V> implements MapStats {
+
+    /**
+     * The most entries kept in the small form.  A scan of 16 hashes is
+     * two cache lines, still cheaper than a hash table's indirections.
+     */
+    static final int INFLATE_THRESHOLD = 16;
+
+    /**
+     * The entries the arrays have room for when first allocated.
+     */
+    static final int MIN_CAPACITY = 4;
+
+    /* ---------------- Fields -------------- */
+
+    /**
+     * Keys and values interleaved, key of entry i at 2 * i; null until the
+     * first put and after inflating.
+     */
+    Object[] kv;
+
+    /**
+     * The hash of the key of entry i at i.
+     */
+    int[] hashes;
+
+    int size;
+
+    /**
+     * The map holding the entries once there are too many for the arrays.
+     */
+    ArrayBinHashMap<K,V> inflated;
+
+    int modCount;
+
+    transient Set<Entry<K,V>> entrySet;
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * Returns a map that starts in the small form, or inflated if
+     * initialCapacity is more than INFLATE_THRESHOLD.
+     */
+    public AdaptiveSmallMap(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    initialCapacity);
+        if (initialCapacity > INFLATE_THRESHOLD)
+            inflated = new ArrayBinHashMap<>(initialCapacity);
+    }
+
+    public AdaptiveSmallMap() {
+    }
+
+    static int hash(Object key) {
+        int h;
+        return (key == null) ? 0 : (h = key.hashCode()) ^ (h >>> 16);
+    }
+
+    public int size() {
+        return (inflated != null) ? inflated.size() : size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (inflated != null)
+            return inflated.get(key);
+        int i = indexOf(key);
+        return (i < 0) ? null : (V) kv[2 * i + 1];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(Object key, V defaultValue) {
+        if (inflated != null)
+            return inflated.getOrDefault(key, defaultValue);
+        int i = indexOf(key);
+        return (i < 0) ? defaultValue : (V) kv[2 * i + 1];
+    }
+
+    public boolean containsKey(Object key) {
+        if (inflated != null)
+            return inflated.containsKey(key);
+        return indexOf(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        if (inflated != null)
+            return inflated.put(key, value);
+        int hash = hash(key);
+        int i = indexOf(hash, key);
+        if (i >= 0) {
+            V old = (V) kv[2 * i + 1];
+            kv[2 * i + 1] = value;
+            return old;
+        }
+        modCount++;
+        if (size == INFLATE_THRESHOLD) {
+            inflate().put(key, value);
+            return null;
+        }
+        if (hashes == null) {
+            hashes = new int[MIN_CAPACITY];
+            kv = new Object[2 * MIN_CAPACITY];
+        } else if (size == hashes.length) {
+            int n = Math.min(size * 2, INFLATE_THRESHOLD);
+            hashes = Arrays.copyOf(hashes, n);
+            kv = Arrays.copyOf(kv, 2 * n);
+        }
+        hashes[size] = hash;
+        kv[2 * size] = key;
+        kv[2 * size + 1] = value;
+        size++;
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        if (inflated != null)
+            return inflated.remove(key);
+        int i = indexOf(key);
+        if (i < 0)
+            return null;
+        V old = (V) kv[2 * i + 1];
+        removeAt(i);
+        return old;
+    }
+
+    public void clear() {
+        modCount++;
+        inflated = null;
+        kv = null;
+        hashes = null;
+        size = 0;
+    }
+
+    /**
+     * Returns true if the entries have moved to an ArrayBinHashMap.
+     */
+    public boolean isInflated() {
+        return inflated != null;
+    }
+
+    /* ---------------- Internals -------------- */
+
+    final int indexOf(Object key) {
+        return indexOf(hash(key), key);
+    }
+
+    /**
+     * Returns the index of key in the small form, or -1.
+     */
+    final int indexOf(int hash, Object key) {
+        int[] hs = hashes;
+        Object[] a = kv;
+        Object k;
+        for (int i = 0; i < size; i++) {
+            if (hs[i] == hash && ((k = a[2 * i]) == key || (key != null && key.equals(k))))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Removes entry i of the small form, moving the last entry into its
+     * place.
+     */
+    final void removeAt(int i) {
+        modCount++;
+        int last = --size;
+        hashes[i] = hashes[last];
+        kv[2 * i] = kv[2 * last];
+        kv[2 * i + 1] = kv[2 * last + 1];
+        kv[2 * last] = null;
+        kv[2 * last + 1] = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ArrayBinHashMap<K,V> inflate() {
+        ArrayBinHashMap<K,V> m = new ArrayBinHashMap<>(INFLATE_THRESHOLD * 2);
+        for (int i = 0; i < size; i++)
+            m.put((K) kv[2 * i], (V) kv[2 * i + 1]);
+        inflated = m;
+        kv = null;
+        hashes = null;
+        size = 0;
+        return m;
+    }
+
+    /* ---------------- Views -------------- */
+
+    public Set<Entry<K,V>> entrySet() {
+        Set<Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Entry<K,V>> {
+        public final int size()                 { return AdaptiveSmallMap.this.size(); }
+        public final void clear()               { AdaptiveSmallMap.this.clear(); }
+        public final Iterator<Entry<K,V>> iterator() {
+            return (inflated != null) ? inflated.entrySet().iterator() : new EntryIterator();
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry<?, ?> e))
+                return false;
+            Object key = e.getKey();
+            return containsKey(key) && Objects.equals(get(key), e.getValue());
+        }
+    }
+
+    /**
+     * Walks the small form in order.  A remove moves the last entry into
+     * the one just returned, so the walk looks at that index again.
+     */
+    final class EntryIterator implements Iterator<Entry<K,V>> {
+        int next;           // next index to return
+        int current = -1;   // index last returned, -1 if none
+        int expectedModCount = modCount;
+
+        public final boolean hasNext() {
+            return next < size;
+        }
+
+        @SuppressWarnings("unchecked")
+        public final Entry<K,V> next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (next >= size)
+                throw new NoSuchElementException();
+            current = next++;
+            return new SimpleImmutableEntry<>((K) kv[2 * current], (V) kv[2 * current + 1]);
+        }
+
+        public final void remove() {
+            if (current < 0)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            removeAt(current);
+            next = current;
+            current = -1;
+            expectedModCount = modCount;
+        }
+    }
+
+    /* ---------------- MapStats -------------- */
+
+    public long heapBytes() {
+        if (inflated != null)
+            return HeapLayout.sizeOf(this) + inflated.heapBytes();
+        long acc = HeapLayout.sizeOf(this);
+        if (kv != null)
+            acc += HeapLayout.sizeOf(kv) + HeapLayout.sizeOf(hashes);
+        return acc;
+    }
+
+    /**
+     * The small form is one bin holding every entry.
+     */
+    public int[] binLengthHistogram() {
+        if (inflated != null)
+            return inflated.binLengthHistogram();
+        int[] counts = new int[size + 1];
+        counts[size] = 1;
+        return counts;
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import java.io.PrintStream;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A cache of at most maxSize entries that evicts by CLOCK, the usual
+ * approximation of LRU, in place of a {@link LinkedHashMapCpy} in access
+ * order with {@code removeEldestEntry}.
+ *
+ * <p>There are no nodes and no links.  The cache is a fixed number of
+ * array bins of BIN_WAYS entries each, laid out flat in parallel arrays:
+ * {@code hashes} holds the hashes of a bin's entries side by side, and
+ * {@code kv} their keys and values.  A key lives only in the bin its hash
+ * picks, so a lookup compares at most BIN_WAYS hashes in 32 bytes and
+ * touches only the one key that matches.  Each bin has a byte of occupied
+ * bits, a byte of referenced bits, and its own clock hand.
+ *
+ * <p>A hit sets its entry's referenced bit, and only if it is clear; it
+ * does not relink anything or bump modCount.  A new key takes a free way of
+ * its bin while the cache is below maxSize.  Otherwise it replaces an entry
+ * of its own bin, chosen by moving the bin's hand over the occupied ways,
+ * clearing referenced bits, to the first way whose bit was clear.  This is
+ * CLOCK within a set, as in a set-associative hardware cache; with 8 ways
+ * the hit ratio is close to a global LRU's.  Keys that crowd one bin evict
+ * each other even while other bins have room.
+ *
+ * <p>Everything is allocated up front and never resizes.  The bin count is
+ * not a power of two; a bin is picked from the high bits of a Fibonacci
+ * hash, scaled to the bin count.  A full cache takes about 12 bytes per
+ * entry, against about 50 for LinkedHashMapCpy.  Null keys and values are
+ * permitted.  Iteration and {@code containsKey} do not count as use.
+ */
+public class ArrayBinClockCache<K,V> extends AbstractMap<K,V> implements MapStats {
+
+    /**
+     * The largest maxSize.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 29;
+
+    /**
+     * Entries per bin, at most 8 to fit the per-bin bit bytes.
+     */
+    static final int BIN_WAYS = 8;
+
+    /* ---------------- Fields -------------- */
+
+    /**
+     * The hash of the entry in each way, BIN_WAYS per bin.
+     */
+    final int[] hashes;
+
+    /**
+     * The key and value of the entry in each way, key first.
+     */
+    final Object[] kv;
+
+    /**
+     * Per bin, bit w is set if way w holds an entry.
+     */
+    final byte[] occupied;
+
+    /**
+     * Per bin, bit w is set if way w was used since the bin's hand last
+     * passed it.
+     */
+    final byte[] referenced;
+
+    /**
+     * Per bin, the next way the bin's clock hand looks at.
+     */
+    final byte[] hands;
+
+    final int binCount;
+
+    final int maxSize;
+
+    int size;
+
+    int modCount;
+
+    long evictions;
+
+    transient Set<Entry<K,V>> entrySet;
+
+    /* ---------------- Public operations -------------- */
+
+    public ArrayBinClockCache(int maxSize) {
+        if (maxSize <= 0 || maxSize > MAXIMUM_CAPACITY)
+            throw new IllegalArgumentException("Illegal maximum size: " +
+                    maxSize);
+        this.maxSize = maxSize;
+        binCount = (maxSize + BIN_WAYS - 1) / BIN_WAYS;
+        hashes = new int[binCount * BIN_WAYS];
+        kv = new Object[binCount * BIN_WAYS * 2];
+        occupied = new byte[binCount];
+        referenced = new byte[binCount];
+        hands = new byte[binCount];
+    }
+
+    static int hash(Object key) {
+        int h;
+        return (key == null) ? 0 : (h = key.hashCode()) ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the bin hash belongs in.
+     */
+    final int binOf(int hash) {
+        return (int) (((hash * 0x9E3779B9) & 0xFFFFFFFFL) * binCount >>> 32);
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of entries evicted to make room for new ones.
+     */
+    public long evictions() {
+        return evictions;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int hash = hash(key);
+        int bin = binOf(hash);
+        int w = findWay(bin, hash, key);
+        if (w < 0)
+            return null;
+        touch(bin, w);
+        return (V) kv[(bin * BIN_WAYS + w) * 2 + 1];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(Object key, V defaultValue) {
+        int hash = hash(key);
+        int bin = binOf(hash);
+        int w = findWay(bin, hash, key);
+        if (w < 0)
+            return defaultValue;
+        touch(bin, w);
+        return (V) kv[(bin * BIN_WAYS + w) * 2 + 1];
+    }
+
+    public boolean containsKey(Object key) {
+        int hash = hash(key);
+        return findWay(binOf(hash), hash, key) >= 0;
+    }
+
+    /**
+     * Maps key to value, evicting an entry of the key's bin if the key is
+     * new and the cache is full or the bin is.  Replacing a value counts as
+     * use of the entry.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        int hash = hash(key);
+        int bin = binOf(hash);
+        int w = findWay(bin, hash, key);
+        if (w >= 0) {
+            int i = (bin * BIN_WAYS + w) * 2 + 1;
+            V old = (V) kv[i];
+            kv[i] = value;
+            touch(bin, w);
+            return old;
+        }
+        int occ = occupied[bin] & 0xFF;
+        if (size < maxSize && occ != (1 << BIN_WAYS) - 1) {
+            w = Integer.numberOfTrailingZeros(~occ);
+            occupied[bin] = (byte) (occ | (1 << w));
+            size++;
+        } else {
+            w = victim(bin, occ);
+            evictions++;
+        }
+        int i = bin * BIN_WAYS + w;
+        hashes[i] = hash;
+        kv[i * 2] = key;
+        kv[i * 2 + 1] = value;
+        modCount++;
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        int hash = hash(key);
+        int bin = binOf(hash);
+        int w = findWay(bin, hash, key);
+        if (w < 0)
+            return null;
+        V old = (V) kv[(bin * BIN_WAYS + w) * 2 + 1];
+        removeWay(bin, w);
+        return old;
+    }
+
+    public void clear() {
+        modCount++;
+        Arrays.fill(hashes, 0);
+        Arrays.fill(kv, null);
+        Arrays.fill(occupied, (byte) 0);
+        Arrays.fill(referenced, (byte) 0);
+        Arrays.fill(hands, (byte) 0);
+        size = 0;
+    }
+
+    /* ---------------- Internals -------------- */
+
+    /**
+     * Returns the way of bin holding key, or -1.
+     */
+    final int findWay(int bin, int hash, Object key) {
+        int base = bin * BIN_WAYS;
+        for (int m = occupied[bin] & 0xFF; m != 0; m &= m - 1) {
+            int w = Integer.numberOfTrailingZeros(m);
+            Object k;
+            if (hashes[base + w] == hash
+                    && ((k = kv[(base + w) * 2]) == key || (key != null && key.equals(k))))
+                return w;
+        }
+        return -1;
+    }
+
+    /**
+     * Marks way w of bin used, without dirtying its cache line if it
+     * already is.
+     */
+    private void touch(int bin, int w) {
+        int ref = referenced[bin];
+        if ((ref & (1 << w)) == 0)
+            referenced[bin] = (byte) (ref | (1 << w));
+    }
+
+    /**
+     * Moves the hand of bin, whose occupied bits are occ and not zero, to
+     * the first occupied way not used since the hand last passed it,
+     * clearing the referenced bits of the occupied ways passed on the way,
+     * and returns that way.  If every occupied way was used, the hand goes
+     * once round and takes the first of them.
+     */
+    private int victim(int bin, int occ) {
+        int hand = hands[bin];
+        int ref = referenced[bin] & 0xFF;
+        int candidates = occ & ~ref;
+        if (candidates == 0) {
+            ref &= ~occ;
+            candidates = occ;
+        }
+        // Rotate so the hand's way is bit 0, then take the lowest candidate.
+        int rotated = ((candidates >>> hand) | (candidates << (BIN_WAYS - hand))) & 0xFF;
+        int steps = Integer.numberOfTrailingZeros(rotated);
+        int w = (hand + steps) & (BIN_WAYS - 1);
+        int passed = (1 << steps) - 1;
+        passed = ((passed << hand) | (passed >>> (BIN_WAYS - hand))) & 0xFF;
+        referenced[bin] = (byte) (ref & ~passed & ~(1 << w));
+        hands[bin] = (byte) ((w + 1) & (BIN_WAYS - 1));
+        return w;
+    }
+
+    /**
+     * Empties way w of bin.
+     */
+    final void removeWay(int bin, int w) {
+        modCount++;
+        int i = bin * BIN_WAYS + w;
+        hashes[i] = 0;
+        kv[i * 2] = null;
+        kv[i * 2 + 1] = null;
+        occupied[bin] &= (byte) ~(1 << w);
+        referenced[bin] &= (byte) ~(1 << w);
+        size--;
+    }
+
+    /* ---------------- Views -------------- */
+
+    public Set<Entry<K,V>> entrySet() {
+        Set<Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Entry<K,V>> {
+        public final int size()                 { return size; }
+        public final void clear()               { ArrayBinClockCache.this.clear(); }
+        public final Iterator<Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry<?, ?> e))
+                return false;
+            Object key = e.getKey();
+            int hash = hash(key);
+            int bin = binOf(hash);
+            int w = findWay(bin, hash, key);
+            return w >= 0 && Objects.equals(kv[(bin * BIN_WAYS + w) * 2 + 1], e.getValue());
+        }
+    }
+
+    /**
+     * Walks the ways in table order.
+     */
+    final class EntryIterator implements Iterator<Entry<K,V>> {
+        int next = -1;      // next way to return, as bin * BIN_WAYS + w
+        int current = -1;   // way last returned, -1 if none
+        int expectedModCount = modCount;
+
+        EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            int n = hashes.length;
+            do {
+                next++;
+            } while (next < n && (occupied[next / BIN_WAYS] & (1 << (next % BIN_WAYS))) == 0);
+        }
+
+        public final boolean hasNext() {
+            return next < hashes.length;
+        }
+
+        @SuppressWarnings("unchecked")
+        public final Entry<K,V> next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (next >= hashes.length)
+                throw new NoSuchElementException();
+            current = next;
+            advance();
+            return new SimpleImmutableEntry<>((K) kv[current * 2], (V) kv[current * 2 + 1]);
+        }
+
+        public final void remove() {
+            if (current < 0)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            removeWay(current / BIN_WAYS, current % BIN_WAYS);
+            current = -1;
+            expectedModCount = modCount;
+        }
+    }
+
+    /* ---------------- MapStats -------------- */
+
+    public long heapBytes() {
+        return HeapLayout.sizeOf(this) + HeapLayout.sizeOf(hashes)
+                + HeapLayout.sizeOf(kv) + HeapLayout.sizeOf(occupied)
+                + HeapLayout.sizeOf(referenced) + HeapLayout.sizeOf(hands);
+    }
+
+    public int[] binLengthHistogram() {
+        int[] counts = new int[BIN_WAYS + 1];
+        for (byte occ : occupied)
+            counts[Integer.bitCount(occ & 0xFF)]++;
+        return MapStats.trimHistogram(counts);
+    }
+
+    public void dumpStats(PrintStream out) {
+        MapStats.super.dumpStats(out);
+        out.printf("    max size: %d, evictions: %d%n", maxSize, evictions);
+    }
+}
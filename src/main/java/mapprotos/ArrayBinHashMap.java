@@ -28,10 +28,10 @@ package mapprotos;
 import newhash.OpenHashMap;
 
 import java.io.*;
-import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
@@ -138,7 +138,7 @@ import java.util.function.Function;
  * @since   1.2
  */
 public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
-    implements Map<K,V>, Cloneable, Serializable {
+    implements Map<K,V>, Cloneable, Serializable, MapStats, BulkGet<K,V> {
 
     @Serial
     private static final long serialVersionUID = 362498820763181265L;
@@ -250,6 +250,11 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
      */
     static final float DEFAULT_LOAD_FACTOR = 0.75f;
 
+    /**
+     * 2^32 / phi rounded to odd, the Fibonacci hashing multiplier.
+     */
+    static final int FIBONACCI_MULTIPLIER = 0x9E3779B9;
+
     /**
      * The bin count threshold for using a tree rather than list for a
      * bin.  Bins are converted to trees when adding an element to a
@@ -275,6 +280,13 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
      */
     static final int MIN_TREEIFY_CAPACITY = 64;
 
+    /**
+     * The number of keys getAll resolves together.  Enough to keep the
+     * CPU's outstanding misses busy, few enough that one level's loads for
+     * the whole block fit in its out-of-order window.
+     */
+    static final int GET_ALL_BLOCK = 16;
+
     /**
      * Basic hash bin node, used for most entries.  (See below for
      * TreeNode subclass, and in LinkedHashMapCpy for its Entry subclass.)
@@ -341,9 +353,25 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
      * to incorporate impact of the highest bits that would otherwise
      * never be used in index calculations because of table bounds.
      */
-    static final int hash(Object key) {
+    final int hash(Object key) {
         int h;
-        return (key == null) ? 0 : (h = key.hashCode()) ^ (h >>> 16);
+        if (key == null)
+            return 0;
+        h = key.hashCode();
+        if (hashSeed != 0)
+            return SeededHash.mix(h, hashSeed);
+        return fibonacciIndex ? h * FIBONACCI_MULTIPLIER : h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the index of hash in a table of length n: its low bits, or
+     * with fibonacciIndex its high bits.  Multiplying by
+     * FIBONACCI_MULTIPLIER makes the high bits depend on every bit of the
+     * hash code, so keys that differ only in high bits, or that share
+     * their low bits like {@code 7 + i * 128}, still spread over the table.
+     */
+    final int indexFor(int hash, int n) {
+        return fibonacciIndex ? hash >>> indexShift : (n - 1) & hash;
     }
 
     /**
@@ -428,6 +456,11 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
     // DEFAULT_INITIAL_CAPACITY.)
     int threshold;
 
+    /**
+     * 32 - log2(table.length), used by indexFor with fibonacciIndex.
+     */
+    transient int indexShift;
+
     /**
      * The load factor for the hash table.
      *
@@ -435,6 +468,17 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
      */
     final float loadFactor;
 
+    /**
+     * Mixed into every hash if non-zero, see SeededHash.
+     */
+    final int hashSeed;
+
+    /**
+     * Whether bins are indexed by the high bits of a Fibonacci hash rather
+     * than the low bits of a spread one, see indexFor.
+     */
+    final boolean fibonacciIndex;
+
     /* ---------------- Public operations -------------- */
 
     /**
@@ -447,10 +491,13 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
      *
      * @param  initialCapacity the initial capacity
      * @param  loadFactor      the load factor
+     * @param  seededHash      whether to seed the hash, see SeededHash
+     * @param  fibonacciIndex  whether to index by Fibonacci hashing, see indexFor
      * @throws IllegalArgumentException if the initial capacity is negative
      *         or the load factor is nonpositive
      */
-    public ArrayBinHashMap(int initialCapacity, float loadFactor) {
+    public ArrayBinHashMap(int initialCapacity, float loadFactor, boolean seededHash,
+                           boolean fibonacciIndex) {
         if (initialCapacity < 0)
             throw new IllegalArgumentException("Illegal initial capacity: " +
                                                initialCapacity);
@@ -461,6 +508,29 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
                                                loadFactor);
         this.loadFactor = loadFactor;
         this.threshold = tableSizeFor(initialCapacity);
+        this.hashSeed = seededHash ? SeededHash.newSeed() : 0;
+        this.fibonacciIndex = fibonacciIndex;
+    }
+
+    public ArrayBinHashMap(int initialCapacity, float loadFactor, boolean seededHash) {
+        this(initialCapacity, loadFactor, seededHash, false);
+    }
+
+    public ArrayBinHashMap(int initialCapacity, float loadFactor) {
+        this(initialCapacity, loadFactor, false);
+    }
+
+    /**
+     * Constructs an empty {@code HashMap} with the specified initial
+     * capacity and the default load factor (0.75), whose hashes are mixed
+     * with a random per-map seed if seededHash, see {@link SeededHash}.
+     *
+     * @param  initialCapacity the initial capacity.
+     * @param  seededHash whether to seed the hash against hash flooding
+     * @throws IllegalArgumentException if the initial capacity is negative.
+     */
+    public ArrayBinHashMap(int initialCapacity, boolean seededHash) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR, seededHash);
     }
 
     /**
@@ -484,6 +554,8 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
      */
     public ArrayBinHashMap() {
         this.loadFactor = DEFAULT_LOAD_FACTOR; // all other fields defaulted
+        this.hashSeed = 0;
+        this.fibonacciIndex = false;
     }
 
     /**
@@ -497,6 +569,8 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
      */
     public ArrayBinHashMap(Map<? extends K, ? extends V> m) {
         this.loadFactor = DEFAULT_LOAD_FACTOR;
+        this.hashSeed = 0;
+        this.fibonacciIndex = false;
         putMapEntries(m, false);
     }
 
@@ -572,12 +646,20 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
         // not calling getNode and wrapping the Node in a NodeRef saves a huge amount of time.
         Object[] tab; Object binObj, e; int n, hash; K k;
         if ((tab = table) != null && (n = tab.length) > 0 &&
-            (binObj = tab[(n - 1) & (hash = hash(key))]) != null) {
+            (binObj = tab[indexFor(hash = hash(key), n)]) != null) {
             if (binObj.getClass() == NodeRef.class) {
-                return ((NodeRef<K,V>) binObj).node.value;
+                Node<K,V> node = ((NodeRef<K,V>) binObj).node;
+                return (node.hash == hash &&
+                        ((k = node.key) == key || (key != null && key.equals(k)))) ? node.value : null;
+            }
+            if (binObj.getClass() == BTreeBin.class) {
+                @SuppressWarnings("unchecked")
+                BTreeBin<K,V> tree = (BTreeBin<K,V>) binObj;
+                Node<K,V> node = tree.find(hash, key);
+                return (node == null) ? null : node.value;
             }
             Node<K,V>[] nodes = (Node<K, V>[]) binObj;
-            for (int b = 0; b < nodes.length; b++) {
+            for (int b = 0; b < nodes.length && nodes[b] != null; b++) {
                 if (nodes[b].hash == hash &&
                     ((k = nodes[b].key) == key || (key != null && key.equals(k))))
                     return nodes[b].value;
@@ -611,12 +693,18 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
     final NodeRef<K,V> getNode(Object key) { // TODO How expensive is it to return the multi field primitive when caller only cares about one value?
         Object[] tab; Object binObj, e; int n, hash; K k;
         if ((tab = table) != null && (n = tab.length) > 0 &&
-            (binObj = tab[(n - 1) & (hash = hash(key))]) != null) {
+            (binObj = tab[indexFor(hash = hash(key), n)]) != null) {
             if (binObj.getClass() == NodeRef.class) {
-                return ((NodeRef<K,V>) binObj);
+                Node<K,V> node = ((NodeRef<K,V>) binObj).node;
+                return (node.hash == hash &&
+                        ((k = node.key) == key || (key != null && key.equals(k)))) ? (NodeRef<K,V>) binObj : null;
+            }
+            if (binObj.getClass() == BTreeBin.class) {
+                Node<K,V> node = ((BTreeBin<K,V>) binObj).find(hash, key);
+                return (node == null) ? null : new NodeRef<>(node);
             }
             Node<K,V>[] nodes = (Node<K, V>[]) binObj;
-            for (int b = 0; b < nodes.length; b++) {
+            for (int b = 0; b < nodes.length && nodes[b] != null; b++) {
                 if (nodes[b].hash == hash &&
                     ((k = nodes[b].key) == key || (key != null && key.equals(k))))
                     return new NodeRef<>(nodes[b]);
@@ -635,6 +723,76 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
         return null;
     }
 
+    /**
+     * Looks up each of keys and stores its value, or null, at the same index
+     * of out.  A loop of get calls follows each key's chain of dependent
+     * loads, table slot then bin then node, before starting the next key.
+     * Here keys go in blocks of GET_ALL_BLOCK, one level at a time: every
+     * table slot of the block is read, then every bin, then the nodes are
+     * matched.  The loads within a level are independent, so on a table much
+     * larger than the last level cache they miss in parallel instead of one
+     * after another.
+     *
+     * @throws IllegalArgumentException if out is shorter than keys
+     */
+    @SuppressWarnings("unchecked")
+    public void getAll(K[] keys, V[] out) {
+        if (out.length < keys.length)
+            throw new IllegalArgumentException("out.length " + out.length +
+                                               " < keys.length " + keys.length);
+        Object[] tab; int n;
+        if ((tab = table) == null || (n = tab.length) == 0) {
+            Arrays.fill(out, 0, keys.length, null);
+            return;
+        }
+        final int[] hashes = new int[GET_ALL_BLOCK];
+        final Object[] bins = new Object[GET_ALL_BLOCK];
+        for (int base = 0; base < keys.length; base += GET_ALL_BLOCK) {
+            final int m = Math.min(GET_ALL_BLOCK, keys.length - base);
+            for (int j = 0; j < m; j++) {
+                int hash = hash(keys[base + j]);
+                hashes[j] = hash;
+                bins[j] = tab[indexFor(hash, n)];
+            }
+            // Reading each bin's class loads its header; a NodeRef gives way to its node.
+            for (int j = 0; j < m; j++) {
+                Object binObj = bins[j];
+                if (binObj != null && binObj.getClass() == NodeRef.class)
+                    bins[j] = ((NodeRef<K,V>) binObj).node;
+            }
+            for (int j = 0; j < m; j++) {
+                out[base + j] = valueIn(bins[j], hashes[j], keys[base + j]);
+            }
+        }
+    }
+
+    /**
+     * Returns the value for key in binObj, which is a bin or, in place of a
+     * NodeRef, its node.
+     */
+    @SuppressWarnings("unchecked")
+    private V valueIn(Object binObj, int hash, Object key) {
+        K k;
+        if (binObj == null)
+            return null;
+        if (binObj instanceof Node) {
+            Node<K,V> node = (Node<K,V>) binObj;
+            return (node.hash == hash &&
+                    ((k = node.key) == key || (key != null && key.equals(k)))) ? node.value : null;
+        }
+        if (binObj.getClass() == BTreeBin.class) {
+            Node<K,V> node = ((BTreeBin<K,V>) binObj).find(hash, key);
+            return (node == null) ? null : node.value;
+        }
+        Node<K,V>[] nodes = (Node<K,V>[]) binObj;
+        for (int b = 0; b < nodes.length && nodes[b] != null; b++) {
+            if (nodes[b].hash == hash &&
+                ((k = nodes[b].key) == key || (key != null && key.equals(k))))
+                return nodes[b].value;
+        }
+        return null;
+    }
+
     /**
      * Returns {@code true} if this map contains a mapping for the
      * specified key.
@@ -644,7 +802,7 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
      * key.
      */
     public boolean containsKey(Object key) {
-        return getNode(key).node.key != null;
+        return getNode(key) != null;
     }
 
     /**
@@ -688,73 +846,78 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
         int n;
         if ((tab = table) == null || (n = tab.length) == 0) // TODO find out why a 0 length table occurs.
             n = (tab = resize()).length;
-        for (;;) {
-            Object binObj;
-            int i;
-            if ((binObj = tab[i = (n - 1) & hash]) == null) {
-                // Note that unlike HashMap this does not resize the 'table' when an empty element of 'table' is null.  The
-                // purpose of enlarging 'table' is to reduce collisions, but there is no collision in this case.  This
-                // avoids enlarging 'table' when such an enlargement will not speed up get() or iteration.
-                // TODO try to suppress the unchecked warning
-                tab[i] = new NodeRef(hash, key, value);
-                ++modCount;
-                ++size;
+        Object binObj;
+        int i;
+        if ((binObj = tab[i = indexFor(hash, n)]) == null) {
+            // Note that unlike HashMap this does not resize the 'table' when an empty element of 'table' is null.  The
+            // purpose of enlarging 'table' is to reduce collisions, but there is no collision in this case.  This
+            // avoids enlarging 'table' when such an enlargement will not speed up get() or iteration.
+            // TODO try to suppress the unchecked warning
+            tab[i] = new NodeRef(hash, key, value);
+            ++modCount;
+            ++size;
 //                afterNodeInsertion(evict);
-                return null;
+            return null;
+        }
+        // Bins over TREEIFY_THRESHOLD nodes become a BTreeBin, a B+ tree of cache line sized pages.
+        Object k;
+        if (binObj.getClass() == NodeRef.class) {
+            @SuppressWarnings("unchecked")
+            NodeRef<K,V> nodeRef = (NodeRef<K,V>) binObj;
+            if (nodeRef.node.hash == hash &&
+                ((k = nodeRef.node.key) == key || (key != null && key.equals(k)))) {
+                V oldValue = nodeRef.node.value;
+                if (!onlyIfAbsent || oldValue == null)
+                    nodeRef.node = newNode(hash, key, value);
+//                    afterNodeAccess(nodeRef);
+                return oldValue;
             }
-            // TODO consider adding a TreeNode capability in addition to Node directly in tab[x].
-            // TODO consider an alternative to TreeNode wherein each node of the tree
-            //  contains an array whose size is up to 5 elements (5 being the assumed number
-            //  of Nodes that will fit in a cache line of 64 bytes (64 / (4 bytes per field *
-            //  3 fields)).  Maybe this would just e a B-Tree or B+ Tree?  This would be
-            //  worse for put() but maybe better for get().  If this class is to be used in
-            //  get() dominated contexts, it might be a fair tradeoff.
-            Object k;
-            if (binObj.getClass() == NodeRef.class) {
-                @SuppressWarnings("unchecked")
-                NodeRef<K,V> nodeRef = (NodeRef<K,V>) binObj;
-                if (nodeRef.node.hash == hash &&
-                    ((k = nodeRef.node.key) == key || (key != null && key.equals(k)))) {
-                    V oldValue = nodeRef.node.value;
+            tab[i] = new Node[]{new Node<>(hash, key, value), nodeRef.node};
+        } else if (binObj.getClass() == BTreeBin.class) {
+            @SuppressWarnings("unchecked")
+            Node<K,V> old = ((BTreeBin<K,V>) binObj).put(newNode(hash, key, value), onlyIfAbsent);
+            if (old != null) {
+                ++modCount;
+                return old.value;
+            }
+        } else {
+            @SuppressWarnings("unchecked")
+            Node<K, V>[] nodes = (Node<K, V>[]) binObj;
+            int binLen = nodes.length;
+            int b = 0;
+            for (; b < binLen && nodes[b] != null; ++b) {
+                if (nodes[b].hash == hash &&
+                    ((k = nodes[b].key) == key || (key != null && key.equals(k)))) {
+                    ++modCount;
+                    V oldValue = nodes[b].value;
                     if (!onlyIfAbsent || oldValue == null)
-                        nodeRef.node = newNode(hash, key, value);
-//                    afterNodeAccess(nodeRef);
+                        nodes[b] = newNode(hash, key, value);
+//                    afterNodeAccess(nodes[b]);
                     return oldValue;
                 }
-                tab[i] = new Node[]{new Node<>(hash, key, value), nodeRef.node};
+            }
+            // Key not present
+            if (b >= TREEIFY_THRESHOLD) {
+                treeifyBin(tab, i, newNode(hash, key, value));
+            } else if (b < binLen) {
+                // Reuse a slot left free by removeNode() rather than growing the bin.
+                nodes[b] = newNode(hash, key, value);
             } else {
-                @SuppressWarnings("unchecked")
-                Node<K, V>[] nodes = (Node<K, V>[]) binObj;
-                int binLen = nodes.length;
-                for (int b = 0; b < binLen; ++b) {
-                    if (nodes[b].hash == hash &&
-                        ((k = nodes[b].key) == key || (key != null && key.equals(k)))) {
-                        ++modCount;
-                        V oldValue = nodes[b].value;
-                        if (!onlyIfAbsent || oldValue == null)
-                            nodes[b] = newNode(hash, key, value);
-//                    afterNodeAccess(nodes[b]);
-                        return oldValue;
-                    }
-                }
-                // Key not present
-                Node[] newBin = new Node[binLen+1];
+                // Grow geometrically so a run of inserts into one bin copies it O(log n) times, not once per insert.
+                Node[] newBin = new Node[binLen << 1];
                 System.arraycopy(nodes, 0, newBin, 0, binLen);
                 newBin[binLen] = newNode(hash, key, value);
 //            afterNodeInsertion(evict);
                 tab[i] = newBin;
-
             }
+        }
 
-            ++modCount;
-            if (++size > threshold) {
-                tab = resize();
-                // Since Entrys can't simply be moved (as they can for HashMap), it makes sense to only add the new Entry after resize.
-                // This is like IdentityHashMap.
-                continue;
-            }
-            return null;
+        ++modCount;
+        if (++size > threshold) {
+            // The new node is already in its bin, so resize() moves it along with everything else.
+            resize();
         }
+        return null;
     }
 
     /**
@@ -762,7 +925,9 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
      * accord with initial capacity target held in field threshold.
      * Otherwise, because we are using power-of-two expansion, the
      * elements from each bin must either stay at same index, or move
-     * with a power of two offset in the new table.
+     * with a power of two offset in the new table.  With fibonacciIndex
+     * bin i instead splits between 2i and 2i + 1, on the hash bit just
+     * below the old index bits.
      *
      * @return the table
      */
@@ -782,7 +947,7 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
                 newThr = oldThr << 1; // double threshold
         }
         else if (oldThr > 0) // initial capacity was placed in threshold
-            newCap = oldThr;
+            newCap = fibonacciIndex ? Math.max(oldThr, 2) : oldThr; // shifting by 32 is shifting by 0
         else {               // zero initial threshold signifies using defaults
             newCap = DEFAULT_INITIAL_CAPACITY;
             newThr = (int)(DEFAULT_LOAD_FACTOR * DEFAULT_INITIAL_CAPACITY);
@@ -794,23 +959,31 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
         }
         threshold = newThr;
         Object[] newTab = new Object[newCap];
+        indexShift = Integer.numberOfLeadingZeros(newCap) + 1;
         table = newTab;
         if (oldTab != null) {
+            // Nodes with splitBit clear "stay", those with it set "move".
+            int splitBit = fibonacciIndex ? 1 << indexShift : oldCap;
             for (int ot = 0; ot < oldCap; ++ot) { // 'ot' old table
                 Object oldBin;
-                int movingTabIndex = ot + oldCap;
+                int stayingTabIndex = fibonacciIndex ? ot << 1 : ot;
+                int movingTabIndex = fibonacciIndex ? (ot << 1) + 1 : ot + oldCap;
                 if ((oldBin = oldTab[ot]) != null) {
                     oldTab[ot] = null;
                     if (oldBin.getClass() == NodeRef.class) {
-                        newTab[(newCap - 1) & ((NodeRef) oldBin).node.hash] = oldBin;
+                        newTab[indexFor(((NodeRef) oldBin).node.hash, newCap)] = oldBin;
+                    } else if (oldBin.getClass() == BTreeBin.class) {
+                        @SuppressWarnings("unchecked")
+                        BTreeBin<K,V> tree = (BTreeBin<K,V>) oldBin;
+                        splitTreeBin(tree, splitBit, stayingTabIndex, movingTabIndex, newTab);
                     } else {
                         int numStaying = 0;
                         Node[] oldArrayBin = (Node[]) oldBin;
-                        int oldBinLen = oldArrayBin.length;
+                        int oldBinLen = binCount(oldArrayBin);
                         int lastNumStayingIndex = 0;
                         int lastNumMovingIndex = 0;
                         for (int i = 0; i < oldBinLen; i++) {
-                            if ((oldArrayBin[i].hash & oldCap) == 0) {
+                            if ((oldArrayBin[i].hash & splitBit) == 0) {
                                 ++numStaying;
                                 lastNumStayingIndex = i;
                             } else {
@@ -818,40 +991,40 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
                             }
                         }
                         if (numStaying == oldBinLen) {
-                            newTab[ot] = oldArrayBin;
+                            newTab[stayingTabIndex] = oldArrayBin;
                         } else if (numStaying == 0) {
                             newTab[movingTabIndex] = oldArrayBin;
                         } else {
                             int numMoving = oldBinLen - numStaying;
                             if (numStaying == 1) {
                                 if (numMoving == 1) {
-                                    newTab[ot] = new NodeRef(oldArrayBin[lastNumStayingIndex]);
+                                    newTab[stayingTabIndex] = new NodeRef(oldArrayBin[lastNumStayingIndex]);
                                     newTab[movingTabIndex] = new NodeRef(oldArrayBin[lastNumMovingIndex]);
                                 } else {
-                                    rehashArrayBinOneOfManyHasDifferentIndex(oldBinLen, oldArrayBin, lastNumStayingIndex, ot, movingTabIndex, newTab);
+                                    rehashArrayBinOneOfManyHasDifferentIndex(oldBinLen, oldArrayBin, lastNumStayingIndex, stayingTabIndex, movingTabIndex, newTab);
                                 }
                             } else if (numMoving == 1) {
-                                rehashArrayBinOneOfManyHasDifferentIndex(oldBinLen, oldArrayBin, lastNumMovingIndex, movingTabIndex, ot, newTab);
+                                rehashArrayBinOneOfManyHasDifferentIndex(oldBinLen, oldArrayBin, lastNumMovingIndex, movingTabIndex, stayingTabIndex, newTab);
                             } else { // Multiple staying, multiple moving
-                                Node[] stayingBin = new Node[numStaying];
-                                Node[] movingBin = new Node[numMoving];
-                                int stayingBinIndex = 0, movingBinIndex = 0;
+                                // The larger half is packed to the front of the old bin; only the smaller one is copied.
+                                boolean stayingKeepsBin = numStaying >= numMoving;
+                                Node[] newBin = new Node[stayingKeepsBin ? numMoving : numStaying];
+                                int keptBinIndex = 0, newBinIndex = 0;
                                 for (int i = 0; i < oldBinLen; i++) {
-                                    if ((oldArrayBin[i].hash & oldCap) == 0) {
-                                        stayingBin[stayingBinIndex++] = oldArrayBin[i];
+                                    Node node = oldArrayBin[i];
+                                    if (((node.hash & splitBit) == 0) == stayingKeepsBin) {
+                                        oldArrayBin[keptBinIndex++] = node;
                                     } else {
-                                        movingBin[movingBinIndex++] = oldArrayBin[i];
+                                        newBin[newBinIndex++] = node;
                                     }
                                 }
-                                newTab[ot] = stayingBin;
-                                newTab[movingTabIndex] = movingBin;
+                                Arrays.fill(oldArrayBin, keptBinIndex, oldBinLen, null);
+                                newTab[stayingTabIndex] = stayingKeepsBin ? oldArrayBin : newBin;
+                                newTab[movingTabIndex] = stayingKeepsBin ? newBin : oldArrayBin;
                             }
                         }
 
                         // TODO chose not to preserve order (but maybe did anyway?).  I can't see any benefit.
-                        // TODO when can handle non-full bins, move entries in same array instead (Look at old
-                        //  Bard chat), Whichever has more moving, or staying will use oldBin (so if moving uses
-                        //  oldBin then newTab[oldTabIndex] = newBin; newTab[movingTabIndex] = oldBin;)
                     }
                 }
             }
@@ -863,17 +1036,80 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
 
     @SuppressWarnings("rawtypes")
     private static <K, V> void rehashArrayBinOneOfManyHasDifferentIndex(int oldBinLen, Node[] oldArrayBin, int oldBinIndexForOne, int newTabIndexForOne, int newTabIndexForMany, Object[] newTab) {
-        Node[] newManyArrayBin = new Node[oldBinLen-1];
         newTab[newTabIndexForOne] = new NodeRef(oldArrayBin[oldBinIndexForOne]);
-        System.arraycopy(oldArrayBin, 0, newManyArrayBin, 0, oldBinIndexForOne);
-        System.arraycopy(oldArrayBin, oldBinIndexForOne+1, newManyArrayBin, oldBinIndexForOne, oldBinLen-oldBinIndexForOne-1);
-        newTab[newTabIndexForMany] = newManyArrayBin;
+        // Bins need not be full, so the many keep the old bin with the gap closed.
+        System.arraycopy(oldArrayBin, oldBinIndexForOne+1, oldArrayBin, oldBinIndexForOne, oldBinLen-oldBinIndexForOne-1);
+        oldArrayBin[oldBinLen-1] = null;
+        newTab[newTabIndexForMany] = oldArrayBin;
+    }
+
+    /**
+     * Adds node to the full {@code Node[]} bin at index and replaces the bin
+     * with a BTreeBin, unless the table is too small, in which case adds
+     * node by growing the bin and leaves the rest to resize.
+     */
+    @SuppressWarnings("unchecked")
+    final void treeifyBin(Object[] tab, int index, Node<K,V> node) {
+        Node<K,V>[] nodes = (Node<K,V>[]) tab[index];
+        int count = binCount(nodes);
+        if (tab.length < MIN_TREEIFY_CAPACITY) {
+            if (count == nodes.length)
+                tab[index] = nodes = Arrays.copyOf(nodes, count << 1);
+            nodes[count] = node;
+            resize();
+        } else {
+            BTreeBin<K,V> tree = BTreeBin.of(nodes, count);
+            tree.put(node, false);
+            tab[index] = tree;
+        }
+    }
+
+    /**
+     * Splits a BTreeBin by splitBit between stayingIndex and movingIndex of
+     * newTab, as a NodeRef, a {@code Node[]}, or again a BTreeBin if a half
+     * is still above UNTREEIFY_THRESHOLD.
+     */
+    @SuppressWarnings("unchecked")
+    private static <K,V> void splitTreeBin(BTreeBin<K,V> tree, int splitBit, int stayingIndex, int movingIndex,
+                                           Object[] newTab) {
+        Node<K,V>[] nodes = tree.toArray();
+        Node<K,V>[] moving = (Node<K,V>[]) new Node[nodes.length];
+        int numStaying = 0, numMoving = 0;
+        for (Node<K,V> node : nodes) {
+            if ((node.hash & splitBit) == 0)
+                nodes[numStaying++] = node;
+            else
+                moving[numMoving++] = node;
+        }
+        newTab[stayingIndex] = untreeified(nodes, numStaying);
+        newTab[movingIndex] = untreeified(moving, numMoving);
     }
 
     /**
-     * Replaces all linked nodes in bin at index for given hash unless
-     * table is too small, in which case resizes instead.
+     * Returns a bin for the first count nodes.
      */
+    private static <K,V> Object untreeified(Node<K,V>[] nodes, int count) {
+        if (count == 0)
+            return null;
+        if (count == 1)
+            return new NodeRef<>(nodes[0]);
+        if (count <= UNTREEIFY_THRESHOLD)
+            return Arrays.copyOf(nodes, count);
+        return BTreeBin.of(nodes, count);
+    }
+
+    /**
+     * Returns the nodes of a {@code Node[]} or BTreeBin bin.  A BTreeBin's
+     * nodes are copied out in tree order, so code that only walks bins
+     * need not know about trees.
+     */
+    @SuppressWarnings("unchecked")
+    static <K,V> Node<K,V>[] binNodes(Object binObj) {
+        return (binObj.getClass() == BTreeBin.class)
+                ? ((BTreeBin<K,V>) binObj).toArray()
+                : (Node<K,V>[]) binObj;
+    }
+
     // TODO uncomment to handle trees
 //    final void treeifyBin(Node<K,V>[] tab, int hash) {
 //        int n, index; Node<K,V> e;
@@ -908,6 +1144,162 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
         putMapEntries(m, true);
     }
 
+    /**
+     * Copies all of the mappings from the specified map to this map, as
+     * putAll does, but builds the table in the common ForkJoinPool.
+     *
+     * @param m mappings to be stored in this map
+     * @see #parallelPutAll(Object[], Object[], ForkJoinPool)
+     */
+    @SuppressWarnings("unchecked")
+    public void parallelPutAll(Map<? extends K, ? extends V> m) {
+        K[] keys = (K[]) new Object[m.size()];
+        V[] values = (V[]) new Object[keys.length];
+        int i = 0;
+        for (Entry<? extends K, ? extends V> e : m.entrySet()) {
+            keys[i] = e.getKey();
+            values[i++] = e.getValue();
+        }
+        parallelPutAll(keys, values, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Maps each of keys to the value at the same index of values, as a loop
+     * of put would, with the table built by tasks of pool.  The new table is
+     * sized up front for the existing mappings plus keys.  Each mapping is
+     * assigned to a range of it by the high bits of its index, and each
+     * range is filled by its own task, which no other task writes to.  The
+     * new table replaces the old one once every range is done.  Like put,
+     * this must not race with other uses of the map.
+     *
+     * @throws IllegalArgumentException if values is shorter than keys
+     */
+    @SuppressWarnings("unchecked")
+    public void parallelPutAll(K[] keys, V[] values, ForkJoinPool pool) {
+        if (values.length < keys.length)
+            throw new IllegalArgumentException("values.length " + values.length +
+                                               " < keys.length " + keys.length);
+        if (keys.length < ParallelBuild.MIN_PARALLEL_SIZE) {
+            for (int i = 0; i < keys.length; i++)
+                putVal(hash(keys[i]), keys[i], values[i], false, true);
+            return;
+        }
+        // The existing nodes are moved first, so that keys replace them.
+        final Node<K,V>[] olds = (Node<K,V>[]) new Node[size];
+        int o = 0;
+        Object[] oldTab = table;
+        if (oldTab != null) {
+            for (Object binObj : oldTab) {
+                if (binObj == null)
+                    continue;
+                if (binObj.getClass() == NodeRef.class) {
+                    olds[o++] = ((NodeRef<K,V>) binObj).node;
+                } else {
+                    Node<K,V>[] nodes = binNodes(binObj);
+                    for (int b = 0; b < nodes.length && nodes[b] != null; b++)
+                        olds[o++] = nodes[b];
+                }
+            }
+        }
+        final int numOld = o;
+        final int total = numOld + keys.length;
+        double dt = Math.ceil(total / (double)loadFactor);
+        int cap = tableSizeFor(Math.max((dt < (double)MAXIMUM_CAPACITY) ? (int)dt : MAXIMUM_CAPACITY,
+                                        MIN_TREEIFY_CAPACITY));
+        final int newCap = (oldTab == null) ? cap : Math.max(cap, oldTab.length);
+        final int newShift = Integer.numberOfLeadingZeros(newCap) + 1;
+        final int ranges = ParallelBuild.rangeCount(pool, newCap);
+        final int rangeShift = Integer.numberOfTrailingZeros(newCap) - Integer.numberOfTrailingZeros(ranges);
+
+        final int[] hashes = new int[total];
+        ParallelBuild.forEach(pool, ranges, c -> {
+            for (int i = ParallelBuild.chunkStart(c, ranges, total),
+                     end = ParallelBuild.chunkStart(c + 1, ranges, total); i < end; i++)
+                hashes[i] = (i < numOld) ? olds[i].hash : hash(keys[i - numOld]);
+        });
+        final int[] rangeStart = new int[ranges + 1];
+        final int[] order = ParallelBuild.groupByRange(pool, total, ranges,
+                i -> (fibonacciIndex ? hashes[i] >>> newShift : (newCap - 1) & hashes[i]) >>> rangeShift,
+                rangeStart);
+
+        final Object[] newTab = new Object[newCap];
+        final int[] added = new int[ranges];
+        ParallelBuild.forEach(pool, ranges, r -> {
+            int count = 0;
+            for (int j = rangeStart[r]; j < rangeStart[r + 1]; j++) {
+                int i = order[j];
+                int hash = hashes[i];
+                Node<K,V> node = (i < numOld) ? olds[i] : newNode(hash, keys[i - numOld], values[i - numOld]);
+                if (putNode(newTab, fibonacciIndex ? hash >>> newShift : (newCap - 1) & hash, node))
+                    count++;
+            }
+            added[r] = count;
+        });
+
+        int newSize = 0;
+        for (int count : added)
+            newSize += count;
+        float ft = (float)newCap * loadFactor;
+        threshold = (newCap < MAXIMUM_CAPACITY && ft < (float)MAXIMUM_CAPACITY ?
+                     (int)ft : Integer.MAX_VALUE);
+        indexShift = newShift;
+        size = newSize;
+        ++modCount;
+        table = newTab;
+    }
+
+    /**
+     * Puts node into bin i of tab as putVal would, but never resizes, so tab
+     * must be at least MIN_TREEIFY_CAPACITY long.  Used by parallelPutAll's
+     * tasks, each of which owns a range of tab.
+     *
+     * @return whether node's key was not already in the bin
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static <K,V> boolean putNode(Object[] tab, int i, Node<K,V> node) {
+        Object binObj = tab[i];
+        int hash = node.hash;
+        Object key = node.key, k;
+        if (binObj == null) {
+            tab[i] = new NodeRef<>(node);
+            return true;
+        }
+        if (binObj.getClass() == NodeRef.class) {
+            NodeRef<K,V> nodeRef = (NodeRef<K,V>) binObj;
+            if (nodeRef.node.hash == hash &&
+                ((k = nodeRef.node.key) == key || (key != null && key.equals(k)))) {
+                nodeRef.node = node;
+                return false;
+            }
+            tab[i] = new Node[]{nodeRef.node, node};
+            return true;
+        }
+        if (binObj.getClass() == BTreeBin.class)
+            return ((BTreeBin<K,V>) binObj).put(node, false) == null;
+        Node<K,V>[] nodes = (Node<K,V>[]) binObj;
+        int b = 0;
+        for (; b < nodes.length && nodes[b] != null; ++b) {
+            if (nodes[b].hash == hash &&
+                ((k = nodes[b].key) == key || (key != null && key.equals(k)))) {
+                nodes[b] = node;
+                return false;
+            }
+        }
+        if (b >= TREEIFY_THRESHOLD) {
+            BTreeBin<K,V> tree = BTreeBin.of(nodes, b);
+            tree.put(node, false);
+            tab[i] = tree;
+        } else if (b < nodes.length) {
+            nodes[b] = node;
+        } else {
+            Node[] newBin = new Node[b << 1];
+            System.arraycopy(nodes, 0, newBin, 0, b);
+            newBin[b] = node;
+            tab[i] = newBin;
+        }
+        return true;
+    }
+
     /**
      * Removes the mapping for the specified key from this map if present.
      *
@@ -918,15 +1310,21 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
      *         previously associated {@code null} with {@code key}.)
      */
     public V remove(Object key) {
-        throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if put & get jmh tests have promising results
-//        Node<K,V> e;
-//        return (e = removeNode(hash(key), key, null, false, true)) == null ?
-//            null : e.value;
+        Node<K,V> e;
+        return (e = removeNode(hash(key), key, null, false, true)) == null ?
+            null : e.value;
     }
 
     /**
      * Implements Map.remove and related methods.
      *
+     * <p>A {@code Node[]} bin is compacted in place: the nodes after the
+     * removed one are shifted down and the freed slot at the end is nulled,
+     * so removal does not allocate.  The free slots are reused by a later
+     * {@code putVal} into the same bin.  A bin left with a single node goes
+     * back to being a {@code NodeRef}, and a bin left with none nulls its
+     * table slot.
+     *
      * @param hash hash for key
      * @param key the key
      * @param value the value to match if matchValue, else ignored
@@ -934,46 +1332,79 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
      * @param movable if false do not move other nodes while removing
      * @return the node, or null if none
      */
+    @SuppressWarnings("unchecked")
     final Node<K,V> removeNode(int hash, Object key, Object value,
                                boolean matchValue, boolean movable) {
-        throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if put & get jmh tests have promising results
-//        Node<K,V>[] tab; Node<K,V> p; int n, index;
-//        if ((tab = table) != null && (n = tab.length) > 0 &&
-//            (p = tab[index = (n - 1) & hash]) != null) {
-//            Node<K,V> node = null, e; K k; V v;
-//            if (p.hash == hash &&
-//                ((k = p.key) == key || (key != null && key.equals(k))))
-//                node = p;
-//            else if ((e = p.next) != null) {
-//                if (p instanceof TreeNode)
-//                    node = ((TreeNode<K,V>)p).getTreeNode(hash, key);
-//                else {
-//                    do {
-//                        if (e.hash == hash &&
-//                            ((k = e.key) == key ||
-//                             (key != null && key.equals(k)))) {
-//                            node = e;
-//                            break;
-//                        }
-//                        p = e;
-//                    } while ((e = e.next) != null);
-//                }
-//            }
-//            if (node != null && (!matchValue || (v = node.value) == value ||
-//                                 (value != null && value.equals(v)))) {
-//                if (node instanceof TreeNode)
-//                    ((TreeNode<K,V>)node).removeTreeNode(this, tab, movable);
-//                else if (node == p)
-//                    tab[index] = node.next;
-//                else
-//                    p.next = node.next;
-//                ++modCount;
-//                --size;
-//                afterNodeRemoval(node);
-//                return node;
-//            }
-//        }
-//        return null;
+        Object[] tab; Object binObj; int n, index;
+        if ((tab = table) != null && (n = tab.length) > 0 &&
+            (binObj = tab[index = indexFor(hash, n)]) != null) {
+            K k; V v;
+            if (binObj.getClass() == NodeRef.class) {
+                Node<K,V> node = ((NodeRef<K,V>) binObj).node;
+                if (node.hash == hash &&
+                    ((k = node.key) == key || (key != null && key.equals(k))) &&
+                    (!matchValue || (v = node.value) == value ||
+                     (value != null && value.equals(v)))) {
+                    tab[index] = null;
+                    ++modCount;
+                    --size;
+                    return node;
+                }
+                return null;
+            }
+            if (binObj.getClass() == BTreeBin.class) {
+                BTreeBin<K,V> tree = (BTreeBin<K,V>) binObj;
+                Node<K,V> node = tree.remove(hash, key, value, matchValue);
+                if (node != null) {
+                    if (tree.size() <= UNTREEIFY_THRESHOLD)
+                        tab[index] = untreeified(tree.toArray(), tree.size());
+                    ++modCount;
+                    --size;
+                }
+                return node;
+            }
+            Node<K,V>[] nodes = (Node<K,V>[]) binObj;
+            int binLen = nodes.length;
+            for (int b = 0; b < binLen && nodes[b] != null; b++) {
+                Node<K,V> node = nodes[b];
+                if (node.hash == hash &&
+                    ((k = node.key) == key || (key != null && key.equals(k)))) {
+                    if (matchValue && (v = node.value) != value &&
+                        (value == null || !value.equals(v)))
+                        return null;
+                    int count = b + 1 + binCount(nodes, b + 1);
+                    if (count == 2) {
+                        tab[index] = new NodeRef<>(nodes[1 - b]);
+                    } else {
+                        System.arraycopy(nodes, b + 1, nodes, b, count - b - 1);
+                        nodes[count - 1] = null;
+                    }
+                    ++modCount;
+                    --size;
+                    return node;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of live nodes in a {@code Node[]} bin.  Live nodes
+     * are always packed at the front of a bin; any slots after them are
+     * null spare capacity, left by {@link #putVal} growing the bin or by
+     * {@link #removeNode} and {@link #resize} emptying slots.
+     */
+    @SuppressWarnings("rawtypes")
+    static int binCount(Node[] nodes) {
+        return binCount(nodes, 0);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static int binCount(Node[] nodes, int from) {
+        int b = from;
+        while (b < nodes.length && nodes[b] != null)
+            b++;
+        return b - from;
     }
 
     /**
@@ -1069,19 +1500,28 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
      * @param <T> type of array elements
      * @return supplied array
      */
+    @SuppressWarnings("unchecked")
     <T> T[] keysToArray(T[] a) {
-        throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if jmh get/put is promising
-//        Object[] r = a;
-//        Node<K,V>[] tab;
-//        int idx = 0;
-//        if (size > 0 && (tab = table) != null) {
-//            for (Node<K,V> e : tab) {
-//                for (; e != null; e = e.next) {
-//                    r[idx++] = e.key;
-//                }
-//            }
-//        }
-//        return a;
+        Object[] r = a;
+        Object[] tab;
+        int idx = 0;
+        if (size > 0 && (tab = table) != null) {
+            for (Object binObj : tab) {
+                if (binObj == null)
+                    continue;
+                if (binObj.getClass() == NodeRef.class) {
+                    Node<K,V> e = ((NodeRef<K,V>) binObj).node;
+                    r[idx++] = e.key;
+                } else {
+                    Node<K,V>[] nodes = binNodes(binObj);
+                    for (int b = 0; b < nodes.length && nodes[b] != null; b++) {
+                        Node<K,V> e = nodes[b];
+                        r[idx++] = e.key;
+                    }
+                }
+            }
+        }
+        return a;
     }
 
     /**
@@ -1093,19 +1533,28 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
      * @param <T> type of array elements
      * @return supplied array
      */
+    @SuppressWarnings("unchecked")
     <T> T[] valuesToArray(T[] a) {
-        throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if jmh get/put is promising
-//        Object[] r = a;
-//        Node<K,V>[] tab;
-//        int idx = 0;
-//        if (size > 0 && (tab = table) != null) {
-//            for (Node<K,V> e : tab) {
-//                for (; e != null; e = e.next) {
-//                    r[idx++] = e.value;
-//                }
-//            }
-//        }
-//        return a;
+        Object[] r = a;
+        Object[] tab;
+        int idx = 0;
+        if (size > 0 && (tab = table) != null) {
+            for (Object binObj : tab) {
+                if (binObj == null)
+                    continue;
+                if (binObj.getClass() == NodeRef.class) {
+                    Node<K,V> e = ((NodeRef<K,V>) binObj).node;
+                    r[idx++] = e.value;
+                } else {
+                    Node<K,V>[] nodes = binNodes(binObj);
+                    for (int b = 0; b < nodes.length && nodes[b] != null; b++) {
+                        Node<K,V> e = nodes[b];
+                        r[idx++] = e.value;
+                    }
+                }
+            }
+        }
+        return a;
     }
 
     final class KeySet extends AbstractSet<K> {
@@ -1114,8 +1563,7 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
         public final Iterator<K> iterator()     { return new KeyIterator(); }
         public final boolean contains(Object o) { return containsKey(o); }
         public final boolean remove(Object key) {
-            throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if put & get jmh tests have promising results
-//            return removeNode(hash(key), key, null, false, true) != null;
+            return removeNode(hash(key), key, null, false, true) != null;
         }
         public final Spliterator<K> spliterator() {
             return new KeySpliterator<>(ArrayBinHashMap.this, 0, -1, 0, 0);
@@ -1129,20 +1577,30 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
             return keysToArray(prepareArray(a));
         }
 
+        @SuppressWarnings("unchecked")
         public final void forEach(Consumer<? super K> action) {
-            throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if jmh get/put is promising
-//            Node<K,V>[] tab;
-//            if (action == null)
-//                throw new NullPointerException();
-//            if (size > 0 && (tab = table) != null) {
-//                int mc = modCount;
-//                for (Node<K,V> e : tab) {
-//                    for (; e != null; e = e.next)
-//                        action.accept(e.key);
-//                }
-//                if (modCount != mc)
-//                    throw new ConcurrentModificationException();
-//            }
+            Object[] tab;
+            if (action == null)
+                throw new NullPointerException();
+            if (size > 0 && (tab = table) != null) {
+                int mc = modCount;
+                for (Object binObj : tab) {
+                    if (binObj == null)
+                        continue;
+                    if (binObj.getClass() == NodeRef.class) {
+                        Node<K,V> e = ((NodeRef<K,V>) binObj).node;
+                        action.accept(e.key);
+                    } else {
+                        Node<K,V>[] nodes = binNodes(binObj);
+                        for (int b = 0; b < nodes.length && nodes[b] != null; b++) {
+                            Node<K,V> e = nodes[b];
+                            action.accept(e.key);
+                        }
+                    }
+                }
+                if (modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
         }
     }
 
@@ -1188,19 +1646,30 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
             return valuesToArray(prepareArray(a));
         }
 
+        @SuppressWarnings("unchecked")
         public final void forEach(Consumer<? super V> action) {
-            Node<K,V>[] tab;
+            Object[] tab;
             if (action == null)
                 throw new NullPointerException();
-            throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if jmh get/put is promising
-//                int mc = modCount;
-//                for (Node<K,V> e : tab) {
-//                    for (; e != null; e = e.next)
-//                        action.accept(e.value);
-//                }
-//                if (modCount != mc)
-//                    throw new ConcurrentModificationException();
-//            }
+            if (size > 0 && (tab = table) != null) {
+                int mc = modCount;
+                for (Object binObj : tab) {
+                    if (binObj == null)
+                        continue;
+                    if (binObj.getClass() == NodeRef.class) {
+                        Node<K,V> e = ((NodeRef<K,V>) binObj).node;
+                        action.accept(e.value);
+                    } else {
+                        Node<K,V>[] nodes = binNodes(binObj);
+                        for (int b = 0; b < nodes.length && nodes[b] != null; b++) {
+                            Node<K,V> e = nodes[b];
+                            action.accept(e.value);
+                        }
+                    }
+                }
+                if (modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
         }
     }
 
@@ -1232,38 +1701,47 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
             return new EntryIterator();
         }
         public final boolean contains(Object o) {
-            throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if put & get jmh tests have promising results
-//            if (!(o instanceof Map.Entry<?, ?> e))
-//                return false;
-//            Object key = e.getKey();
-//            Node<K,V> candidate = getNode(key);
-//            return candidate != null && candidate.equals(e);
+            if (!(o instanceof Map.Entry<?, ?> e))
+                return false;
+            Object key = e.getKey();
+            NodeRef<K,V> candidate = getNode(key);
+            return candidate != null && candidate.node.equals(e);
         }
         public final boolean remove(Object o) {
-            throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if put & get jmh tests have promising results
-//                Object key = e.getKey();
-//                Object value = e.getValue();
-//                return removeNode(hash(key), key, value, true, true) != null;
-//            }
-//            return false;
+            if (o instanceof Map.Entry<?, ?> e) {
+                Object key = e.getKey();
+                Object value = e.getValue();
+                return removeNode(hash(key), key, value, true, true) != null;
+            }
+            return false;
         }
         public final Spliterator<Entry<K,V>> spliterator() {
             return new EntrySpliterator<>(ArrayBinHashMap.this, 0, -1, 0, 0);
         }
+        @SuppressWarnings("unchecked")
         public final void forEach(Consumer<? super Entry<K,V>> action) {
-            Node<K,V>[] tab;
+            Object[] tab;
             if (action == null)
                 throw new NullPointerException();
-            throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if jmh get/put is promising
-//            if (size > 0 && (tab = table) != null) {
-//                int mc = modCount;
-//                for (Node<K,V> e : tab) {
-//                    for (; e != null; e = e.next)
-//                        action.accept(e);
-//                }
-//                if (modCount != mc)
-//                    throw new ConcurrentModificationException();
-//            }
+            if (size > 0 && (tab = table) != null) {
+                int mc = modCount;
+                for (Object binObj : tab) {
+                    if (binObj == null)
+                        continue;
+                    if (binObj.getClass() == NodeRef.class) {
+                        Node<K,V> e = ((NodeRef<K,V>) binObj).node;
+                        action.accept(e);
+                    } else {
+                        Node<K,V>[] nodes = binNodes(binObj);
+                        for (int b = 0; b < nodes.length && nodes[b] != null; b++) {
+                            Node<K,V> e = nodes[b];
+                            action.accept(e);
+                        }
+                    }
+                }
+                if (modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
         }
     }
 
@@ -1283,8 +1761,7 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
 
     @Override
     public boolean remove(Object key, Object value) {
-        throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if put & get jmh tests have promising results
-//        return removeNode(hash(key), key, value, true, true) != null;
+        return removeNode(hash(key), key, value, true, true) != null;
     }
 
     @Override
@@ -1554,20 +2031,30 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public void forEach(BiConsumer<? super K, ? super V> action) {
-        throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if jmh get/put is promising
-//        Node<K,V>[] tab;
-//        if (action == null)
-//            throw new NullPointerException();
-//        if (size > 0 && (tab = table) != null) {
-//            int mc = modCount;
-//            for (Node<K,V> e : tab) {
-//                for (; e != null; e = e.next)
-//                    action.accept(e.key, e.value);
-//            }
-//            if (modCount != mc)
-//                throw new ConcurrentModificationException();
-//        }
+        Object[] tab;
+        if (action == null)
+            throw new NullPointerException();
+        if (size > 0 && (tab = table) != null) {
+            int mc = modCount;
+            for (Object binObj : tab) {
+                if (binObj == null)
+                    continue;
+                if (binObj.getClass() == NodeRef.class) {
+                    Node<K,V> e = ((NodeRef<K,V>) binObj).node;
+                    action.accept(e.key, e.value);
+                } else {
+                    Node<K,V>[] nodes = binNodes(binObj);
+                    for (int b = 0; b < nodes.length && nodes[b] != null; b++) {
+                        Node<K,V> e = nodes[b];
+                        action.accept(e.key, e.value);
+                    }
+                }
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
     }
 
     @Override
@@ -1591,6 +2078,17 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
     /* ------------------------------------------------------------ */
     // Cloning and serialization
 
+    /**
+     * Returns an immutable copy of this map for read-only use, laid out by
+     * a minimal perfect hash.  Later changes to this map are not seen.
+     *
+     * @return an immutable copy of this map
+     * @see FrozenMap
+     */
+    public FrozenMap<K,V> freeze() {
+        return FrozenMap.copyOf(this);
+    }
+
     /**
      * Returns a shallow copy of this {@code HashMap} instance: the keys and
      * values themselves are not cloned.
@@ -1722,49 +2220,78 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
     abstract class HashIterator {
         Node<K,V> next;        // next entry to return
         Node<K,V> current;     // current entry
+        Node<K,V>[] bin;       // Node[] bin holding next, or null if next came from a NodeRef
+        int binIndex;          // index of next in bin
         int expectedModCount;  // for fast-fail
         int index;             // current slot
 
         HashIterator() {
-            throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if jmh get/put is promising
-//            expectedModCount = modCount;
-//            Node<K,V>[] t = table;
-//            current = next = null;
-//            index = 0;
-//            if (t != null && size > 0) { // advance to first entry
-//                do {} while (index < t.length && (next = t[index++]) == null);
-//            }
+            expectedModCount = modCount;
+            Object[] t = table;
+            current = next = null;
+            bin = null;
+            index = 0;
+            if (t != null && size > 0) { // advance to first entry
+                advanceBin(t);
+            }
+        }
+
+        /**
+         * Sets next to the first node of the next non-empty bin at or
+         * after index, or to null if there is none.
+         */
+        @SuppressWarnings("unchecked")
+        private void advanceBin(Object[] t) {
+            Object binObj = null;
+            do {} while (index < t.length && (binObj = t[index++]) == null);
+            if (binObj == null) {
+                next = null;
+                bin = null;
+            } else if (binObj.getClass() == NodeRef.class) {
+                next = ((NodeRef<K,V>) binObj).node;
+                bin = null;
+            } else {
+                bin = binNodes(binObj);
+                binIndex = 0;
+                next = bin[0];
+            }
         }
 
         public final boolean hasNext() {
-            throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if put & get jmh tests have promising results
-//            return next != null;
+            return next != null;
         }
 
         final Node<K,V> nextNode() {
-            throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if jmh get/put is promising
-//            Node<K,V>[] t;
-//            Node<K,V> e = next;
-//            if (modCount != expectedModCount)
-//                throw new ConcurrentModificationException();
-//            if (e == null)
-//                throw new NoSuchElementException();
-//            if ((next = (current = e).next) == null && (t = table) != null) {
-//                do {} while (index < t.length && (next = t[index++]) == null);
-//            }
-//            return e;
+            Object[] t;
+            Node<K,V>[] b;
+            Node<K,V> e = next;
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (e == null)
+                throw new NoSuchElementException();
+            current = e;
+            if ((b = bin) != null && ++binIndex < b.length && (next = b[binIndex]) != null)
+                return e;
+            if ((t = table) != null)
+                advanceBin(t);
+            else
+                next = null;
+            return e;
         }
 
         public final void remove() {
-            throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if put & get jmh tests have promising results
-//            Node<K,V> p = current;
-//            if (p == null)
-//                throw new IllegalStateException();
-//            if (modCount != expectedModCount)
-//                throw new ConcurrentModificationException();
-//            current = null;
-//            removeNode(p.hash, p.key, null, false, false);
-//            expectedModCount = modCount;
+            Node<K,V> p = current;
+            if (p == null)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            current = null;
+            removeNode(p.hash, p.key, null, false, false);
+            expectedModCount = modCount;
+            // removeNode() compacts the bin in place, so next may have shifted down over p.
+            Node<K,V>[] b = bin;
+            if (b != null && binIndex > 0 && b[binIndex - 1] == next)
+                --binIndex;
         }
     }
 
@@ -1784,11 +2311,23 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
     }
 
     /* ------------------------------------------------------------ */
-    // spliterators
+
+    /**
+     * Number of places in a spliterator's range that trySplit samples to
+     * find the split point.
+     */
+    static final int SPLIT_SAMPLES = 64;
+
+    /**
+     * Number of adjacent table slots counted at each sample place.  16
+     * compressed references are one 64 byte cache line.
+     */
+    static final int SPLIT_SAMPLE_WIDTH = 16;
 
     static class HashMapSpliterator<K,V> {
         final ArrayBinHashMap<K,V> map;
-        Node<K,V> current;          // current node
+        Node<K,V>[] currentBin;     // Node[] bin partly consumed by tryAdvance, else null
+        int binIndex;               // index of the next node in currentBin
         int index;                  // current index, modified on advance/split
         int fence;                  // one past last index
         int est;                    // size estimate
@@ -1805,22 +2344,86 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
         }
 
         final int getFence() { // initialize fence and size on first use
-            throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if jmh get/put is promising
-//            int hi;
-//            if ((hi = fence) < 0) {
-//                ArrayBucketHashMap<K,V> m = map;
-//                est = m.size;
-//                expectedModCount = m.modCount;
-//                Node<K,V>[] tab = m.table;
-//                hi = fence = (tab == null) ? 0 : tab.length;
-//            }
-//            return hi;
+            int hi;
+            if ((hi = fence) < 0) {
+                ArrayBinHashMap<K,V> m = map;
+                est = m.size;
+                expectedModCount = m.modCount;
+                Object[] tab = m.table;
+                hi = fence = (tab == null) ? 0 : tab.length;
+            }
+            return hi;
         }
 
         public final long estimateSize() {
             getFence(); // force init
             return (long) est;
         }
+
+        /**
+         * Returns the index at which to split [lo, hi) so that both halves
+         * hold about the same number of mappings, rather than the same
+         * number of table slots.  Counting the whole range would cost as
+         * much as walking it, so the bins in SPLIT_SAMPLES evenly spaced
+         * runs of SPLIT_SAMPLE_WIDTH slots are counted, and the split lands
+         * in the run where the running count passes half.  Small ranges,
+         * and ranges with no sampled mappings, split at the middle index.
+         */
+        @SuppressWarnings("rawtypes")
+        final int balancedMid(int lo, int hi) {
+            int mid = (lo + hi) >>> 1;
+            Object[] tab = map.table;
+            int step = (hi - lo) / SPLIT_SAMPLES;
+            if (tab == null || tab.length < hi || step < 2 * SPLIT_SAMPLE_WIDTH)
+                return mid;
+            int total = 0;
+            for (int s = 0; s < SPLIT_SAMPLES; s++)
+                total += sampleCount(tab, lo + s * step);
+            if (total == 0)
+                return mid;
+            int acc = 0;
+            for (int s = 0; s < SPLIT_SAMPLES; s++) {
+                if ((acc += sampleCount(tab, lo + s * step)) * 2 >= total)
+                    return lo + s * step + SPLIT_SAMPLE_WIDTH;
+            }
+            return mid;
+        }
+
+        @SuppressWarnings("rawtypes")
+        private static int sampleCount(Object[] tab, int from) {
+            int count = 0;
+            for (int i = from; i < from + SPLIT_SAMPLE_WIDTH; i++) {
+                Object binObj = tab[i];
+                if (binObj != null)
+                    count += (binObj.getClass() == NodeRef.class) ? 1 : binCount(binNodes(binObj));
+            }
+            return count;
+        }
+
+        /**
+         * Returns the next node for tryAdvance, or null if the range is
+         * exhausted.
+         */
+        @SuppressWarnings("unchecked")
+        final Node<K,V> advanceNode(Object[] tab, int hi) {
+            Node<K,V>[] b;
+            if ((b = currentBin) != null) {
+                if (binIndex < b.length && b[binIndex] != null)
+                    return b[binIndex++];
+                currentBin = null;
+            }
+            while (index < hi) {
+                Object binObj = tab[index++];
+                if (binObj == null)
+                    continue;
+                if (binObj.getClass() == NodeRef.class)
+                    return ((NodeRef<K,V>) binObj).node;
+                currentBin = b = binNodes(binObj);
+                binIndex = 1;
+                return b[0];
+            }
+            return null;
+        }
     }
 
     static final class KeySpliterator<K,V>
@@ -1832,64 +2435,65 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
         }
 
         public KeySpliterator<K,V> trySplit() {
-            throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if put & get jmh tests have promising results
-//            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
-//            return (lo >= mid || current != null) ? null :
-//                new KeySpliterator<>(map, lo, index = mid, est >>>= 1,
-//                                        expectedModCount);
+            int hi = getFence(), lo = index, mid = balancedMid(lo, hi);
+            return (lo >= mid || currentBin != null) ? null :
+                new KeySpliterator<>(map, lo, index = mid, est >>>= 1,
+                                     expectedModCount);
         }
 
+        @SuppressWarnings("unchecked")
         public void forEachRemaining(Consumer<? super K> action) {
-            throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if jmh get/put is promising
-//            int i, hi, mc;
-//            if (action == null)
-//                throw new NullPointerException();
-//            ArrayBucketHashMap<K,V> m = map;
-//            Node<K,V>[] tab = m.table;
-//            if ((hi = fence) < 0) {
-//                mc = expectedModCount = m.modCount;
-//                hi = fence = (tab == null) ? 0 : tab.length;
-//            }
-//            else
-//                mc = expectedModCount;
-//            if (tab != null && tab.length >= hi &&
-//                (i = index) >= 0 && (i < (index = hi) || current != null)) {
-//                Node<K,V> p = current;
-//                current = null;
-//                do {
-//                    if (p == null)
-//                        p = tab[i++];
-//                    else {
-//                        action.accept(p.key);
-//                        p = p.next;
-//                    }
-//                } while (p != null || i < hi);
-//                if (m.modCount != mc)
-//                    throw new ConcurrentModificationException();
-//            }
+            int i, hi, mc;
+            if (action == null)
+                throw new NullPointerException();
+            ArrayBinHashMap<K,V> m = map;
+            Object[] tab = m.table;
+            if ((hi = fence) < 0) {
+                mc = expectedModCount = m.modCount;
+                hi = fence = (tab == null) ? 0 : tab.length;
+            }
+            else
+                mc = expectedModCount;
+            if (tab != null && tab.length >= hi &&
+                (i = index) >= 0 && (i < (index = hi) || currentBin != null)) {
+                Node<K,V>[] nodes = currentBin;
+                if (nodes != null) {
+                    currentBin = null;
+                    for (int b = binIndex; b < nodes.length && nodes[b] != null; b++)
+                        action.accept(nodes[b].key);
+                }
+                for (; i < hi; i++) {
+                    Object binObj;
+                    if ((binObj = tab[i]) == null)
+                        continue;
+                    if (binObj.getClass() == NodeRef.class) {
+                        action.accept(((NodeRef<K,V>) binObj).node.key);
+                    } else {
+                        nodes = binNodes(binObj);
+                        for (int b = 0; b < nodes.length && nodes[b] != null; b++)
+                            action.accept(nodes[b].key);
+                    }
+                }
+                if (m.modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
         }
 
         public boolean tryAdvance(Consumer<? super K> action) {
-            throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if jmh get/put is promising
-//            int hi;
-//            if (action == null)
-//                throw new NullPointerException();
-//            Node<K,V>[] tab = map.table;
-//            if (tab != null && tab.length >= (hi = getFence()) && index >= 0) {
-//                while (current != null || index < hi) {
-//                    if (current == null)
-//                        current = tab[index++];
-//                    else {
-//                        K k = current.key;
-//                        current = current.next;
-//                        action.accept(k);
-//                        if (map.modCount != expectedModCount)
-//                            throw new ConcurrentModificationException();
-//                        return true;
-//                    }
-//                }
-//            }
-//            return false;
+            int hi;
+            if (action == null)
+                throw new NullPointerException();
+            Object[] tab = map.table;
+            if (tab != null && tab.length >= (hi = getFence()) && index >= 0) {
+                Node<K,V> e = advanceNode(tab, hi);
+                if (e != null) {
+                    action.accept(e.key);
+                    if (map.modCount != expectedModCount)
+                        throw new ConcurrentModificationException();
+                    return true;
+                }
+            }
+            return false;
         }
 
         public int characteristics() {
@@ -1907,64 +2511,65 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
         }
 
         public ValueSpliterator<K,V> trySplit() {
-            throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if put & get jmh tests have promising results
-//            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
-//            return (lo >= mid || current != null) ? null :
-//                new ValueSpliterator<>(map, lo, index = mid, est >>>= 1,
-//                                          expectedModCount);
+            int hi = getFence(), lo = index, mid = balancedMid(lo, hi);
+            return (lo >= mid || currentBin != null) ? null :
+                new ValueSpliterator<>(map, lo, index = mid, est >>>= 1,
+                                       expectedModCount);
         }
 
+        @SuppressWarnings("unchecked")
         public void forEachRemaining(Consumer<? super V> action) {
-            throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if jmh get/put is promising
-//            int i, hi, mc;
-//            if (action == null)
-//                throw new NullPointerException();
-//            ArrayBucketHashMap<K,V> m = map;
-//            Node<K,V>[] tab = m.table;
-//            if ((hi = fence) < 0) {
-//                mc = expectedModCount = m.modCount;
-//                hi = fence = (tab == null) ? 0 : tab.length;
-//            }
-//            else
-//                mc = expectedModCount;
-//            if (tab != null && tab.length >= hi &&
-//                (i = index) >= 0 && (i < (index = hi) || current != null)) {
-//                Node<K,V> p = current;
-//                current = null;
-//                do {
-//                    if (p == null)
-//                        p = tab[i++];
-//                    else {
-//                        action.accept(p.value);
-//                        p = p.next;
-//                    }
-//                } while (p != null || i < hi);
-//                if (m.modCount != mc)
-//                    throw new ConcurrentModificationException();
-//            }
+            int i, hi, mc;
+            if (action == null)
+                throw new NullPointerException();
+            ArrayBinHashMap<K,V> m = map;
+            Object[] tab = m.table;
+            if ((hi = fence) < 0) {
+                mc = expectedModCount = m.modCount;
+                hi = fence = (tab == null) ? 0 : tab.length;
+            }
+            else
+                mc = expectedModCount;
+            if (tab != null && tab.length >= hi &&
+                (i = index) >= 0 && (i < (index = hi) || currentBin != null)) {
+                Node<K,V>[] nodes = currentBin;
+                if (nodes != null) {
+                    currentBin = null;
+                    for (int b = binIndex; b < nodes.length && nodes[b] != null; b++)
+                        action.accept(nodes[b].value);
+                }
+                for (; i < hi; i++) {
+                    Object binObj;
+                    if ((binObj = tab[i]) == null)
+                        continue;
+                    if (binObj.getClass() == NodeRef.class) {
+                        action.accept(((NodeRef<K,V>) binObj).node.value);
+                    } else {
+                        nodes = binNodes(binObj);
+                        for (int b = 0; b < nodes.length && nodes[b] != null; b++)
+                            action.accept(nodes[b].value);
+                    }
+                }
+                if (m.modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
         }
 
         public boolean tryAdvance(Consumer<? super V> action) {
-            throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if jmh get/put is promising
-//            int hi;
-//            if (action == null)
-//                throw new NullPointerException();
-//            Node<K,V>[] tab = map.table;
-//            if (tab != null && tab.length >= (hi = getFence()) && index >= 0) {
-//                while (current != null || index < hi) {
-//                    if (current == null)
-//                        current = tab[index++];
-//                    else {
-//                        V v = current.value;
-//                        current = current.next;
-//                        action.accept(v);
-//                        if (map.modCount != expectedModCount)
-//                            throw new ConcurrentModificationException();
-//                        return true;
-//                    }
-//                }
-//            }
-//            return false;
+            int hi;
+            if (action == null)
+                throw new NullPointerException();
+            Object[] tab = map.table;
+            if (tab != null && tab.length >= (hi = getFence()) && index >= 0) {
+                Node<K,V> e = advanceNode(tab, hi);
+                if (e != null) {
+                    action.accept(e.value);
+                    if (map.modCount != expectedModCount)
+                        throw new ConcurrentModificationException();
+                    return true;
+                }
+            }
+            return false;
         }
 
         public int characteristics() {
@@ -1981,64 +2586,65 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
         }
 
         public EntrySpliterator<K,V> trySplit() {
-            throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if put & get jmh tests have promising results
-//            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
-//            return (lo >= mid || current != null) ? null :
-//                new EntrySpliterator<>(map, lo, index = mid, est >>>= 1,
-//                                          expectedModCount);
+            int hi = getFence(), lo = index, mid = balancedMid(lo, hi);
+            return (lo >= mid || currentBin != null) ? null :
+                new EntrySpliterator<>(map, lo, index = mid, est >>>= 1,
+                                       expectedModCount);
         }
 
+        @SuppressWarnings("unchecked")
         public void forEachRemaining(Consumer<? super Entry<K,V>> action) {
-            throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if jmh get/put is promising
-//            int i, hi, mc;
-//            if (action == null)
-//                throw new NullPointerException();
-//            ArrayBucketHashMap<K,V> m = map;
-//            Node<K,V>[] tab = m.table;
-//            if ((hi = fence) < 0) {
-//                mc = expectedModCount = m.modCount;
-//                hi = fence = (tab == null) ? 0 : tab.length;
-//            }
-//            else
-//                mc = expectedModCount;
-//            if (tab != null && tab.length >= hi &&
-//                (i = index) >= 0 && (i < (index = hi) || current != null)) {
-//                Node<K,V> p = current;
-//                current = null;
-//                do {
-//                    if (p == null)
-//                        p = tab[i++];
-//                    else {
-//                        action.accept(p);
-//                        p = p.next;
-//                    }
-//                } while (p != null || i < hi);
-//                if (m.modCount != mc)
-//                    throw new ConcurrentModificationException();
-//            }
+            int i, hi, mc;
+            if (action == null)
+                throw new NullPointerException();
+            ArrayBinHashMap<K,V> m = map;
+            Object[] tab = m.table;
+            if ((hi = fence) < 0) {
+                mc = expectedModCount = m.modCount;
+                hi = fence = (tab == null) ? 0 : tab.length;
+            }
+            else
+                mc = expectedModCount;
+            if (tab != null && tab.length >= hi &&
+                (i = index) >= 0 && (i < (index = hi) || currentBin != null)) {
+                Node<K,V>[] nodes = currentBin;
+                if (nodes != null) {
+                    currentBin = null;
+                    for (int b = binIndex; b < nodes.length && nodes[b] != null; b++)
+                        action.accept(nodes[b]);
+                }
+                for (; i < hi; i++) {
+                    Object binObj;
+                    if ((binObj = tab[i]) == null)
+                        continue;
+                    if (binObj.getClass() == NodeRef.class) {
+                        action.accept(((NodeRef<K,V>) binObj).node);
+                    } else {
+                        nodes = binNodes(binObj);
+                        for (int b = 0; b < nodes.length && nodes[b] != null; b++)
+                            action.accept(nodes[b]);
+                    }
+                }
+                if (m.modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
         }
 
         public boolean tryAdvance(Consumer<? super Entry<K,V>> action) {
-            throw new UnsupportedOperationException("Bad Thing!");// TODO uncomment if jmh get/put is promising
-//            int hi;
-//            if (action == null)
-//                throw new NullPointerException();
-//            Node<K,V>[] tab = map.table;
-//            if (tab != null && tab.length >= (hi = getFence()) && index >= 0) {
-//                while (current != null || index < hi) {
-//                    if (current == null)
-//                        current = tab[index++];
-//                    else {
-//                        Node<K,V> e = current;
-//                        current = current.next;
-//                        action.accept(e);
-//                        if (map.modCount != expectedModCount)
-//                            throw new ConcurrentModificationException();
-//                        return true;
-//                    }
-//                }
-//            }
-//            return false;
+            int hi;
+            if (action == null)
+                throw new NullPointerException();
+            Object[] tab = map.table;
+            if (tab != null && tab.length >= (hi = getFence()) && index >= 0) {
+                Node<K,V> e = advanceNode(tab, hi);
+                if (e != null) {
+                    action.accept(e);
+                    if (map.modCount != expectedModCount)
+                        throw new ConcurrentModificationException();
+                    return true;
+                }
+            }
+            return false;
         }
 
         public int characteristics() {
@@ -2744,91 +3350,55 @@ public class ArrayBinHashMap<K,V> extends AbstractMap<K,V>
         return new ArrayBinHashMap<>(calculateHashMapCpyCapacity(numMappings));
     }
 
-    public void dumpStats(PrintStream out) {
-        out.printf("%s instance: size: %d%n", this.getClass().getName(), this.size());
-        long size = heapSize();
-        long bytesPer = size / this.size();
-        out.printf("    heap size: %d(bytes), avg bytes per entry: %d, table len: %d%n",
-                size, bytesPer, table.length);
-        long[] types = entryTypes();
-        out.printf("    values: %d, empty: %d%n", types[0], types[1]);
-        int[] rehashes = entryRehashes();
-        out.printf("    hash collision histogram: max: %d, %s%n",
-                rehashes.length - 1, Arrays.toString(rehashes));
-    }
-
-    private long[] entryTypes() {
-        long[] counts = new long[3];
-        for (Object te : table) {
-            counts[te!=null ? 1 : 0]++; // TODO changed but not verified
-        }
-        return counts;
+    public long heapBytes() {
+        return (table == null) ? 0L : heapSize();
     }
 
-    // Returns a histogram array of the number of rehashs needed to find each key.
     @SuppressWarnings("rawtypes")
-    private int[] entryRehashes() {
-        int[] counts = new int[table.length + 1];
+    public int[] binLengthHistogram() {
         Object[] tab = table;
+        if (tab == null)
+            return new int[0];
+        int[] counts = new int[tab.length + 1];
         for (Object bin : tab) {
-            if (bin != null) { // TODO changed but not verified
-                if (bin.getClass() == NodeRef.class) {
-                    counts[1]++;
-                } else {
-                    counts[((NodeRef[]) bin).length]++;
-                }
+            if (bin == null) {
+                counts[0]++;
+            } else if (bin.getClass() == NodeRef.class) {
+                counts[1]++;
+            } else {
+                counts[Math.min(binCount(binNodes(bin)), tab.length)]++;
             }
         }
-
-        int i;
-        for (i = counts.length - 1; i >= 0 && counts[i] == 0; i--) {
-        }
-        counts = Arrays.copyOf(counts, i + 1);
-        return counts;
+        return MapStats.trimHistogram(counts);
     }
 
     private long heapSize() {
-        long acc = objectSizeMaybe(this);
-        acc += objectSizeMaybe(table);
+        long acc = HeapLayout.sizeOf(this);
+        acc += HeapLayout.sizeOf(table);
 
         Object[] tab = table;
         for (Object bin : tab) {
-            // TODO doesn't handle TreeNodes
             if (bin != null)
                 if (bin.getClass() == NodeRef.class) {
-                    acc += objectSizeMaybe(bin);
+                    acc += HeapLayout.sizeOf(bin);
+                    acc += HeapLayout.sizeOf(((NodeRef<K,V>)bin).node);
                 } else {
-                    for(Node<K,V> node : (Node<K,V>[])bin) {
-                        acc += objectSizeMaybe(node);
+                    if (bin.getClass() == BTreeBin.class) {
+                        @SuppressWarnings("unchecked")
+                        BTreeBin<K,V> tree = (BTreeBin<K,V>)bin;
+                        acc += tree.heapSize();
+                    } else {
+                        acc += HeapLayout.sizeOf(bin);
+                    }
+                    for(Node<K,V> node : ArrayBinHashMap.<K,V>binNodes(bin)) {
+                        if (node != null)
+                            acc += HeapLayout.sizeOf(node);
                     }
                 }
         }
         return acc;
     }
 
-    private static boolean hasObjectSize = false;
-    private static Method mObjectSize = getObjectSizeMethod();
-
-    private static Method getObjectSizeMethod() {
-        try {
-            Method m = Objects.class.getDeclaredMethod("getObjectSize", Object.class);
-            hasObjectSize = true;
-            return m;
-        } catch (NoSuchMethodException nsme) {
-            return null;
-        }
-    }
-
-    private long objectSizeMaybe(Object o) {
-        try {
-            return (mObjectSize != null)
-                    ? (long)mObjectSize.invoke(null, o)
-                    : 0L;
-        } catch (IllegalAccessException | java.lang.reflect.InvocationTargetException e) {
-            return 0L;
-        }
-    }
-
     private static class NodeRef<K,V> {
         Node<K,V> node; // TODO not sure if this is the best way to do this.  For Value Objects it is possible to have a reference, so maybe SingleNode would just be a reference to Node, but I'm not sure that's what "reference" means for value Objects
 
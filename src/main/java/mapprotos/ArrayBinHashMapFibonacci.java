@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+/**
+ * A {@link ArrayBinHashMap} that indexes bins by Fibonacci hashing, the high bits
+ * of {@code hashCode() * 2^32 / phi}, instead of the low bits of
+ * {@code h ^ (h >>> 16)}.  Selectable by class name as a benchmark
+ * {@code mapType}.
+ */
+public class ArrayBinHashMapFibonacci<K,V> extends ArrayBinHashMap<K,V> {
+
+    public ArrayBinHashMapFibonacci(int initialCapacity, boolean seededHash) {
+        super(initialCapacity, DEFAULT_LOAD_FACTOR, seededHash, true);
+    }
+
+    public ArrayBinHashMapFibonacci(int initialCapacity) {
+        this(initialCapacity, false);
+    }
+}
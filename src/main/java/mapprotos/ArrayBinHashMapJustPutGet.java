@@ -26,12 +26,11 @@
 package mapprotos;
 
 import java.io.*;
-import java.lang.reflect.Method;
 import java.util.*;
 import java.util.function.Consumer;
 
 public class ArrayBinHashMapJustPutGet<K,V> extends AbstractMap<K,V> // TODO maybe rename to have maybe Iterate
-    implements Map<K,V>, Cloneable, Serializable {
+    implements Map<K,V>, Cloneable, Serializable, MapStats {
 
     /**
      * The default initial capacity - MUST be a power of two.
@@ -114,9 +113,12 @@ public class ArrayBinHashMapJustPutGet<K,V> extends AbstractMap<K,V> // TODO may
      * to incorporate impact of the highest bits that would otherwise
      * never be used in index calculations because of table bounds.
      */
-    static final int hash(Object key) {
+    final int hash(Object key) {
         int h;
-        return (key == null) ? 0 : (h = key.hashCode()) ^ (h >>> 16);
+        if (key == null)
+            return 0;
+        h = key.hashCode();
+        return (hashSeed == 0) ? h ^ (h >>> 16) : SeededHash.mix(h, hashSeed);
     }
 
     /**
@@ -175,6 +177,11 @@ public class ArrayBinHashMapJustPutGet<K,V> extends AbstractMap<K,V> // TODO may
      */
     final float loadFactor;
 
+    /**
+     * Mixed into every hash if non-zero, see SeededHash.
+     */
+    final int hashSeed;
+
     /* ---------------- Public operations -------------- */
 
     /**
@@ -187,10 +194,11 @@ public class ArrayBinHashMapJustPutGet<K,V> extends AbstractMap<K,V> // TODO may
      *
      * @param  initialCapacity the initial capacity
      * @param  loadFactor      the load factor
+     * @param  seededHash      whether to seed the hash, see SeededHash
      * @throws IllegalArgumentException if the initial capacity is negative
      *         or the load factor is nonpositive
      */
-    public ArrayBinHashMapJustPutGet(int initialCapacity, float loadFactor) {
+    public ArrayBinHashMapJustPutGet(int initialCapacity, float loadFactor, boolean seededHash) {
         if (initialCapacity < 0)
             throw new IllegalArgumentException("Illegal initial capacity: " +
                                                initialCapacity);
@@ -201,6 +209,24 @@ public class ArrayBinHashMapJustPutGet<K,V> extends AbstractMap<K,V> // TODO may
                                                loadFactor);
         this.loadFactor = loadFactor;
         this.threshold = tableSizeFor(initialCapacity);
+        this.hashSeed = seededHash ? SeededHash.newSeed() : 0;
+    }
+
+    public ArrayBinHashMapJustPutGet(int initialCapacity, float loadFactor) {
+        this(initialCapacity, loadFactor, false);
+    }
+
+    /**
+     * Constructs an empty {@code HashMap} with the specified initial
+     * capacity and the default load factor (0.75), whose hashes are mixed
+     * with a random per-map seed if seededHash, see {@link SeededHash}.
+     *
+     * @param  initialCapacity the initial capacity.
+     * @param  seededHash whether to seed the hash against hash flooding
+     * @throws IllegalArgumentException if the initial capacity is negative.
+     */
+    public ArrayBinHashMapJustPutGet(int initialCapacity, boolean seededHash) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR, seededHash);
     }
 
     /**
@@ -246,10 +272,11 @@ public class ArrayBinHashMapJustPutGet<K,V> extends AbstractMap<K,V> // TODO may
         if ((tab = table) != null && (n = tab.length) > 0 &&
             (nodes = tab[(n - 1) & (hash = hash(key))]) != null) {
           final int length = nodes.length;
-            for (int b = 0; b < length; b++) {
-                if (nodes[b].hash == hash &&
-                    ((k = nodes[b].key) == key || (key != null && key.equals(k))))
-                    return nodes[b].value;
+            Node<K,V> node;
+            for (int b = 0; b < length && (node = nodes[b]) != null; b++) {
+                if (node.hash == hash &&
+                    ((k = node.key) == key || (key != null && key.equals(k))))
+                    return node.value;
             }
         }
         return null;
@@ -287,44 +314,47 @@ public class ArrayBinHashMapJustPutGet<K,V> extends AbstractMap<K,V> // TODO may
         int n;
         if ((tab = table) == null || (n = tab.length) == 0)
             n = (tab = resize()).length;
-        for (;;) {
-            int i;
-            Node<K, V>[] nodes;
-            if ((nodes = tab[i = (n - 1) & hash]) == null) {
-                nodes = tab[i] = new Node[1];
-                nodes[0] = new Node(hash, key, value);
+        int i;
+        Node<K, V>[] nodes;
+        if ((nodes = tab[i = (n - 1) & hash]) == null) {
+            @SuppressWarnings("unchecked")
+            Node<K,V>[] bin = (Node<K,V>[]) new Node<?,?>[]{newNode(hash, key, value)};
+            tab[i] = bin;
+            ++modCount;
+            ++size;
+            return null;
+        }
+        Object k;
+        int binLen = nodes.length;
+        int b = 0;
+        for (; b < binLen && nodes[b] != null; ++b) {
+            if (nodes[b].hash == hash &&
+                ((k = nodes[b].key) == key || (key != null && key.equals(k)))) {
                 ++modCount;
-                ++size;
-                return null;
+                V oldValue = nodes[b].value;
+                if (!onlyIfAbsent || oldValue == null)
+                    nodes[b] = newNode(hash, key, value);
+                return oldValue;
             }
-            Object k;
+        }
+        // Key not present
+        if (b < binLen) {
+            nodes[b] = newNode(hash, key, value);
+        } else {
+            // Grow geometrically so a run of inserts into one bin copies it O(log n) times, not once per insert.
             @SuppressWarnings("unchecked")
-            int binLen = nodes.length;
-            for (int b = 0; b < binLen; ++b) {
-                if (nodes[b].hash == hash &&
-                    ((k = nodes[b].key) == key || (key != null && key.equals(k)))) {
-                    ++modCount;
-                    V oldValue = nodes[b].value;
-                    if (!onlyIfAbsent || oldValue == null)
-                        nodes[b] = newNode(hash, key, value);
-                    return oldValue;
-                }
-            }
-            // Key not present
-            Node<K,V>[] newBin = new Node[binLen+1];
-            System.arraycopy(nodes, 0, newBin, 0, binLen); //
+            Node<K,V>[] newBin = new Node[binLen << 1];
+            System.arraycopy(nodes, 0, newBin, 0, binLen);
             newBin[binLen] = newNode(hash, key, value);
             tab[i] = newBin;
+        }
 
-            ++modCount;
-            if (++size > threshold) {
-                tab = resize();
-                // Since Entrys can't simply be moved (as they can for HashMap), it makes sense to only add the new Entry after resize.
-                // This is like IdentityHashMap.
-                continue;
-            }
-            return null;
+        ++modCount;
+        if (++size > threshold) {
+            // The new node is already in its bin, so resize() moves it along with everything else.
+            resize();
         }
+        return null;
     }
 
     /**
@@ -371,7 +401,35 @@ public class ArrayBinHashMapJustPutGet<K,V> extends AbstractMap<K,V> // TODO may
                 int movingTabIndex = ot + oldCap;
                 if ((oldBin = oldTab[ot]) != null) {
                     oldTab[ot] = null;
-
+                    int oldBinLen = binCount(oldBin);
+                    int numStaying = 0;
+                    for (int i = 0; i < oldBinLen; i++) {
+                        if ((oldBin[i].hash & oldCap) == 0)
+                            ++numStaying;
+                    }
+                    int numMoving = oldBinLen - numStaying;
+                    if (numMoving == 0) {
+                        newTab[ot] = oldBin;
+                    } else if (numStaying == 0) {
+                        newTab[movingTabIndex] = oldBin;
+                    } else {
+                        // The larger half is packed to the front of the old bin; only the smaller one is copied.
+                        boolean stayingKeepsBin = numStaying >= numMoving;
+                        @SuppressWarnings("unchecked")
+                        Node<K,V>[] newBin = new Node[stayingKeepsBin ? numMoving : numStaying];
+                        int keptBinIndex = 0, newBinIndex = 0;
+                        for (int i = 0; i < oldBinLen; i++) {
+                            Node<K,V> node = oldBin[i];
+                            if (((node.hash & oldCap) == 0) == stayingKeepsBin) {
+                                oldBin[keptBinIndex++] = node;
+                            } else {
+                                newBin[newBinIndex++] = node;
+                            }
+                        }
+                        Arrays.fill(oldBin, keptBinIndex, oldBinLen, null);
+                        newTab[ot] = stayingKeepsBin ? oldBin : newBin;
+                        newTab[movingTabIndex] = stayingKeepsBin ? newBin : oldBin;
+                    }
                 }
             }
         }
@@ -380,13 +438,16 @@ public class ArrayBinHashMapJustPutGet<K,V> extends AbstractMap<K,V> // TODO may
     }
 
 
+    /**
+     * Returns the number of live nodes in a bin.  Live nodes are packed at
+     * the front; any slots after them are null spare capacity.
+     */
     @SuppressWarnings("rawtypes")
-    private static <K, V> void rehashArrayBinOneOfManyHasDifferentIndex(int oldBinLen, Node[] oldArrayBin, int oldBinIndexForOne, int newTabIndexForOne, int newTabIndexForMany, Object[] newTab) {
-        Node[] newManyArrayBin = new Node[oldBinLen-1];
-        newTab[newTabIndexForOne] = new NodeRef(oldArrayBin[oldBinIndexForOne]);
-        System.arraycopy(oldArrayBin, 0, newManyArrayBin, 0, oldBinIndexForOne);
-        System.arraycopy(oldArrayBin, oldBinIndexForOne+1, newManyArrayBin, oldBinIndexForOne, oldBinLen-oldBinIndexForOne-1);
-        newTab[newTabIndexForMany] = newManyArrayBin;
+    static int binCount(Node[] nodes) {
+        int b = 0;
+        while (b < nodes.length && nodes[b] != null)
+            b++;
+        return b;
     }
 
     /**
@@ -1735,82 +1796,39 @@ public class ArrayBinHashMapJustPutGet<K,V> extends AbstractMap<K,V> // TODO may
         return new ArrayBinHashMapJustPutGet<>(calculateHashMapCpyCapacity(numMappings));
     }
 
-    public void dumpStats(PrintStream out) {
-        out.printf("%s instance: size: %d%n", this.getClass().getName(), this.size());
-        long size = heapSize();
-        long bytesPer = size / this.size();
-        out.printf("    heap size: %d(bytes), avg bytes per entry: %d, table len: %d%n",
-                size, bytesPer, table.length);
-        long[] types = entryTypes();
-        out.printf("    values: %d, empty: %d%n", types[1], types[0]);
-        int[] rehashes = entryRehashes();
-        out.printf("    hash collision histogram: max: %d, %s%n",
-                rehashes.length - 1, Arrays.toString(rehashes));
-    }
-
-    private long[] entryTypes() {
-        long[] counts = new long[3];
-        for (Object te : table) {
-            counts[te!=null ? 1 : 0]++; // TODO changed but not verified
-        }
-        return counts;
+    public long heapBytes() {
+        return (table == null) ? 0L : heapSize();
     }
 
-    // Returns a histogram array of the number of rehashs needed to find each key.
-    private int[] entryRehashes() {
-        int[] counts = new int[size];
+    public int[] binLengthHistogram() {
         Node<K,V>[][] tab = table;
+        if (tab == null)
+            return new int[0];
+        int[] counts = new int[tab.length + 1];
         for (Node<K,V>[] bin : tab) {
-            if (bin == null) { // TODO changed but not verified
-                counts[0]++;
-            } else {
-                counts[bin.length]++;
-            }
+            counts[bin == null ? 0 : Math.min(binCount(bin), tab.length)]++;
         }
-
-        int i;
-        for (i = counts.length - 1; i >= 0 && counts[i] == 0; i--) {
-        }
-        counts = Arrays.copyOf(counts, i + 1);
-        return counts;
+        return MapStats.trimHistogram(counts);
     }
 
     private long heapSize() {
-        long acc = objectSizeMaybe(this);
-        acc += objectSizeMaybe(table);
+        long acc = HeapLayout.sizeOf(this);
+        acc += HeapLayout.sizeOf(table);
 
         Node<K,V>[][] tab = table;
         for (Node<K,V>[] bin : tab) {
             // TODO doesn't handle TreeNodes
-            if (bin != null)
+            if (bin != null) {
+                acc += HeapLayout.sizeOf(bin);
                 for(Node<K,V> node : bin) {
-                    acc += objectSizeMaybe(node);
+                    if (node != null)
+                        acc += HeapLayout.sizeOf(node);
                 }
+            }
         }
         return acc;
     }
 
-    private static Method mObjectSize = getObjectSizeMethod();
-
-    private static Method getObjectSizeMethod() {
-        try {
-            Method m = Objects.class.getDeclaredMethod("getObjectSize", Object.class);
-            return m;
-        } catch (NoSuchMethodException nsme) {
-            return null;
-        }
-    }
-
-    private long objectSizeMaybe(Object o) {
-        try {
-            return (mObjectSize != null)
-                    ? (long)mObjectSize.invoke(null, o)
-                    : 0L;
-        } catch (IllegalAccessException | java.lang.reflect.InvocationTargetException e) {
-            return 0L;
-        }
-    }
-
     private static class NodeRef<K,V> {
         Node<K,V> node; // TODO not sure if this is the best way to do this.  For Value Objects it is possible to have a reference, so maybe SingleNode would just be a reference to Node, but I'm not sure that's what "reference" means for value Objects
 
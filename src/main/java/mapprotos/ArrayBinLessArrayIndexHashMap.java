@@ -26,7 +26,6 @@
 package mapprotos;
 
 import java.io.*;
-import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.*;
@@ -2787,47 +2786,26 @@ public class ArrayBinLessArrayIndexHashMap<K,V> extends AbstractMap<K,V>
     }
 
     private long heapSize() {
-        long acc = objectSizeMaybe(this);
-        acc += objectSizeMaybe(table);
+        long acc = HeapLayout.sizeOf(this);
+        acc += HeapLayout.sizeOf(table);
 
         Object[] tab = table;
         for (Object bin : tab) {
             // TODO doesn't handle TreeNodes
             if (bin != null)
                 if (bin.getClass() == NodeRef.class) {
-                    acc += objectSizeMaybe(bin);
+                    acc += HeapLayout.sizeOf(bin);
+                    acc += HeapLayout.sizeOf(((NodeRef<K,V>)bin).node);
                 } else {
+                    acc += HeapLayout.sizeOf(bin);
                     for(Node<K,V> node : (Node<K,V>[])bin) {
-                        acc += objectSizeMaybe(node);
+                        acc += HeapLayout.sizeOf(node);
                     }
                 }
         }
         return acc;
     }
 
-    private static boolean hasObjectSize = false;
-    private static Method mObjectSize = getObjectSizeMethod();
-
-    private static Method getObjectSizeMethod() {
-        try {
-            Method m = Objects.class.getDeclaredMethod("getObjectSize", Object.class);
-            hasObjectSize = true;
-            return m;
-        } catch (NoSuchMethodException nsme) {
-            return null;
-        }
-    }
-
-    private long objectSizeMaybe(Object o) {
-        try {
-            return (mObjectSize != null)
-                    ? (long)mObjectSize.invoke(null, o)
-                    : 0L;
-        } catch (IllegalAccessException | java.lang.reflect.InvocationTargetException e) {
-            return 0L;
-        }
-    }
-
     private static class NodeRef<K,V> {
         Node<K,V> node; // TODO not sure if this is the best way to do this.  For Value Objects it is possible to have a reference, so maybe SingleNode would just be a reference to Node, but I'm not sure that's what "reference" means for value Objects
 
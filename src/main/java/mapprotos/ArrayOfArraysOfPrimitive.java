@@ -26,8 +26,6 @@
 package mapprotos;
 
 import java.io.PrintStream;
-import java.lang.reflect.Method;
-import java.util.Objects;
 //import jdk.internal.access.SharedSecrets;
 
 public class ArrayOfArraysOfPrimitive implements ArrayOfNodeLists {
@@ -98,36 +96,15 @@ public class ArrayOfArraysOfPrimitive implements ArrayOfNodeLists {
     }
 
     private long heapSize() {
-        long acc = objectSizeMaybe(this);
-        acc += objectSizeMaybe(table);
+        long acc = HeapLayout.sizeOf(this);
+        acc += HeapLayout.sizeOf(table);
 
         Object[] tab = table;
         for (Object bin : tab) {
             if (bin != null) {
-                acc += objectSizeMaybe(bin);
+                acc += HeapLayout.sizeOf(bin);
             }
         }
         return acc;
     }
-
-    private static final Method mObjectSize = getObjectSizeMethod();
-
-    private static Method getObjectSizeMethod() {
-        try {
-            Method m = Objects.class.getDeclaredMethod("getObjectSize", Object.class);
-            return m;
-        } catch (NoSuchMethodException nsme) {
-            return null;
-        }
-    }
-
-    private long objectSizeMaybe(Object o) {
-        try {
-            return (mObjectSize != null)
-                ? (long)mObjectSize.invoke(null, o)
-                : 0L;
-        } catch (IllegalAccessException | java.lang.reflect.InvocationTargetException e) {
-            return 0L;
-        }
-    }
 }
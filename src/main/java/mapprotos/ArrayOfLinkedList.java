@@ -1,8 +1,6 @@
 package mapprotos;
 
 import java.io.PrintStream;
-import java.lang.reflect.Method;
-import java.util.Objects;
 
 public class ArrayOfLinkedList implements ArrayOfNodeLists {
 
@@ -60,14 +58,14 @@ public class ArrayOfLinkedList implements ArrayOfNodeLists {
   }
 
   private SizeInfo heapSize() {
-    long acc = objectSizeMaybe(this);
-    acc += objectSizeMaybe(table);
+    long acc = HeapLayout.sizeOf(this);
+    acc += HeapLayout.sizeOf(table);
     int numNodes = 0;
 
     Node[] tab = table;
     for (Node currNode : tab) {
       while (currNode != null) {
-        acc += objectSizeMaybe(currNode);
+        acc += HeapLayout.sizeOf(currNode);
         currNode = currNode.next;
         numNodes++;
       }
@@ -75,28 +73,6 @@ public class ArrayOfLinkedList implements ArrayOfNodeLists {
     return new SizeInfo(numNodes, acc);
   }
 
-  // TODO Factor out these methods into some shared base class before sending this class.
-  private static final Method mObjectSize = getObjectSizeMethod();
-
-  private static Method getObjectSizeMethod() {
-    try {
-      Method m = Objects.class.getDeclaredMethod("getObjectSize", Object.class);
-      return m;
-    } catch (NoSuchMethodException nsme) {
-      return null;
-    }
-  }
-
-  private long objectSizeMaybe(Object o) {
-    try {
-      return (mObjectSize != null)
-          ? (long)mObjectSize.invoke(null, o)
-          : 0L;
-    } catch (IllegalAccessException | java.lang.reflect.InvocationTargetException e) {
-      return 0L;
-    }
-  }
-
   // Implement dumpStats, entryTypes, and heapSize methods if needed (similar to the original class)
 
   static class SizeInfo {
@@ -24,7 +24,6 @@ package mapprotos;
 
 import org.openjdk.jmh.annotations.*;
 
-import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Random;
@@ -87,12 +86,6 @@ public class ArrayOfNodeListsBase {
     }
 
     void TearDown(ArrayOfNodeLists nodeLists) {
-        try {
-            Method m = nodeLists.getClass().getMethod("dumpStats", java.io.PrintStream.class);
-            m.invoke(nodeLists, System.out);
-        } catch (Throwable nsme) {
-            System.out.println("Stats not available:");
-            throw new IllegalStateException(nsme);
-        }
+        MapBase.dumpStats(nodeLists);
     }
 }
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import mapprotos.ArrayBinHashMap.Node;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+
+/**
+ * A B+-tree bin for {@link ArrayBinHashMap}, used in place of a {@code Node[]}
+ * bin once it holds more than {@code TREEIFY_THRESHOLD} nodes, so that keys
+ * with colliding hashes cost O(log n) rather than a scan of the whole bin.
+ *
+ * <p>Nodes are ordered by hash, then by the name of the key's class if
+ * that class is Comparable to itself, then by compareTo within such a
+ * class.  Keys that are not Comparable and have the same hash tie.  A
+ * lookup descends to the leftmost leaf that could hold its key and scans
+ * the leaf chain through any tie, so ties cost a scan as they would in a
+ * {@code Node[]} bin.
+ *
+ * <p>A page holds up to {@code PAGE_SIZE} hashes and nodes.  Pages are
+ * searched on their {@code int[]} of hashes, which is one 64 byte cache
+ * line with compressed oops, and a node is only read when hashes are
+ * equal.  Removal does not merge pages; the map turns the bin back into
+ * a {@code Node[]} once it falls below {@code UNTREEIFY_THRESHOLD}.
+ */
+final class BTreeBin<K,V> {
+
+    /**
+     * Entries per page: 16 bytes of array header and 12 ints fill a
+     * 64 byte line.
+     */
+    static final int PAGE_SIZE = 12;
+
+    static class Page<K,V> {
+        int count;
+        final int[] hashes = new int[PAGE_SIZE];
+        // In an Inner page, nodes[i] is a lower bound of children[i]'s nodes.
+        @SuppressWarnings("unchecked")
+        final Node<K,V>[] nodes = (Node<K,V>[]) new Node[PAGE_SIZE];
+    }
+
+    static final class Leaf<K,V> extends Page<K,V> {
+        Leaf<K,V> next;
+    }
+
+    static final class Inner<K,V> extends Page<K,V> {
+        @SuppressWarnings("unchecked")
+        final Page<K,V>[] children = (Page<K,V>[]) new Page[PAGE_SIZE];
+    }
+
+    private static final ClassValue<Boolean> SELF_COMPARABLE = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> c) {
+            if (c == String.class)
+                return true;
+            if (!Comparable.class.isAssignableFrom(c))
+                return false;
+            for (Type t : c.getGenericInterfaces()) {
+                Type[] as;
+                if (t instanceof ParameterizedType p && p.getRawType() == Comparable.class &&
+                    (as = p.getActualTypeArguments()).length == 1 && as[0] == c)
+                    return true;
+            }
+            return false;
+        }
+    };
+
+    Page<K,V> root;
+    final Leaf<K,V> first;  // leftmost leaf, splits only add leaves to its right
+    int size;
+
+    private BTreeBin() {
+        root = first = new Leaf<>();
+    }
+
+    /**
+     * Returns a tree of the first count nodes of a {@code Node[]} bin.
+     */
+    static <K,V> BTreeBin<K,V> of(Node<K,V>[] nodes, int count) {
+        BTreeBin<K,V> tree = new BTreeBin<>();
+        for (int b = 0; b < count; b++)
+            tree.put(nodes[b], false);
+        return tree;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the class of key if it is Comparable to itself, else null.
+     */
+    static Class<?> comparableClass(Object key) {
+        Class<?> c;
+        return (key != null && SELF_COMPARABLE.get(c = key.getClass())) ? c : null;
+    }
+
+    /**
+     * Compares (hash, key) to (h, node's key).  kc is key's comparable class.
+     */
+    @SuppressWarnings({"rawtypes","unchecked"}) // for cast to Comparable
+    static int compare(int hash, Object key, Class<?> kc, int h, Node<?,?> node) {
+        if (hash != h)
+            return (hash < h) ? -1 : 1;
+        Object k = node.key;
+        Class<?> c = comparableClass(k);
+        if (kc != c)
+            return (kc == null) ? -1 : (c == null) ? 1 : kc.getName().compareTo(c.getName());
+        return (kc == null) ? 0 : Integer.signum(((Comparable) key).compareTo(k));
+    }
+
+    /**
+     * Returns the first index at or after from in p whose node is not
+     * less than (hash, key), or p.count if there is none.
+     */
+    private static <K,V> int lowerBound(Page<K,V> p, int from, int hash, Object key, Class<?> kc) {
+        int lo = from, hi = p.count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(hash, key, kc, p.hashes[mid], p.nodes[mid]) > 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the leftmost leaf that could hold (hash, key).
+     */
+    private Leaf<K,V> leafFor(int hash, Object key, Class<?> kc) {
+        Page<K,V> p = root;
+        while (p instanceof Inner<K,V> in)
+            p = in.children[lowerBound(in, 1, hash, key, kc) - 1];
+        return (Leaf<K,V>) p;
+    }
+
+    Node<K,V> find(int hash, Object key) {
+        Class<?> kc = comparableClass(key);
+        Leaf<K,V> leaf = leafFor(hash, key, kc);
+        for (int j = lowerBound(leaf, 0, hash, key, kc); leaf != null; leaf = leaf.next, j = 0) {
+            for (; j < leaf.count; j++) {
+                Node<K,V> e = leaf.nodes[j];
+                if (compare(hash, key, kc, leaf.hashes[j], e) < 0)
+                    return null;
+                Object k;
+                if ((k = e.key) == key || (key != null && key.equals(k)))
+                    return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the node with node's key, replacing it with node unless
+     * onlyIfAbsent and its value is non-null, or adds node and returns
+     * null if there is none.
+     */
+    Node<K,V> put(Node<K,V> node, boolean onlyIfAbsent) {
+        int hash = node.hash;
+        K key = node.key;
+        Class<?> kc = comparableClass(key);
+        Leaf<K,V> leaf = leafFor(hash, key, kc);
+        scan:
+        for (int j = lowerBound(leaf, 0, hash, key, kc); leaf != null; leaf = leaf.next, j = 0) {
+            for (; j < leaf.count; j++) {
+                Node<K,V> e = leaf.nodes[j];
+                if (compare(hash, key, kc, leaf.hashes[j], e) < 0)
+                    break scan;
+                Object k;
+                if ((k = e.key) == key || (key != null && key.equals(k))) {
+                    if (!onlyIfAbsent || e.value == null)
+                        leaf.nodes[j] = node;
+                    return e;
+                }
+            }
+        }
+        Page<K,V> right = insert(root, node, kc);
+        if (right != null) {
+            Inner<K,V> newRoot = new Inner<>();
+            newRoot.hashes[0] = root.hashes[0];
+            newRoot.nodes[0] = root.nodes[0];
+            newRoot.children[0] = root;
+            newRoot.hashes[1] = right.hashes[0];
+            newRoot.nodes[1] = right.nodes[0];
+            newRoot.children[1] = right;
+            newRoot.count = 2;
+            root = newRoot;
+        }
+        ++size;
+        return null;
+    }
+
+    /**
+     * Adds node, known to be absent, to the subtree at p.  Returns p's new
+     * right sibling if p had to split, else null.
+     */
+    private Page<K,V> insert(Page<K,V> p, Node<K,V> node, Class<?> kc) {
+        if (p instanceof Inner<K,V> in) {
+            int i = lowerBound(in, 1, node.hash, node.key, kc);
+            Page<K,V> right = insert(in.children[i - 1], node, kc);
+            return (right == null) ? null : insertAt(in, i, right.hashes[0], right.nodes[0], right);
+        }
+        return insertAt(p, lowerBound(p, 0, node.hash, node.key, kc), node.hash, node, null);
+    }
+
+    /**
+     * Inserts an entry, and for an Inner page its child, at index i of p,
+     * splitting p in half first if it is full.  Returns the new right half
+     * if p split, else null.
+     */
+    private static <K,V> Page<K,V> insertAt(Page<K,V> p, int i, int hash, Node<K,V> node, Page<K,V> child) {
+        Inner<K,V> in = (child == null) ? null : (Inner<K,V>) p;
+        if (p.count < PAGE_SIZE) {
+            int move = p.count - i;
+            System.arraycopy(p.hashes, i, p.hashes, i + 1, move);
+            System.arraycopy(p.nodes, i, p.nodes, i + 1, move);
+            p.hashes[i] = hash;
+            p.nodes[i] = node;
+            if (in != null) {
+                System.arraycopy(in.children, i, in.children, i + 1, move);
+                in.children[i] = child;
+            }
+            p.count++;
+            return null;
+        }
+        final int half = PAGE_SIZE / 2;
+        final int move = PAGE_SIZE - half;
+        Page<K,V> right;
+        if (in != null) {
+            Inner<K,V> r = new Inner<>();
+            System.arraycopy(in.children, half, r.children, 0, move);
+            Arrays.fill(in.children, half, PAGE_SIZE, null);
+            right = r;
+        } else {
+            Leaf<K,V> leaf = (Leaf<K,V>) p, r = new Leaf<>();
+            r.next = leaf.next;
+            leaf.next = r;
+            right = r;
+        }
+        System.arraycopy(p.hashes, half, right.hashes, 0, move);
+        System.arraycopy(p.nodes, half, right.nodes, 0, move);
+        Arrays.fill(p.nodes, half, PAGE_SIZE, null);
+        p.count = half;
+        right.count = move;
+        // Keep right's first node, its lower bound, by inserting at the boundary on the left.
+        if (i <= half)
+            insertAt(p, i, hash, node, child);
+        else
+            insertAt(right, i - half, hash, node, child);
+        return right;
+    }
+
+    /**
+     * Removes and returns the node for key, if its value matches when
+     * matchValue, else returns null.
+     */
+    Node<K,V> remove(int hash, Object key, Object value, boolean matchValue) {
+        Class<?> kc = comparableClass(key);
+        Leaf<K,V> leaf = leafFor(hash, key, kc);
+        for (int j = lowerBound(leaf, 0, hash, key, kc); leaf != null; leaf = leaf.next, j = 0) {
+            for (; j < leaf.count; j++) {
+                Node<K,V> e = leaf.nodes[j];
+                if (compare(hash, key, kc, leaf.hashes[j], e) < 0)
+                    return null;
+                Object k; V v;
+                if ((k = e.key) == key || (key != null && key.equals(k))) {
+                    if (matchValue && (v = e.value) != value &&
+                        (value == null || !value.equals(v)))
+                        return null;
+                    int move = leaf.count - j - 1;
+                    System.arraycopy(leaf.hashes, j + 1, leaf.hashes, j, move);
+                    System.arraycopy(leaf.nodes, j + 1, leaf.nodes, j, move);
+                    leaf.nodes[--leaf.count] = null;
+                    --size;
+                    return e;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the nodes in tree order, in an array of exactly size().
+     */
+    @SuppressWarnings("unchecked")
+    Node<K,V>[] toArray() {
+        Node<K,V>[] a = (Node<K,V>[]) new Node[size];
+        int n = 0;
+        for (Leaf<K,V> leaf = first; leaf != null; leaf = leaf.next) {
+            System.arraycopy(leaf.nodes, 0, a, n, leaf.count);
+            n += leaf.count;
+        }
+        return a;
+    }
+
+    /**
+     * Returns the bytes of heap held by the pages, not counting the nodes.
+     */
+    long heapSize() {
+        return HeapLayout.sizeOf(this) + heapSize(root);
+    }
+
+    private static long heapSize(Page<?,?> p) {
+        long acc = HeapLayout.sizeOf(p) + HeapLayout.sizeOf(p.hashes) + HeapLayout.sizeOf(p.nodes);
+        if (p instanceof Inner<?,?> in) {
+            acc += HeapLayout.sizeOf(in.children);
+            for (int i = 0; i < in.count; i++)
+                acc += heapSize(in.children[i]);
+        }
+        return acc;
+    }
+}
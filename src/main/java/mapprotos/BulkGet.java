@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+/**
+ * A map that can look up many keys in one call.  getAll exists so a map can
+ * overlap the cache misses of independent lookups, which a loop of get
+ * calls leaves to however far ahead the CPU happens to run.
+ */
+public interface BulkGet<K,V> {
+
+    /**
+     * Looks up each of keys and stores its value, or null if there is no
+     * mapping, at the same index of out.
+     *
+     * @throws IllegalArgumentException if out is shorter than keys
+     */
+    void getAll(K[] keys, V[] out);
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+/**
+ * Pushes benchmark data out of the CPU caches by streaming through a buffer
+ * larger than the last level cache, so map lookups can be measured cold
+ * without a map that is itself bigger than the cache.
+ *
+ * <p>There are two ways to use it.  {@link #sweep()} on the benchmark thread,
+ * from a {@code Level.Invocation} setup, empties that core's L1 and L2 as
+ * well as the shared L3 before each timed invocation.  {@link #start()} runs
+ * the sweep continuously on a companion thread, which competes for the shared
+ * L3 and memory bandwidth during the timed code but, on another core, leaves
+ * the benchmark core's private caches alone.
+ */
+public class CacheThrasher {
+
+    /**
+     * Longs per 64 byte cache line.
+     */
+    static final int LONGS_PER_LINE = 8;
+
+    private final long[] buffer;
+    private volatile boolean running;
+    private Thread thread;
+
+    // Result of the companion thread's sweeps, so they cannot be optimized away.
+    volatile long sink;
+
+    public CacheThrasher(int megabytes) {
+        if (megabytes <= 0)
+            throw new IllegalArgumentException("Illegal buffer size: " + megabytes + "MB");
+        buffer = new long[(int) Math.min((long) megabytes << 17, Integer.MAX_VALUE - 8)];
+    }
+
+    /**
+     * Reads and writes one long in each cache line of the buffer.  Writing
+     * leaves the lines dirty, so the cache has to write them back as well as
+     * evict them.
+     */
+    public long sweep() {
+        long[] b = buffer;
+        long s = 0;
+        for (int i = 0; i < b.length; i += LONGS_PER_LINE) {
+            s += b[i];
+            b[i] = s;
+        }
+        return s;
+    }
+
+    /**
+     * Starts sweeping continuously on a daemon thread.
+     */
+    public synchronized void start() {
+        if (thread != null)
+            return;
+        running = true;
+        thread = new Thread(() -> {
+            long s = 0;
+            while (running) {
+                s += sweep();
+            }
+            sink = s;
+        }, "CacheThrasher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the thread started by {@link #start()} and waits for it.
+     */
+    public synchronized void stop() {
+        if (thread == null)
+            return;
+        running = false;
+        try {
+            thread.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /**
+     * Returns a thrasher for a benchmark's thrashMode param: "none" gives
+     * null, "invocation" and "corunner" give a thrasher of the given size.
+     */
+    static CacheThrasher forMode(String thrashMode, int megabytes) {
+        switch (thrashMode) {
+            case "none":
+                return null;
+            case "invocation":
+            case "corunner":
+                return new CacheThrasher(megabytes);
+            default:
+                throw new IllegalArgumentException("Unknown thrashMode: " + thrashMode);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded cache in front of keyCount keys, replaying a Zipf trace of
+ * keyCount lookups drawn with exponent zipfS; each miss puts the key.  The
+ * cache holds cacheFraction of the keys.  "lru" is a {@link LinkedHashMapCpy}
+ * in access order whose {@code removeEldestEntry} keeps it at capacity, the
+ * way caches are usually built; any other cacheType is a class with an
+ * {@code (int maxSize)} constructor.  Hits and misses of each iteration are
+ * reported as secondary results, as is the footprint once warmed up when run
+ * with {@link MapStatsProfiler}, and the hit ratio of the whole trial is
+ * printed at teardown.
+ */
+@Fork(value = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Thread)
+public class CacheX {
+
+    @Param({"131072"})
+    public int keyCount;
+
+    @Param({
+        "mapprotos.ArrayBinClockCache",
+        "mapprotos.WTinyLfuCache",
+        "lru",
+    })
+    public String cacheType;
+
+    @Param({"0.1"})
+    public double cacheFraction;
+
+    // From flat to steep; NOTES-PerformanceTestFrequencyDistribution.md has 0.8 - 1.2 as typical.
+    @Param({"0.6", "0.8", "1.0", "1.2", "1.4"})
+    public double zipfS;
+
+    Map<Integer, Integer> cache;
+    Integer[] trace;
+    long hits;
+    long misses;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Hits {
+        public long hits;
+        public long misses;
+    }
+
+    @Setup(Level.Trial)
+    public void setup(BenchmarkParams params) throws Exception {
+        Random rnd = new Random(42);
+        Integer[] keys = rnd.ints().distinct().limit(keyCount).boxed().toArray(Integer[]::new);
+        ZipfSampler zipf = new ZipfSampler(keyCount, zipfS);
+        trace = new Integer[keyCount];
+        for (int i = 0; i < trace.length; i++) {
+            trace[i] = keys[zipf.sample(rnd) - 1];
+        }
+        cache = newCache(cacheType, Math.max(1, (int) (keyCount * cacheFraction)));
+        replay(new Hits());
+        MapStatsProfiler.record(params, new MapStatsProfiler.Snapshot(cache));
+        hits = misses = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        MapBase.dumpStats(cache);
+        System.out.printf("    zipfS: %.1f, hit ratio: %.4f%n", zipfS, (double) hits / (hits + misses));
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<Integer, Integer> newCache(String cacheType, int maxSize) throws Exception {
+        if (cacheType.equals("lru")) {
+            return new LinkedHashMapCpy<>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+        return (Map<Integer, Integer>) Class.forName(cacheType).getConstructor(int.class).newInstance(maxSize);
+    }
+
+    @Benchmark
+    public void replay(Hits h) {
+        Map<Integer, Integer> cache = this.cache;
+        int hit = 0;
+        for (Integer k : trace) {
+            if (cache.get(k) != null) {
+                hit++;
+            } else {
+                cache.put(k, k);
+            }
+        }
+        h.hits += hit;
+        h.misses += trace.length - hit;
+        hits += hit;
+        misses += trace.length - hit;
+    }
+}
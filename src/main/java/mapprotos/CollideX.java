@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Adversarial keys whose hashCodes take only distinctHashes values, as an
+ * attacker or a bad hashCode would produce, so each bin holds about
+ * keyCount / distinctHashes keys.  Shows how bins degrade: a {@code Node[]}
+ * bin is scanned linearly, a tree bin is searched in O(log n) if the keys
+ * are Comparable, and open addressing maps probe long runs.  size and
+ * accessDist are not used.
+ */
+public class CollideX extends MapBase {
+
+    @Param({"4096"})
+    public int keyCount;
+
+    @Param({"8"})
+    public int distinctHashes;
+
+    // false gives keys that are not Comparable, so a tree can only scan them.
+    @Param({"true"})
+    public boolean comparableKeys;
+
+    record CollidingKey(int id, int hash) implements Comparable<CollidingKey> {
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public int compareTo(CollidingKey o) {
+            return Integer.compare(id, o.id);
+        }
+    }
+
+    record TyingKey(int id, int hash) {
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    Class<?> mapClass;
+    Object[] keys;
+    Object[] lookups;
+    Map<Object, Integer> map;
+
+    @Setup(Level.Iteration)
+    public void setupIteration() throws Exception {
+        super.initIteration(0);
+        mapClass = Class.forName(mapType);
+        keys = new Object[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            int hash = rnd.nextInt(distinctHashes) * 0x9E3779B9;
+            keys[i] = comparableKeys ? new CollidingKey(i, hash) : new TyingKey(i, hash);
+        }
+        map = fill();
+        lookups = keys.clone();
+        Collections.shuffle(Arrays.asList(lookups), rnd);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Object, Integer> fill() {
+        try {
+            Map<Object, Integer> m = (Map<Object, Integer>) mapClass.getConstructor(int.class).newInstance(0);
+            for (int i = 0; i < keys.length; i++) {
+                m.put(keys[i], i);
+            }
+            return m;
+        } catch (ReflectiveOperationException ex) {
+            throw new RuntimeException("failed", ex);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void teardown() {
+        dumpStats(map);
+    }
+
+    @Benchmark
+    public void getHit(Blackhole bh) {
+        Map<Object, Integer> map = this.map;
+        for (Object k : lookups) {
+            bh.consume(map.get(k));
+        }
+    }
+
+    @Benchmark
+    public Map<Object, Integer> put() {
+        return fill();
+    }
+}
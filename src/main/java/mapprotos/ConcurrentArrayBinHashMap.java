@@ -0,0 +1,545 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import mapprotos.ArrayBinHashMap.Node;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread safe variant of {@link ArrayBinHashMap}.  A bin is again a single
+ * node or an array of nodes, but here neither is ever changed once stored:
+ * a write builds a new bin and stores it in place of the old one, so a
+ * reader sees either all of the old bin or all of the new one, and reads
+ * take no locks.
+ *
+ * <p>Writers lock one of STRIPES stripes, picked by the low bits of the
+ * hash.  The table is never shorter than STRIPES, so those are also the low
+ * bits of the bin index, and each bin belongs to the same stripe at every
+ * table size.  The size is counted per stripe.  A stripe going over its
+ * share of the table's threshold sums the stripes, and starts a resize if
+ * the whole map is over the threshold, so keys crowding into a few stripes
+ * do not grow the table past what their number needs.
+ *
+ * <p>Resize is cooperative.  Every writer that finds one in progress claims
+ * stripes that have not been moved yet, and moves each bin of the stripe to
+ * the two bins it splits into in the next table, leaving a Forward in its
+ * place.  Readers and writers that meet a Forward go on to the next table.
+ * Whoever moves the last stripe makes the next table current.
+ *
+ * <p>As in ConcurrentHashMap, null keys and values are not permitted.  Bins
+ * do not become trees.  Iterators are weakly consistent and support remove.
+ */
+public class ConcurrentArrayBinHashMap<K,V> extends AbstractMap<K,V>
+        implements ConcurrentMap<K,V>, MapStats {
+
+    /**
+     * The number of stripe locks, a power of two.  Also the smallest table.
+     */
+    static final int STRIPES = 64;
+
+    /**
+     * The maximum capacity, MUST be a power of two <= 1<<30.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    static final float LOAD_FACTOR = 0.75f;
+
+    private static final VarHandle BINS = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    /**
+     * Left in a bin that resize has moved to nextTable.
+     */
+    static final class Forward {
+        final Object[] nextTable;
+
+        Forward(Object[] nextTable) {
+            this.nextTable = nextTable;
+        }
+    }
+
+    /**
+     * A stripe's lock, and the number of mappings in the stripe's bins.
+     */
+    static final class Stripe extends ReentrantLock {
+        // Written under the lock, read without it by size().
+        volatile int size;
+    }
+
+    /**
+     * A resize in progress from one table to the next.
+     */
+    static final class Resize {
+        final Object[] from;
+        final Object[] to;
+        final Forward forward;
+        final AtomicInteger nextStripe = new AtomicInteger();
+        final AtomicInteger stripesDone = new AtomicInteger();
+
+        Resize(Object[] from, Object[] to) {
+            this.from = from;
+            this.to = to;
+            this.forward = new Forward(to);
+        }
+    }
+
+    /**
+     * The table, a power of two long.  Bins are read with acquire and
+     * written with release, under their stripe's lock.
+     */
+    volatile Object[] table;
+
+    /**
+     * The resize in progress, or null.
+     */
+    volatile Resize resize;
+
+    /**
+     * Guards starting and finishing a resize.
+     */
+    private final Object resizeLock = new Object();
+
+    final Stripe[] stripes;
+
+    transient Set<Entry<K,V>> entrySet;
+
+    public ConcurrentArrayBinHashMap(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        int cap = -1 >>> Integer.numberOfLeadingZeros(Math.max(initialCapacity, STRIPES) - 1);
+        table = new Object[(cap >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY : cap + 1];
+        stripes = new Stripe[STRIPES];
+        for (int s = 0; s < STRIPES; s++)
+            stripes[s] = new Stripe();
+    }
+
+    public ConcurrentArrayBinHashMap() {
+        this(STRIPES);
+    }
+
+    static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /* ---------------- Bins -------------- */
+
+    /**
+     * Returns the index in bin of the node for key, or -1 if there is none.
+     */
+    @SuppressWarnings("rawtypes")
+    static int indexOf(Object bin, int hash, Object key) {
+        Object k;
+        if (bin == null)
+            return -1;
+        if (bin.getClass() == Node.class) {
+            Node node = (Node) bin;
+            return (node.hash == hash && ((k = node.key) == key || key.equals(k))) ? 0 : -1;
+        }
+        Node[] nodes = (Node[]) bin;
+        for (int b = 0; b < nodes.length; b++) {
+            if (nodes[b].hash == hash && ((k = nodes[b].key) == key || key.equals(k)))
+                return b;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K,V> Node<K,V> nodeAt(Object bin, int at) {
+        return (bin.getClass() == Node.class) ? (Node<K,V>) bin : ((Node<K,V>[]) bin)[at];
+    }
+
+    /**
+     * Returns a copy of bin with node in place of the node at, or added if
+     * at is -1.
+     */
+    @SuppressWarnings("rawtypes")
+    static Object with(Object bin, int at, Node node) {
+        if (bin == null || (at == 0 && bin.getClass() == Node.class))
+            return node;
+        if (bin.getClass() == Node.class)
+            return new Node[]{(Node) bin, node};
+        Node[] nodes = (Node[]) bin;
+        Node[] newBin = Arrays.copyOf(nodes, (at < 0) ? nodes.length + 1 : nodes.length);
+        newBin[(at < 0) ? nodes.length : at] = node;
+        return newBin;
+    }
+
+    /**
+     * Returns a copy of bin without the node at.
+     */
+    @SuppressWarnings("rawtypes")
+    static Object without(Object bin, int at) {
+        if (bin.getClass() == Node.class)
+            return null;
+        Node[] nodes = (Node[]) bin;
+        if (nodes.length == 2)
+            return nodes[1 - at];
+        Node[] newBin = new Node[nodes.length - 1];
+        System.arraycopy(nodes, 0, newBin, 0, at);
+        System.arraycopy(nodes, at + 1, newBin, at, nodes.length - at - 1);
+        return newBin;
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    public int size() {
+        long n = 0;
+        for (Stripe stripe : stripes)
+            n += stripe.size;
+        return (int) Math.min(n, Integer.MAX_VALUE);
+    }
+
+    public V get(Object key) {
+        int hash = hash(key);
+        Object[] tab = table;
+        Object bin;
+        while ((bin = BINS.getAcquire(tab, (tab.length - 1) & hash)) != null &&
+               bin.getClass() == Forward.class)
+            tab = ((Forward) bin).nextTable;
+        int at = indexOf(bin, hash, key);
+        return (at < 0) ? null : ConcurrentArrayBinHashMap.<K,V>nodeAt(bin, at).value;
+    }
+
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    public V put(K key, V value) {
+        return putVal(key, value, false);
+    }
+
+    public V putIfAbsent(K key, V value) {
+        return putVal(key, value, true);
+    }
+
+    /**
+     * Implements put and putIfAbsent.
+     *
+     * @return previous value, or null if none
+     */
+    final V putVal(K key, V value, boolean onlyIfAbsent) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        int hash = hash(key);
+        Stripe stripe = stripes[hash & (STRIPES - 1)];
+        Object[] tab;
+        boolean grow;
+        stripe.lock();
+        try {
+            // The stripe lock orders this bin's writes, so plain reads of it suffice.
+            tab = table;
+            int i;
+            Object bin;
+            while ((bin = tab[i = (tab.length - 1) & hash]) != null && bin.getClass() == Forward.class)
+                tab = ((Forward) bin).nextTable;
+            int at = indexOf(bin, hash, key);
+            if (at >= 0) {
+                V oldValue = ConcurrentArrayBinHashMap.<K,V>nodeAt(bin, at).value;
+                if (!onlyIfAbsent)
+                    BINS.setRelease(tab, i, with(bin, at, new Node<>(hash, key, value)));
+                return oldValue;
+            }
+            BINS.setRelease(tab, i, with(bin, -1, new Node<>(hash, key, value)));
+            int size = stripe.size + 1;
+            stripe.size = size;
+            grow = size > tab.length * LOAD_FACTOR / STRIPES;
+        } finally {
+            stripe.unlock();
+        }
+        if (grow && size() > tab.length * LOAD_FACTOR)
+            resize(tab);
+        else
+            helpResize();
+        return null;
+    }
+
+    public V remove(Object key) {
+        return replaceNode(key, null, null);
+    }
+
+    public boolean remove(Object key, Object value) {
+        if (key == null)
+            throw new NullPointerException();
+        return value != null && replaceNode(key, null, value) != null;
+    }
+
+    public boolean replace(K key, V oldValue, V newValue) {
+        if (key == null || oldValue == null || newValue == null)
+            throw new NullPointerException();
+        return replaceNode(key, newValue, oldValue) != null;
+    }
+
+    public V replace(K key, V value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        return replaceNode(key, value, null);
+    }
+
+    /**
+     * Implements the remove and replace methods: replaces the value for key
+     * with value, or removes the mapping if value is null, as long as the
+     * current value equals expect or expect is null.
+     *
+     * @return the previous value, or null if nothing was changed
+     */
+    final V replaceNode(Object key, V value, Object expect) {
+        int hash = hash(key);
+        Stripe stripe = stripes[hash & (STRIPES - 1)];
+        stripe.lock();
+        try {
+            Object[] tab = table;
+            int i;
+            Object bin;
+            while ((bin = tab[i = (tab.length - 1) & hash]) != null && bin.getClass() == Forward.class)
+                tab = ((Forward) bin).nextTable;
+            int at = indexOf(bin, hash, key);
+            if (at < 0)
+                return null;
+            Node<K,V> node = nodeAt(bin, at);
+            if (expect != null && !expect.equals(node.value))
+                return null;
+            if (value != null) {
+                BINS.setRelease(tab, i, with(bin, at, new Node<>(hash, node.key, value)));
+            } else {
+                BINS.setRelease(tab, i, without(bin, at));
+                stripe.size = stripe.size - 1;
+            }
+            return node.value;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /* ---------------- Resize -------------- */
+
+    /**
+     * Starts doubling tab, unless a resize is already in progress or tab has
+     * been replaced, and helps with whichever resize is in progress.
+     */
+    private void resize(Object[] tab) {
+        synchronized (resizeLock) {
+            if (resize == null && table == tab && tab.length < MAXIMUM_CAPACITY)
+                resize = new Resize(tab, new Object[tab.length << 1]);
+        }
+        helpResize();
+    }
+
+    /**
+     * Moves stripes of the resize in progress, if any, until none are left
+     * to claim.  Must not be called holding a stripe lock.
+     */
+    private void helpResize() {
+        Resize r = resize;
+        if (r == null)
+            return;
+        int s;
+        while (r.nextStripe.get() < STRIPES && (s = r.nextStripe.getAndIncrement()) < STRIPES) {
+            Stripe stripe = stripes[s];
+            stripe.lock();
+            try {
+                transfer(r, s);
+            } finally {
+                stripe.unlock();
+            }
+            if (r.stripesDone.incrementAndGet() == STRIPES) {
+                synchronized (resizeLock) {
+                    table = r.to;
+                    resize = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the bins of stripe s from r.from to r.to, under the stripe's
+     * lock.  Bin i splits into bins i and i + n of r.to by hash bit n, the
+     * old length; both belong to stripe s too.  Bins are immutable, so a bin
+     * that does not split is moved whole.
+     */
+    @SuppressWarnings("rawtypes")
+    private static void transfer(Resize r, int s) {
+        Object[] from = r.from;
+        Object[] to = r.to;
+        int n = from.length;
+        for (int i = s; i < n; i += STRIPES) {
+            Object bin = from[i];
+            if (bin != null) {
+                if (bin.getClass() == Node.class) {
+                    to[(((Node) bin).hash & n) == 0 ? i : i + n] = bin;
+                } else {
+                    Node[] nodes = (Node[]) bin;
+                    int numLo = 0;
+                    for (Node node : nodes) {
+                        if ((node.hash & n) == 0)
+                            numLo++;
+                    }
+                    if (numLo == nodes.length) {
+                        to[i] = bin;
+                    } else if (numLo == 0) {
+                        to[i + n] = bin;
+                    } else {
+                        Node[] lo = new Node[numLo];
+                        Node[] hi = new Node[nodes.length - numLo];
+                        int l = 0, h = 0;
+                        for (Node node : nodes) {
+                            if ((node.hash & n) == 0)
+                                lo[l++] = node;
+                            else
+                                hi[h++] = node;
+                        }
+                        to[i] = (lo.length == 1) ? lo[0] : lo;
+                        to[i + n] = (hi.length == 1) ? hi[0] : hi;
+                    }
+                }
+            }
+            // Empty bins are forwarded too, so that writers put into the next table.
+            BINS.setRelease(from, i, r.forward);
+        }
+    }
+
+    /* ---------------- Views -------------- */
+
+    public Set<Entry<K,V>> entrySet() {
+        Set<Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Entry<K,V>> {
+        public final int size()                 { return ConcurrentArrayBinHashMap.this.size(); }
+        public final Iterator<Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry<?, ?> e) || e.getKey() == null)
+                return false;
+            V v = get(e.getKey());
+            return v != null && v.equals(e.getValue());
+        }
+        public final boolean remove(Object o) {
+            return o instanceof Map.Entry<?, ?> e && e.getKey() != null &&
+                   ConcurrentArrayBinHashMap.this.remove(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Walks the table current when it was created, one bin at a time.  Each
+     * bin is an immutable snapshot; a forwarded bin is read from the two
+     * bins of the next table it was split into.
+     */
+    final class EntryIterator implements Iterator<Entry<K,V>> {
+        final Object[] tab = table;
+        final List<Node<K,V>> nodes = new ArrayList<>();
+        int index;     // next bin of tab
+        int next;      // next of nodes
+        Node<K,V> last;
+
+        public final boolean hasNext() {
+            while (next == nodes.size() && index < tab.length) {
+                nodes.clear();
+                next = 0;
+                addNodes(tab, index++, nodes);
+            }
+            return next < nodes.size();
+        }
+
+        public final Entry<K,V> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return last = nodes.get(next++);
+        }
+
+        public final void remove() {
+            if (last == null)
+                throw new IllegalStateException();
+            ConcurrentArrayBinHashMap.this.remove(last.key);
+            last = null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K,V> void addNodes(Object[] tab, int i, List<Node<K,V>> out) {
+        Object bin = BINS.getAcquire(tab, i);
+        if (bin == null)
+            return;
+        if (bin.getClass() == Forward.class) {
+            Object[] next = ((Forward) bin).nextTable;
+            addNodes(next, i, out);
+            addNodes(next, i + tab.length, out);
+        } else if (bin.getClass() == Node.class) {
+            out.add((Node<K,V>) bin);
+        } else {
+            out.addAll(Arrays.asList((Node<K,V>[]) bin));
+        }
+    }
+
+    /* ---------------- MapStats -------------- */
+
+    @SuppressWarnings("rawtypes")
+    public long heapBytes() {
+        Object[] tab = table;
+        long acc = HeapLayout.sizeOf(this) + HeapLayout.sizeOf(tab) +
+                   HeapLayout.sizeOf(stripes) + STRIPES * HeapLayout.sizeOf(stripes[0]);
+        for (Object bin : tab) {
+            if (bin == null)
+                continue;
+            if (bin.getClass() == Node.class) {
+                acc += HeapLayout.sizeOf(bin);
+            } else if (bin.getClass() != Forward.class) {
+                acc += HeapLayout.sizeOf(bin);
+                for (Node node : (Node[]) bin)
+                    acc += HeapLayout.sizeOf(node);
+            }
+        }
+        return acc;
+    }
+
+    @SuppressWarnings("rawtypes")
+    public int[] binLengthHistogram() {
+        Object[] tab = table;
+        int[] counts = new int[tab.length + 1];
+        for (Object bin : tab) {
+            int count = 0;
+            if (bin != null && bin.getClass() == Node.class)
+                count = 1;
+            else if (bin != null && bin.getClass() != Forward.class)
+                count = ((Node[]) bin).length;
+            counts[Math.min(count, tab.length)]++;
+        }
+        return MapStats.trimHistogram(counts);
+    }
+}
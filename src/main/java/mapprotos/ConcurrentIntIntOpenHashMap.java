@@ -0,0 +1,471 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread safe {@link IntIntOpenHashMap} whose reads and writes take no
+ * locks, for counters and other hot int to int maps shared between threads.
+ * get, put, addAndGet and remove allocate nothing.
+ *
+ * <p>Slot i is two words of one {@code long[]}: {@code words[2i]} holds the
+ * key, with KEY_PRESENT set so that every int, 0 included, can be a key,
+ * and {@code words[2i + 1]} holds the value in its low half and the slot's
+ * state in its high half.  A lookup so touches one cache line.  Keys are
+ * claimed by CAS from 0 and never change afterwards; values change by CAS
+ * of the whole value word, so a state change and a value change cannot
+ * pass each other.  remove leaves the key behind as DELETED, and resize
+ * drops it.
+ *
+ * <p>Resize copies into a next table incrementally.  Every write that finds
+ * a copy in progress first copies a chunk of COPY_CHUNK slots, and before
+ * touching its own key moves that key's slot, or the free slot that ends
+ * its probe, to the next table.  A slot is moved by freezing its value
+ * (LIVE to FROZEN), putting the value in the next table if the key has
+ * none there yet, and then marking the slot MOVED.  A write that read no
+ * next table may still claim a free slot past one a copy has moved; it
+ * checks again after the claim, and if a copy has started it moves its
+ * slot too and goes on in the next table.  Readers that meet a
+ * MOVED slot look in the next table.  The next table becomes current once
+ * every slot is MOVED.  A write that finds the next table already full
+ * enough to need a resize of its own finishes the copy by itself.
+ */
+public class ConcurrentIntIntOpenHashMap {
+
+    /**
+     * The smallest table, a power of two.
+     */
+    static final int MIN_CAPACITY = 1 << 4;
+
+    /**
+     * The maximum capacity, two words per slot must fit an array.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 29;
+
+    /**
+     * The fraction of slots with a key, live or DELETED, at which to resize.
+     */
+    static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * The slots a write copies when it finds a copy in progress.
+     */
+    static final int COPY_CHUNK = 1 << 10;
+
+    /**
+     * The value returned by {@link #get(int)}, {@link #put(int, int)} and
+     * {@link #remove(int)} when there is no mapping for the key.
+     */
+    public static final int NO_VALUE = IntIntOpenHashMap.NO_VALUE;
+
+    static final long KEY_PRESENT = 1L << 32;
+    static final long VALUE_MASK = 0xFFFFFFFFL;
+    static final long STATE_MASK = ~VALUE_MASK;
+
+    // States, the high half of a value word.
+    static final long EMPTY = 0L;           // no value yet, the key may be claimed
+    static final long LIVE = 1L << 32;
+    static final long DELETED = 2L << 32;
+    static final long FROZEN = 3L << 32;    // being moved, the value is still current
+    static final long MOVED = 4L << 32;     // look in the next table
+
+    // update's ops, and its result for no previous mapping
+    static final int PUT = 0, PUT_IF_ABSENT = 1, ADD = 2, REMOVE = 3;
+    static final long ABSENT = -1L;
+
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle TABLE;
+    private static final VarHandle NEXT;
+    static {
+        try {
+            MethodHandles.Lookup l = MethodHandles.lookup();
+            TABLE = l.findVarHandle(ConcurrentIntIntOpenHashMap.class, "table", Table.class);
+            NEXT = l.findVarHandle(Table.class, "next", Table.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    static final class Table {
+        final long[] words;
+        final int mask;
+        final int threshold;
+        final LongAdder claimed = new LongAdder();
+        volatile Table next;
+        final AtomicInteger copyIndex = new AtomicInteger();
+        final AtomicInteger copyDone = new AtomicInteger();
+
+        Table(int slots) {
+            words = new long[slots * 2];
+            mask = slots - 1;
+            threshold = (int) (slots * LOAD_FACTOR);
+        }
+    }
+
+    volatile Table table;
+
+    final LongAdder size = new LongAdder();
+
+    public ConcurrentIntIntOpenHashMap(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        int n = -1 >>> Integer.numberOfLeadingZeros(Math.max(initialCapacity, MIN_CAPACITY) - 1);
+        table = new Table((n >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY : n + 1);
+    }
+
+    public ConcurrentIntIntOpenHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public int size() {
+        return (int) size.sum();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int get(int key) {
+        return getOrDefault(key, NO_VALUE);
+    }
+
+    public boolean containsKey(int key) {
+        return find(key) != ABSENT;
+    }
+
+    public int getOrDefault(int key, int defaultValue) {
+        long v = find(key);
+        return (v == ABSENT) ? defaultValue : (int) v;
+    }
+
+    /**
+     * Returns the value for key as an unsigned int, or ABSENT.
+     */
+    private long find(int key) {
+        final long kw = KEY_PRESENT | (key & VALUE_MASK);
+        final int hash = IntIntOpenHashMap.hash(key);
+        Table t = table;
+        outer:
+        for (;;) {
+            long[] w = t.words;
+            int mask = t.mask;
+            for (int i = hash & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+                long k = (long) WORDS.getAcquire(w, 2 * i);
+                if (k == kw || k == 0) {
+                    long v = (long) WORDS.getAcquire(w, 2 * i + 1);
+                    long state = v & STATE_MASK;
+                    if (state == MOVED) {
+                        t = t.next;
+                        continue outer;
+                    }
+                    return (k == kw && (state == LIVE || state == FROZEN)) ? (v & VALUE_MASK) : ABSENT;
+                }
+            }
+            // Every slot holds another key, so key is in the next table if anywhere.
+            if ((t = t.next) == null)
+                return ABSENT;
+        }
+    }
+
+    /**
+     * Associates value with key.
+     *
+     * @return the previous value for key, or {@link #NO_VALUE} if there was none
+     */
+    public int put(int key, int value) {
+        long old = update(key, PUT, value);
+        return (old == ABSENT) ? NO_VALUE : (int) old;
+    }
+
+    /**
+     * Associates value with key if it has no value.
+     *
+     * @return the current value for key, or {@link #NO_VALUE} if value was added
+     */
+    public int putIfAbsent(int key, int value) {
+        long old = update(key, PUT_IF_ABSENT, value);
+        return (old == ABSENT) ? NO_VALUE : (int) old;
+    }
+
+    /**
+     * Adds delta to the value for key, which is 0 if key has none.
+     *
+     * @return the new value
+     */
+    public int addAndGet(int key, int delta) {
+        long old = update(key, ADD, delta);
+        return (old == ABSENT) ? delta : (int) old + delta;
+    }
+
+    /**
+     * Removes the mapping for key.
+     *
+     * @return the removed value, or {@link #NO_VALUE} if there was none
+     */
+    public int remove(int key) {
+        long old = update(key, REMOVE, 0);
+        return (old == ABSENT) ? NO_VALUE : (int) old;
+    }
+
+    /**
+     * Applies op with arg to the mapping for key.
+     *
+     * @return the previous value for key as an unsigned int, or ABSENT
+     */
+    private long update(int key, int op, int arg) {
+        final long kw = KEY_PRESENT | (key & VALUE_MASK);
+        final int hash = IntIntOpenHashMap.hash(key);
+        Table t = table;
+        outer:
+        for (;;) {
+            final Table next = nextOf(t);
+            if (next != null)
+                helpCopy(t);
+            final long[] w = t.words;
+            final int mask = t.mask;
+            int i = hash & mask;
+            for (int probes = 0; ; ) {
+                long k = (long) WORDS.getVolatile(w, 2 * i);
+                if (k == kw)
+                    break;
+                if (k == 0) {
+                    // While copying, new keys go to the next table; the free slot is moved so none go here.
+                    if (next != null)
+                        break;
+                    if (!WORDS.compareAndSet(w, 2 * i, 0L, kw))
+                        continue; // lost the slot, look at it again
+                    t.claimed.increment();
+                    if (overThreshold(t))
+                        grow(t);
+                    // A copy that started after next was read may have moved the free slot that ended
+                    // key's probe before this claim passed it, and put key in the next table.
+                    if (t.next != null) {
+                        copySlot(t, i);
+                        t = t.next;
+                        continue outer;
+                    }
+                    break;
+                }
+                if (++probes > mask) {
+                    if (next == null)
+                        grow(t);
+                    else
+                        t = next;
+                    continue outer;
+                }
+                i = (i + 1) & mask;
+            }
+            if (next != null) {
+                copySlot(t, i);
+                t = next;
+                continue;
+            }
+            for (;;) {
+                long v = (long) WORDS.getVolatile(w, 2 * i + 1);
+                long state = v & STATE_MASK;
+                if (state == FROZEN || state == MOVED || (state == EMPTY && t.next != null)) {
+                    // A resize started since next was read; new keys go to the next table.
+                    copySlot(t, i);
+                    t = t.next;
+                    continue outer;
+                }
+                boolean present = (state == LIVE);
+                long newV;
+                switch (op) {
+                    case PUT:
+                        newV = LIVE | (arg & VALUE_MASK);
+                        break;
+                    case PUT_IF_ABSENT:
+                        if (present)
+                            return v & VALUE_MASK;
+                        newV = LIVE | (arg & VALUE_MASK);
+                        break;
+                    case ADD:
+                        newV = LIVE | (((present ? (int) v : 0) + arg) & VALUE_MASK);
+                        break;
+                    default:
+                        if (!present)
+                            return ABSENT;
+                        newV = DELETED;
+                }
+                if (WORDS.compareAndSet(w, 2 * i + 1, v, newV)) {
+                    if (op == REMOVE)
+                        size.decrement();
+                    else if (!present)
+                        size.increment();
+                    return present ? (v & VALUE_MASK) : ABSENT;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns t.next, the copy in progress that update sees.  Tests override
+     * this to return a stale null, as a writer delayed after reading it would.
+     */
+    Table nextOf(Table t) {
+        return t.next;
+    }
+
+    /**
+     * Returns whether t has more keys than its threshold, counting for the
+     * next table of a copy in progress every key the copy may still bring.
+     */
+    private boolean overThreshold(Table t) {
+        long claimed = t.claimed.sum();
+        Table cur = table;
+        if (cur != t && cur.next == t)
+            claimed += cur.claimed.sum();
+        return claimed > t.threshold;
+    }
+
+    /**
+     * Called when t is over its threshold or full.  If t is the next table of
+     * a copy still in progress, finishes that copy first, slot by slot,
+     * whether or not the slots' chunks have been claimed: a thread that
+     * claimed one may not be running, and until the copy is done t cannot be
+     * copied on in turn.  Then starts copying t.
+     */
+    private void grow(Table t) {
+        Table cur = table;
+        if (cur != t && cur.next == t) {
+            for (int i = 0; i <= cur.mask; i++)
+                copySlot(cur, i);
+            TABLE.compareAndSet(this, cur, t);
+        }
+        resize(t);
+    }
+
+    /**
+     * Starts copying t to a next table, unless t is no longer current or a
+     * copy has already started.  The next table is twice as long, or as long
+     * if removes rather than live keys filled t.
+     */
+    private void resize(Table t) {
+        if (t.next != null || table != t)
+            return;
+        int slots = t.mask + 1;
+        int newSlots = (size.sum() >= slots * LOAD_FACTOR / 2) ? slots << 1 : slots;
+        if (newSlots > MAXIMUM_CAPACITY)
+            throw new IllegalStateException("ConcurrentIntIntOpenHashMap is full");
+        NEXT.compareAndSet(t, null, new Table(newSlots));
+    }
+
+    /**
+     * Moves the next unclaimed chunk of t's slots, if any, and makes t's next
+     * table current if that was the last of them.
+     */
+    private void helpCopy(Table t) {
+        int slots = t.mask + 1;
+        if (t.copyIndex.get() >= slots)
+            return;
+        int start = t.copyIndex.getAndAdd(COPY_CHUNK);
+        if (start >= slots)
+            return;
+        int end = Math.min(start + COPY_CHUNK, slots);
+        for (int i = start; i < end; i++)
+            copySlot(t, i);
+        if (t.copyDone.addAndGet(end - start) == slots)
+            TABLE.compareAndSet(this, t, t.next);
+    }
+
+    /**
+     * Moves slot i of t to t.next, and returns once it is MOVED.  Empty and
+     * DELETED slots are only marked.
+     */
+    private static void copySlot(Table t, int i) {
+        long[] w = t.words;
+        for (;;) {
+            long v = (long) WORDS.getVolatile(w, 2 * i + 1);
+            long state = v & STATE_MASK;
+            if (state == MOVED)
+                return;
+            if (state == LIVE) {
+                long frozen = FROZEN | (v & VALUE_MASK);
+                if (!WORDS.compareAndSet(w, 2 * i + 1, v, frozen))
+                    continue;
+                v = frozen;
+                state = FROZEN;
+            }
+            if (state == FROZEN)
+                copyInto(t.next, (long) WORDS.getVolatile(w, 2 * i), (int) v);
+            if (WORDS.compareAndSet(w, 2 * i + 1, v, MOVED))
+                return;
+        }
+    }
+
+    /**
+     * Gives key word kw value in t unless its key there already has a value
+     * or state: then a write since the copy, or another copy of the same
+     * slot, got there first.  Every slot of t's previous table is MOVED
+     * before t can be copied on in turn, so this never has to follow t.next.
+     */
+    private static void copyInto(Table t, long kw, int value) {
+        long[] w = t.words;
+        int mask = t.mask;
+        for (int i = IntIntOpenHashMap.hash((int) kw) & mask; ; ) {
+            long k = (long) WORDS.getVolatile(w, 2 * i);
+            if (k == 0) {
+                if (!WORDS.compareAndSet(w, 2 * i, 0L, kw))
+                    continue;
+                t.claimed.increment();
+                k = kw;
+            }
+            if (k == kw) {
+                WORDS.compareAndSet(w, 2 * i + 1, EMPTY, LIVE | (value & VALUE_MASK));
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    public void dumpStats(PrintStream out) {
+        Table t = table;
+        out.printf("%s instance: size: %d%n", this.getClass().getName(), this.size());
+        long size = HeapLayout.sizeOf(this) + HeapLayout.sizeOf(t) + HeapLayout.sizeOf(t.words);
+        out.printf("    heap size: %d(bytes), avg bytes per entry: %d, table len: %d, keys claimed: %d%n",
+                size, size / Math.max(this.size(), 1), t.mask + 1, t.claimed.sum());
+        int[] probes = entryProbes(t);
+        out.printf("    probe length histogram: max: %d, %s%n",
+                probes.length - 1, Arrays.toString(probes));
+    }
+
+    // Returns a histogram of the number of slots probed to find each live key.
+    private static int[] entryProbes(Table t) {
+        long[] w = t.words;
+        int mask = t.mask;
+        int[] counts = new int[mask + 2];
+        for (int j = 0; j <= mask; j++) {
+            if ((w[2 * j + 1] & STATE_MASK) == LIVE)
+                counts[((j - (IntIntOpenHashMap.hash((int) w[2 * j]) & mask)) & mask) + 1]++;
+        }
+        return MapStats.trimHistogram(counts);
+    }
+}
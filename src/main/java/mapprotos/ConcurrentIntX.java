@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * GetIntX and PutIntX on one map shared by all threads: a
+ * ConcurrentIntIntOpenHashMap, and for reference a ConcurrentHashMap of the
+ * same keys.  Every thread walks all of GetX's hit or mixed keys, starting
+ * at its own random offset so that writers do not march over the same slots
+ * together.  For read scaling compare the per-invocation times across
+ * {@code -t 1}, {@code -t 2}, and so on up to {@code -t 64}: with linear
+ * scaling they stay flat.  addAndGet counts into the existing keys, the
+ * high-QPS counter case, and put writes the keys' own values back.
+ * mapType has the single value mapprotos.ConcurrentIntIntOpenHashMap.
+ */
+@Fork(value = 1)
+@State(Scope.Benchmark)
+@Threads(4)
+public class ConcurrentIntX extends MapBase {
+
+    // Hides MapBase's list, which would only repeat the same trial per value.
+    @Param({"mapprotos.ConcurrentIntIntOpenHashMap"})
+    public String mapType;
+
+    ConcurrentIntIntOpenHashMap map;
+    ConcurrentHashMap<Integer, Integer> chm;
+    int[] hits;
+    int[] mixed;
+    Integer[] boxedHits;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        super.initIteration(size);
+        map = new ConcurrentIntIntOpenHashMap(0);
+        chm = new ConcurrentHashMap<>();
+        for (Integer k : keys) {
+            map.put(k, k);
+            chm.put(k, k);
+        }
+        Integer[] boxedMixed = new Integer[size];
+        System.arraycopy(keys, 0, boxedMixed, 0, size / 2);
+        System.arraycopy(nonKeys, 0, boxedMixed, size / 2, size / 2);
+        Collections.shuffle(Arrays.asList(boxedMixed), rnd);
+        boxedHits = accessSequence(keys);
+        hits = GetIntX.toInts(boxedHits, size);
+        mixed = GetIntX.toInts(accessSequence(boxedMixed), size);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        map.dumpStats(System.out);
+    }
+
+    @State(Scope.Thread)
+    public static class Offset {
+        int start;
+
+        @Setup(Level.Iteration)
+        public void setup(ConcurrentIntX x) {
+            start = ThreadLocalRandom.current().nextInt(x.size);
+        }
+    }
+
+    @Benchmark
+    public void getHit(Offset o, Blackhole bh) {
+        int[] keys = this.hits;
+        ConcurrentIntIntOpenHashMap map = this.map;
+        for (int i = o.start; i < keys.length; i++) {
+            bh.consume(map.get(keys[i]));
+        }
+        for (int i = 0; i < o.start; i++) {
+            bh.consume(map.get(keys[i]));
+        }
+    }
+
+    @Benchmark
+    public void getMix(Offset o, Blackhole bh) {
+        int[] keys = this.mixed;
+        ConcurrentIntIntOpenHashMap map = this.map;
+        for (int i = o.start; i < keys.length; i++) {
+            bh.consume(map.get(keys[i]));
+        }
+        for (int i = 0; i < o.start; i++) {
+            bh.consume(map.get(keys[i]));
+        }
+    }
+
+    @Benchmark
+    public void put(Offset o) {
+        int[] keys = this.hits;
+        ConcurrentIntIntOpenHashMap map = this.map;
+        for (int i = o.start; i < keys.length; i++) {
+            map.put(keys[i], keys[i]);
+        }
+        for (int i = 0; i < o.start; i++) {
+            map.put(keys[i], keys[i]);
+        }
+    }
+
+    @Benchmark
+    public void addAndGet(Offset o, Blackhole bh) {
+        int[] keys = this.hits;
+        ConcurrentIntIntOpenHashMap map = this.map;
+        for (int i = o.start; i < keys.length; i++) {
+            bh.consume(map.addAndGet(keys[i], 1));
+        }
+        for (int i = 0; i < o.start; i++) {
+            bh.consume(map.addAndGet(keys[i], 1));
+        }
+    }
+
+    @Benchmark
+    public void chmGetHit(Offset o, Blackhole bh) {
+        Integer[] keys = this.boxedHits;
+        ConcurrentHashMap<Integer, Integer> chm = this.chm;
+        for (int i = o.start; i < keys.length; i++) {
+            bh.consume(chm.get(keys[i]));
+        }
+        for (int i = 0; i < o.start; i++) {
+            bh.consume(chm.get(keys[i]));
+        }
+    }
+
+    @Benchmark
+    public void chmMerge(Offset o, Blackhole bh) {
+        Integer[] keys = this.boxedHits;
+        ConcurrentHashMap<Integer, Integer> chm = this.chm;
+        for (int i = o.start; i < keys.length; i++) {
+            bh.consume(chm.merge(keys[i], 1, Integer::sum));
+        }
+        for (int i = 0; i < o.start; i++) {
+            bh.consume(chm.merge(keys[i], 1, Integer::sum));
+        }
+    }
+}
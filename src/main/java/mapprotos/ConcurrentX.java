@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared-map reads and writes from several threads at once, for
+ * ConcurrentArrayBinHashMap against ConcurrentHashMap.  Each @Group is one
+ * mix of threads on one map: readOnly has only readers, readMostly three
+ * readers to one writer, and readWrite two readers, a putter and a remover,
+ * which keep about half of the keys mapped.  Scores are per operation of
+ * each thread, so the get score of a group is read latency under that
+ * write load.  Add {@code -p size=} large enough to spill the last level
+ * cache for the out-of-cache case.
+ */
+@Fork(value = 1)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Group)
+public class ConcurrentX {
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({
+        "mapprotos.ConcurrentArrayBinHashMap",
+        "java.util.concurrent.ConcurrentHashMap",
+    })
+    public String mapType;
+
+    ConcurrentMap<Integer, Integer> map;
+    Integer[] keys;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        // fmix32 is a bijection, so these are size distinct random looking ints.
+        keys = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = SeededHash.mix(i, 0x5EED);
+        }
+        map = (ConcurrentMap<Integer, Integer>) Class.forName(mapType).getConstructor(int.class).newInstance(16);
+        for (int i = 0; i < size; i += 2) {
+            map.put(keys[i], i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        MapBase.dumpStats(map);
+    }
+
+    /**
+     * Each thread's own xorshift walk over the keys.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int x = (int) System.nanoTime() | 1;
+
+        int next(int bound) {
+            x ^= x << 13;
+            x ^= x >>> 17;
+            x ^= x << 5;
+            return (x & Integer.MAX_VALUE) % bound;
+        }
+    }
+
+    Integer get(Cursor c) {
+        return map.get(keys[c.next(size)]);
+    }
+
+    Integer put(Cursor c) {
+        int i = c.next(size);
+        return map.put(keys[i], i);
+    }
+
+    Integer remove(Cursor c) {
+        return map.remove(keys[c.next(size)]);
+    }
+
+    @Benchmark
+    @Group("readOnly")
+    @GroupThreads(4)
+    public Integer readOnlyGet(Cursor c) {
+        return get(c);
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(3)
+    public Integer readMostlyGet(Cursor c) {
+        return get(c);
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    public Integer readMostlyPut(Cursor c) {
+        return put(c);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(2)
+    public Integer readWriteGet(Cursor c) {
+        return get(c);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    public Integer readWritePut(Cursor c) {
+        return put(c);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    public Integer readWriteRemove(Cursor c) {
+        return remove(c);
+    }
+}
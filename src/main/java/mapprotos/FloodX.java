@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A hash-flooding attack on the classic {@code h ^ (h >>> 16)} spread: the
+ * Integer keys {@code (i << 16) | i} all spread to a hash whose low 16 bits
+ * are zero, so without a seed every key of a table up to 65536 long lands in
+ * bin 0.  With seededHash the map mixes a random per-map seed into each
+ * hash, see SeededHash, and the same keys scatter.  Maps are created with
+ * their {@code (int, boolean)} constructor, which every listed mapType has.
+ * SwissHashMap multiplies before spreading, so these keys don't flood it
+ * even unseeded.  size and accessDist are not used.
+ */
+public class FloodX extends MapBase {
+
+    // Hides MapBase's list, which has maps without the seeded constructor.
+    @Param({
+        "mapprotos.ArrayBinHashMap",
+        "mapprotos.ArrayBinHashMapFibonacci",
+        "mapprotos.HashMapCpy",
+        "mapprotos.RobinHoodHashMap",
+        "mapprotos.SwissHashMap",
+        "mapprotos.SplitBinHashMap",
+    })
+    public String mapType;
+
+    @Param({"4096"})
+    public int keyCount;
+
+    @Param({"false", "true"})
+    public boolean seededHash;
+
+    Class<?> mapClass;
+    Integer[] keys;
+    Integer[] lookups;
+    Map<Integer, Integer> map;
+
+    @Setup(Level.Iteration)
+    public void setupIteration() throws Exception {
+        super.initIteration(0);
+        if (keyCount > 1 << 16)
+            throw new IllegalArgumentException("keyCount > 65536: " + keyCount);
+        mapClass = Class.forName(mapType);
+        keys = new Integer[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = (i << 16) | i;
+        }
+        map = fill();
+        lookups = keys.clone();
+        Collections.shuffle(Arrays.asList(lookups), rnd);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Integer, Integer> fill() {
+        try {
+            Map<Integer, Integer> m = (Map<Integer, Integer>) mapClass
+                    .getConstructor(int.class, boolean.class).newInstance(0, seededHash);
+            for (int i = 0; i < keys.length; i++) {
+                m.put(keys[i], i);
+            }
+            return m;
+        } catch (ReflectiveOperationException ex) {
+            throw new RuntimeException("failed", ex);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void teardown() {
+        dumpStats(map);
+    }
+
+    @Benchmark
+    public void getHit(Blackhole bh) {
+        Map<Integer, Integer> map = this.map;
+        for (Integer k : lookups) {
+            bh.consume(map.get(k));
+        }
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> put() {
+        return fill();
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * An immutable map for lookup tables that are built once and then only
+ * read, made by {@link #copyOf(Map)} or the {@code freeze()} of
+ * ArrayBinHashMap and HashMapCpy.  Its n entries sit in n slots of flat
+ * arrays, {@code kv} with each key followed by its value and
+ * {@code hashes}, placed by a minimal perfect hash built with CHD
+ * (D. Belazzougui, F. Botelho and M. Dietzfelbinger, "Hash, displace, and
+ * compress", 2009).  There is no load factor slack, no modCount and no
+ * resize.
+ *
+ * <p>A hash picks one of about n / BUCKET_SIZE buckets, and the bucket's
+ * displacement picks the slot: {@code SeededHash.mix(hash, d)} scaled to
+ * n, or, for a negative d, slot {@code ~d} directly.  Building places the
+ * largest buckets first, trying displacements until all of a bucket's
+ * keys land in free slots, and gives each single-key bucket a free slot
+ * outright.  So a get is one displacement load, one slot probe and one
+ * hash and key compare, whether or not the key is present.
+ *
+ * <p>A perfect hash needs distinct hashes.  Keys whose hashCode equals
+ * that of an earlier key go to a small ArrayBinHashMap on the side, which
+ * is only looked at, after a failed compare, if there are any.  Null keys
+ * and values are permitted.
+ */
+public final class FrozenMap<K,V> extends AbstractMap<K,V> implements MapStats {
+
+    /**
+     * The average keys per bucket; more buckets take longer to place but
+     * use more displacement ints.
+     */
+    static final int BUCKET_SIZE = 4;
+
+    /**
+     * Displacements to try for one bucket before choosing a new bucket
+     * seed and starting over.
+     */
+    static final int MAX_DISPLACEMENT = 1 << 20;
+
+    /* ---------------- Fields -------------- */
+
+    final Object[] kv;
+
+    final int[] hashes;
+
+    /**
+     * Per bucket, the seed for SeededHash.mix, or the complement of the
+     * slot of its only key.
+     */
+    final int[] displacements;
+
+    final int bucketSeed;
+
+    /**
+     * Keys whose hash is taken by another key, or null if there are none.
+     */
+    final ArrayBinHashMap<K,V> collisions;
+
+    final int size;
+
+    transient Set<Entry<K,V>> entrySet;
+
+    private FrozenMap(Object[] kv, int[] hashes, int[] displacements, int bucketSeed,
+                      ArrayBinHashMap<K,V> collisions, int size) {
+        this.kv = kv;
+        this.hashes = hashes;
+        this.displacements = displacements;
+        this.bucketSeed = bucketSeed;
+        this.collisions = collisions;
+        this.size = size;
+    }
+
+    /**
+     * Returns an immutable copy of m.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K,V> FrozenMap<K,V> copyOf(Map<? extends K, ? extends V> m) {
+        int n = m.size();
+        Object[] keys = new Object[n];
+        Object[] values = new Object[n];
+        int[] hs = new int[n];
+        ArrayBinHashMap<Integer,Object> firstWithHash = new ArrayBinHashMap<>(n);
+        ArrayBinHashMap<K,V> collisions = null;
+        int count = 0;
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            int h = hash(e.getKey());
+            if (firstWithHash.putIfAbsent(h, Boolean.TRUE) != null) {
+                if (collisions == null)
+                    collisions = new ArrayBinHashMap<>();
+                collisions.put(e.getKey(), e.getValue());
+                continue;
+            }
+            keys[count] = e.getKey();
+            values[count] = e.getValue();
+            hs[count] = h;
+            count++;
+        }
+        for (int seed = 0; ; seed++) {
+            int[] slots = new int[count];
+            int[] displacements = place(hs, count, seed, slots);
+            if (displacements == null)
+                continue;
+            Object[] kv = new Object[2 * count];
+            int[] hashes = new int[count];
+            for (int i = 0; i < count; i++) {
+                int s = slots[i];
+                kv[2 * s] = keys[i];
+                kv[2 * s + 1] = values[i];
+                hashes[s] = hs[i];
+            }
+            return new FrozenMap<>(kv, hashes, displacements, seed, collisions, n);
+        }
+    }
+
+    static int hash(Object key) {
+        int h;
+        return (key == null) ? 0 : (h = key.hashCode()) ^ (h >>> 16);
+    }
+
+    /**
+     * Returns x scaled from the range of an unsigned int to [0, n).
+     */
+    static int scale(int x, int n) {
+        return (int) (((x & 0xFFFFFFFFL) * n) >>> 32);
+    }
+
+    static int bucketOf(int hash, int bucketSeed, int buckets) {
+        return scale((hash ^ bucketSeed) * 0x9E3779B9, buckets);
+    }
+
+    /**
+     * Finds a displacement for each bucket of the n distinct hashes hs,
+     * filling in the slot of each, or returns null if some bucket cannot be
+     * placed with this bucket seed.
+     */
+    static int[] place(int[] hs, int n, int bucketSeed, int[] slots) {
+        int buckets = Math.max(1, (n + BUCKET_SIZE - 1) / BUCKET_SIZE);
+        int[] displacements = new int[buckets];
+        if (n == 0)
+            return displacements;
+
+        // Group the hashes by bucket: members of bucket b are
+        // order[start[b]] .. order[start[b + 1] - 1].
+        int[] start = new int[buckets + 1];
+        int[] bucketOf = new int[n];
+        int maxBucket = 0;
+        for (int i = 0; i < n; i++) {
+            int b = bucketOf[i] = bucketOf(hs[i], bucketSeed, buckets);
+            maxBucket = Math.max(maxBucket, ++start[b + 1]);
+        }
+        for (int b = 0; b < buckets; b++)
+            start[b + 1] += start[b];
+        int[] order = new int[n];
+        int[] fill = Arrays.copyOf(start, buckets);
+        for (int i = 0; i < n; i++)
+            order[fill[bucketOf[i]]++] = i;
+
+        // Buckets from largest to smallest.
+        int[] bySize = new int[maxBucket + 2];
+        for (int b = 0; b < buckets; b++)
+            bySize[maxBucket - (start[b + 1] - start[b]) + 1]++;
+        for (int k = 0; k <= maxBucket; k++)
+            bySize[k + 1] += bySize[k];
+        int[] bucketOrder = new int[buckets];
+        for (int b = 0; b < buckets; b++)
+            bucketOrder[bySize[maxBucket - (start[b + 1] - start[b])]++] = b;
+
+        boolean[] taken = new boolean[n];
+        int[] tried = new int[maxBucket];
+        int nextFree = 0;
+        for (int b : bucketOrder) {
+            int from = start[b], len = start[b + 1] - from;
+            if (len == 0)
+                break;
+            if (len == 1) {
+                while (taken[nextFree])
+                    nextFree++;
+                taken[nextFree] = true;
+                slots[order[from]] = nextFree;
+                displacements[b] = ~nextFree;
+                continue;
+            }
+            int d = 0;
+            search:
+            for (;; d++) {
+                if (d == MAX_DISPLACEMENT)
+                    return null;
+                for (int j = 0; j < len; j++) {
+                    int s = scale(SeededHash.mix(hs[order[from + j]], d), n);
+                    if (taken[s])
+                        continue search;
+                    for (int t = 0; t < j; t++) {
+                        if (tried[t] == s)
+                            continue search;
+                    }
+                    tried[j] = s;
+                }
+                break;
+            }
+            for (int j = 0; j < len; j++) {
+                taken[tried[j]] = true;
+                slots[order[from + j]] = tried[j];
+            }
+            displacements[b] = d;
+        }
+        return displacements;
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the slot that key would be in, which holds it if it is in
+     * the perfect hash part at all.
+     */
+    final int slotOf(int hash) {
+        int[] ds = displacements;
+        int d = ds[bucketOf(hash, bucketSeed, ds.length)];
+        return (d < 0) ? ~d : scale(SeededHash.mix(hash, d), hashes.length);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int hash = hash(key);
+        if (hashes.length != 0) {
+            int s = slotOf(hash);
+            Object k;
+            if (hashes[s] == hash && ((k = kv[2 * s]) == key || (key != null && key.equals(k))))
+                return (V) kv[2 * s + 1];
+        }
+        return (collisions == null) ? null : collisions.get(key);
+    }
+
+    public boolean containsKey(Object key) {
+        int hash = hash(key);
+        if (hashes.length != 0) {
+            int s = slotOf(hash);
+            Object k;
+            if (hashes[s] == hash && ((k = kv[2 * s]) == key || (key != null && key.equals(k))))
+                return true;
+        }
+        return collisions != null && collisions.containsKey(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(Object key, V defaultValue) {
+        int hash = hash(key);
+        if (hashes.length != 0) {
+            int s = slotOf(hash);
+            Object k;
+            if (hashes[s] == hash && ((k = kv[2 * s]) == key || (key != null && key.equals(k))))
+                return (V) kv[2 * s + 1];
+        }
+        return (collisions == null) ? defaultValue : collisions.getOrDefault(key, defaultValue);
+    }
+
+    /* ---------------- Views -------------- */
+
+    public Set<Entry<K,V>> entrySet() {
+        Set<Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Entry<K,V>> {
+        public final int size()                 { return size; }
+        public final Iterator<Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry<?, ?> e))
+                return false;
+            Object key = e.getKey();
+            return containsKey(key) && Objects.equals(get(key), e.getValue());
+        }
+    }
+
+    /**
+     * Walks the slots, then the collisions.
+     */
+    final class EntryIterator implements Iterator<Entry<K,V>> {
+        int next;
+        final Iterator<Entry<K,V>> rest =
+                (collisions == null) ? null : collisions.entrySet().iterator();
+
+        public final boolean hasNext() {
+            return next < hashes.length || (rest != null && rest.hasNext());
+        }
+
+        @SuppressWarnings("unchecked")
+        public final Entry<K,V> next() {
+            if (next < hashes.length) {
+                int s = next++;
+                return new SimpleImmutableEntry<>((K) kv[2 * s], (V) kv[2 * s + 1]);
+            }
+            if (rest == null)
+                throw new NoSuchElementException();
+            return new SimpleImmutableEntry<>(rest.next());
+        }
+    }
+
+    /* ---------------- MapStats -------------- */
+
+    public long heapBytes() {
+        long acc = HeapLayout.sizeOf(this) + HeapLayout.sizeOf(kv)
+                + HeapLayout.sizeOf(hashes) + HeapLayout.sizeOf(displacements);
+        return (collisions == null) ? acc : acc + collisions.heapBytes();
+    }
+
+    /**
+     * Every slot holds one entry; collisions are not counted.
+     */
+    public int[] binLengthHistogram() {
+        return (hashes.length == 0) ? new int[0] : new int[] {0, hashes.length};
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Map;
+
+/**
+ * {@link BulkGet#getAll} against a loop of {@code get}, each looking up the
+ * same lookupCount random keys of a map with keyCount entries.  At the
+ * default 50M entries the table and nodes are far beyond the last level
+ * cache, so each {@code get} is a chain of DRAM misses; add
+ * {@code -p keyCount=100000} for the in-cache case.  mapType lists the maps
+ * that are a BulkGet.  size and accessDist are not used.  GetIntX.getAllHit
+ * is the {@code int} counterpart.
+ *
+ * <p>The map is built once per trial, presized since HashMapJustPutGet
+ * cannot resize.  50M boxed entries need about 5GB of heap.
+ */
+@Fork(value = 1, jvmArgsAppend = {"-Xms12g", "-Xmx12g"})
+public class GetAllX extends MapBase {
+
+    // Hides MapBase's list, which has maps that are not a BulkGet.
+    @Param({"mapprotos.ArrayBinHashMap", "mapprotos.HashMapJustPutGet"})
+    public String mapType;
+
+    @Param({"50000000"})
+    public int keyCount;
+
+    @Param({"1048576"})
+    public int lookupCount;
+
+    Map<Integer, Integer> map;
+    Integer[] mapKeys;
+    Integer[] lookups;
+    Integer[] out;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setupTrial() throws Exception {
+        // fmix32 is a bijection, so these are keyCount distinct random looking ints.
+        mapKeys = new Integer[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            mapKeys[i] = SeededHash.mix(i, 0x5EED);
+        }
+        int origSize = (int) (keyCount / 0.75f) + 1;
+        map = (Map<Integer, Integer>) Class.forName(mapType).getConstructor(int.class).newInstance(origSize);
+        for (Integer k : mapKeys) {
+            map.put(k, k);
+        }
+        out = new Integer[lookupCount];
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        super.initIteration(0);
+        lookups = new Integer[lookupCount];
+        for (int i = 0; i < lookupCount; i++) {
+            lookups[i] = mapKeys[rnd.nextInt(keyCount)];
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        dumpStats(map);
+    }
+
+    @Benchmark
+    public Integer[] getLoop() {
+        Map<Integer, Integer> map = this.map;
+        Integer[] lookups = this.lookups;
+        Integer[] out = this.out;
+        for (int i = 0; i < lookups.length; i++) {
+            out[i] = map.get(lookups[i]);
+        }
+        return out;
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Integer[] getAll() {
+        ((BulkGet<Integer, Integer>) map).getAll(lookups, out);
+        return out;
+    }
+}
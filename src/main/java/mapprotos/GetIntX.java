@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * GetX without boxing: the same keys and mixed lookup order, looked up with
+ * {@link IntIntOpenHashMap#get(int)}.  mapType has the single value
+ * mapprotos.IntIntOpenHashMapAdapter, so the results line up against the
+ * boxed GetX runs of that type.  For the out-of-cache case add
+ * {@code -p size=50331600}.  getHitLoop and getAllHit compare a loop of get
+ * with {@link IntIntOpenHashMap#getAll}, both storing into one array.
+ */
+public class GetIntX extends MapBase {
+
+    // Hides MapBase's list, which would only repeat the same trial per value.
+    @Param({"mapprotos.IntIntOpenHashMapAdapter"})
+    public String mapType;
+
+    IntIntOpenHashMap map;
+    int[] intKeys;
+    int[] hits;
+    int[] mixed;
+    int[] out;
+
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        super.initIteration(size);
+        float loadFactor = 0.75f;
+        int origSize = (int) (size / loadFactor) + 1;
+        System.out.println("loadFactor:" + loadFactor + " origSize:" + origSize);
+
+        intKeys = toInts(keys, size);
+        map = new IntIntOpenHashMap(origSize, loadFactor);
+        for (int k : intKeys) {
+            map.put(k, k);
+        }
+
+        // Same construction as GetX.mixed, so the lookup order matches.
+        Integer[] boxedMixed = new Integer[size];
+        System.arraycopy(keys, 0, boxedMixed, 0, size / 2);
+        System.arraycopy(nonKeys, 0, boxedMixed, size / 2, size / 2);
+        Collections.shuffle(Arrays.asList(boxedMixed), rnd);
+        hits = toInts(accessSequence(keys), size);
+        mixed = toInts(accessSequence(boxedMixed), size);
+        out = new int[size];
+    }
+
+    static int[] toInts(Integer[] boxed, int n) {
+        int[] ints = new int[n];
+        for (int i = 0; i < n; i++) {
+            ints[i] = boxed[i];
+        }
+        return ints;
+    }
+
+    @TearDown(Level.Iteration)
+    public void teardown() {
+        map.dumpStats(System.out);
+    }
+
+    @Benchmark
+    public void getHit(Blackhole bh) {
+        int[] keys = this.hits;
+        IntIntOpenHashMap map = this.map;
+        for (int k : keys) {
+            bh.consume(map.get(k));
+        }
+    }
+
+    @Benchmark
+    public void getMix(Blackhole bh) {
+        int[] keys = this.mixed;
+        IntIntOpenHashMap map = this.map;
+        for (int k : keys) {
+            bh.consume(map.get(k));
+        }
+    }
+
+    @Benchmark
+    public int[] getHitLoop() {
+        int[] keys = this.hits;
+        int[] out = this.out;
+        IntIntOpenHashMap map = this.map;
+        for (int i = 0; i < keys.length; i++) {
+            out[i] = map.get(keys[i]);
+        }
+        return out;
+    }
+
+    @Benchmark
+    public int[] getAllHit() {
+        map.getAll(hits, out);
+        return out;
+    }
+
+}
@@ -24,9 +24,11 @@ package mapprotos;
 
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.TearDown;
 
+import org.openjdk.jmh.infra.BenchmarkParams;
 import org.openjdk.jmh.infra.Blackhole;
 
 import java.util.Arrays;
@@ -38,10 +40,27 @@ public class GetX extends MapBase {
 
     IntFunction<Map<Integer, Integer>> mapSupplier;
     Map<Integer, Integer> map;
+    Integer[] hits;
     Integer[] mixed;
 
+    // "none", "invocation" to flush the caches before each invocation, or "corunner" to stream
+    // through a thrashMB buffer on another thread while measuring.  See CacheThrasher.
+    @Param({"none"})
+    public String thrashMode;
+
+    // Should be well over the last level cache size.
+    @Param({"64"})
+    public int thrashMB;
+
+    // true to look up in the map's freeze() instead, a FrozenMap; mapType must have freeze().
+    @Param({"false"})
+    public boolean freeze;
+
+    CacheThrasher thrasher;
+    long thrashSink;
+
     @Setup(Level.Iteration)
-    public void setupIteration() {
+    public void setupIteration(BenchmarkParams params) {
         super.initIteration(size);
         float loadFactor = 0.75f;
         int origSize = (int) (size / loadFactor) + 1;
@@ -58,15 +77,45 @@ public class GetX extends MapBase {
         for (Integer k : keys) {
             map.put(k, k);
         }
+        if (freeze) {
+            try {
+                @SuppressWarnings("unchecked")
+                Map<Integer, Integer> frozen = (Map<Integer, Integer>) map.getClass().getMethod("freeze").invoke(map);
+                map = frozen;
+            } catch (ReflectiveOperationException ex) {
+                throw new IllegalArgumentException(mapType + " cannot be frozen", ex);
+            }
+        }
 
         mixed = new Integer[size];
         System.arraycopy(keys, 0, mixed, 0, size / 2);
         System.arraycopy(nonKeys, 0, mixed, size / 2, size / 2);
         Collections.shuffle(Arrays.asList(mixed), rnd);
+
+        hits = accessSequence(keys);
+        mixed = accessSequence(mixed);
+        MapStatsProfiler.record(params, new MapStatsProfiler.Snapshot(map));
+
+        if (thrasher == null) {
+            thrasher = CacheThrasher.forMode(thrashMode, thrashMB);
+        }
+        if (thrashMode.equals("corunner")) {
+            thrasher.start();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        if (thrashMode.equals("invocation")) {
+            thrashSink += thrasher.sweep();
+        }
     }
 
     @TearDown(Level.Iteration)
     public void teardown() {
+        if (thrasher != null) {
+            thrasher.stop();
+        }
         super.TearDown(map);
     }
 
@@ -80,7 +129,7 @@ public class GetX extends MapBase {
 
     @Benchmark
     public void getHit(Blackhole bh) {
-        Integer[] keys = this.keys;
+        Integer[] keys = this.hits;
         Map<Integer, Integer> map = this.map;
         for (Integer k : keys) {
             bh.consume(map.get(k));
@@ -49,7 +49,6 @@ import static java.util.stream.Collectors.toMap;
 @OutputTimeUnit(TimeUnit.MILLISECONDS)
 @Fork(value = 1, jvmArgs = {/*"-XX:+EnablePrimitiveClasses",*/ "-agentlib:jdwp=transport=dt_socket,server=y,suspend=y,address=*:5005"})
 // @Measurement(iterations = 2) // TODO change iterations
-// TODO run some test such that some thread(s) are hitting the cpu caches (does each cpu ever have its own cache?) so that the Map performance is more realistically impacted by not being in cache.
 @State(Scope.Thread)
 public class HashMapBench {
     private IntFunction<Map<Integer, Integer>> mapSupplier;
@@ -61,13 +60,27 @@ public class HashMapBench {
     @Param(value = {
 //            "org.openjdk.bench.valhalla.corelibs.mapprotos.HashMap",
 //            "mapprotos.XHashMap",
-//            "newhash.OpenHashMap",
+        "newhash.OpenHashMap",
 //            "java.util.HashMap",
         "newhash.IdentityHashMapOrig",
         "newhash.IdentityHashMapFibonacci",
+        "mapprotos.ArrayBinHashMap",
+        "mapprotos.ArrayBinHashMapFibonacci",
         })
     private String mapType;
 
+    // Each core has its own L1 and L2, the L3 is shared.  "invocation" sweeps a thrashMB buffer
+    // on this thread before each invocation, which empties all three, "corunner" streams
+    // through it on another thread during the measurement, which only contends for the L3.
+    @Param({"none"})
+    private String thrashMode;
+
+    @Param({"64"})
+    private int thrashMB;
+
+    private CacheThrasher thrasher;
+    private long thrashSink;
+
     @Setup
     public void setup() {
         try {
@@ -81,6 +94,28 @@ public class HashMapBench {
         ThreadLocalRandom rnd = ThreadLocalRandom.current();
         this.bigMapToAdd = IntStream.range(0, size).boxed()
             .collect(toMap(i -> 7 + i * 128, i -> rnd.nextInt()));
+        this.thrasher = CacheThrasher.forMode(thrashMode, thrashMB);
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        if (thrashMode.equals("corunner")) {
+            thrasher.start();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        if (thrashMode.equals("invocation")) {
+            thrashSink += thrasher.sweep();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void teardownIteration() {
+        if (thrasher != null) {
+            thrasher.stop();
+        }
     }
 
     Map<Integer, Integer> newInstance(Class<?> mapClass, int size) {
@@ -26,7 +26,6 @@
 package mapprotos;
 
 import java.io.*;
-import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.*;
@@ -136,7 +135,7 @@ import java.util.function.Function;
  * @since   1.2
  */
 public class HashMapCpy<K,V> extends AbstractMap<K,V>
-    implements Map<K,V>, Cloneable, Serializable {
+    implements Map<K,V>, Cloneable, Serializable, MapStats {
 
     @java.io.Serial
     private static final long serialVersionUID = 362498820763181265L;
@@ -332,9 +331,12 @@ public class HashMapCpy<K,V> extends AbstractMap<K,V>
      * to incorporate impact of the highest bits that would otherwise
      * never be used in index calculations because of table bounds.
      */
-    static final int hash(Object key) {
+    final int hash(Object key) {
         int h;
-        return (key == null) ? 0 : (h = key.hashCode()) ^ (h >>> 16);
+        if (key == null)
+            return 0;
+        h = key.hashCode();
+        return (hashSeed == 0) ? h ^ (h >>> 16) : SeededHash.mix(h, hashSeed);
     }
 
     /**
@@ -426,6 +428,11 @@ public class HashMapCpy<K,V> extends AbstractMap<K,V>
      */
     final float loadFactor;
 
+    /**
+     * Mixed into every hash if non-zero, see SeededHash.
+     */
+    final int hashSeed;
+
     /* ---------------- Public operations -------------- */
 
     /**
@@ -438,10 +445,11 @@ public class HashMapCpy<K,V> extends AbstractMap<K,V>
      *
      * @param  initialCapacity the initial capacity
      * @param  loadFactor      the load factor
+     * @param  seededHash      whether to seed the hash, see SeededHash
      * @throws IllegalArgumentException if the initial capacity is negative
      *         or the load factor is nonpositive
      */
-    public HashMapCpy(int initialCapacity, float loadFactor) {
+    public HashMapCpy(int initialCapacity, float loadFactor, boolean seededHash) {
         if (initialCapacity < 0)
             throw new IllegalArgumentException("Illegal initial capacity: " +
                                                initialCapacity);
@@ -452,6 +460,24 @@ public class HashMapCpy<K,V> extends AbstractMap<K,V>
                                                loadFactor);
         this.loadFactor = loadFactor;
         this.threshold = tableSizeFor(initialCapacity);
+        this.hashSeed = seededHash ? SeededHash.newSeed() : 0;
+    }
+
+    public HashMapCpy(int initialCapacity, float loadFactor) {
+        this(initialCapacity, loadFactor, false);
+    }
+
+    /**
+     * Constructs an empty {@code HashMap} with the specified initial
+     * capacity and the default load factor (0.75), whose hashes are mixed
+     * with a random per-map seed if seededHash, see {@link SeededHash}.
+     *
+     * @param  initialCapacity the initial capacity.
+     * @param  seededHash whether to seed the hash against hash flooding
+     * @throws IllegalArgumentException if the initial capacity is negative.
+     */
+    public HashMapCpy(int initialCapacity, boolean seededHash) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR, seededHash);
     }
 
     /**
@@ -475,6 +501,7 @@ public class HashMapCpy<K,V> extends AbstractMap<K,V>
      */
     public HashMapCpy() {
         this.loadFactor = DEFAULT_LOAD_FACTOR; // all other fields defaulted
+        this.hashSeed = 0;
     }
 
     /**
@@ -488,6 +515,7 @@ public class HashMapCpy<K,V> extends AbstractMap<K,V>
      */
     public HashMapCpy(Map<? extends K, ? extends V> m) {
         this.loadFactor = DEFAULT_LOAD_FACTOR;
+        this.hashSeed = 0;
         putMapEntries(m, false);
     }
 
@@ -1454,6 +1482,17 @@ public class HashMapCpy<K,V> extends AbstractMap<K,V>
     /* ------------------------------------------------------------ */
     // Cloning and serialization
 
+    /**
+     * Returns an immutable copy of this map for read-only use, laid out by
+     * a minimal perfect hash.  Later changes to this map are not seen.
+     *
+     * @return an immutable copy of this map
+     * @see FrozenMap
+     */
+    public FrozenMap<K,V> freeze() {
+        return FrozenMap.copyOf(this);
+    }
+
     /**
      * Returns a shallow copy of this {@code HashMap} instance: the keys and
      * values themselves are not cloned.
@@ -2587,83 +2626,36 @@ public class HashMapCpy<K,V> extends AbstractMap<K,V>
         return new HashMapCpy<>(calculateHashMapCpyCapacity(numMappings));
     }
 
-    public void dumpStats(PrintStream out) {
-        out.printf("%s instance: size: %d%n", this.getClass().getName(), this.size());
-        long size = heapSize();
-        long bytesPer = size / this.size();
-        out.printf("    heap size: %d(bytes), avg bytes per entry: %d, table len: %d%n",
-                size, bytesPer, table.length);
-        long[] types = entryTypes();
-        out.printf("    values: %d, empty: %d%n", types[0], types[1]);
-        int[] rehashes = entryRehashes();
-        out.printf("    hash collision histogram: max: %d, %s%n",
-                rehashes.length - 1, Arrays.toString(rehashes));
+    public long heapBytes() {
+        return (table == null) ? 0L : heapSize();
     }
 
-    private long[] entryTypes() {
-        long[] counts = new long[3];
-        for (Node<K,V> te : table) {
-            counts[te!=null ? 1 : 0]++; // TODO changed but not verified
-        }
-        return counts;
-    }
-
-    // Returns a histogram array of the number of rehashs needed to find each key.
-    private int[] entryRehashes() {
-        int[] counts = new int[table.length + 1];
+    public int[] binLengthHistogram() {
         Node<K,V>[] tab = table;
+        if (tab == null)
+            return new int[0];
+        int[] counts = new int[tab.length + 1];
         for (Node<K,V> te : tab) {
-            if (te != null) { // TODO changed but not verified
-                int count = 0;
-                for (Node<K, V> e = te.next; e != null; e = e.next)
-                    count++;
-                counts[count]++;
-            }
-        }
-
-        int i;
-        for (i = counts.length - 1; i >= 0 && counts[i] == 0; i--) {
+            int count = 0;
+            for (Node<K, V> e = te; e != null; e = e.next) // TODO doesn't handle TreeNodes
+                count++;
+            counts[Math.min(count, tab.length)]++;
         }
-        counts = Arrays.copyOf(counts, i + 1);
-        return counts;
+        return MapStats.trimHistogram(counts);
     }
 
     private long heapSize() {
-        long acc = objectSizeMaybe(this);
-        acc += objectSizeMaybe(table);
+        long acc = HeapLayout.sizeOf(this);
+        acc += HeapLayout.sizeOf(table);
 
         Node<K,V>[] tab = table;
         for (Node<K,V> te : tab) {
             if (te != null) { // TODO changed but not verified
-                for (Node<K, V> e = te.next; e != null; e = e.next) // TODO doesn't handle TreeNodes
-                    acc += objectSizeMaybe(e);
+                for (Node<K, V> e = te; e != null; e = e.next) // TODO doesn't handle TreeNodes
+                    acc += HeapLayout.sizeOf(e);
             }
         }
         return acc;
     }
-
-    private static boolean hasObjectSize = false;
-    private static Method mObjectSize = getObjectSizeMethod();
-
-    private static Method getObjectSizeMethod() {
-        try {
-            Method m = Objects.class.getDeclaredMethod("getObjectSize", Object.class);
-            hasObjectSize = true;
-            return m;
-        } catch (NoSuchMethodException nsme) {
-            return null;
-        }
-    }
-
-    private long objectSizeMaybe(Object o) {
-        try {
-            return (mObjectSize != null)
-                    ? (long)mObjectSize.invoke(null, o)
-                    : 0L;
-        } catch (IllegalAccessException | java.lang.reflect.InvocationTargetException e) {
-            return 0L;
-        }
-    }
-
 }
 
@@ -26,11 +26,10 @@
 package mapprotos;
 
 import java.io.*;
-import java.lang.reflect.Method;
 import java.util.*;
 import java.util.function.Consumer;
 
-public class HashMapJustPutGet<K,V> extends AbstractMap<K,V> { // TODO maybe add "iterate" to name
+public class HashMapJustPutGet<K,V> extends AbstractMap<K,V> implements MapStats, BulkGet<K,V> { // TODO maybe add "iterate" to name
 
 
     /**
@@ -50,6 +49,16 @@ public class HashMapJustPutGet<K,V> extends AbstractMap<K,V> { // TODO maybe add
      */
     static final float DEFAULT_LOAD_FACTOR = 0.75f;
 
+    /**
+     * 2^32 / phi rounded to odd, the Fibonacci hashing multiplier.
+     */
+    static final int FIBONACCI_MULTIPLIER = 0x9E3779B9;
+
+    /**
+     * The number of keys getAll resolves together, see ArrayBinHashMap.
+     */
+    static final int GET_ALL_BLOCK = 16;
+
     /**
      * Basic hash bin node, used for most entries.  (See below for
      * TreeNode subclass, and in LinkedHashMapCpy for its Entry subclass.)
@@ -109,9 +118,25 @@ public class HashMapJustPutGet<K,V> extends AbstractMap<K,V> { // TODO maybe add
      * to incorporate impact of the highest bits that would otherwise
      * never be used in index calculations because of table bounds.
      */
-    static final int hash(Object key) {
+    final int hash(Object key) {
         int h;
-        return (key == null) ? 0 : (h = key.hashCode()) ^ (h >>> 16);
+        if (key == null)
+            return 0;
+        h = key.hashCode();
+        if (hashSeed != 0)
+            return SeededHash.mix(h, hashSeed);
+        return fibonacciIndex ? h * FIBONACCI_MULTIPLIER : h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the index of hash in a table of length n: its low bits, or
+     * with fibonacciIndex its high bits.  Multiplying by
+     * FIBONACCI_MULTIPLIER makes the high bits depend on every bit of the
+     * hash code, so keys that differ only in high bits, or that share
+     * their low bits like {@code 7 + i * 128}, still spread over the table.
+     */
+    final int indexFor(int hash, int n) {
+        return fibonacciIndex ? hash >>> indexShift : (n - 1) & hash;
     }
 
     /**
@@ -163,6 +188,11 @@ public class HashMapJustPutGet<K,V> extends AbstractMap<K,V> { // TODO maybe add
     // DEFAULT_INITIAL_CAPACITY.)
     int threshold;
 
+    /**
+     * 32 - log2(table.length), used by indexFor with fibonacciIndex.
+     */
+    transient int indexShift;
+
     /**
      * The load factor for the hash table.
      *
@@ -170,6 +200,17 @@ public class HashMapJustPutGet<K,V> extends AbstractMap<K,V> { // TODO maybe add
      */
     final float loadFactor;
 
+    /**
+     * Mixed into every hash if non-zero, see SeededHash.
+     */
+    final int hashSeed;
+
+    /**
+     * Whether bins are indexed by the high bits of a Fibonacci hash rather
+     * than the low bits of a spread one, see indexFor.
+     */
+    final boolean fibonacciIndex;
+
     /* ---------------- Public operations -------------- */
 
     /**
@@ -182,10 +223,13 @@ public class HashMapJustPutGet<K,V> extends AbstractMap<K,V> { // TODO maybe add
      *
      * @param  initialCapacity the initial capacity
      * @param  loadFactor      the load factor
+     * @param  seededHash      whether to seed the hash, see SeededHash
+     * @param  fibonacciIndex  whether to index by Fibonacci hashing, see indexFor
      * @throws IllegalArgumentException if the initial capacity is negative
      *         or the load factor is nonpositive
      */
-    public HashMapJustPutGet(int initialCapacity, float loadFactor) {
+    public HashMapJustPutGet(int initialCapacity, float loadFactor, boolean seededHash,
+                             boolean fibonacciIndex) {
         if (initialCapacity < 0)
             throw new IllegalArgumentException("Illegal initial capacity: " +
                                                initialCapacity);
@@ -196,6 +240,29 @@ public class HashMapJustPutGet<K,V> extends AbstractMap<K,V> { // TODO maybe add
                                                loadFactor);
         this.loadFactor = loadFactor;
         this.threshold = tableSizeFor(initialCapacity);
+        this.hashSeed = seededHash ? SeededHash.newSeed() : 0;
+        this.fibonacciIndex = fibonacciIndex;
+    }
+
+    public HashMapJustPutGet(int initialCapacity, float loadFactor, boolean seededHash) {
+        this(initialCapacity, loadFactor, seededHash, false);
+    }
+
+    public HashMapJustPutGet(int initialCapacity, float loadFactor) {
+        this(initialCapacity, loadFactor, false);
+    }
+
+    /**
+     * Constructs an empty {@code HashMap} with the specified initial
+     * capacity and the default load factor (0.75), whose hashes are mixed
+     * with a random per-map seed if seededHash, see {@link SeededHash}.
+     *
+     * @param  initialCapacity the initial capacity.
+     * @param  seededHash whether to seed the hash against hash flooding
+     * @throws IllegalArgumentException if the initial capacity is negative.
+     */
+    public HashMapJustPutGet(int initialCapacity, boolean seededHash) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR, seededHash);
     }
 
     /**
@@ -239,7 +306,7 @@ public class HashMapJustPutGet<K,V> extends AbstractMap<K,V> { // TODO maybe add
         int n, hash;
         K k;
         if ((tab = table) != null && (n = tab.length) > 0 &&
-            (first = tab[(n - 1) & (hash = hash(key))]) != null) {
+            (first = tab[indexFor(hash = hash(key), n)]) != null) {
             if (first.hash == hash && // always check first node
                 ((k = first.key) == key || (key != null && key.equals(k)))) {
                 node = first;
@@ -256,6 +323,50 @@ public class HashMapJustPutGet<K,V> extends AbstractMap<K,V> { // TODO maybe add
         return node == null ? null : node.value;
     }
 
+    /**
+     * Looks up each of keys and stores its value, or null, at the same index
+     * of out.  Keys go in blocks of GET_ALL_BLOCK: first every table slot of
+     * the block is read, then the chains are walked, so the misses on the
+     * table, and then on the first nodes, overlap instead of queueing.
+     *
+     * @throws IllegalArgumentException if out is shorter than keys
+     */
+    public void getAll(K[] keys, V[] out) {
+        if (out.length < keys.length)
+            throw new IllegalArgumentException("out.length " + out.length +
+                                               " < keys.length " + keys.length);
+        Node<K,V>[] tab; int n;
+        if ((tab = table) == null || (n = tab.length) == 0) {
+            Arrays.fill(out, 0, keys.length, null);
+            return;
+        }
+        final int[] hashes = new int[GET_ALL_BLOCK];
+        @SuppressWarnings({"rawtypes","unchecked"})
+        final Node<K,V>[] firsts = (Node<K,V>[])new Node[GET_ALL_BLOCK];
+        for (int base = 0; base < keys.length; base += GET_ALL_BLOCK) {
+            final int m = Math.min(GET_ALL_BLOCK, keys.length - base);
+            for (int j = 0; j < m; j++) {
+                int hash = hash(keys[base + j]);
+                hashes[j] = hash;
+                firsts[j] = tab[indexFor(hash, n)];
+            }
+            for (int j = 0; j < m; j++) {
+                Object key = keys[base + j];
+                int hash = hashes[j];
+                V value = null;
+                K k;
+                for (Node<K,V> e = firsts[j]; e != null; e = e.next) {
+                    if (e.hash == hash &&
+                        ((k = e.key) == key || (key != null && key.equals(k)))) {
+                        value = e.value;
+                        break;
+                    }
+                }
+                out[base + j] = value;
+            }
+        }
+    }
+
     /**
      * Associates the specified value with the specified key in this map.
      * If the map previously contained a mapping for the key, the old
@@ -287,7 +398,7 @@ public class HashMapJustPutGet<K,V> extends AbstractMap<K,V> { // TODO maybe add
         Node<K,V>[] tab; Node<K,V> p; int n, i;
         if ((tab = table) == null || (n = tab.length) == 0)
             n = (tab = resize()).length;
-        if ((p = tab[i = (n - 1) & hash]) == null)
+        if ((p = tab[i = indexFor(hash, n)]) == null)
             tab[i] = newNode(hash, key, value, null);
         else {
             Node<K,V> e; K k;
@@ -347,7 +458,7 @@ public class HashMapJustPutGet<K,V> extends AbstractMap<K,V> { // TODO maybe add
                 newThr = oldThr << 1; // double threshold
         }
         else if (oldThr > 0) // initial capacity was placed in threshold
-            newCap = oldThr;
+            newCap = fibonacciIndex ? Math.max(oldThr, 2) : oldThr; // shifting by 32 is shifting by 0
         else {               // zero initial threshold signifies using defaults
             newCap = DEFAULT_INITIAL_CAPACITY;
             newThr = (int)(DEFAULT_LOAD_FACTOR * DEFAULT_INITIAL_CAPACITY);
@@ -360,6 +471,7 @@ public class HashMapJustPutGet<K,V> extends AbstractMap<K,V> { // TODO maybe add
         threshold = newThr;
         @SuppressWarnings({"rawtypes","unchecked"})
         Node<K,V>[] newTab = (Node<K,V>[])new Node[newCap];
+        indexShift = Integer.numberOfLeadingZeros(newCap) + 1;
         table = newTab;
         if (oldTab != null) {
             throw new IllegalStateException("resize occurred");
@@ -501,79 +613,36 @@ public class HashMapJustPutGet<K,V> extends AbstractMap<K,V> { // TODO maybe add
         return new HashMapJustPutGet<>(calculateHashMapCpyCapacity(numMappings));
     }
 
-    public void dumpStats(PrintStream out) {
-        out.printf("%s instance: size: %d%n", this.getClass().getName(), this.size());
-        long size = heapSize();
-        long bytesPer = size / this.size();
-        out.printf("    heap size: %d(bytes), avg bytes per entry: %d, table len: %d%n",
-                size, bytesPer, table.length);
-        long[] types = entryTypes();
-        out.printf("    values: %d, empty: %d%n", types[1], types[0]);
-        int[] rehashes = entryRehashes();
-        out.printf("    hash collision histogram: max: %d, %s%n",
-                rehashes.length - 1, Arrays.toString(rehashes));
-    }
-
-    private long[] entryTypes() {
-        long[] counts = new long[3];
-        for (Node<K,V> te : table) {
-            counts[te!=null ? 1 : 0]++; // TODO changed but not verified
-        }
-        return counts;
+    public long heapBytes() {
+        return (table == null) ? 0L : heapSize();
     }
 
-    // Returns a histogram array of the number of rehashs needed to find each key.
-    private int[] entryRehashes() {
-        int[] counts = new int[size];
+    public int[] binLengthHistogram() {
         Node<K,V>[] tab = table;
+        if (tab == null)
+            return new int[0];
+        int[] counts = new int[tab.length + 1];
         for (Node<K,V> te : tab) {
             int count = 0;
             for (Node<K, V> e = te; e != null; e = e.next)
                 count++;
-            counts[count]++;
-        }
-
-        int i;
-        for (i = counts.length - 1; i >= 0 && counts[i] == 0; i--) {
+            counts[Math.min(count, tab.length)]++;
         }
-        counts = Arrays.copyOf(counts, i + 1);
-        return counts;
+        return MapStats.trimHistogram(counts);
     }
 
     private long heapSize() {
-        long acc = objectSizeMaybe(this);
-        acc += objectSizeMaybe(table);
+        long acc = HeapLayout.sizeOf(this);
+        acc += HeapLayout.sizeOf(table);
 
         Node<K,V>[] tab = table;
         for (Node<K,V> te : tab) {
             if (te != null) { // TODO changed but not verified
-                for (Node<K, V> e = te.next; e != null; e = e.next)
-                    acc += objectSizeMaybe(e);
+                for (Node<K, V> e = te; e != null; e = e.next)
+                    acc += HeapLayout.sizeOf(e);
             }
         }
         return acc;
     }
-
-    private static Method mObjectSize = getObjectSizeMethod();
-
-    private static Method getObjectSizeMethod() {
-        try {
-            Method m = Objects.class.getDeclaredMethod("getObjectSize", Object.class);
-            return m;
-        } catch (NoSuchMethodException nsme) {
-            return null;
-        }
-    }
-
-    private long objectSizeMaybe(Object o) {
-        try {
-            return (mObjectSize != null)
-                    ? (long)mObjectSize.invoke(null, o)
-                    : 0L;
-        } catch (IllegalAccessException | java.lang.reflect.InvocationTargetException e) {
-            return 0L;
-        }
-    }
-
 }
 
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Estimates heap sizes of objects from a model of the HotSpot object layout,
+ * for the maps' heap size stats.  A stock JDK has no Objects.getObjectSize,
+ * so the maps used to report 0 bytes.
+ *
+ * <p>The model: an object is a mark word plus a class pointer (4 bytes with
+ * compressed class pointers, else 8), then its fields, the whole rounded up
+ * to ObjectAlignmentInBytes.  References take 4 bytes with compressed oops,
+ * else 8.  An array header adds a 4 byte length and is rounded to 8 bytes
+ * when that is not already the element alignment.  HotSpot packs fields to
+ * fill gaps, including into a superclass's trailing gap, so summing field
+ * sizes matches it except for rare padding between differently sized fields.
+ * The flags are read from the running VM, falling back to the defaults for
+ * heaps under 32GB.
+ */
+public final class HeapLayout {
+
+    static final boolean COMPRESSED_OOPS = booleanFlag("UseCompressedOops", true);
+    static final boolean COMPRESSED_CLASS_POINTERS = booleanFlag("UseCompressedClassPointers", true);
+    static final int OBJECT_ALIGNMENT = intFlag("ObjectAlignmentInBytes", 8);
+
+    static final int REFERENCE_SIZE = COMPRESSED_OOPS ? 4 : 8;
+    static final int HEADER_SIZE = 8 + (COMPRESSED_CLASS_POINTERS ? 4 : 8);
+    static final int ARRAY_LENGTH_OFFSET = HEADER_SIZE;
+
+    private static final ClassValue<Long> INSTANCE_SIZES = new ClassValue<>() {
+        @Override
+        protected Long computeValue(Class<?> type) {
+            long fields = 0;
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field f : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(f.getModifiers()))
+                        fields += fieldSize(f.getType());
+                }
+            }
+            return align(HEADER_SIZE + fields, OBJECT_ALIGNMENT);
+        }
+    };
+
+    private HeapLayout() {
+    }
+
+    /**
+     * Returns the estimated size of o alone, not of the objects it refers
+     * to, or 0 for null.
+     */
+    public static long sizeOf(Object o) {
+        if (o == null)
+            return 0L;
+        Class<?> type = o.getClass();
+        if (type.isArray())
+            return arraySize(type.getComponentType(), java.lang.reflect.Array.getLength(o));
+        return INSTANCE_SIZES.get(type);
+    }
+
+    /**
+     * Returns the estimated size of an instance of type.
+     */
+    public static long instanceSize(Class<?> type) {
+        return INSTANCE_SIZES.get(type);
+    }
+
+    /**
+     * Returns the estimated size of an array of length elements of componentType.
+     */
+    public static long arraySize(Class<?> componentType, int length) {
+        return align(arrayBaseOffset(componentType) + (long) fieldSize(componentType) * length,
+                     OBJECT_ALIGNMENT);
+    }
+
+    /**
+     * Returns the offset of element 0, the header and length rounded up to
+     * the element size or 8 bytes, whichever is smaller.
+     */
+    static long arrayBaseOffset(Class<?> componentType) {
+        return align(ARRAY_LENGTH_OFFSET + 4, Math.min(fieldSize(componentType), 8));
+    }
+
+    static int fieldSize(Class<?> type) {
+        if (!type.isPrimitive())
+            return REFERENCE_SIZE;
+        if (type == long.class || type == double.class)
+            return 8;
+        if (type == int.class || type == float.class)
+            return 4;
+        if (type == short.class || type == char.class)
+            return 2;
+        return 1; // byte, boolean
+    }
+
+    static long align(long size, int alignment) {
+        return (size + alignment - 1) & -alignment;
+    }
+
+    private static boolean booleanFlag(String name, boolean defaultValue) {
+        String v = vmOption(name);
+        return (v == null) ? defaultValue : Boolean.parseBoolean(v);
+    }
+
+    private static int intFlag(String name, int defaultValue) {
+        String v = vmOption(name);
+        return (v == null) ? defaultValue : Integer.parseInt(v);
+    }
+
+    private static String vmOption(String name) {
+        try {
+            return ManagementFactory.getPlatformMXBean(com.sun.management.HotSpotDiagnosticMXBean.class)
+                    .getVMOption(name).getValue();
+        } catch (RuntimeException | LinkageError e) {
+            return null; // not HotSpot, or no such flag
+        }
+    }
+}
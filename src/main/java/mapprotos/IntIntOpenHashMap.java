@@ -0,0 +1,480 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * An {@code int} to {@code int} open addressing hash map with linear probing.
+ * Keys and values are held in parallel {@code int[]} arrays, so neither
+ * {@code get(int)} nor {@code put(int, int)} allocates or chases a pointer
+ * beyond the two arrays.  It is the no-boxing baseline for the
+ * {@code Map<Integer,Integer>} prototypes in this package; see
+ * {@link IntIntOpenHashMapAdapter} for running it through the boxed harness.
+ *
+ * <p>Key {@code 0} marks an empty slot in {@code keys}, so a mapping for key
+ * {@code 0} is tracked by {@code hasFreeKey} and its value is kept in the
+ * extra last slot of {@code values}.  Absent keys read as {@link #NO_VALUE}.
+ */
+public class IntIntOpenHashMap {
+
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * The maximum capacity, MUST be a power of two <= 1<<30.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The load factor used when none specified in constructor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The key that marks an empty slot in {@code keys}.
+     */
+    static final int FREE_KEY = 0;
+
+    /**
+     * The value returned by {@link #get(int)}, {@link #put(int, int)} and
+     * {@link #remove(int)} when there is no mapping for the key.
+     */
+    public static final int NO_VALUE = 0;
+
+    /**
+     * The number of keys getAll resolves together.
+     */
+    static final int GET_ALL_BLOCK = 16;
+
+    /**
+     * The keys, a power of two long.  FREE_KEY marks an empty slot.
+     */
+    int[] keys;
+
+    /**
+     * The values, one longer than keys.  values[keys.length] holds the
+     * value for FREE_KEY when hasFreeKey is set.
+     */
+    int[] values;
+
+    boolean hasFreeKey;
+
+    int size;
+
+    /**
+     * The next size value at which to resize (capacity * load factor).
+     */
+    int threshold;
+
+    final float loadFactor;
+
+    public IntIntOpenHashMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+        this.loadFactor = loadFactor;
+        allocate(tableSizeFor(initialCapacity));
+    }
+
+    public IntIntOpenHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    public IntIntOpenHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Returns a power of two size for the given target capacity, at least 2
+     * so that there is always an empty slot to end a probe.
+     */
+    static int tableSizeFor(int cap) {
+        int n = -1 >>> Integer.numberOfLeadingZeros(Math.max(cap, 2) - 1);
+        return (n >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY : n + 1;
+    }
+
+    /**
+     * Spreads the key over the table.  The multiplier is 2^32 divided by the
+     * golden ratio; the multiply moves low key bits into the high bits, and
+     * the xor folds them back down where the mask can see them.
+     */
+    static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void allocate(int cap) {
+        keys = new int[cap];
+        values = new int[cap + 1];
+        threshold = Math.min((int) (cap * loadFactor), cap - 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the slot holding key, keys.length for FREE_KEY, or -1 if
+     * there is no mapping for key.
+     */
+    final int indexOf(int key) {
+        int[] ks = keys;
+        if (key == FREE_KEY)
+            return hasFreeKey ? ks.length : -1;
+        int mask = ks.length - 1;
+        int k;
+        for (int i = hash(key) & mask; (k = ks[i]) != FREE_KEY; i = (i + 1) & mask) {
+            if (k == key)
+                return i;
+        }
+        return -1;
+    }
+
+    public int get(int key) {
+        int[] ks = keys;
+        if (key == FREE_KEY)
+            return hasFreeKey ? values[ks.length] : NO_VALUE;
+        int mask = ks.length - 1;
+        int k;
+        for (int i = hash(key) & mask; (k = ks[i]) != FREE_KEY; i = (i + 1) & mask) {
+            if (k == key)
+                return values[i];
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Looks up each of keys and stores its value, or {@link #NO_VALUE}, at
+     * the same index of out.  Keys go in blocks of GET_ALL_BLOCK: first the
+     * home slot of every key in the block is read, then the probes are
+     * finished and the values read.  Each pass's loads are independent, so
+     * on a table much larger than the last level cache they miss in
+     * parallel instead of one key after another.
+     *
+     * @throws IllegalArgumentException if out is shorter than keys
+     */
+    public void getAll(int[] keys, int[] out) {
+        if (out.length < keys.length)
+            throw new IllegalArgumentException("out.length " + out.length +
+                                               " < keys.length " + keys.length);
+        final int[] ks = this.keys;
+        final int[] vs = values;
+        final int mask = ks.length - 1;
+        final int[] slots = new int[GET_ALL_BLOCK];
+        final int[] homeKeys = new int[GET_ALL_BLOCK];
+        for (int base = 0; base < keys.length; base += GET_ALL_BLOCK) {
+            final int m = Math.min(GET_ALL_BLOCK, keys.length - base);
+            for (int j = 0; j < m; j++) {
+                int i = hash(keys[base + j]) & mask;
+                slots[j] = i;
+                homeKeys[j] = ks[i];
+            }
+            for (int j = 0; j < m; j++) {
+                int key = keys[base + j];
+                if (key == FREE_KEY) {
+                    out[base + j] = hasFreeKey ? vs[ks.length] : NO_VALUE;
+                    continue;
+                }
+                int i = slots[j];
+                int k = homeKeys[j];
+                while (k != key && k != FREE_KEY) {
+                    i = (i + 1) & mask;
+                    k = ks[i];
+                }
+                out[base + j] = (k == key) ? vs[i] : NO_VALUE;
+            }
+        }
+    }
+
+    public int getOrDefault(int key, int defaultValue) {
+        int i = indexOf(key);
+        return i < 0 ? defaultValue : values[i];
+    }
+
+    public boolean containsKey(int key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Associates value with key.
+     *
+     * @return the previous value for key, or {@link #NO_VALUE} if there was none
+     */
+    public int put(int key, int value) {
+        int i = insert(key, value);
+        if (i < 0)
+            return NO_VALUE;
+        int oldValue = values[i];
+        values[i] = value;
+        return oldValue;
+    }
+
+    /**
+     * Adds a mapping for key if there is none.
+     *
+     * @return the slot of the existing mapping for key, whose value is left
+     * unchanged, or -1 if a new mapping was added
+     */
+    final int insert(int key, int value) {
+        int[] ks = keys;
+        if (key == FREE_KEY) {
+            if (hasFreeKey)
+                return ks.length;
+            hasFreeKey = true;
+            values[ks.length] = value;
+            ++size;
+            return -1;
+        }
+        int mask = ks.length - 1;
+        int i, k;
+        for (i = hash(key) & mask; (k = ks[i]) != FREE_KEY; i = (i + 1) & mask) {
+            if (k == key)
+                return i;
+        }
+        ks[i] = key;
+        values[i] = value;
+        if (++size > threshold)
+            resize();
+        return -1;
+    }
+
+    /**
+     * Maps each of keys to the value at the same index of values, as a loop
+     * of put would, with the table built by tasks of pool.  The new table is
+     * sized up front for the existing mappings plus keys, and each key is
+     * assigned to a range of it by the high bits of its home slot.  Each
+     * range is filled by its own task, which no other task writes to.  A
+     * probe that would run off the end of its range stops there instead, and
+     * its key is put once the new table has replaced the old one.  Like put,
+     * this must not race with other uses of the map.
+     *
+     * @throws IllegalArgumentException if values is shorter than keys
+     */
+    public void parallelPutAll(int[] keys, int[] values, ForkJoinPool pool) {
+        if (values.length < keys.length)
+            throw new IllegalArgumentException("values.length " + values.length +
+                                               " < keys.length " + keys.length);
+        if (keys.length < ParallelBuild.MIN_PARALLEL_SIZE) {
+            for (int i = 0; i < keys.length; i++)
+                put(keys[i], values[i]);
+            return;
+        }
+        // The existing mappings are moved first, so that keys replace them.
+        final int[] oldKeys = new int[size];
+        final int[] oldValues = new int[size];
+        int o = 0;
+        if (hasFreeKey) {
+            oldKeys[o] = FREE_KEY;
+            oldValues[o++] = this.values[this.keys.length];
+        }
+        for (int j = 0; j < this.keys.length; j++) {
+            if (this.keys[j] != FREE_KEY) {
+                oldKeys[o] = this.keys[j];
+                oldValues[o++] = this.values[j];
+            }
+        }
+        final int numOld = o;
+        final int total = numOld + keys.length;
+        final int cap = Math.max(tableSizeFor((int) Math.min(Math.ceil(total / (double) loadFactor),
+                                                             MAXIMUM_CAPACITY)),
+                                 this.keys.length);
+        final int mask = cap - 1;
+        final int ranges = ParallelBuild.rangeCount(pool, cap);
+        final int rangeShift = Integer.numberOfTrailingZeros(cap) - Integer.numberOfTrailingZeros(ranges);
+        final int[] rangeStart = new int[ranges + 1];
+        final int[] order = ParallelBuild.groupByRange(pool, total, ranges,
+                i -> (hash((i < numOld) ? oldKeys[i] : keys[i - numOld]) & mask) >>> rangeShift,
+                rangeStart);
+
+        final int[] ks = new int[cap];
+        final int[] vs = new int[cap + 1];
+        final int[] added = new int[ranges];
+        final boolean[] freeKeyIn = new boolean[ranges];
+        final int[][] spilled = new int[ranges][];
+        ParallelBuild.forEach(pool, ranges, r -> {
+            final int hi = (r + 1) << rangeShift;
+            int count = 0;
+            int[] spills = new int[0];
+            int numSpills = 0;
+            for (int j = rangeStart[r]; j < rangeStart[r + 1]; j++) {
+                int item = order[j];
+                int key = (item < numOld) ? oldKeys[item] : keys[item - numOld];
+                int value = (item < numOld) ? oldValues[item] : values[item - numOld];
+                if (key == FREE_KEY) {
+                    if (!freeKeyIn[r]) {
+                        freeKeyIn[r] = true;
+                        count++;
+                    }
+                    vs[cap] = value;
+                    continue;
+                }
+                int i, k;
+                for (i = hash(key) & mask; i < hi && (k = ks[i]) != FREE_KEY && k != key; i++) {
+                }
+                if (i == hi) {
+                    if (numSpills == spills.length)
+                        spills = Arrays.copyOf(spills, Math.max(8, numSpills << 1));
+                    spills[numSpills++] = item;
+                } else {
+                    if (ks[i] == FREE_KEY) {
+                        ks[i] = key;
+                        count++;
+                    }
+                    vs[i] = value;
+                }
+            }
+            added[r] = count;
+            spilled[r] = Arrays.copyOf(spills, numSpills);
+        });
+
+        int newSize = 0;
+        boolean newHasFreeKey = false;
+        for (int r = 0; r < ranges; r++) {
+            newSize += added[r];
+            newHasFreeKey |= freeKeyIn[r];
+        }
+        this.keys = ks;
+        this.values = vs;
+        threshold = Math.min((int) (cap * loadFactor), cap - 1);
+        hasFreeKey = newHasFreeKey;
+        size = newSize;
+        for (int[] spills : spilled) {
+            for (int item : spills)
+                put((item < numOld) ? oldKeys[item] : keys[item - numOld],
+                    (item < numOld) ? oldValues[item] : values[item - numOld]);
+        }
+    }
+
+    /**
+     * Removes the mapping for key.  The rest of its probe run is shifted back
+     * over the freed slot, so no tombstones are left behind.
+     *
+     * @return the removed value, or {@link #NO_VALUE} if there was none
+     */
+    public int remove(int key) {
+        int i = indexOf(key);
+        if (i < 0)
+            return NO_VALUE;
+        int[] ks = keys;
+        int[] vs = values;
+        int oldValue = vs[i];
+        --size;
+        if (i == ks.length) {
+            hasFreeKey = false;
+            return oldValue;
+        }
+        int mask = ks.length - 1;
+        for (int j = (i + 1) & mask; ks[j] != FREE_KEY; j = (j + 1) & mask) {
+            int home = hash(ks[j]) & mask;
+            // Move ks[j] into the gap unless its home slot lies cyclically in (i, j].
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                ks[i] = ks[j];
+                vs[i] = vs[j];
+                i = j;
+            }
+        }
+        ks[i] = FREE_KEY;
+        return oldValue;
+    }
+
+    public void clear() {
+        if (size > 0) {
+            size = 0;
+            hasFreeKey = false;
+            Arrays.fill(keys, FREE_KEY);
+        }
+    }
+
+    final void resize() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        int oldCap = oldKeys.length;
+        if (oldCap >= MAXIMUM_CAPACITY) {
+            if (size >= MAXIMUM_CAPACITY - 1)
+                throw new IllegalStateException("IntIntOpenHashMap is full");
+            threshold = MAXIMUM_CAPACITY - 1;
+            return;
+        }
+        allocate(oldCap << 1);
+        int[] ks = keys;
+        int[] vs = values;
+        int mask = ks.length - 1;
+        vs[ks.length] = oldValues[oldCap];
+        for (int j = 0; j < oldCap; j++) {
+            int key = oldKeys[j];
+            if (key != FREE_KEY) {
+                int i = hash(key) & mask;
+                while (ks[i] != FREE_KEY)
+                    i = (i + 1) & mask;
+                ks[i] = key;
+                vs[i] = oldValues[j];
+            }
+        }
+    }
+
+    public void dumpStats(PrintStream out) {
+        out.printf("%s instance: size: %d%n", this.getClass().getName(), this.size());
+        long size = heapSize();
+        long bytesPer = size / Math.max(this.size(), 1);
+        out.printf("    heap size: %d(bytes), avg bytes per entry: %d, table len: %d%n",
+                size, bytesPer, keys.length);
+        int[] probes = entryProbes();
+        out.printf("    probe length histogram: max: %d, %s%n",
+                probes.length - 1, Arrays.toString(probes));
+    }
+
+    // Returns a histogram of the number of slots probed to find each key.
+    private int[] entryProbes() {
+        int[] ks = keys;
+        int mask = ks.length - 1;
+        int[] counts = new int[ks.length + 1];
+        for (int j = 0; j < ks.length; j++) {
+            if (ks[j] != FREE_KEY)
+                counts[((j - (hash(ks[j]) & mask)) & mask) + 1]++;
+        }
+        if (hasFreeKey)
+            counts[1]++;
+
+        int i;
+        for (i = counts.length - 1; i >= 0 && counts[i] == 0; i--) {
+        }
+        counts = Arrays.copyOf(counts, i + 1);
+        return counts;
+    }
+
+    private long heapSize() {
+        return HeapLayout.sizeOf(this) + HeapLayout.sizeOf(keys) + HeapLayout.sizeOf(values);
+    }
+}
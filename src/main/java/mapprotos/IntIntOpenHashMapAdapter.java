@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import java.io.PrintStream;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Runs an {@link IntIntOpenHashMap} through the {@code Map<Integer,Integer>}
+ * benchmarks.  Every call boxes or unboxes, so comparing GetX/PutX on this
+ * mapType with GetIntX/PutIntX, which call the primitive map directly, shows
+ * what the boxing costs.  Null keys and values are not supported.
+ */
+public class IntIntOpenHashMapAdapter extends AbstractMap<Integer,Integer> {
+
+    final IntIntOpenHashMap map;
+
+    public IntIntOpenHashMapAdapter(int initialCapacity) {
+        map = new IntIntOpenHashMap(initialCapacity);
+    }
+
+    public IntIntOpenHashMapAdapter() {
+        map = new IntIntOpenHashMap();
+    }
+
+    IntIntOpenHashMap unwrap() {
+        return map;
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public boolean containsKey(Object key) {
+        return key instanceof Integer k && map.containsKey(k);
+    }
+
+    public Integer get(Object key) {
+        if (!(key instanceof Integer k))
+            return null;
+        int i = map.indexOf(k);
+        return i < 0 ? null : map.values[i];
+    }
+
+    public Integer put(Integer key, Integer value) {
+        int v = value;
+        int i = map.insert(key, v);
+        if (i < 0)
+            return null;
+        int oldValue = map.values[i];
+        map.values[i] = v;
+        return oldValue;
+    }
+
+    public Integer remove(Object key) {
+        if (!(key instanceof Integer k) || !map.containsKey(k))
+            return null;
+        return map.remove(k);
+    }
+
+    public void clear() {
+        map.clear();
+    }
+
+    public void dumpStats(PrintStream out) {
+        map.dumpStats(out);
+    }
+
+    public Set<Entry<Integer,Integer>> entrySet() {
+        return new AbstractSet<>() {
+            public int size() {
+                return map.size();
+            }
+
+            public Iterator<Entry<Integer,Integer>> iterator() {
+                return new EntryIterator();
+            }
+        };
+    }
+
+    /**
+     * Walks the slots in table order and then the FREE_KEY mapping.  A
+     * resize or removal while walking is reported as a
+     * ConcurrentModificationException only if it changed the size.
+     */
+    final class EntryIterator implements Iterator<Entry<Integer,Integer>> {
+        final int[] keys = map.keys;
+        final int expectedSize = map.size();
+        int index = advance(0);
+
+        private int advance(int i) {
+            int[] ks = keys;
+            while (i < ks.length && ks[i] == IntIntOpenHashMap.FREE_KEY)
+                i++;
+            if (i == ks.length && !map.hasFreeKey)
+                i++;
+            return i;
+        }
+
+        public boolean hasNext() {
+            return index <= keys.length;
+        }
+
+        public Entry<Integer,Integer> next() {
+            int i = index;
+            if (i > keys.length)
+                throw new NoSuchElementException();
+            if (map.size() != expectedSize || map.keys != keys)
+                throw new ConcurrentModificationException();
+            index = advance(i + 1);
+            int key = (i == keys.length) ? IntIntOpenHashMap.FREE_KEY : keys[i];
+            return new SimpleImmutableEntry<>(key, map.values[i]);
+        }
+    }
+}
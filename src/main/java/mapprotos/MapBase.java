@@ -59,11 +59,19 @@ public class MapBase {
     private int seed;
 
     @Param(value = {
-//        "newhash.OpenHashMap",
+        "newhash.OpenHashMap",
         "newhash.IdentityHashMapOrig",
         "newhash.IdentityHashMapFibonacci",
+        "mapprotos.ArrayBinHashMap",
+        "mapprotos.ArrayBinHashMapFibonacci",
+        "mapprotos.HashMapCpy",
+        "mapprotos.RobinHoodHashMap",
+        "mapprotos.SwissHashMap",
+        "mapprotos.SplitBinHashMap",
+//        "mapprotos.IntIntOpenHashMapAdapter",
 //        "mapprotos.ArrayBinHashMapJustPutGet",
 //        "mapprotos.HashMapJustPutGet",
+//        "mapprotos.HashMapJustPutGetFibonacci",
 //        "mapprotos.ArrayBinLessIndexHashMap",
 //            "mapprotos.XHashMap",
 //            "org.openjdk.bench.valhalla.corelibs.mapprotos.HashMap",
@@ -72,6 +80,23 @@ public class MapBase {
     })
     public String mapType;
 
+    // How lookups are spread over the keys: "uniform" looks up each key once in shuffled order,
+    // "zipf" draws keys with Zipf skew zipfS, "bursty" mostly re-reads recently used keys.
+    @Param({
+        "uniform",
+//        "zipf",
+//        "bursty",
+    })
+    public String accessDist;
+
+    // Zipf exponent, 0.8 - 1.2 is typical of web traffic, see NOTES-PerformanceTestFrequencyDistribution.md
+    @Param({"1.0"})
+    public double zipfS;
+
+    // For "bursty": the chance a lookup re-reads one of the last BURST_WINDOW keys looked up.
+    static final double BURST_REUSE = 0.75;
+    static final int BURST_WINDOW = 32;
+
     public Random rnd;
     public Integer[] keys;
     public Integer[] nonKeys;
@@ -88,13 +113,71 @@ public class MapBase {
         nonKeys = Arrays.copyOfRange(all, size, size * 2);
     }
 
+    /**
+     * Returns the order in which to look up the keys of pool, as many lookups as pool has keys.
+     * The pool is already shuffled, so the hot keys of the skewed distributions are spread
+     * randomly over the table.
+     */
+    public Integer[] accessSequence(Integer[] pool) {
+        Integer[] seq;
+        switch (accessDist) {
+            case "uniform":
+                return pool;
+            case "zipf":
+                ZipfSampler zipf = new ZipfSampler(pool.length, zipfS);
+                seq = new Integer[pool.length];
+                for (int i = 0; i < seq.length; i++) {
+                    seq[i] = pool[zipf.sample(rnd) - 1];
+                }
+                break;
+            case "bursty":
+                seq = new Integer[pool.length];
+                for (int i = 0; i < seq.length; i++) {
+                    seq[i] = (i > 0 && rnd.nextDouble() < BURST_REUSE)
+                            ? seq[i - 1 - rnd.nextInt(Math.min(i, BURST_WINDOW))]
+                            : pool[rnd.nextInt(pool.length)];
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown accessDist: " + accessDist);
+        }
+        System.out.println("accessDist:" + accessDist + " distinct keys:" + Arrays.stream(seq).distinct().count() + " of " + pool.length);
+        return seq;
+    }
+
+    /**
+     * Whether TearDown also reports {@link MapStats#keyValueBytes()}; set it
+     * with {@code -jvmArgsAppend -Dmapprotos.keyValueBytes=true}.
+     */
+    static final boolean KEY_VALUE_BYTES = Boolean.getBoolean("mapprotos.keyValueBytes");
+
     void TearDown(Map<Integer, Integer> map) {
+        dumpStats(map);
+        if (KEY_VALUE_BYTES && map instanceof MapStats stats) {
+            try {
+                System.out.printf("    keys and values: %d(bytes)%n", stats.keyValueBytes());
+            } catch (UnsupportedOperationException uoe) {
+                System.out.println("    keys and values: not available, iteration is not supported");
+            }
+        }
+    }
+
+    /**
+     * Prints the stats of a MapStats map, or of any other map with a dumpStats(PrintStream)
+     * method.
+     */
+    static void dumpStats(Object map) {
+        if (map instanceof MapStats stats) {
+            stats.dumpStats(System.out);
+            return;
+        }
         try {
             Method m = map.getClass().getMethod("dumpStats", java.io.PrintStream.class);
             m.invoke(map, System.out);
-        } catch (Throwable nsme) {
-            System.out.println("Stats not available:");
-            throw new IllegalStateException(nsme);
+        } catch (NoSuchMethodException nsme) {
+            System.out.println("Stats not available: " + map.getClass().getName());
+        } catch (ReflectiveOperationException roe) {
+            throw new IllegalStateException(roe);
         }
     }
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Footprint and layout statistics for a map prototype, read by the benchmark
+ * harness after a map has been filled.  Bins are the unit the map hashes to:
+ * a table slot for the binned and chained maps.
+ */
+public interface MapStats {
+
+    /**
+     * Returns the number of mappings.
+     */
+    int size();
+
+    /**
+     * Returns the bytes of heap held by the map itself: the map object, its
+     * table and its nodes, but not the keys and values.
+     */
+    long heapBytes();
+
+    /**
+     * Returns a histogram of bin lengths: element i is the number of bins
+     * holding i entries, so element 0 counts the empty bins and the sum is
+     * the table length.  Trailing zero counts are trimmed.
+     */
+    int[] binLengthHistogram();
+
+    /**
+     * Returns the bytes of heap held by the distinct key and value objects,
+     * not counting anything they refer to.  Small boxed values come from a
+     * shared cache, so each object is counted once however often it occurs.
+     * Returns 0 if this is not a Map.
+     *
+     * <p>This iterates the whole map and tracks every object it meets, far
+     * too slow and large for the biggest benchmark sizes, so
+     * {@link #dumpStats(PrintStream)} leaves it out; MapBase reports it
+     * only when asked to, see {@link MapBase#KEY_VALUE_BYTES}.
+     */
+    default long keyValueBytes() {
+        if (!(this instanceof Map<?,?> map))
+            return 0L;
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        long acc = 0L;
+        for (Map.Entry<?,?> e : map.entrySet()) {
+            if (seen.add(e.getKey()))
+                acc += HeapLayout.sizeOf(e.getKey());
+            if (seen.add(e.getValue()))
+                acc += HeapLayout.sizeOf(e.getValue());
+        }
+        return acc;
+    }
+
+    default double bytesPerEntry() {
+        int n = size();
+        return (n == 0) ? 0.0 : (double) heapBytes() / n;
+    }
+
+    /**
+     * Returns the number of empty bins.
+     */
+    default long emptySlots() {
+        int[] hist = binLengthHistogram();
+        return (hist.length == 0) ? 0 : hist[0];
+    }
+
+    /**
+     * Returns the most entries looked at by any successful lookup, which is
+     * the longest bin.
+     */
+    default int maxProbeLength() {
+        return Math.max(binLengthHistogram().length - 1, 0);
+    }
+
+    default void dumpStats(PrintStream out) {
+        int[] hist = binLengthHistogram();
+        out.printf("%s instance: size: %d%n", this.getClass().getName(), size());
+        out.printf("    heap size: %d(bytes), avg bytes per entry: %.1f, table len: %d%n",
+                heapBytes(), bytesPerEntry(), Arrays.stream(hist).asLongStream().sum());
+        out.printf("    values: %d, empty: %d%n", size(), emptySlots());
+        out.printf("    bin length histogram: max: %d, %s%n",
+                maxProbeLength(), Arrays.toString(hist));
+    }
+
+    /**
+     * Returns counts trimmed of trailing zeros.
+     */
+    static int[] trimHistogram(int[] counts) {
+        int i;
+        for (i = counts.length - 1; i >= 0 && counts[i] == 0; i--) {
+        }
+        return Arrays.copyOf(counts, i + 1);
+    }
+}
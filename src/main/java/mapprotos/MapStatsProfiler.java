@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reports a {@link MapStats} map's footprint as JMH secondary results, next
+ * to the latency of the benchmark that built or read it.  Run with
+ * {@code -prof mapprotos.MapStatsProfiler}.  Walking a map for its stats is
+ * too slow to do inside a measured invocation, so a benchmark takes a
+ * {@link Snapshot} during setup and {@link #record records} it; after each
+ * iteration the profiler reports the snapshot recorded for that benchmark.
+ * The values are gauges, averaged over the iterations rather than summed as
+ * {@code @AuxCounters} would.  Maps that do not implement MapStats report
+ * zeros.
+ */
+public class MapStatsProfiler implements InternalProfiler {
+
+    private record Recorded(String benchmark, Snapshot snapshot) {}
+
+    private static volatile Recorded recorded;
+
+    /** Makes s the footprint reported for the benchmark of params. */
+    static void record(BenchmarkParams params, Snapshot s) {
+        recorded = new Recorded(params.getBenchmark(), s);
+    }
+
+    @Override
+    public String getDescription() {
+        return "Footprint of the map a mapprotos benchmark built or read";
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams,
+            IterationParams iterationParams, IterationResult result) {
+        Recorded r = recorded;
+        if (r == null || !r.benchmark().equals(benchmarkParams.getBenchmark())) {
+            return List.of();
+        }
+        Snapshot s = r.snapshot();
+        return List.of(
+            new ScalarResult("heapBytes", s.heapBytes, "bytes", AggregationPolicy.AVG),
+            new ScalarResult("bytesPerEntry", s.bytesPerEntry, "bytes/entry", AggregationPolicy.AVG),
+            new ScalarResult("emptySlots", s.emptySlots, "slots", AggregationPolicy.AVG),
+            new ScalarResult("maxProbeLength", s.maxProbeLength, "probes", AggregationPolicy.AVG));
+    }
+
+    static final class Snapshot {
+        final long heapBytes;
+        final double bytesPerEntry;
+        final long emptySlots;
+        final long maxProbeLength;
+
+        Snapshot(Object map) {
+            if (map instanceof MapStats stats) {
+                heapBytes = stats.heapBytes();
+                bytesPerEntry = stats.bytesPerEntry();
+                emptySlots = stats.emptySlots();
+                maxProbeLength = stats.maxProbeLength();
+            } else {
+                heapBytes = 0;
+                bytesPerEntry = 0;
+                emptySlots = 0;
+                maxProbeLength = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Many maps at once, as in a whole backend: lookups are Zipf distributed over
+ * the maps (mapZipfS) and, within a map, over its keys (zipfS).  Map sizes
+ * are drawn from the tiers in NOTES-PerformanceTestFrequencyDistribution.md,
+ * weighted toward small maps, so hot maps compete for cache with each other
+ * and with the cold ones instead of one table staying warm.  Each invocation
+ * does {@code size} lookups, all hits.  accessDist is not used, keys are
+ * always drawn with zipfS.
+ */
+public class MultiMapX extends MapBase {
+
+    @Param({"2048"})
+    public int mapCount;
+
+    // Percent of maps in each size tier, ':' separated, see SIZE_TIERS.
+    @Param({"30:40:20:8:2"})
+    public String sizeTierWeights;
+
+    // Zipf exponent for choosing a map, lower than for keys, the notes suggest 0.5 - 0.8.
+    @Param({"0.7"})
+    public double mapZipfS;
+
+    // Bounds of each size tier: very small, small, medium, large, very large.
+    static final int[][] SIZE_TIERS = {
+        {1, 10},
+        {10, 200},
+        {200, 1_000},
+        {1_000, 10_000},
+        {10_000, 50_000},
+    };
+
+    Map<Integer, Integer>[] maps;
+    int[] opMap;
+    Integer[] opKey;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        super.initIteration(0);
+        Class<?> mapClass = Class.forName(mapType);
+        int[] tierOf = mapTiers();
+
+        maps = new Map[mapCount];
+        Integer[][] mapKeys = new Integer[mapCount][];
+        long entries = 0;
+        for (int m = 0; m < mapCount; m++) {
+            int[] tier = SIZE_TIERS[tierOf[m]];
+            int n = tier[0] + rnd.nextInt(tier[1] - tier[0]);
+            mapKeys[m] = rnd.ints().distinct().limit(n).boxed().toArray(Integer[]::new);
+            maps[m] = (Map<Integer, Integer>) mapClass.getConstructor(int.class).newInstance(0);
+            for (Integer k : mapKeys[m]) {
+                maps[m].put(k, k);
+            }
+            entries += n;
+        }
+
+        // Map m has popularity rank m + 1; tiers were shuffled, so rank and size are unrelated.
+        ZipfSampler mapZipf = new ZipfSampler(mapCount, mapZipfS);
+        ZipfSampler[] keyZipf = new ZipfSampler[mapCount];
+        opMap = new int[size];
+        opKey = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            int m = mapZipf.sample(rnd) - 1;
+            if (keyZipf[m] == null) {
+                keyZipf[m] = new ZipfSampler(mapKeys[m].length, zipfS);
+            }
+            opMap[i] = m;
+            opKey[i] = mapKeys[m][keyZipf[m].sample(rnd) - 1];
+        }
+
+        int[] tierCounts = new int[SIZE_TIERS.length];
+        for (int t : tierOf) {
+            tierCounts[t]++;
+        }
+        System.out.println("maps per tier:" + Arrays.toString(tierCounts) + " entries:" + entries
+                + " maps touched:" + Arrays.stream(opMap).distinct().count());
+    }
+
+    /**
+     * Returns the size tier of each map, in shuffled order, with tier counts
+     * in proportion to sizeTierWeights.
+     */
+    int[] mapTiers() {
+        String[] parts = sizeTierWeights.split(":");
+        if (parts.length != SIZE_TIERS.length)
+            throw new IllegalArgumentException("sizeTierWeights needs " + SIZE_TIERS.length
+                    + " weights: " + sizeTierWeights);
+        double[] weights = new double[parts.length];
+        double total = 0;
+        for (int t = 0; t < parts.length; t++) {
+            total += weights[t] = Double.parseDouble(parts[t]);
+        }
+        Integer[] tiers = new Integer[mapCount];
+        double cumulative = 0;
+        int m = 0;
+        for (int t = 0; t < weights.length; t++) {
+            cumulative += weights[t];
+            int end = (t == weights.length - 1) ? mapCount : (int) Math.round(mapCount * cumulative / total);
+            for (; m < end; m++) {
+                tiers[m] = t;
+            }
+        }
+        Collections.shuffle(Arrays.asList(tiers), rnd);
+        return Arrays.stream(tiers).mapToInt(Integer::intValue).toArray();
+    }
+
+    @Benchmark
+    public void getZipf(Blackhole bh) {
+        Map<Integer, Integer>[] maps = this.maps;
+        int[] opMap = this.opMap;
+        Integer[] opKey = this.opKey;
+        for (int i = 0; i < opMap.length; i++) {
+            bh.consume(maps[opMap[i]].get(opKey[i]));
+        }
+    }
+
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import java.io.PrintStream;
+
+/**
+ * An {@code int} to {@code int} open addressing hash map with linear
+ * probing, whose table lives outside the Java heap; the off-heap counterpart
+ * of {@link IntIntOpenHashMap}, hashing keys the same way.  Each slot is one
+ * eight byte word with the key in its low half and the value in its high
+ * half, so a probe is a single load and an insert a single store.  See
+ * {@link OffHeapLongLongMap} for what keeping the table off the heap buys,
+ * and for the rules on {@link #close()}.
+ *
+ * <p>Key {@code 0} marks an empty slot, so its mapping is held in fields,
+ * and absent keys read as {@link #NO_VALUE}.
+ */
+public class OffHeapIntIntMap implements AutoCloseable {
+
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final long DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * The maximum capacity, a power of two.  There are only 2^32 int keys.
+     */
+    static final long MAXIMUM_CAPACITY = 1L << 32;
+
+    /**
+     * The load factor used when none specified in constructor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The key that marks an empty slot.
+     */
+    static final int FREE_KEY = 0;
+
+    /**
+     * The value returned by {@link #get(int)}, {@link #put(int, int)} and
+     * {@link #remove(int)} when there is no mapping for the key.
+     */
+    public static final int NO_VALUE = 0;
+
+    /**
+     * log2 of the bytes per slot.
+     */
+    static final int SLOT_SHIFT = 3;
+
+    /**
+     * The table, or null once closed.
+     */
+    OffHeapMemory memory;
+
+    /**
+     * The number of slots, a power of two.
+     */
+    long capacity;
+
+    boolean hasFreeKey;
+
+    int freeValue;
+
+    long size;
+
+    /**
+     * The next size value at which to resize (capacity * load factor).
+     */
+    long threshold;
+
+    final float loadFactor;
+
+    public OffHeapIntIntMap(long initialCapacity, float loadFactor) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+        this.loadFactor = loadFactor;
+        allocate(tableSizeFor(initialCapacity));
+    }
+
+    public OffHeapIntIntMap(long initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    public OffHeapIntIntMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Returns a power of two size for the given target capacity, at least 2
+     * so that there is always an empty slot to end a probe.
+     */
+    static long tableSizeFor(long cap) {
+        long n = -1L >>> Long.numberOfLeadingZeros(Math.max(cap, 2) - 1);
+        return (n >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY : n + 1;
+    }
+
+    /**
+     * Returns the home slot of key.  The hash is widened unsigned so that
+     * tables larger than 2^31 slots see all of it.
+     */
+    static long home(int key, long mask) {
+        return Integer.toUnsignedLong(IntIntOpenHashMap.hash(key)) & mask;
+    }
+
+    static long slot(int key, int value) {
+        return ((long) value << 32) | Integer.toUnsignedLong(key);
+    }
+
+    private void allocate(long cap) {
+        memory = new OffHeapMemory(cap << SLOT_SHIFT);
+        capacity = cap;
+        threshold = Math.min((long) (cap * (double) loadFactor), cap - 1);
+    }
+
+    /**
+     * Returns the table, checking that the map is still open.
+     */
+    private OffHeapMemory table() {
+        OffHeapMemory m = memory;
+        if (m == null)
+            throw new IllegalStateException("OffHeapIntIntMap is closed");
+        return m;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of bytes allocated outside the heap.
+     */
+    public long offHeapBytes() {
+        return memory == null ? 0 : memory.bytes();
+    }
+
+    /**
+     * Returns the index of the slot holding key, or -1 if there is no
+     * mapping for key.  Not for FREE_KEY.
+     */
+    private long indexOf(OffHeapMemory m, int key) {
+        long mask = capacity - 1;
+        int k;
+        for (long i = home(key, mask); (k = (int) m.getLong(i << SLOT_SHIFT)) != FREE_KEY; i = (i + 1) & mask) {
+            if (k == key)
+                return i;
+        }
+        return -1;
+    }
+
+    public int get(int key) {
+        return getOrDefault(key, NO_VALUE);
+    }
+
+    public int getOrDefault(int key, int defaultValue) {
+        OffHeapMemory m = table();
+        if (key == FREE_KEY)
+            return hasFreeKey ? freeValue : defaultValue;
+        long mask = capacity - 1;
+        long w;
+        for (long i = home(key, mask); (int) (w = m.getLong(i << SLOT_SHIFT)) != FREE_KEY; i = (i + 1) & mask) {
+            if ((int) w == key)
+                return (int) (w >>> 32);
+        }
+        return defaultValue;
+    }
+
+    public boolean containsKey(int key) {
+        OffHeapMemory m = table();
+        return (key == FREE_KEY) ? hasFreeKey : indexOf(m, key) >= 0;
+    }
+
+    /**
+     * Associates value with key.
+     *
+     * @return the previous value for key, or {@link #NO_VALUE} if there was none
+     */
+    public int put(int key, int value) {
+        OffHeapMemory m = table();
+        if (key == FREE_KEY) {
+            int oldValue = hasFreeKey ? freeValue : NO_VALUE;
+            if (!hasFreeKey) {
+                hasFreeKey = true;
+                ++size;
+            }
+            freeValue = value;
+            return oldValue;
+        }
+        long mask = capacity - 1;
+        long i, w;
+        for (i = home(key, mask); (int) (w = m.getLong(i << SLOT_SHIFT)) != FREE_KEY; i = (i + 1) & mask) {
+            if ((int) w == key) {
+                m.putLong(i << SLOT_SHIFT, slot(key, value));
+                return (int) (w >>> 32);
+            }
+        }
+        m.putLong(i << SLOT_SHIFT, slot(key, value));
+        if (++size > threshold)
+            resize();
+        return NO_VALUE;
+    }
+
+    /**
+     * Removes the mapping for key.  The rest of its probe run is shifted back
+     * over the freed slot, so no tombstones are left behind.
+     *
+     * @return the removed value, or {@link #NO_VALUE} if there was none
+     */
+    public int remove(int key) {
+        OffHeapMemory m = table();
+        if (key == FREE_KEY) {
+            if (!hasFreeKey)
+                return NO_VALUE;
+            hasFreeKey = false;
+            --size;
+            return freeValue;
+        }
+        long i = indexOf(m, key);
+        if (i < 0)
+            return NO_VALUE;
+        int oldValue = (int) (m.getLong(i << SLOT_SHIFT) >>> 32);
+        --size;
+        long mask = capacity - 1;
+        long w;
+        for (long j = (i + 1) & mask; (int) (w = m.getLong(j << SLOT_SHIFT)) != FREE_KEY; j = (j + 1) & mask) {
+            long home = home((int) w, mask);
+            // Move slot j into the gap unless its home slot lies cyclically in (i, j].
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                m.putLong(i << SLOT_SHIFT, w);
+                i = j;
+            }
+        }
+        m.putLong(i << SLOT_SHIFT, 0L);
+        return oldValue;
+    }
+
+    public void clear() {
+        OffHeapMemory m = table();
+        if (size > 0) {
+            size = 0;
+            hasFreeKey = false;
+            m.clear();
+        }
+    }
+
+    /**
+     * Lets go of the table.  Closing a closed map has no effect.
+     */
+    @Override
+    public void close() {
+        OffHeapMemory m = memory;
+        if (m != null) {
+            memory = null;
+            size = 0;
+            hasFreeKey = false;
+            m.close();
+        }
+    }
+
+    final void resize() {
+        OffHeapMemory old = memory;
+        long oldCap = capacity;
+        if (oldCap >= MAXIMUM_CAPACITY) {
+            if (size >= MAXIMUM_CAPACITY - 1)
+                throw new IllegalStateException("OffHeapIntIntMap is full");
+            threshold = MAXIMUM_CAPACITY - 1;
+            return;
+        }
+        allocate(oldCap << 1);
+        OffHeapMemory m = memory;
+        long mask = capacity - 1;
+        for (long j = 0; j < oldCap; j++) {
+            long w = old.getLong(j << SLOT_SHIFT);
+            if ((int) w != FREE_KEY) {
+                long i = home((int) w, mask);
+                while ((int) m.getLong(i << SLOT_SHIFT) != FREE_KEY)
+                    i = (i + 1) & mask;
+                m.putLong(i << SLOT_SHIFT, w);
+            }
+        }
+        old.close();
+    }
+
+    public void dumpStats(PrintStream out) {
+        out.printf("%s instance: size: %d%n", this.getClass().getName(), this.size());
+        out.printf("    heap size: %d(bytes), off-heap size: %d(bytes), avg bytes per entry: %d, table len: %d%n",
+                HeapLayout.sizeOf(this), offHeapBytes(), offHeapBytes() / Math.max(size, 1), capacity);
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import java.io.PrintStream;
+
+/**
+ * A {@code long} to {@code long} open addressing hash map with linear
+ * probing, whose table lives outside the Java heap, in an
+ * {@link OffHeapMemory}.  Each slot is sixteen bytes, the key followed by
+ * its value, so a hit reads one cache line.  The heap holds only this
+ * object and the table's few buffer objects, so however large the table
+ * grows the garbage collector has nothing in it to scan, copy or promote,
+ * and the table is not limited to the {@code 2^31} elements of a Java array.
+ *
+ * <p>Call {@link #close()} when done with the map, to let go of the table
+ * without waiting for the map itself to become unreachable; see
+ * OffHeapMemory for when the memory is returned.  Any use of a closed map
+ * throws {@link IllegalStateException}.  The map is not thread safe.
+ *
+ * <p>As in {@link IntIntOpenHashMap}, key {@code 0} marks an empty slot, so
+ * its mapping is held in fields, and absent keys read as {@link #NO_VALUE}.
+ */
+public class OffHeapLongLongMap implements AutoCloseable {
+
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final long DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * The maximum capacity, a power of two.
+     */
+    static final long MAXIMUM_CAPACITY = 1L << 40;
+
+    /**
+     * The load factor used when none specified in constructor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The key that marks an empty slot.
+     */
+    static final long FREE_KEY = 0;
+
+    /**
+     * The value returned by {@link #get(long)}, {@link #put(long, long)} and
+     * {@link #remove(long)} when there is no mapping for the key.
+     */
+    public static final long NO_VALUE = 0;
+
+    /**
+     * log2 of the bytes per slot: an eight byte key, then an eight byte value.
+     */
+    static final int SLOT_SHIFT = 4;
+
+    /**
+     * The table, or null once closed.
+     */
+    OffHeapMemory memory;
+
+    /**
+     * The number of slots, a power of two.
+     */
+    long capacity;
+
+    boolean hasFreeKey;
+
+    long freeValue;
+
+    long size;
+
+    /**
+     * The next size value at which to resize (capacity * load factor).
+     */
+    long threshold;
+
+    final float loadFactor;
+
+    public OffHeapLongLongMap(long initialCapacity, float loadFactor) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+        this.loadFactor = loadFactor;
+        allocate(tableSizeFor(initialCapacity));
+    }
+
+    public OffHeapLongLongMap(long initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    public OffHeapLongLongMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Returns a power of two size for the given target capacity, at least 2
+     * so that there is always an empty slot to end a probe.
+     */
+    static long tableSizeFor(long cap) {
+        long n = -1L >>> Long.numberOfLeadingZeros(Math.max(cap, 2) - 1);
+        return (n >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY : n + 1;
+    }
+
+    /**
+     * Spreads the key over the table; the 64 bit counterpart of
+     * {@link IntIntOpenHashMap#hash(int)}.  The high half is folded in
+     * first, because the multiply only moves bits up and keys that differ
+     * only above bit 40 would otherwise share their low hash bits.
+     */
+    static long hash(long key) {
+        long h = (key ^ (key >>> 32)) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    private void allocate(long cap) {
+        memory = new OffHeapMemory(cap << SLOT_SHIFT);
+        capacity = cap;
+        threshold = Math.min((long) (cap * (double) loadFactor), cap - 1);
+    }
+
+    /**
+     * Returns the table, checking that the map is still open.
+     */
+    private OffHeapMemory table() {
+        OffHeapMemory m = memory;
+        if (m == null)
+            throw new IllegalStateException("OffHeapLongLongMap is closed");
+        return m;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of bytes allocated outside the heap.
+     */
+    public long offHeapBytes() {
+        return memory == null ? 0 : memory.bytes();
+    }
+
+    /**
+     * Returns the offset of the slot holding key, or -1 if there is no
+     * mapping for key.  Not for FREE_KEY.
+     */
+    private long slotOf(OffHeapMemory m, long key) {
+        long mask = capacity - 1;
+        long k, s;
+        for (long i = hash(key) & mask; (k = m.getLong(s = i << SLOT_SHIFT)) != FREE_KEY; i = (i + 1) & mask) {
+            if (k == key)
+                return s;
+        }
+        return -1;
+    }
+
+    public long get(long key) {
+        return getOrDefault(key, NO_VALUE);
+    }
+
+    public long getOrDefault(long key, long defaultValue) {
+        OffHeapMemory m = table();
+        if (key == FREE_KEY)
+            return hasFreeKey ? freeValue : defaultValue;
+        long s = slotOf(m, key);
+        return s < 0 ? defaultValue : m.getLong(s + 8);
+    }
+
+    public boolean containsKey(long key) {
+        OffHeapMemory m = table();
+        return (key == FREE_KEY) ? hasFreeKey : slotOf(m, key) >= 0;
+    }
+
+    /**
+     * Associates value with key.
+     *
+     * @return the previous value for key, or {@link #NO_VALUE} if there was none
+     */
+    public long put(long key, long value) {
+        OffHeapMemory m = table();
+        if (key == FREE_KEY) {
+            long oldValue = hasFreeKey ? freeValue : NO_VALUE;
+            if (!hasFreeKey) {
+                hasFreeKey = true;
+                ++size;
+            }
+            freeValue = value;
+            return oldValue;
+        }
+        long mask = capacity - 1;
+        long k, s;
+        for (long i = hash(key) & mask; (k = m.getLong(s = i << SLOT_SHIFT)) != FREE_KEY; i = (i + 1) & mask) {
+            if (k == key) {
+                long oldValue = m.getLong(s + 8);
+                m.putLong(s + 8, value);
+                return oldValue;
+            }
+        }
+        m.putLong(s, key);
+        m.putLong(s + 8, value);
+        if (++size > threshold)
+            resize();
+        return NO_VALUE;
+    }
+
+    /**
+     * Removes the mapping for key.  The rest of its probe run is shifted back
+     * over the freed slot, so no tombstones are left behind.
+     *
+     * @return the removed value, or {@link #NO_VALUE} if there was none
+     */
+    public long remove(long key) {
+        OffHeapMemory m = table();
+        if (key == FREE_KEY) {
+            if (!hasFreeKey)
+                return NO_VALUE;
+            hasFreeKey = false;
+            --size;
+            return freeValue;
+        }
+        long s = slotOf(m, key);
+        if (s < 0)
+            return NO_VALUE;
+        long oldValue = m.getLong(s + 8);
+        --size;
+        long mask = capacity - 1;
+        long i = s >>> SLOT_SHIFT;
+        long k;
+        for (long j = (i + 1) & mask; (k = m.getLong(j << SLOT_SHIFT)) != FREE_KEY; j = (j + 1) & mask) {
+            long home = hash(k) & mask;
+            // Move slot j into the gap unless its home slot lies cyclically in (i, j].
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                m.putLong(i << SLOT_SHIFT, k);
+                m.putLong((i << SLOT_SHIFT) + 8, m.getLong((j << SLOT_SHIFT) + 8));
+                i = j;
+            }
+        }
+        m.putLong(i << SLOT_SHIFT, FREE_KEY);
+        return oldValue;
+    }
+
+    public void clear() {
+        OffHeapMemory m = table();
+        if (size > 0) {
+            size = 0;
+            hasFreeKey = false;
+            m.clear();
+        }
+    }
+
+    /**
+     * Lets go of the table.  Closing a closed map has no effect.
+     */
+    @Override
+    public void close() {
+        OffHeapMemory m = memory;
+        if (m != null) {
+            memory = null;
+            size = 0;
+            hasFreeKey = false;
+            m.close();
+        }
+    }
+
+    final void resize() {
+        OffHeapMemory old = memory;
+        long oldCap = capacity;
+        if (oldCap >= MAXIMUM_CAPACITY) {
+            if (size >= MAXIMUM_CAPACITY - 1)
+                throw new IllegalStateException("OffHeapLongLongMap is full");
+            threshold = MAXIMUM_CAPACITY - 1;
+            return;
+        }
+        allocate(oldCap << 1);
+        OffHeapMemory m = memory;
+        long mask = capacity - 1;
+        for (long j = 0; j < oldCap; j++) {
+            long key = old.getLong(j << SLOT_SHIFT);
+            if (key != FREE_KEY) {
+                long i = hash(key) & mask;
+                while (m.getLong(i << SLOT_SHIFT) != FREE_KEY)
+                    i = (i + 1) & mask;
+                m.putLong(i << SLOT_SHIFT, key);
+                m.putLong((i << SLOT_SHIFT) + 8, old.getLong((j << SLOT_SHIFT) + 8));
+            }
+        }
+        old.close();
+    }
+
+    public void dumpStats(PrintStream out) {
+        out.printf("%s instance: size: %d%n", this.getClass().getName(), this.size());
+        out.printf("    heap size: %d(bytes), off-heap size: %d(bytes), avg bytes per entry: %d, table len: %d%n",
+                HeapLayout.sizeOf(this), offHeapBytes(), offHeapBytes() / Math.max(size, 1), capacity);
+    }
+}
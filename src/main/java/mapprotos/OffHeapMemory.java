@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A zeroed block of memory outside the Java heap, for the off-heap maps,
+ * addressed by long byte offsets.  One direct ByteBuffer cannot pass 2GB,
+ * so the block is held in chunks of at most 2^CHUNK_SHIFT bytes, read and
+ * written as longs through a view VarHandle.  The garbage collector neither
+ * scans nor moves the memory.  It does free it, through the buffers'
+ * cleaners, once they are unreachable: {@link #close()} drops them, and the
+ * memory is returned at the next collection, or when allocating more direct
+ * memory would pass {@code -XX:MaxDirectMemorySize}, which defaults to the
+ * maximum heap size.
+ */
+final class OffHeapMemory {
+
+    static final int CHUNK_SHIFT = 30;
+
+    static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final ByteBuffer[] chunks;
+
+    private final long bytes;
+
+    /**
+     * Allocates bytes, a positive multiple of 8, of zeroed memory.
+     *
+     * @throws OutOfMemoryError if the direct memory limit is reached
+     */
+    OffHeapMemory(long bytes) {
+        if (bytes <= 0 || (bytes & 7) != 0)
+            throw new IllegalArgumentException("Illegal size: " + bytes);
+        this.bytes = bytes;
+        chunks = new ByteBuffer[(int) ((bytes + CHUNK_MASK) >>> CHUNK_SHIFT)];
+        for (int c = 0; c < chunks.length; c++) {
+            long chunkBytes = Math.min(bytes - ((long) c << CHUNK_SHIFT), CHUNK_MASK + 1);
+            chunks[c] = ByteBuffer.allocateDirect((int) chunkBytes).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    long bytes() {
+        return bytes;
+    }
+
+    long getLong(long offset) {
+        return (long) LONGS.get(chunks[(int) (offset >>> CHUNK_SHIFT)], (int) (offset & CHUNK_MASK));
+    }
+
+    void putLong(long offset, long value) {
+        LONGS.set(chunks[(int) (offset >>> CHUNK_SHIFT)], (int) (offset & CHUNK_MASK), value);
+    }
+
+    void clear() {
+        for (ByteBuffer chunk : chunks) {
+            int limit = chunk.limit();
+            for (int i = 0; i < limit; i += Long.BYTES)
+                LONGS.set(chunk, i, 0L);
+        }
+    }
+
+    /**
+     * Drops the chunks, so the garbage collector can free them.
+     */
+    void close() {
+        Arrays.fill(chunks, null);
+    }
+}
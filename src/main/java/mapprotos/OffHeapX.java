@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * get and put on a map of size entries, off the heap and on it.  The
+ * default size is the 100663296 that MapBase leaves out for lack of memory;
+ * the off-heap tables then take 2GB ({@link OffHeapIntIntMap}) and 4GB
+ * ({@link OffHeapLongLongMap}) of direct memory, whose limit defaults to
+ * the maximum heap, and {@link HashMapCpy} takes most of the 24GB heap.
+ * Smaller runs can use {@code -p size=...}.
+ *
+ * <p>Each invocation looks up or overwrites OPS present keys in random
+ * order.  With churnBytes above 0 every operation also allocates that much
+ * garbage, standing in for the rest of an application, so that the young
+ * collections it causes show what a huge table costs each of them.  The
+ * collections and their pause time during each iteration are reported as
+ * the secondary results gcCount and gcMillis.
+ */
+@Fork(value = 1, jvmArgsAppend = {"-Xms24g", "-Xmx24g"})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Thread)
+public class OffHeapX {
+
+    static final int OPS = 1 << 20;
+
+    @Param({"100663296"})
+    public int size;
+
+    @Param({
+        "mapprotos.OffHeapIntIntMap",
+        "mapprotos.OffHeapLongLongMap",
+        "mapprotos.IntIntOpenHashMap",
+        "mapprotos.HashMapCpy",
+    })
+    public String mapType;
+
+    @Param({"0", "64"})
+    public int churnBytes;
+
+    OffHeapIntIntMap offHeapInt;
+    OffHeapLongLongMap offHeapLong;
+    IntIntOpenHashMap heapInt;
+    Map<Integer, Integer> heapBoxed;
+    int[] lookups;
+    Integer[] boxedLookups;
+
+    /**
+     * Returns the i-th key.  Multiplying by an odd constant is a bijection
+     * on int, so the keys are distinct, and none is the free key 0.
+     */
+    static int key(int i) {
+        return (i + 1) * 0x9E3779B1;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        switch (mapType) {
+            case "mapprotos.OffHeapIntIntMap" -> {
+                offHeapInt = new OffHeapIntIntMap((long) (size / 0.75) + 1);
+                for (int i = 0; i < size; i++)
+                    offHeapInt.put(key(i), i);
+            }
+            case "mapprotos.OffHeapLongLongMap" -> {
+                offHeapLong = new OffHeapLongLongMap((long) (size / 0.75) + 1);
+                for (int i = 0; i < size; i++)
+                    offHeapLong.put(key(i), i);
+            }
+            case "mapprotos.IntIntOpenHashMap" -> {
+                heapInt = new IntIntOpenHashMap((int) (size / 0.75f) + 1);
+                for (int i = 0; i < size; i++)
+                    heapInt.put(key(i), i);
+            }
+            case "mapprotos.HashMapCpy" -> {
+                heapBoxed = new HashMapCpy<>((int) (size / 0.75f) + 1);
+                for (int i = 0; i < size; i++)
+                    heapBoxed.put(key(i), i);
+            }
+            default -> throw new IllegalArgumentException("Unknown mapType: " + mapType);
+        }
+        Random rnd = new Random(42);
+        lookups = new int[OPS];
+        boxedLookups = new Integer[OPS];
+        for (int i = 0; i < OPS; i++) {
+            lookups[i] = key(rnd.nextInt(size));
+            boxedLookups[i] = lookups[i];
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        if (offHeapInt != null) {
+            offHeapInt.dumpStats(System.out);
+            offHeapInt.close();
+        }
+        if (offHeapLong != null) {
+            offHeapLong.dumpStats(System.out);
+            offHeapLong.close();
+        }
+        if (heapInt != null)
+            heapInt.dumpStats(System.out);
+        if (heapBoxed != null)
+            MapBase.dumpStats(heapBoxed);
+    }
+
+    /**
+     * Collections and their accumulated time since the iteration started.
+     * Beans that time concurrent cycles rather than pauses, such as G1's
+     * "G1 Concurrent GC" and ZGC's "ZGC Cycles", are left out.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class GcCounters {
+        public long gcCount;
+        public long gcMillis;
+        long startCount;
+        long startMillis;
+
+        @Setup(Level.Iteration)
+        public void start() {
+            startCount = 0;
+            startMillis = 0;
+            record();
+            startCount = gcCount;
+            startMillis = gcMillis;
+        }
+
+        void record() {
+            long count = 0;
+            long millis = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                String name = gc.getName();
+                if (name.contains("Concurrent") || name.contains("Cycles"))
+                    continue;
+                count += Math.max(gc.getCollectionCount(), 0);
+                millis += Math.max(gc.getCollectionTime(), 0);
+            }
+            gcCount = count - startCount;
+            gcMillis = millis - startMillis;
+        }
+    }
+
+    static void churn(Blackhole bh, int bytes) {
+        if (bytes > 0)
+            bh.consume(new byte[bytes]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public void get(Blackhole bh, GcCounters gc) {
+        int[] keys = lookups;
+        int churn = churnBytes;
+        if (offHeapInt != null) {
+            OffHeapIntIntMap map = offHeapInt;
+            for (int k : keys) {
+                bh.consume(map.get(k));
+                churn(bh, churn);
+            }
+        } else if (offHeapLong != null) {
+            OffHeapLongLongMap map = offHeapLong;
+            for (int k : keys) {
+                bh.consume(map.get(k));
+                churn(bh, churn);
+            }
+        } else if (heapInt != null) {
+            IntIntOpenHashMap map = heapInt;
+            for (int k : keys) {
+                bh.consume(map.get(k));
+                churn(bh, churn);
+            }
+        } else {
+            Map<Integer, Integer> map = heapBoxed;
+            for (Integer k : boxedLookups) {
+                bh.consume(map.get(k));
+                churn(bh, churn);
+            }
+        }
+        gc.record();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public void put(Blackhole bh, GcCounters gc) {
+        int[] keys = lookups;
+        int churn = churnBytes;
+        if (offHeapInt != null) {
+            OffHeapIntIntMap map = offHeapInt;
+            for (int k : keys) {
+                bh.consume(map.put(k, k));
+                churn(bh, churn);
+            }
+        } else if (offHeapLong != null) {
+            OffHeapLongLongMap map = offHeapLong;
+            for (int k : keys) {
+                bh.consume(map.put(k, k));
+                churn(bh, churn);
+            }
+        } else if (heapInt != null) {
+            IntIntOpenHashMap map = heapInt;
+            for (int k : keys) {
+                bh.consume(map.put(k, k));
+                churn(bh, churn);
+            }
+        } else {
+            Map<Integer, Integer> map = heapBoxed;
+            for (Integer k : boxedLookups) {
+                bh.consume(map.put(k, k));
+                churn(bh, churn);
+            }
+        }
+        gc.record();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The shared parts of the maps' parallelPutAll.  A bulk load is split by
+ * the high bits of each entry's final table index into ranges of the
+ * table, so tasks building different ranges never write the same slot and
+ * need no locking.  The caller sizes the table for every entry up front,
+ * fills the ranges in a ForkJoinPool, and only then publishes the table.
+ */
+final class ParallelBuild {
+
+    /**
+     * Loads smaller than this are put one at a time, since splitting them
+     * costs more than the tasks save.
+     */
+    static final int MIN_PARALLEL_SIZE = 1 << 14;
+
+    /**
+     * The fewest table slots in a range.
+     */
+    static final int MIN_RANGE_LENGTH = 1 << 10;
+
+    /**
+     * The ranges per worker thread, so that a worker that finishes a light
+     * range early can take another.
+     */
+    static final int RANGES_PER_THREAD = 8;
+
+    private ParallelBuild() {
+    }
+
+    /**
+     * Returns the number of ranges to split a table of length cap into for
+     * pool, a power of two no larger than cap / MIN_RANGE_LENGTH, or 1.
+     */
+    static int rangeCount(ForkJoinPool pool, int cap) {
+        int ranges = Integer.highestOneBit(pool.getParallelism() * RANGES_PER_THREAD);
+        return Math.max(1, Math.min(ranges, cap / MIN_RANGE_LENGTH));
+    }
+
+    /**
+     * Runs body for each of 0 to n - 1 as tasks of pool, and returns when
+     * all of them have.
+     */
+    static void forEach(ForkJoinPool pool, int n, IntConsumer body) {
+        if (n > 0)
+            pool.invoke(new ForEach(body, 0, n));
+    }
+
+    /**
+     * Groups the items 0 to n - 1 by range.  rangeOf(i) must be in
+     * [0, ranges) and the same on every call for i.
+     *
+     * @param rangeStart filled in with where each range's items start in the
+     *        result, and rangeStart[ranges] with n; ranges + 1 long
+     * @return the items in range order, and within a range in item order, so
+     *         that a later item for a key still replaces an earlier one
+     */
+    static int[] groupByRange(ForkJoinPool pool, int n, int ranges, IntUnaryOperator rangeOf,
+                              int[] rangeStart) {
+        // Counting sort, with the counting and the scattering both split into chunks of the items.
+        final int chunks = ranges;
+        final int[] cursors = new int[chunks * ranges];
+        forEach(pool, chunks, c -> {
+            for (int i = chunkStart(c, chunks, n), end = chunkStart(c + 1, chunks, n); i < end; i++)
+                cursors[c * ranges + rangeOf.applyAsInt(i)]++;
+        });
+        int at = 0;
+        for (int r = 0; r < ranges; r++) {
+            rangeStart[r] = at;
+            for (int c = 0; c < chunks; c++) {
+                int count = cursors[c * ranges + r];
+                cursors[c * ranges + r] = at;
+                at += count;
+            }
+        }
+        rangeStart[ranges] = at;
+        final int[] order = new int[n];
+        forEach(pool, chunks, c -> {
+            for (int i = chunkStart(c, chunks, n), end = chunkStart(c + 1, chunks, n); i < end; i++)
+                order[cursors[c * ranges + rangeOf.applyAsInt(i)]++] = i;
+        });
+        return order;
+    }
+
+    /**
+     * Returns where chunk c of n items split into chunks starts.
+     */
+    static int chunkStart(int c, int chunks, int n) {
+        return (int) ((long) n * c / chunks);
+    }
+
+    /**
+     * Halves its part of the indexes until one is left, and runs body on it.
+     */
+    private static final class ForEach extends RecursiveAction {
+        private final IntConsumer body;
+        private final int lo, hi;
+
+        ForEach(IntConsumer body, int lo, int hi) {
+            this.body = body;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo == 1) {
+                body.accept(lo);
+            } else {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new ForEach(body, lo, mid), new ForEach(body, mid, hi));
+            }
+        }
+    }
+}
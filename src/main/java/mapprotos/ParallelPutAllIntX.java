@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * ParallelPutAllX without boxing: {@link IntIntOpenHashMap#parallelPutAll}
+ * against a loop of {@link IntIntOpenHashMap#put(int, int)}, each building
+ * a map of the same keyCount keys from empty.  As with PutIntX, mapType has
+ * the single value mapprotos.IntIntOpenHashMapAdapter.
+ */
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ParallelPutAllIntX extends MapBase {
+
+    @Param({"1000000"})
+    public int keyCount;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    // Hides MapBase's list, which would only repeat the same trial per value.
+    @Param({"mapprotos.IntIntOpenHashMapAdapter"})
+    public String mapType;
+
+    ForkJoinPool pool;
+    int[] intKeys;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        pool = new ForkJoinPool(threads);
+        intKeys = ParallelPutAllX.intKeys(keyCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public IntIntOpenHashMap putLoop() {
+        IntIntOpenHashMap map = new IntIntOpenHashMap(16);
+        for (int k : intKeys) {
+            map.put(k, k);
+        }
+        return map;
+    }
+
+    @Benchmark
+    public IntIntOpenHashMap parallelPutAll() {
+        IntIntOpenHashMap map = new IntIntOpenHashMap(16);
+        map.parallelPutAll(intKeys, intKeys, pool);
+        return map;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * parallelPutAll against a loop of put, each building a map of keyCount
+ * random keys from empty.  parallelPutAll runs in a ForkJoinPool of threads
+ * workers; sweep threads up to the number of cores, and divide the loop's
+ * score by parallelPutAll's for the speedup.  mapType lists the
+ * ArrayBinHashMaps, which have parallelPutAll; ParallelPutAllIntX is the
+ * {@code int} counterpart.  The loop does not use threads, nor does
+ * anything here use size or accessDist.
+ */
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ParallelPutAllX extends MapBase {
+
+    @Param({"1000000"})
+    public int keyCount;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    // Hides MapBase's list, which has maps without parallelPutAll.
+    @Param({"mapprotos.ArrayBinHashMap", "mapprotos.ArrayBinHashMapFibonacci"})
+    public String mapType;
+
+    Constructor<?> mapConstructor;
+    ForkJoinPool pool;
+    Integer[] boxedKeys;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception {
+        mapConstructor = Class.forName(mapType).getConstructor(int.class);
+        pool = new ForkJoinPool(threads);
+        boxedKeys = new Integer[keyCount];
+        int[] intKeys = intKeys(keyCount);
+        for (int i = 0; i < keyCount; i++) {
+            boxedKeys[i] = intKeys[i];
+        }
+    }
+
+    static int[] intKeys(int keyCount) {
+        // fmix32 is a bijection, so these are keyCount distinct random looking ints.
+        int[] keys = new int[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = SeededHash.mix(i, 0x5EED);
+        }
+        return keys;
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        pool.shutdown();
+    }
+
+    @SuppressWarnings("unchecked")
+    ArrayBinHashMap<Integer, Integer> newMap() throws Exception {
+        return (ArrayBinHashMap<Integer, Integer>) mapConstructor.newInstance(16);
+    }
+
+    @Benchmark
+    public ArrayBinHashMap<Integer, Integer> putLoop() throws Exception {
+        ArrayBinHashMap<Integer, Integer> map = newMap();
+        for (Integer k : boxedKeys) {
+            map.put(k, k);
+        }
+        return map;
+    }
+
+    @Benchmark
+    public ArrayBinHashMap<Integer, Integer> parallelPutAll() throws Exception {
+        ArrayBinHashMap<Integer, Integer> map = newMap();
+        map.parallelPutAll(boxedKeys, boxedKeys, pool);
+        return map;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * PutX without boxing, filling an {@link IntIntOpenHashMap} with
+ * {@link IntIntOpenHashMap#put(int, int)}.  As with GetIntX, mapType has
+ * the single value mapprotos.IntIntOpenHashMapAdapter, to pair it with the
+ * boxed PutX runs of that type.
+ */
+public class PutIntX extends MapBase {
+
+    // Hides MapBase's list, which would only repeat the same trial per value.
+    @Param({"mapprotos.IntIntOpenHashMapAdapter"})
+    public String mapType;
+
+    int[] intKeys;
+    IntIntOpenHashMap lastMap;
+
+    @Setup
+    public void setup() {
+        super.initIteration(size);
+        intKeys = GetIntX.toInts(keys, size);
+    }
+
+    @TearDown
+    public void teardown() {
+        lastMap.dumpStats(System.out);
+    }
+
+    @Benchmark
+    public IntIntOpenHashMap put() {
+        int[] keys = this.intKeys;
+        IntIntOpenHashMap map = new IntIntOpenHashMap(0);
+        for (int k : keys) {
+            map.put(k, k);
+        }
+        lastMap = map;
+        return map;
+    }
+
+    @Benchmark
+    public IntIntOpenHashMap putSized() {
+        int[] keys = this.intKeys;
+        IntIntOpenHashMap map = new IntIntOpenHashMap(size * 2);
+        for (int k : keys) {
+            map.put(k, k);
+        }
+        lastMap = map;
+        return map;
+    }
+
+}
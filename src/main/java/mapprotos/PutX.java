@@ -23,19 +23,26 @@
 package mapprotos;
 
 import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.BenchmarkParams;
 
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.function.IntFunction;
 
 
 public class PutX extends MapBase {
     IntFunction<Map<Integer, Integer>> mapSupplier;
     Map<Integer,Integer> lastMap;
+    Map<Integer,Integer> growingMap;
+    int growingNext;
 
     @Setup
-    public void setup() {
+    public void setup(BenchmarkParams params) {
         super.initIteration(size);
         try {
             Class<?> mapClass = Class.forName(mapType);
@@ -44,6 +51,20 @@ public class PutX extends MapBase {
             System.out.printf("%s: %s%n", mapType, ex.getMessage());
             return;
         }
+        // Every invocation builds the same map, so its stats can be taken once, outside the timing.
+        if (params.getBenchmark().endsWith(".put"))
+            MapStatsProfiler.record(params, new MapStatsProfiler.Snapshot(fill(mapSupplier.apply(0))));
+        else if (params.getBenchmark().endsWith(".putSized"))
+            MapStatsProfiler.record(params, new MapStatsProfiler.Snapshot(fill(mapSupplier.apply(size * 2))));
+        growingMap = mapSupplier.apply(0);
+        growingNext = 0;
+    }
+
+    private Map<Integer, Integer> fill(Map<Integer, Integer> map) {
+        for (Integer k : keys) {
+            map.put(k, k);
+        }
+        return map;
     }
 
     Map<Integer, Integer> newInstance(Class<?> mapClass, int size) {
@@ -56,7 +77,10 @@ public class PutX extends MapBase {
 
     @TearDown
     public void teardown() {
-        super.TearDown(lastMap);
+        // putGrowing sets lastMap only once it has filled a map, so fall back to the one it is filling.
+        Map<Integer, Integer> map = (lastMap != null) ? lastMap : growingMap;
+        if (map != null)
+            super.TearDown(map);
     }
 
     @Benchmark
@@ -81,4 +105,22 @@ public class PutX extends MapBase {
         return map;
     }
 
+    /**
+     * Times single puts into a map growing from empty to size, so the
+     * percentiles show the puts that pay for a resize.  Starting over with
+     * a new map is timed too, once every size invocations.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Integer putGrowing() {
+        if (growingNext == keys.length) {
+            lastMap = growingMap;
+            growingMap = mapSupplier.apply(0);
+            growingNext = 0;
+        }
+        Integer k = keys[growingNext++];
+        return growingMap.put(k, k);
+    }
+
 }
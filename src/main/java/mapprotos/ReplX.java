@@ -30,6 +30,11 @@ import java.util.Collections;
 import java.util.Map;
 import java.util.function.IntFunction;
 
+/**
+ * Steady-state churn at a fixed size: each op puts a missing key or removes a present one.
+ * Comparing mapType mapprotos.ArrayBinHashMap against mapprotos.HashMapCpy shows the cost of
+ * compacting a Node[] bin in place against unlinking a node from a chain.
+ */
 public class ReplX extends MapBase {
     IntFunction<Map<Integer, Integer>> mapSupplier;
     Integer[] mixed;
@@ -0,0 +1,528 @@
+/*
+ * Copyright (c) 1997, 2022, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package mapprotos;
+
+import java.io.PrintStream;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Robin Hood open addressing, ported from the commented out
+ * {@code OrigBenchmarkHashMap}.  That version kept each entry in a
+ * {@code primitive class YNode}; here the YNode fields are split into
+ * parallel arrays, {@code hashes}, {@code probes}, {@code keys} and
+ * {@code values}, so it runs on a stock JDK.
+ *
+ * <p>Collisions are resolved by stepping {@code REHASH_HASH} slots at a time.
+ * {@code probes[i]} is 0 for an empty slot, otherwise the 1-based position of
+ * slot {@code i} in its entry's probe sequence.  An insert takes the slot of
+ * any entry that is closer to its home than the new one would be, and
+ * carries the displaced entry on, which keeps probe lengths even.  Because of
+ * that ordering a lookup can stop at the first entry that is closer to home
+ * than the key would be, so misses end early instead of running to an empty
+ * slot.  Removal shifts the rest of the probe run back one step.
+ *
+ * <p>Null keys and values are permitted.  Iterators do not support remove.
+ */
+public class RobinHoodHashMap<K,V> extends AbstractMap<K,V> {
+
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4; // aka 16
+
+    /**
+     * The maximum capacity, used if a higher value is implicitly specified
+     * by either of the constructors with arguments.
+     * MUST be a power of two <= 1<<30.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The load factor used when none specified in constructor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    private static final int REHASH_HASH = 2003; // Odd and small (a medium-small prime)
+
+    /* ---------------- Static utilities -------------- */
+
+    final int hash(Object key) {
+        int h;
+        if (key == null)
+            return 0;
+        h = key.hashCode();
+        return (hashSeed == 0) ? h ^ (h >>> 16) : SeededHash.mix(h, hashSeed);
+    }
+
+    static final int tableSizeFor(int cap) {
+        int n = -1 >>> Integer.numberOfLeadingZeros(cap - 1);
+        return (n < 0) ? 1 : (n >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY : n + 1;
+    }
+
+    /* ---------------- Fields -------------- */
+
+    /**
+     * The table, allocated on first use, as four arrays of the same power
+     * of two length.
+     */
+    transient int[] hashes;
+    transient short[] probes;
+    transient Object[] keys;
+    transient Object[] values;
+
+    transient Set<Entry<K,V>> entrySet;
+
+    transient int size;
+
+    transient int modCount;
+
+    /**
+     * The next size value at which to resize.  If the table has not been
+     * allocated this holds the initial capacity, or zero for
+     * DEFAULT_INITIAL_CAPACITY.
+     */
+    int threshold;
+
+    final float loadFactor;
+
+    /**
+     * Mixed into every hash if non-zero, see SeededHash.
+     */
+    final int hashSeed;
+
+    /* ---------------- Public operations -------------- */
+
+    public RobinHoodHashMap(int initialCapacity, float loadFactor, boolean seededHash) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                    loadFactor);
+        this.loadFactor = loadFactor;
+        this.threshold = tableSizeFor(initialCapacity);
+        this.hashSeed = seededHash ? SeededHash.newSeed() : 0;
+    }
+
+    public RobinHoodHashMap(int initialCapacity, float loadFactor) {
+        this(initialCapacity, loadFactor, false);
+    }
+
+    public RobinHoodHashMap(int initialCapacity, boolean seededHash) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR, seededHash);
+    }
+
+    public RobinHoodHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    public RobinHoodHashMap() {
+        this.loadFactor = DEFAULT_LOAD_FACTOR; // all other fields defaulted
+        this.hashSeed = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int i = indexOf(hash(key), key);
+        return (i >= 0) ? (V) values[i] : null;
+    }
+
+    public boolean containsKey(Object key) {
+        return indexOf(hash(key), key) >= 0;
+    }
+
+    /**
+     * Returns the slot holding key, or -1 if there is none.
+     */
+    final int indexOf(final int hash, final Object key) {
+        final int[] hs;
+        if ((hs = hashes) == null)
+            return -1;
+        final short[] ps = probes;
+        final Object[] ks = keys;
+        final int mask = hs.length - 1;
+        int h = hash;
+        for (int p = 1; ; p++, h += REHASH_HASH) {
+            final int index = mask & h;
+            Object k;
+            // Also stops at an empty slot, its probes are 0.
+            if (ps[index] < p)
+                return -1;
+            if (hs[index] == hash &&
+                    ((k = ks[index]) == key || (key != null && key.equals(k))))
+                return index;
+        }
+    }
+
+    public V put(K key, V value) {
+        return putVal(hash(key), key, value, false);
+    }
+
+    public V putIfAbsent(K key, V value) {
+        return putVal(hash(key), key, value, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V putVal(final int hash, final K key, final V value, boolean onlyIfAbsent) {
+        if (hashes == null)
+            resize();
+        final int[] hs = hashes;
+        final short[] ps = probes;
+        final Object[] ks = keys;
+        final int mask = hs.length - 1;
+        int h = hash;
+        int p;
+        for (p = 1; ; p++, h += REHASH_HASH) {
+            final int index = mask & h;
+            Object k;
+            if (ps[index] < p)
+                break;  // absent, and this is where it belongs
+            if (hs[index] == hash &&
+                    ((k = ks[index]) == key || (key != null && key.equals(k)))) {
+                V oldValue = (V) values[index];
+                if (!onlyIfAbsent || oldValue == null)
+                    values[index] = value;
+                return oldValue;
+            }
+        }
+        robinHoodInsert(hash, key, value, p, h);
+        ++modCount;
+        if (++size > threshold)
+            resize();       // Ensure there is at least 1 empty available
+        return null;
+    }
+
+    /**
+     * Places an entry known to be absent, starting at step p of its probe
+     * sequence, at slot mask & h.  Each entry closer to its home than the
+     * one being placed is swapped out and carried on down its own sequence.
+     */
+    private void robinHoodInsert(int hash, Object key, Object value, int p, int h) {
+        final int[] hs = hashes;
+        final short[] ps = probes;
+        final Object[] ks = keys;
+        final Object[] vs = values;
+        final int mask = hs.length - 1;
+        for (; ; p++, h += REHASH_HASH) {
+            if (p > Short.MAX_VALUE)
+                throw new IllegalStateException("Probe length overflow: " + p);
+            final int index = mask & h;
+            final int ep = ps[index];
+            if (ep == 0) {
+                hs[index] = hash;
+                ps[index] = (short) p;
+                ks[index] = key;
+                vs[index] = value;
+                return;
+            }
+            if (ep < p) {
+                // Replace a less deserving entry and carry it on from here.
+                int th = hs[index];
+                Object tk = ks[index];
+                Object tv = vs[index];
+                hs[index] = hash;
+                ps[index] = (short) p;
+                ks[index] = key;
+                vs[index] = value;
+                hash = th;
+                key = tk;
+                value = tv;
+                p = ep;
+                h = index;
+            }
+        }
+    }
+
+    /**
+     * Initializes or doubles the table.  Entries are placed again with
+     * Robin Hood insertion, so probe lengths stay even across resizes.
+     */
+    final void resize() {
+        final int[] oldHashes = hashes;
+        final short[] oldProbes = probes;
+        final Object[] oldKeys = keys;
+        final Object[] oldValues = values;
+        int oldCap = (oldHashes == null) ? 0 : oldHashes.length;
+        int newCap;
+        if (oldCap > 0) {
+            if (oldCap >= MAXIMUM_CAPACITY) {
+                if (size >= MAXIMUM_CAPACITY - 1)
+                    throw new IllegalStateException("RobinHoodHashMap is full");
+                threshold = MAXIMUM_CAPACITY - 1;
+                return;
+            }
+            newCap = oldCap << 1;
+        } else if (threshold > 0) { // initial capacity was placed in threshold
+            newCap = Math.max(threshold, 2);
+        } else {
+            newCap = DEFAULT_INITIAL_CAPACITY;
+        }
+        // There must always be an empty entry to end a probe sequence.
+        threshold = Math.min((int) (newCap * loadFactor), newCap - 1);
+        hashes = new int[newCap];
+        probes = new short[newCap];
+        keys = new Object[newCap];
+        values = new Object[newCap];
+        for (int i = 0; i < oldCap; ++i) {
+            if (oldProbes[i] != 0)
+                robinHoodInsert(oldHashes[i], oldKeys[i], oldValues[i], 1, oldHashes[i]);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        int i = indexOf(hash(key), key);
+        if (i < 0)
+            return null;
+        V oldValue = (V) values[i];
+        removeAt(i);
+        return oldValue;
+    }
+
+    public boolean remove(Object key, Object value) {
+        int i = indexOf(hash(key), key);
+        if (i < 0 || !Objects.equals(values[i], value))
+            return false;
+        removeAt(i);
+        return true;
+    }
+
+    /**
+     * Clears slot curr and shifts the rest of its probe run back one step.
+     * The run ends at an empty slot or at an entry already in its home slot.
+     */
+    private void removeAt(final int curr) {
+        final int[] hs = hashes;
+        final short[] ps = probes;
+        final Object[] ks = keys;
+        final Object[] vs = values;
+        final int mask = hs.length - 1;
+        ++modCount;
+        --size;
+        int free = curr;
+        for (int next = mask & (free + REHASH_HASH); ps[next] > 1;
+             free = next, next = mask & (next + REHASH_HASH)) {
+            hs[free] = hs[next];
+            ps[free] = (short) (ps[next] - 1);
+            ks[free] = ks[next];
+            vs[free] = vs[next];
+        }
+        hs[free] = 0;
+        ps[free] = 0;
+        ks[free] = null;
+        vs[free] = null;
+    }
+
+    public void clear() {
+        modCount++;
+        if (hashes != null && size > 0) {
+            size = 0;
+            Arrays.fill(probes, (short) 0);
+            Arrays.fill(keys, null);
+            Arrays.fill(values, null);
+        }
+    }
+
+    public boolean containsValue(Object value) {
+        if (hashes != null && size > 0) {
+            final short[] ps = probes;
+            final Object[] vs = values;
+            for (int i = 0; i < ps.length; i++) {
+                if (ps[i] != 0 && Objects.equals(vs[i], value))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    public Set<Entry<K,V>> entrySet() {
+        Set<Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Entry<K,V>> {
+        public final int size()                 { return size; }
+        public final void clear()               { RobinHoodHashMap.this.clear(); }
+        public final Iterator<Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+    }
+
+    final class EntryIterator implements Iterator<Entry<K,V>> {
+        final short[] ps = probes;
+        int expectedModCount = modCount;
+        int index = advance(0);
+
+        private int advance(int i) {
+            if (ps == null)
+                return 0;
+            while (i < ps.length && ps[i] == 0)
+                i++;
+            return i;
+        }
+
+        public final boolean hasNext() {
+            return ps != null && index < ps.length;
+        }
+
+        @SuppressWarnings("unchecked")
+        public final Entry<K,V> next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (!hasNext())
+                throw new NoSuchElementException();
+            int i = index;
+            index = advance(i + 1);
+            return new SimpleImmutableEntry<>((K) keys[i], (V) values[i]);
+        }
+    }
+
+    /**
+     * Print stats of the table to the a stream.
+     * @param out a stream
+     */
+    public void dumpStats(PrintStream out) {
+        out.printf("%s instance: size: %d%n", this.getClass().getName(), this.size());
+        long size = heapSize();
+        long bytesPer = (this.size != 0) ? size / this.size() : 0;
+        out.printf("    heap size: %d(bytes), avg bytes per entry: %d, table len: %d%n",
+                size, bytesPer, (hashes != null) ? hashes.length : 0);
+        long[] types = entryTypes();
+        out.printf("    values: %d, empty: %d%n",
+                types[0], types[1]);
+        printStats(out, "hitProbes      ", entryProbes());
+        printStats(out, "missProbes     ", missProbes());
+    }
+
+    private void printStats(PrintStream out, String label, int[] hist) {
+        if (hist.length > 1) {
+            out.printf("    %s: max: %d, mean: %3.2f, stddev: %3.2f, %s%n",
+                    label, hist.length - 1,
+                    computeMean(hist), computeStdDev(hist),
+                    Arrays.toString(hist));
+        } else if (hist.length > 0) {
+            out.printf("    %s: max: %d, %s%n",
+                    label, hist.length - 1,
+                    Arrays.toString(hist));
+        } else {
+            out.printf("    %s: n/a%n", label);
+        }
+    }
+
+    private double computeStdDev(int[] hist) {
+        double mean = computeMean(hist);
+        double sum = 0.0f;
+        long count = 0L;
+        for (int i = 1; i < hist.length; i++) {
+            count += hist[i];
+            sum += (i - mean) * (i - mean) * hist[i];
+        }
+        return Math.sqrt(sum / (count - 1));
+    }
+
+    private double computeMean(int[] hist) {
+        long sum = 0L;
+        long count = 0;
+        for (int i = 1; i < hist.length; i++) {
+            count += hist[i];
+            sum += i * hist[i];
+        }
+        return (double)sum / (double)count;
+    }
+
+    private long[] entryTypes() {
+        long[] counts = new long[2];
+        if (probes == null)
+            return counts;
+        for (short p : probes) {
+            if (p == 0)
+                counts[1]++;
+            else
+                counts[0]++;
+        }
+        return counts;
+    }
+
+    // Returns a histogram of the number of slots looked at to find each key.
+    private int[] entryProbes() {
+        if (probes == null)
+            return new int[0];
+        int[] counts = new int[Short.MAX_VALUE + 1];
+        for (short p : probes) {
+            if (p != 0)
+                counts[p]++;
+        }
+        return minCounts(counts);
+    }
+
+    // Returns a histogram of the number of slots looked at before giving up
+    // on an absent key, taking each slot in turn as the key's home slot.
+    private int[] missProbes() {
+        if (probes == null)
+            return new int[0];
+        final short[] ps = probes;
+        final int mask = ps.length - 1;
+        int[] counts = new int[Short.MAX_VALUE + 2];
+        for (int home = 0; home < ps.length; home++) {
+            int p = 1;
+            for (int h = home; ps[mask & h] >= p; p++, h += REHASH_HASH) {
+            }
+            counts[p]++;
+        }
+        return minCounts(counts);
+    }
+
+    private int[] minCounts(int[] counts) {
+        int i;
+        for (i = counts.length - 1; i >= 0 && counts[i] == 0; i--) {
+        }
+        counts = Arrays.copyOf(counts, i + 1);
+        return counts;
+    }
+
+    private long heapSize() {
+        long acc = HeapLayout.sizeOf(this);
+        return acc + HeapLayout.sizeOf(hashes) + HeapLayout.sizeOf(probes)
+                + HeapLayout.sizeOf(keys) + HeapLayout.sizeOf(values);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Seeded hashing for maps that opt in to it against hash flooding.  With
+ * the classic {@code h ^ (h >>> 16)} spread, anyone who can choose keys can
+ * choose hash codes that land in one bin.  Mixing in a secret per-map seed
+ * with murmur3's fmix32 finalizer makes the bin of a hash code
+ * unpredictable, since every output bit depends on every bit of the seed.
+ *
+ * <p>This cannot separate keys whose hashCodes are equal, such as the
+ * Strings "Aa" and "BB"; tree bins bound those for Comparable keys.  Seeds
+ * come from ThreadLocalRandom; run with -Djava.util.secureRandomSeed=true
+ * to seed it from SecureRandom.
+ */
+final class SeededHash {
+
+    private SeededHash() {
+    }
+
+    /**
+     * Returns a seed for a new map, never 0, which maps use to mean unseeded.
+     */
+    static int newSeed() {
+        int seed;
+        do {
+            seed = ThreadLocalRandom.current().nextInt();
+        } while (seed == 0);
+        return seed;
+    }
+
+    /**
+     * Returns murmur3's fmix32 of h ^ seed.
+     */
+    static int mix(int h, int seed) {
+        h ^= seed;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+}
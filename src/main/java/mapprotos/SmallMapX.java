@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * Small maps, which NOTES-PerformanceTestFrequencyDistribution.md says are
+ * most of the maps in a backend, at sizes on both sides of
+ * AdaptiveSmallMap's INFLATE_THRESHOLD.  There are MAP_COUNT maps of
+ * mapSize entries, so that they do not all sit in the L1 cache, and each
+ * invocation does one operation on every map: getHit looks up one of its
+ * keys, getMiss a key it does not have, and build makes a new map and puts
+ * mapSize entries.  Scores are per map.  The heap bytes of one map, which
+ * is the footprint per map, are reported as a secondary result when run with
+ * {@link MapStatsProfiler}.
+ */
+@Fork(value = 1)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Thread)
+public class SmallMapX {
+
+    static final int MAP_COUNT = 4096;
+
+    @Param({"1", "2", "3", "4", "6", "8", "12", "16", "17", "24", "32", "48", "64"})
+    public int mapSize;
+
+    @Param({
+        "mapprotos.AdaptiveSmallMap",
+        "mapprotos.ArrayBinHashMap",
+        "mapprotos.HashMapCpy",
+    })
+    public String mapType;
+
+    IntFunction<Map<Integer, Integer>> mapFactory;
+    Map<Integer, Integer>[] maps;
+    Integer[][] mapKeys;
+    Integer[] missKeys;
+    int round;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup(BenchmarkParams params) throws Throwable {
+        Random rnd = new Random(42);
+        mapFactory = factory(Class.forName(mapType));
+        maps = new Map[MAP_COUNT];
+        mapKeys = new Integer[MAP_COUNT][];
+        missKeys = new Integer[MAP_COUNT];
+        for (int m = 0; m < MAP_COUNT; m++) {
+            Integer[] all = rnd.ints().distinct().limit(mapSize + 1).boxed().toArray(Integer[]::new);
+            mapKeys[m] = Arrays.copyOf(all, mapSize);
+            missKeys[m] = all[mapSize];
+            maps[m] = mapFactory.apply(0);
+            for (Integer k : mapKeys[m]) {
+                maps[m].put(k, k);
+            }
+        }
+        MapStatsProfiler.record(params, new MapStatsProfiler.Snapshot(maps[0]));
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        MapBase.dumpStats(maps[0]);
+    }
+
+    /**
+     * Returns mapClass's {@code (int)} constructor as an IntFunction, so that
+     * build calls it directly rather than through reflection.
+     */
+    @SuppressWarnings("unchecked")
+    static IntFunction<Map<Integer, Integer>> factory(Class<?> mapClass) throws Throwable {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+                MethodType.methodType(IntFunction.class),
+                MethodType.methodType(Object.class, int.class),
+                lookup.findConstructor(mapClass, MethodType.methodType(void.class, int.class)),
+                MethodType.methodType(mapClass, int.class));
+        return (IntFunction<Map<Integer, Integer>>) site.getTarget().invokeExact();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MAP_COUNT)
+    public void getHit(Blackhole bh) {
+        int r = round++;
+        for (int m = 0; m < MAP_COUNT; m++) {
+            Integer[] keys = mapKeys[m];
+            bh.consume(maps[m].get(keys[(r + m) % keys.length]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MAP_COUNT)
+    public void getMiss(Blackhole bh) {
+        for (int m = 0; m < MAP_COUNT; m++) {
+            bh.consume(maps[m].get(missKeys[m]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MAP_COUNT)
+    public void build(Blackhole bh) {
+        for (int m = 0; m < MAP_COUNT; m++) {
+            Map<Integer, Integer> map = mapFactory.apply(0);
+            for (Integer k : mapKeys[m]) {
+                map.put(k, k);
+            }
+            bh.consume(map);
+        }
+    }
+}
@@ -0,0 +1,512 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A variant of {@link ArrayBinHashMap} whose bins are kept split by the
+ * hash bit that picks between the two bins a bin becomes on the next resize,
+ * as the TODO on {@code ArrayBinHashMap.putVal} proposes.  In a table of
+ * length n, entries with {@code (hash & n) == 0} are packed at the front of
+ * their bin and the others at the back, with any spare capacity as nulls in
+ * between.
+ *
+ * <p>A lookup scans from the end its key belongs to and stops at the first
+ * null, so on average it looks at half the bin.  Resize hands each half of
+ * a bin to its new bin with at most one copy: the larger half keeps the old
+ * array and the smaller is copied out.  Each half is then split again by
+ * the bit for the following size with an in-place swap pass.
+ *
+ * <p>Bins grow by doubling when there is no free slot between the halves.
+ * Null keys and values are permitted.  Iterators do not support remove.
+ */
+public class SplitBinHashMap<K,V> extends AbstractMap<K,V> implements MapStats {
+
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4; // aka 16
+
+    /**
+     * The maximum capacity, used if a higher value is implicitly specified
+     * by either of the constructors with arguments.
+     * MUST be a power of two <= 1<<30.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The load factor used when none specified in constructor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    static final class Node<K,V> implements Map.Entry<K,V> {
+        final int hash;
+        final K key;
+        final V value;
+
+        Node(int hash, K key, V value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        public final K getKey()        { return key; }
+        public final V getValue()      { return value; }
+        public final String toString() { return key + "=" + value; }
+
+        public final int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        public final V setValue(V newValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        public final boolean equals(Object o) {
+            if (o == this)
+                return true;
+            return o instanceof Map.Entry<?, ?> e
+                    && Objects.equals(key, e.getKey())
+                    && Objects.equals(value, e.getValue());
+        }
+    }
+
+    /* ---------------- Static utilities -------------- */
+
+    final int hash(Object key) {
+        int h;
+        if (key == null)
+            return 0;
+        h = key.hashCode();
+        return (hashSeed == 0) ? h ^ (h >>> 16) : SeededHash.mix(h, hashSeed);
+    }
+
+    static final int tableSizeFor(int cap) {
+        int n = -1 >>> Integer.numberOfLeadingZeros(cap - 1);
+        return (n < 0) ? 1 : (n >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY : n + 1;
+    }
+
+    /* ---------------- Fields -------------- */
+
+    /**
+     * The table, allocated on first use, length always a power of two.
+     */
+    transient Node<K,V>[][] table;
+
+    transient Set<Entry<K,V>> entrySet;
+
+    transient int size;
+
+    transient int modCount;
+
+    /**
+     * The next size value at which to resize.  If the table has not been
+     * allocated this holds the initial capacity, or zero for
+     * DEFAULT_INITIAL_CAPACITY.
+     */
+    int threshold;
+
+    final float loadFactor;
+
+    /**
+     * Mixed into every hash if non-zero, see SeededHash.
+     */
+    final int hashSeed;
+
+    /* ---------------- Public operations -------------- */
+
+    public SplitBinHashMap(int initialCapacity, float loadFactor, boolean seededHash) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                    loadFactor);
+        this.loadFactor = loadFactor;
+        this.threshold = tableSizeFor(initialCapacity);
+        this.hashSeed = seededHash ? SeededHash.newSeed() : 0;
+    }
+
+    public SplitBinHashMap(int initialCapacity, float loadFactor) {
+        this(initialCapacity, loadFactor, false);
+    }
+
+    public SplitBinHashMap(int initialCapacity, boolean seededHash) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR, seededHash);
+    }
+
+    public SplitBinHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    public SplitBinHashMap() {
+        this.loadFactor = DEFAULT_LOAD_FACTOR; // all other fields defaulted
+        this.hashSeed = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public V get(Object key) {
+        Node<K,V> e = getNode(hash(key), key);
+        return (e == null) ? null : e.value;
+    }
+
+    public boolean containsKey(Object key) {
+        return getNode(hash(key), key) != null;
+    }
+
+    final Node<K,V> getNode(int hash, Object key) {
+        Node<K,V>[][] tab; Node<K,V>[] bin; int n;
+        if ((tab = table) == null || (bin = tab[((n = tab.length) - 1) & hash]) == null)
+            return null;
+        Node<K,V> e; Object k;
+        if ((hash & n) == 0) {
+            for (int b = 0; b < bin.length && (e = bin[b]) != null; b++) {
+                if (e.hash == hash && ((k = e.key) == key || (key != null && key.equals(k))))
+                    return e;
+            }
+        } else {
+            for (int b = bin.length - 1; b >= 0 && (e = bin[b]) != null; b--) {
+                if (e.hash == hash && ((k = e.key) == key || (key != null && key.equals(k))))
+                    return e;
+            }
+        }
+        return null;
+    }
+
+    public V put(K key, V value) {
+        return putVal(hash(key), key, value, false);
+    }
+
+    public V putIfAbsent(K key, V value) {
+        return putVal(hash(key), key, value, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V putVal(final int hash, final K key, final V value, boolean onlyIfAbsent) {
+        Node<K,V>[][] tab; Node<K,V>[] bin; int n, i;
+        if ((tab = table) == null)
+            tab = resize();
+        if ((bin = tab[i = ((n = tab.length) - 1) & hash]) == null) {
+            bin = tab[i] = (Node<K,V>[]) new Node[1];
+            bin[0] = new Node<>(hash, key, value);
+        } else {
+            // Scan from this key's end of the bin, stopping at the gap or the far end.
+            final int binLen = bin.length;
+            final boolean front = (hash & n) == 0;
+            final int step = front ? 1 : -1;
+            final int end = front ? binLen : -1;
+            int b = front ? 0 : binLen - 1;
+            Node<K,V> e; Object k;
+            for (; b != end && (e = bin[b]) != null; b += step) {
+                if (e.hash == hash && ((k = e.key) == key || (key != null && key.equals(k)))) {
+                    V oldValue = e.value;
+                    if (!onlyIfAbsent || oldValue == null)
+                        bin[b] = new Node<>(hash, key, value);
+                    return oldValue;
+                }
+            }
+            if (b != end) {
+                bin[b] = new Node<>(hash, key, value);
+            } else {
+                // Full: double it, keeping each half at its own end.
+                int lo = 0;
+                while (lo < binLen && (bin[lo].hash & n) == 0)
+                    lo++;
+                int hi = binLen - lo;
+                Node<K,V>[] grown = (Node<K,V>[]) new Node[binLen << 1];
+                System.arraycopy(bin, 0, grown, 0, lo);
+                System.arraycopy(bin, lo, grown, grown.length - hi, hi);
+                grown[front ? lo : grown.length - hi - 1] = new Node<>(hash, key, value);
+                tab[i] = grown;
+            }
+        }
+        ++modCount;
+        if (++size > threshold)
+            resize();
+        return null;
+    }
+
+    /**
+     * Initializes or doubles the table.  Each old bin's front half stays at
+     * the same index and its back half moves up by the old length, so the
+     * halves are handed over whole and only need splitting by the next bit.
+     */
+    @SuppressWarnings("unchecked")
+    final Node<K,V>[][] resize() {
+        Node<K,V>[][] oldTab = table;
+        int oldCap = (oldTab == null) ? 0 : oldTab.length;
+        int newCap;
+        if (oldCap > 0) {
+            if (oldCap >= MAXIMUM_CAPACITY) {
+                threshold = Integer.MAX_VALUE;
+                return oldTab;
+            }
+            newCap = oldCap << 1;
+        } else if (threshold > 0) { // initial capacity was placed in threshold
+            newCap = threshold;
+        } else {
+            newCap = DEFAULT_INITIAL_CAPACITY;
+        }
+        float ft = (float)newCap * loadFactor;
+        threshold = (newCap < MAXIMUM_CAPACITY && ft < (float)MAXIMUM_CAPACITY ?
+                (int)ft : Integer.MAX_VALUE);
+        Node<K,V>[][] newTab = (Node<K,V>[][]) new Node[newCap][];
+        for (int ot = 0; ot < oldCap; ++ot) {
+            Node<K,V>[] bin = oldTab[ot];
+            if (bin == null)
+                continue;
+            oldTab[ot] = null;
+            final int binLen = bin.length;
+            int lo = 0;
+            while (lo < binLen && bin[lo] != null && (bin[lo].hash & oldCap) == 0)
+                lo++;
+            int hi = 0;
+            while (hi < binLen - lo && bin[binLen - 1 - hi] != null)
+                hi++;
+            Node<K,V>[] staying, moving;
+            if (hi == 0) {
+                staying = bin;
+                moving = null;
+            } else if (lo == 0) {
+                staying = null;
+                moving = bin;
+            } else if (lo >= hi) {
+                staying = bin;
+                moving = (Node<K,V>[]) new Node[hi];
+                System.arraycopy(bin, binLen - hi, moving, 0, hi);
+                Arrays.fill(bin, binLen - hi, binLen, null);
+            } else {
+                staying = (Node<K,V>[]) new Node[lo];
+                moving = bin;
+                System.arraycopy(bin, 0, staying, 0, lo);
+                Arrays.fill(bin, 0, lo, null);
+            }
+            if (staying != null) {
+                split(staying, 0, lo, newCap);
+                newTab[ot] = staying;
+            }
+            if (moving != null) {
+                if (moving == bin)
+                    split(moving, binLen - hi, binLen, newCap);
+                else
+                    split(moving, 0, hi, newCap);
+                newTab[ot + oldCap] = moving;
+            }
+        }
+        table = newTab;
+        return newTab;
+    }
+
+    /**
+     * Splits the live nodes in bin[from, to), which touches one end of the
+     * bin, by the given hash bit: clear at the front, set at the back, and
+     * nulls between.
+     */
+    private static <K,V> void split(Node<K,V>[] bin, int from, int to, int bit) {
+        int i = from, j = to - 1;
+        while (i <= j) {
+            if ((bin[i].hash & bit) == 0) {
+                i++;
+            } else if ((bin[j].hash & bit) != 0) {
+                j--;
+            } else {
+                Node<K,V> t = bin[i];
+                bin[i++] = bin[j];
+                bin[j--] = t;
+            }
+        }
+        int numFront = i - from, numBack = to - i;
+        if (from != 0)
+            System.arraycopy(bin, from, bin, 0, numFront);
+        if (to != bin.length)
+            System.arraycopy(bin, i, bin, bin.length - numBack, numBack);
+        Arrays.fill(bin, numFront, bin.length - numBack, null);
+    }
+
+    public V remove(Object key) {
+        Node<K,V> e = removeNode(hash(key), key, null, false);
+        return (e == null) ? null : e.value;
+    }
+
+    public boolean remove(Object key, Object value) {
+        return removeNode(hash(key), key, value, true) != null;
+    }
+
+    /**
+     * Removes the node for key and closes the gap by shifting the rest of
+     * its half of the bin one slot towards its end.
+     */
+    final Node<K,V> removeNode(int hash, Object key, Object value, boolean matchValue) {
+        Node<K,V>[][] tab; Node<K,V>[] bin; int n, i;
+        if ((tab = table) == null || (bin = tab[i = ((n = tab.length) - 1) & hash]) == null)
+            return null;
+        final int binLen = bin.length;
+        final boolean front = (hash & n) == 0;
+        final int step = front ? 1 : -1;
+        final int end = front ? binLen : -1;
+        Node<K,V> e; Object k; V v;
+        for (int b = front ? 0 : binLen - 1; b != end && (e = bin[b]) != null; b += step) {
+            if (e.hash == hash && ((k = e.key) == key || (key != null && key.equals(k)))) {
+                if (matchValue && (v = e.value) != value && (value == null || !value.equals(v)))
+                    return null;
+                Node<K,V> next;
+                for (int c = b + step; c != end && (next = bin[c]) != null
+                        && ((next.hash & n) == 0) == front; b = c, c += step) {
+                    bin[b] = next;
+                }
+                bin[b] = null;
+                if (bin[0] == null && bin[binLen - 1] == null)
+                    tab[i] = null;
+                ++modCount;
+                --size;
+                return e;
+            }
+        }
+        return null;
+    }
+
+    public void clear() {
+        modCount++;
+        if (table != null && size > 0) {
+            size = 0;
+            Arrays.fill(table, null);
+        }
+    }
+
+    public boolean containsValue(Object value) {
+        if (table != null && size > 0) {
+            for (Node<K,V>[] bin : table) {
+                if (bin != null) {
+                    for (Node<K,V> e : bin) {
+                        if (e != null && Objects.equals(e.value, value))
+                            return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    public Set<Entry<K,V>> entrySet() {
+        Set<Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Entry<K,V>> {
+        public final int size()                 { return size; }
+        public final void clear()               { SplitBinHashMap.this.clear(); }
+        public final Iterator<Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+    }
+
+    final class EntryIterator implements Iterator<Entry<K,V>> {
+        final Node<K,V>[][] tab = table;
+        int expectedModCount = modCount;
+        int index;              // current bin
+        int binIndex = -1;      // current slot in tab[index]
+        Node<K,V> next = advance();
+
+        private Node<K,V> advance() {
+            if (tab == null)
+                return null;
+            for (; index < tab.length; index++, binIndex = -1) {
+                Node<K,V>[] bin = tab[index];
+                if (bin != null) {
+                    while (++binIndex < bin.length) {
+                        if (bin[binIndex] != null)
+                            return bin[binIndex];
+                    }
+                }
+            }
+            return null;
+        }
+
+        public final boolean hasNext() {
+            return next != null;
+        }
+
+        public final Entry<K,V> next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            Node<K,V> e = next;
+            if (e == null)
+                throw new NoSuchElementException();
+            next = advance();
+            return e;
+        }
+    }
+
+    /* ---------------- MapStats -------------- */
+
+    public long heapBytes() {
+        Node<K,V>[][] tab = table;
+        if (tab == null)
+            return 0L;
+        long acc = HeapLayout.sizeOf(this) + HeapLayout.sizeOf(tab);
+        for (Node<K,V>[] bin : tab) {
+            if (bin != null) {
+                acc += HeapLayout.sizeOf(bin);
+                for (Node<K,V> e : bin)
+                    acc += HeapLayout.sizeOf(e);
+            }
+        }
+        return acc;
+    }
+
+    public int[] binLengthHistogram() {
+        Node<K,V>[][] tab = table;
+        if (tab == null)
+            return new int[0];
+        int[] counts = new int[tab.length + 1];
+        for (Node<K,V>[] bin : tab) {
+            int count = 0;
+            if (bin != null) {
+                for (Node<K,V> e : bin) {
+                    if (e != null)
+                        count++;
+                }
+            }
+            counts[Math.min(count, tab.length)]++;
+        }
+        return MapStats.trimHistogram(counts);
+    }
+}
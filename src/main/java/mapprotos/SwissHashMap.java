@@ -0,0 +1,469 @@
+/*
+ * Copyright (c) 1997, 2022, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package mapprotos;
+
+import java.io.PrintStream;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Open addressing in the style of SwissTable.  Slots come in groups of 8.
+ * Each group has one {@code long} in {@code ctrl} holding a control byte per
+ * slot: {@code EMPTY}, {@code DELETED}, or for a full slot the low 7 bits of
+ * the key's hash (its tag).  A lookup compares all 8 tags of a group with a
+ * few word-wide (SWAR) bit operations and only reads {@code keys} for slots
+ * whose tag matches, which happens by chance for about 1 slot in 128.  A miss
+ * therefore usually costs one {@code ctrl} word per group probed and no key
+ * reads, where {@code ArrayBinHashMap.get} loads every node in the bin.
+ *
+ * <p>Groups are probed triangularly: 0, 1, 3, 6, ... groups past the home
+ * group, which visits every group of a power of two table.  A probe ends at
+ * the first group that has an {@code EMPTY} slot.  Removal leaves
+ * {@code DELETED} only when the group has no {@code EMPTY}, since only then
+ * can some other key's probe have passed through it.
+ *
+ * <p>Null keys and values are permitted.  Iterators do not support remove.
+ */
+public class SwissHashMap<K,V> extends AbstractMap<K,V> {
+
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4; // aka 16
+
+    /**
+     * The maximum capacity, MUST be a power of two <= 1<<30.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * Slots per group, one per byte of a ctrl word.
+     */
+    static final int GROUP_WIDTH = 8;
+
+    /**
+     * Control bytes.  A full slot's control byte is its 7 bit tag, so the
+     * high bit is set only for EMPTY and DELETED.
+     */
+    static final int EMPTY = 0x80;
+    static final int DELETED = 0xFE;
+
+    static final long LSBS = 0x0101010101010101L;
+    static final long MSBS = 0x8080808080808080L;
+    static final long ALL_EMPTY = LSBS * EMPTY;
+
+    /**
+     * Spreads the hash code so both the group index (high bits) and the
+     * tag (low 7 bits) depend on all of its bits.  A seeded map mixes in
+     * its seed instead, see SeededHash.
+     */
+    final int hash(Object key) {
+        int h;
+        if (key == null)
+            return 0;
+        if (hashSeed != 0)
+            return SeededHash.mix(key.hashCode(), hashSeed);
+        h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    static final int tableSizeFor(int cap) {
+        int n = -1 >>> Integer.numberOfLeadingZeros(Math.max(cap, GROUP_WIDTH) - 1);
+        return (n >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY : n + 1;
+    }
+
+    /**
+     * Returns a word with the high bit set in each byte of group equal to
+     * tag.  Adding 0x7F to the low 7 bits of a byte carries into bit 7
+     * unless they are all zero, so this flags exactly the zero bytes of
+     * group ^ tag, with no carry between bytes.
+     */
+    static long matchTag(long group, int tag) {
+        long x = group ^ (LSBS * tag);
+        return ~(((x & ~MSBS) + ~MSBS) | x | ~MSBS);
+    }
+
+    /**
+     * Returns a word with the high bit set in each EMPTY byte of group.
+     * EMPTY is the only control byte with bit 7 set and bit 6 clear.
+     */
+    static long matchEmpty(long group) {
+        return group & ~(group << 1) & MSBS;
+    }
+
+    /**
+     * Returns a word with the high bit set in each EMPTY or DELETED byte.
+     */
+    static long matchEmptyOrDeleted(long group) {
+        return group & MSBS;
+    }
+
+    /* ---------------- Fields -------------- */
+
+    /**
+     * One control word per group of GROUP_WIDTH slots.
+     */
+    transient long[] ctrl;
+    transient Object[] keys;
+    transient Object[] values;
+
+    transient Set<Entry<K,V>> entrySet;
+
+    transient int size;
+
+    transient int modCount;
+
+    /**
+     * Number of EMPTY slots that can still be filled before the table is
+     * rebuilt.  DELETED slots are reused without counting against it.
+     */
+    transient int growthLeft;
+
+    /**
+     * Mixed into every hash if non-zero, see SeededHash.
+     */
+    final int hashSeed;
+
+    /* ---------------- Public operations -------------- */
+
+    public SwissHashMap(int initialCapacity, boolean seededHash) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    initialCapacity);
+        this.hashSeed = seededHash ? SeededHash.newSeed() : 0;
+        allocate(tableSizeFor(initialCapacity));
+    }
+
+    public SwissHashMap(int initialCapacity) {
+        this(initialCapacity, false);
+    }
+
+    public SwissHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    private void allocate(int cap) {
+        ctrl = new long[cap / GROUP_WIDTH];
+        Arrays.fill(ctrl, ALL_EMPTY);
+        keys = new Object[cap];
+        values = new Object[cap];
+        growthLeft = maxLoad(cap);
+    }
+
+    /**
+     * Load limit of 7/8, the SwissTable default.
+     */
+    private static int maxLoad(int cap) {
+        return cap - cap / 8;
+    }
+
+    private int controlByte(int slot) {
+        return (int) (ctrl[slot / GROUP_WIDTH] >>> ((slot % GROUP_WIDTH) * 8)) & 0xFF;
+    }
+
+    private void setControlByte(int slot, int c) {
+        int g = slot / GROUP_WIDTH;
+        int shift = (slot % GROUP_WIDTH) * 8;
+        ctrl[g] = (ctrl[g] & ~(0xFFL << shift)) | ((long) c << shift);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int i = indexOf(hash(key), key);
+        return (i >= 0) ? (V) values[i] : null;
+    }
+
+    public boolean containsKey(Object key) {
+        return indexOf(hash(key), key) >= 0;
+    }
+
+    /**
+     * Returns the slot holding key, or -1 if there is none.
+     */
+    final int indexOf(final int hash, final Object key) {
+        final long[] cs = ctrl;
+        final Object[] ks = keys;
+        final int gmask = cs.length - 1;
+        final int tag = hash & 0x7F;
+        int g = (hash >>> 7) & gmask;
+        for (int step = 1; ; g = (g + step++) & gmask) {
+            final long group = cs[g];
+            for (long m = matchTag(group, tag); m != 0; m &= m - 1) {
+                int i = g * GROUP_WIDTH + (Long.numberOfTrailingZeros(m) >>> 3);
+                Object k;
+                if ((k = ks[i]) == key || (key != null && key.equals(k)))
+                    return i;
+            }
+            if (matchEmpty(group) != 0)
+                return -1;
+        }
+    }
+
+    public V put(K key, V value) {
+        return putVal(hash(key), key, value, false);
+    }
+
+    public V putIfAbsent(K key, V value) {
+        return putVal(hash(key), key, value, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V putVal(final int hash, final K key, final V value, boolean onlyIfAbsent) {
+        int i = indexOf(hash, key);
+        if (i >= 0) {
+            V oldValue = (V) values[i];
+            if (!onlyIfAbsent || oldValue == null)
+                values[i] = value;
+            return oldValue;
+        }
+        i = findInsertSlot(hash);
+        if (growthLeft == 0 && controlByte(i) == EMPTY) {
+            rehash();
+            i = findInsertSlot(hash);
+        }
+        insertAt(i, hash, key, value);
+        ++modCount;
+        ++size;
+        return null;
+    }
+
+    /**
+     * Returns the first EMPTY or DELETED slot in hash's probe sequence.
+     */
+    private int findInsertSlot(final int hash) {
+        final long[] cs = ctrl;
+        final int gmask = cs.length - 1;
+        int g = (hash >>> 7) & gmask;
+        for (int step = 1; ; g = (g + step++) & gmask) {
+            long m = matchEmptyOrDeleted(cs[g]);
+            if (m != 0)
+                return g * GROUP_WIDTH + (Long.numberOfTrailingZeros(m) >>> 3);
+        }
+    }
+
+    private void insertAt(int i, int hash, Object key, Object value) {
+        if (controlByte(i) == EMPTY)
+            --growthLeft;
+        setControlByte(i, hash & 0x7F);
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    /**
+     * Doubles the table, or rebuilds it at the same size when DELETED
+     * slots rather than live entries are what used up growthLeft.
+     */
+    private void rehash() {
+        final long[] oldCtrl = ctrl;
+        final Object[] oldKeys = keys;
+        final Object[] oldValues = values;
+        int oldCap = oldKeys.length;
+        int newCap = oldCap;
+        if (size >= maxLoad(oldCap) / 2) {
+            if (oldCap >= MAXIMUM_CAPACITY)
+                throw new IllegalStateException("SwissHashMap is full");
+            newCap = oldCap << 1;
+        }
+        allocate(newCap);
+        for (int g = 0; g < oldCtrl.length; g++) {
+            long group = oldCtrl[g];
+            for (long m = ~group & MSBS; m != 0; m &= m - 1) {
+                int j = g * GROUP_WIDTH + (Long.numberOfTrailingZeros(m) >>> 3);
+                Object k = oldKeys[j];
+                int hash = hash(k);
+                insertAt(findInsertSlot(hash), hash, k, oldValues[j]);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        int i = indexOf(hash(key), key);
+        if (i < 0)
+            return null;
+        V oldValue = (V) values[i];
+        removeAt(i);
+        return oldValue;
+    }
+
+    public boolean remove(Object key, Object value) {
+        int i = indexOf(hash(key), key);
+        if (i < 0 || !Objects.equals(values[i], value))
+            return false;
+        removeAt(i);
+        return true;
+    }
+
+    private void removeAt(int i) {
+        if (matchEmpty(ctrl[i / GROUP_WIDTH]) != 0) {
+            setControlByte(i, EMPTY);
+            ++growthLeft;
+        } else {
+            setControlByte(i, DELETED);
+        }
+        keys[i] = null;
+        values[i] = null;
+        ++modCount;
+        --size;
+    }
+
+    public void clear() {
+        modCount++;
+        if (size > 0) {
+            size = 0;
+            Arrays.fill(ctrl, ALL_EMPTY);
+            Arrays.fill(keys, null);
+            Arrays.fill(values, null);
+            growthLeft = maxLoad(keys.length);
+        }
+    }
+
+    public Set<Entry<K,V>> entrySet() {
+        Set<Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Entry<K,V>> {
+        public final int size()                 { return size; }
+        public final void clear()               { SwissHashMap.this.clear(); }
+        public final Iterator<Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+    }
+
+    final class EntryIterator implements Iterator<Entry<K,V>> {
+        final long[] cs = ctrl;
+        int expectedModCount = modCount;
+        int index = advance(0);
+
+        private int advance(int i) {
+            int n = cs.length * GROUP_WIDTH;
+            while (i < n && (cs[i / GROUP_WIDTH] >>> ((i % GROUP_WIDTH) * 8) & 0x80) != 0)
+                i++;
+            return i;
+        }
+
+        public final boolean hasNext() {
+            return index < cs.length * GROUP_WIDTH;
+        }
+
+        @SuppressWarnings("unchecked")
+        public final Entry<K,V> next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (!hasNext())
+                throw new NoSuchElementException();
+            int i = index;
+            index = advance(i + 1);
+            return new SimpleImmutableEntry<>((K) keys[i], (V) values[i]);
+        }
+    }
+
+    /**
+     * Print stats of the table to the a stream.
+     * @param out a stream
+     */
+    public void dumpStats(PrintStream out) {
+        out.printf("%s instance: size: %d%n", this.getClass().getName(), this.size());
+        long size = heapSize();
+        long bytesPer = (this.size != 0) ? size / this.size() : 0;
+        out.printf("    heap size: %d(bytes), avg bytes per entry: %d, table len: %d%n",
+                size, bytesPer, keys.length);
+        long[] types = entryTypes();
+        out.printf("    values: %d, empty: %d, deleted: %d%n",
+                types[0], types[1], types[2]);
+        out.printf("    groups probed on hit: %s%n", Arrays.toString(hitGroups()));
+        out.printf("    groups probed on miss: %s%n", Arrays.toString(missGroups()));
+    }
+
+    private long[] entryTypes() {
+        long[] counts = new long[3];
+        for (int i = 0; i < keys.length; i++) {
+            int c = controlByte(i);
+            counts[c == EMPTY ? 1 : c == DELETED ? 2 : 0]++;
+        }
+        return counts;
+    }
+
+    // Returns a histogram of the number of groups looked at to find each key.
+    private int[] hitGroups() {
+        int[] counts = new int[ctrl.length + 1];
+        final int gmask = ctrl.length - 1;
+        for (int i = 0; i < keys.length; i++) {
+            if ((controlByte(i) & 0x80) != 0)
+                continue;
+            int hash = hash(keys[i]);
+            int g = (hash >>> 7) & gmask;
+            int count = 1;
+            for (int step = 1; g != i / GROUP_WIDTH; g = (g + step++) & gmask)
+                count++;
+            counts[count]++;
+        }
+        return minCounts(counts);
+    }
+
+    // Returns a histogram of the number of groups looked at before giving
+    // up on an absent key, taking each group in turn as the home group.
+    private int[] missGroups() {
+        int[] counts = new int[ctrl.length + 1];
+        final int gmask = ctrl.length - 1;
+        for (int home = 0; home < ctrl.length; home++) {
+            int g = home;
+            int count = 1;
+            for (int step = 1; matchEmpty(ctrl[g]) == 0; g = (g + step++) & gmask)
+                count++;
+            counts[count]++;
+        }
+        return minCounts(counts);
+    }
+
+    private int[] minCounts(int[] counts) {
+        int i;
+        for (i = counts.length - 1; i >= 0 && counts[i] == 0; i--) {
+        }
+        counts = Arrays.copyOf(counts, i + 1);
+        return counts;
+    }
+
+    private long heapSize() {
+        long acc = HeapLayout.sizeOf(this);
+        return acc + HeapLayout.sizeOf(ctrl) + HeapLayout.sizeOf(keys) + HeapLayout.sizeOf(values);
+    }
+}
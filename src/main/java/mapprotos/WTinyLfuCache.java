@@ -0,0 +1,478 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import java.io.PrintStream;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A cache of at most maxSize entries with W-TinyLFU admission and eviction
+ * (G. Einziger, R. Friedman and B. Manes, "TinyLFU: A Highly Efficient
+ * Cache Admission Policy", 2017).  Under Zipf traffic an LRU such as
+ * {@link LinkedHashMapCpy} in access order spends much of its capacity on
+ * keys that are used once and then pushed out by the next ones; this
+ * cache only keeps a new key if it has been used more often than the entry
+ * it would push out.
+ *
+ * <p>Entries are indexed by a {@link HashMapCpy} from key to Node,
+ * and each Node is on one of three LRU lists.  New keys go to a small
+ * window, WINDOW_PERCENT of maxSize, which lets a burst of new keys build
+ * up some frequency.  The rest is the main region, a segmented LRU: an
+ * entry leaving the window goes to probation, and a hit in probation moves
+ * it to protected, which holds up to PROTECTED_PERCENT of the main region
+ * and demotes its least recent entry back to probation.  When the cache is
+ * over maxSize the entry leaving the window is a candidate against the
+ * least recent probation entry, and whichever a {@link FrequencySketch}
+ * says was used less often is evicted; ties keep the old entry.
+ *
+ * <p>Every get counts toward its key's frequency, hit or miss.  A put does
+ * not, as a put of a new key usually follows the get that missed it, and
+ * counting both would favor keys that keep missing.  Null keys and values
+ * are permitted.  Iteration and {@code containsKey} do not count as use.
+ */
+public class WTinyLfuCache<K,V> extends AbstractMap<K,V> implements MapStats {
+
+    /**
+     * The share of maxSize kept for the admission window.
+     */
+    static final int WINDOW_PERCENT = 1;
+
+    /**
+     * The share of the main region kept for protected entries.
+     */
+    static final int PROTECTED_PERCENT = 80;
+
+    static final int WINDOW = 0;
+    static final int PROBATION = 1;
+    static final int PROTECTED = 2;
+
+    static final class Node<K,V> implements Map.Entry<K,V> {
+        final K key;
+        V value;
+        Node<K,V> prev;
+        Node<K,V> next;
+        int queue;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public final K getKey()        { return key; }
+        public final V getValue()      { return value; }
+        public final String toString() { return key + "=" + value; }
+
+        public final int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        public final V setValue(V newValue) {
+            V oldValue = value;
+            value = newValue;
+            return oldValue;
+        }
+
+        public final boolean equals(Object o) {
+            if (o == this)
+                return true;
+            return o instanceof Map.Entry<?, ?> e
+                    && Objects.equals(key, e.getKey())
+                    && Objects.equals(value, e.getValue());
+        }
+    }
+
+    /**
+     * A circular doubly linked list of Nodes, least recently used first.
+     */
+    static final class Queue<K,V> {
+        final Node<K,V> head = new Node<>(null, null);
+        int size;
+
+        Queue() {
+            clear();
+        }
+
+        void clear() {
+            head.prev = head.next = head;
+            size = 0;
+        }
+
+        Node<K,V> first() {
+            return (head.next == head) ? null : head.next;
+        }
+
+        void addLast(Node<K,V> e) {
+            Node<K,V> last = head.prev;
+            e.prev = last;
+            e.next = head;
+            last.next = e;
+            head.prev = e;
+            size++;
+        }
+
+        void unlink(Node<K,V> e) {
+            e.prev.next = e.next;
+            e.next.prev = e.prev;
+            e.prev = e.next = null;
+            size--;
+        }
+
+        void moveToLast(Node<K,V> e) {
+            if (head.prev != e) {
+                unlink(e);
+                addLast(e);
+            }
+        }
+    }
+
+    /**
+     * A count-min sketch of 4-bit counters, 16 to a long, that estimates
+     * how often each hash was counted, as in Caffeine.  The table is cut
+     * into 64-byte blocks of eight longs; a hash picks a block with its low
+     * bits and, with a rehash, one counter in each of four pairs of longs
+     * of the block, so counting touches one cache line.  After sampleSize
+     * increments every counter is halved, so the estimates follow recent
+     * frequency and old popularity fades.
+     */
+    static final class FrequencySketch {
+        static final long RESET_MASK = 0x7777777777777777L;
+
+        final long[] table;
+        final int blockMask;
+        final int sampleSize;
+        int additions;
+
+        FrequencySketch(int maxSize) {
+            int n = HashMapCpy.tableSizeFor(Math.max(maxSize, 16));
+            table = new long[n];
+            blockMask = (n >>> 3) - 1;
+            sampleSize = 10 * Math.max(maxSize, 16);
+        }
+
+        /**
+         * Returns the estimated count of hash, at most 15.
+         */
+        int frequency(int hash) {
+            int block = (hash & blockMask) << 3;
+            int counterHash = rehash(hash);
+            int freq = 15;
+            for (int i = 0; i < 4; i++) {
+                int h = counterHash >>> (i << 3);
+                int shift = ((h >>> 1) & 15) << 2;
+                int count = (int) ((table[block + (h & 1) + (i << 1)] >>> shift) & 0xfL);
+                freq = Math.min(freq, count);
+            }
+            return freq;
+        }
+
+        void increment(int hash) {
+            int block = (hash & blockMask) << 3;
+            int counterHash = rehash(hash);
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int h = counterHash >>> (i << 3);
+                int shift = ((h >>> 1) & 15) << 2;
+                int index = block + (h & 1) + (i << 1);
+                if (((table[index] >>> shift) & 0xfL) != 0xfL) {
+                    table[index] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize)
+                reset();
+        }
+
+        void reset() {
+            for (int i = 0; i < table.length; i++)
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            additions >>>= 1;
+        }
+
+        static int rehash(int x) {
+            x *= 0x31848bab;
+            return x ^ (x >>> 14);
+        }
+    }
+
+    /* ---------------- Fields -------------- */
+
+    final HashMapCpy<K,Node<K,V>> index;
+
+    final FrequencySketch sketch;
+
+    final Queue<K,V> window = new Queue<>();
+    final Queue<K,V> probation = new Queue<>();
+    final Queue<K,V> protectedQueue = new Queue<>();
+
+    final int maxSize;
+    final int windowMax;
+    final int protectedMax;
+
+    int modCount;
+
+    long evictions;
+
+    /**
+     * New keys that were evicted straight from the window because they
+     * were used less than the probation entry they would have pushed out.
+     */
+    long rejections;
+
+    transient Set<Entry<K,V>> entrySet;
+
+    /* ---------------- Public operations -------------- */
+
+    public WTinyLfuCache(int maxSize) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("Illegal maximum size: " +
+                    maxSize);
+        this.maxSize = maxSize;
+        windowMax = Math.max(1, (int) ((long) maxSize * WINDOW_PERCENT / 100));
+        protectedMax = (int) ((long) (maxSize - windowMax) * PROTECTED_PERCENT / 100);
+        index = new HashMapCpy<>((int) Math.min((long) maxSize * 4 / 3 + 1, HashMapCpy.MAXIMUM_CAPACITY));
+        sketch = new FrequencySketch(maxSize);
+    }
+
+    /**
+     * The hash the sketch counts, spread so that the low bits used to pick
+     * counters depend on all of the key's hash.
+     */
+    static int hash(Object key) {
+        int h = (key == null) ? 0 : key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of entries evicted to make room for new ones,
+     * including rejected new keys.
+     */
+    public long evictions() {
+        return evictions;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public boolean isEmpty() {
+        return index.isEmpty();
+    }
+
+    public V get(Object key) {
+        sketch.increment(hash(key));
+        Node<K,V> e = index.get(key);
+        if (e == null)
+            return null;
+        onHit(e);
+        return e.value;
+    }
+
+    public V getOrDefault(Object key, V defaultValue) {
+        sketch.increment(hash(key));
+        Node<K,V> e = index.get(key);
+        if (e == null)
+            return defaultValue;
+        onHit(e);
+        return e.value;
+    }
+
+    public boolean containsKey(Object key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Maps key to value.  A new key goes to the window, and if the cache
+     * is then over maxSize an entry is evicted, possibly this one.
+     * Replacing a value counts as a hit.
+     */
+    public V put(K key, V value) {
+        Node<K,V> e = index.get(key);
+        if (e != null) {
+            V old = e.value;
+            e.value = value;
+            onHit(e);
+            return old;
+        }
+        e = new Node<>(key, value);
+        index.put(key, e);
+        e.queue = WINDOW;
+        window.addLast(e);
+        modCount++;
+        if (window.size > windowMax)
+            evict();
+        return null;
+    }
+
+    public V remove(Object key) {
+        Node<K,V> e = index.remove(key);
+        if (e == null)
+            return null;
+        modCount++;
+        queueOf(e).unlink(e);
+        return e.value;
+    }
+
+    public void clear() {
+        modCount++;
+        index.clear();
+        window.clear();
+        probation.clear();
+        protectedQueue.clear();
+    }
+
+    /* ---------------- Internals -------------- */
+
+    private Queue<K,V> queueOf(Node<K,V> e) {
+        return switch (e.queue) {
+            case WINDOW -> window;
+            case PROBATION -> probation;
+            default -> protectedQueue;
+        };
+    }
+
+    private void onHit(Node<K,V> e) {
+        switch (e.queue) {
+            case WINDOW -> window.moveToLast(e);
+            case PROTECTED -> protectedQueue.moveToLast(e);
+            default -> {
+                probation.unlink(e);
+                e.queue = PROTECTED;
+                protectedQueue.addLast(e);
+                if (protectedQueue.size > protectedMax) {
+                    Node<K,V> demoted = protectedQueue.first();
+                    protectedQueue.unlink(demoted);
+                    demoted.queue = PROBATION;
+                    probation.addLast(demoted);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the window's least recent entry to probation, then, while the
+     * cache is over maxSize, evicts whichever of it and the least recent
+     * probation entry was used less.
+     */
+    private void evict() {
+        Node<K,V> candidate = window.first();
+        window.unlink(candidate);
+        candidate.queue = PROBATION;
+        if (index.size() <= maxSize) {
+            probation.addLast(candidate);
+            return;
+        }
+        Node<K,V> victim = probation.first();
+        if (victim == null)
+            victim = protectedQueue.first();
+        if (victim != null && sketch.frequency(hash(candidate.key)) > sketch.frequency(hash(victim.key))) {
+            queueOf(victim).unlink(victim);
+            index.remove(victim.key);
+            probation.addLast(candidate);
+        } else {
+            index.remove(candidate.key);
+            rejections++;
+        }
+        evictions++;
+    }
+
+    /* ---------------- Views -------------- */
+
+    public Set<Entry<K,V>> entrySet() {
+        Set<Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Entry<K,V>> {
+        public final int size()                 { return index.size(); }
+        public final void clear()               { WTinyLfuCache.this.clear(); }
+        public final Iterator<Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry<?, ?> e))
+                return false;
+            Node<K,V> n = index.get(e.getKey());
+            return n != null && Objects.equals(n.value, e.getValue());
+        }
+    }
+
+    /**
+     * Walks the index, so in hash order; remove takes the entry off its
+     * list as well.
+     */
+    final class EntryIterator implements Iterator<Entry<K,V>> {
+        final Iterator<Node<K,V>> it = index.values().iterator();
+        Node<K,V> current;
+        int expectedModCount = modCount;
+
+        public final boolean hasNext() {
+            return it.hasNext();
+        }
+
+        public final Entry<K,V> next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            return current = it.next();
+        }
+
+        public final void remove() {
+            if (current == null)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            it.remove();
+            queueOf(current).unlink(current);
+            current = null;
+            expectedModCount = ++modCount;
+        }
+    }
+
+    /* ---------------- MapStats -------------- */
+
+    public long heapBytes() {
+        long acc = HeapLayout.sizeOf(this) + index.heapBytes() + HeapLayout.sizeOf(sketch)
+                + HeapLayout.sizeOf(sketch.table) + 3 * (HeapLayout.sizeOf(window) + HeapLayout.sizeOf(window.head));
+        return acc + (long) index.size() * HeapLayout.instanceSize(Node.class);
+    }
+
+    public int[] binLengthHistogram() {
+        return index.binLengthHistogram();
+    }
+
+    public void dumpStats(PrintStream out) {
+        MapStats.super.dumpStats(out);
+        out.printf("    max size: %d, window: %d, probation: %d, protected: %d%n",
+                maxSize, window.size, probation.size, protectedQueue.size);
+        out.printf("    evictions: %d, rejected new keys: %d%n", evictions, rejections);
+    }
+}
@@ -78,6 +78,20 @@ public class WalkX extends MapBase {
         return s;
     }
 
+    @Benchmark
+    public int sumStream() {
+        return map.keySet().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * Exercises the keySet spliterator's trySplit; an unbalanced split leaves
+     * some fork-join workers idle while others walk crowded ranges.
+     */
+    @Benchmark
+    public int sumParallelStream() {
+        return map.keySet().parallelStream().mapToInt(Integer::intValue).sum();
+    }
+
     @CompilerControl(CompilerControl.Mode.DONT_INLINE)
     private static Iterator<Integer> hide(Iterator<Integer> it) {
         return it;
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package mapprotos;
+
+import java.util.Random;
+
+/**
+ * Draws ranks 1..n with probability proportional to 1/k^s, in constant time
+ * and space, by rejection-inversion (W. Hörmann and G. Derflinger,
+ * "Rejection-inversion to generate variates from monotone discrete
+ * distributions", 1996).  A CDF table would need 8 bytes per key, which is
+ * 400MB at the 50M sizes.
+ */
+public class ZipfSampler {
+
+    private final int n;
+    private final double s;
+    private final double hIntegralX1;
+    private final double hIntegralN;
+    private final double sParam;
+
+    public ZipfSampler(int n, double s) {
+        if (n < 1)
+            throw new IllegalArgumentException("Illegal number of elements: " + n);
+        if (!(s > 0))
+            throw new IllegalArgumentException("Illegal exponent: " + s);
+        this.n = n;
+        this.s = s;
+        hIntegralX1 = hIntegral(1.5) - 1.0;
+        hIntegralN = hIntegral(n + 0.5);
+        sParam = 2.0 - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+    /**
+     * Returns a rank in 1..n, rank 1 being the most frequent.
+     */
+    public int sample(Random rnd) {
+        for (;;) {
+            double u = hIntegralN + rnd.nextDouble() * (hIntegralX1 - hIntegralN);
+            double x = hIntegralInverse(u);
+            int k = (int) (x + 0.5);
+            if (k < 1)
+                k = 1;
+            else if (k > n)
+                k = n;
+            if (k - x <= sParam || u >= hIntegral(k + 0.5) - h(k))
+                return k;
+        }
+    }
+
+    // H(x), the integral of h(x) = 1/x^s, shifted so that it is continuous at s == 1.
+    private double hIntegral(double x) {
+        double logX = Math.log(x);
+        return helper2((1.0 - s) * logX) * logX;
+    }
+
+    private double h(double x) {
+        return Math.exp(-s * Math.log(x));
+    }
+
+    private double hIntegralInverse(double x) {
+        double t = x * (1.0 - s);
+        if (t < -1.0)
+            t = -1.0; // rounding can push t just past -1
+        return Math.exp(helper1(t) * x);
+    }
+
+    // log(1 + x) / x, with its Taylor series near 0
+    private static double helper1(double x) {
+        return (Math.abs(x) > 1e-8)
+                ? Math.log1p(x) / x
+                : 1.0 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+    }
+
+    // (exp(x) - 1) / x, with its Taylor series near 0
+    private static double helper2(double x) {
+        return (Math.abs(x) > 1e-8)
+                ? Math.expm1(x) / x
+                : 1.0 + x * 0.5 * (1.0 + x * (1.0 / 3.0) * (1.0 + 0.25 * x));
+    }
+}
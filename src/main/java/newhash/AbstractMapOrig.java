@@ -1 +0,0 @@
-/home/d/repo/hash/nhash/src/main/java/newhash/AbstractMapOrig.java
\ No newline at end of file
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package newhash;
+
+/**
+ * IdentityHashMapOrig with Fibonacci hashing: the key slot is taken from
+ * the high bits of {@code identityHashCode * 2^32 / phi} rather than the
+ * low bits of {@code identityHashCode * -254}.  Identity hashes are
+ * random, so this is mostly a measure of what the multiply and shift cost
+ * next to the JDK's mask.
+ */
+public class IdentityHashMapFibonacci<K,V> extends IdentityHashMapOrig<K,V> {
+
+    public IdentityHashMapFibonacci(int expectedMaxSize) {
+        super(expectedMaxSize);
+    }
+
+    public IdentityHashMapFibonacci() {
+        super();
+    }
+
+    /**
+     * Returns the top log2(len / 2) bits of the Fibonacci hash, doubled to
+     * a key index.  len is at least 2 * MINIMUM_CAPACITY, so the shift is
+     * less than 32.
+     */
+    @Override
+    int hash(Object x, int len) {
+        int h = System.identityHashCode(x) * 0x9E3779B9;
+        return (h >>> (33 - Integer.numberOfTrailingZeros(len))) << 1;
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package newhash;
+
+import mapprotos.HeapLayout;
+
+import java.io.PrintStream;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The open addressing of {@code java.util.IdentityHashMap}: keys and values
+ * alternate in one {@code table}, so a hit usually reads a single cache
+ * line, collisions are resolved by linear probing, and removal closes the
+ * gap instead of leaving tombstones.  Keys, and values in containsValue and
+ * remove(key, value), are compared with {@code ==}, and keys are hashed with
+ * System.identityHashCode.
+ *
+ * <p>{@link #hash} is the JDK's, the low bits of {@code h * -254}.
+ * IdentityHashMapFibonacci overrides it to take the high bits of a
+ * Fibonacci hash, and is otherwise this map.
+ *
+ * <p>Null keys and values are permitted.  Iterators do not support remove.
+ */
+public class IdentityHashMapOrig<K,V> extends AbstractMap<K,V> {
+
+    /**
+     * The initial capacity used by the no-args constructor.
+     * MUST be a power of two.
+     */
+    static final int DEFAULT_CAPACITY = 32;
+
+    /**
+     * The minimum capacity, used if a lower value is implicitly specified
+     * by the constructor with an argument.  MUST be a power of two.
+     */
+    static final int MINIMUM_CAPACITY = 4;
+
+    /**
+     * The maximum capacity, MUST be a power of two <= 1<<29, as the table
+     * holds twice as many references.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 29;
+
+    /**
+     * Stands for the null key in {@code table}, where null marks an empty slot.
+     */
+    static final Object NULL_KEY = new Object();
+
+    /* ---------------- Static utilities -------------- */
+
+    static Object maskNull(Object key) {
+        return (key == null) ? NULL_KEY : key;
+    }
+
+    static Object unmaskNull(Object key) {
+        return (key == NULL_KEY) ? null : key;
+    }
+
+    /**
+     * Returns the capacity for expectedMaxSize mappings, keeping the load
+     * at most 2/3.
+     */
+    private static int capacity(int expectedMaxSize) {
+        return (expectedMaxSize > MAXIMUM_CAPACITY / 3) ? MAXIMUM_CAPACITY :
+               (expectedMaxSize <= 2 * MINIMUM_CAPACITY / 3) ? MINIMUM_CAPACITY :
+               Integer.highestOneBit(expectedMaxSize + (expectedMaxSize << 1));
+    }
+
+    /**
+     * Returns the key index after i in a table of length len.
+     */
+    static int nextKeyIndex(int i, int len) {
+        return (i + 2 < len) ? i + 2 : 0;
+    }
+
+    /* ---------------- Fields -------------- */
+
+    /**
+     * Keys at even indexes, each followed by its value.  The length is
+     * twice the capacity, a power of two.
+     */
+    transient Object[] table;
+
+    transient Set<Entry<K,V>> entrySet;
+
+    int size;
+
+    transient int modCount;
+
+    /* ---------------- Public operations -------------- */
+
+    public IdentityHashMapOrig(int expectedMaxSize) {
+        if (expectedMaxSize < 0)
+            throw new IllegalArgumentException("expectedMaxSize is negative: " +
+                    expectedMaxSize);
+        table = new Object[2 * capacity(expectedMaxSize)];
+    }
+
+    public IdentityHashMapOrig() {
+        table = new Object[2 * DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Returns the even index of key slot for x in a table of length len.
+     * Multiplying by -254 uses the low bit of the identity hash and keeps
+     * the index even.
+     */
+    int hash(Object x, int len) {
+        int h = System.identityHashCode(x);
+        return ((h << 1) - (h << 8)) & (len - 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        final Object k = maskNull(key);
+        final Object[] tab = table;
+        final int len = tab.length;
+        for (int i = hash(k, len); ; i = nextKeyIndex(i, len)) {
+            Object item = tab[i];
+            if (item == k)
+                return (V) tab[i + 1];
+            if (item == null)
+                return null;
+        }
+    }
+
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Returns the key index of key, or -1 if there is none.
+     */
+    final int indexOf(Object key) {
+        final Object k = maskNull(key);
+        final Object[] tab = table;
+        final int len = tab.length;
+        for (int i = hash(k, len); ; i = nextKeyIndex(i, len)) {
+            Object item = tab[i];
+            if (item == k)
+                return i;
+            if (item == null)
+                return -1;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        final Object k = maskNull(key);
+        for (;;) {
+            final Object[] tab = table;
+            final int len = tab.length;
+            int i = hash(k, len);
+            for (Object item; (item = tab[i]) != null; i = nextKeyIndex(i, len)) {
+                if (item == k) {
+                    V oldValue = (V) tab[i + 1];
+                    tab[i + 1] = value;
+                    return oldValue;
+                }
+            }
+            final int s = size + 1;
+            // 3 * s > len is a load over 2/3 of the capacity, len / 2.
+            if (s + (s << 1) > len && resize(len))
+                continue; // probe again in the new table
+            modCount++;
+            tab[i] = k;
+            tab[i + 1] = value;
+            size = s;
+            return null;
+        }
+    }
+
+    /**
+     * Rehashes into a table for newCapacity mappings if that is larger
+     * than the current one.
+     *
+     * @return whether the table was replaced
+     */
+    private boolean resize(int newCapacity) {
+        final int newLength = newCapacity * 2;
+        final Object[] oldTable = table;
+        final int oldLength = oldTable.length;
+        if (oldLength == 2 * MAXIMUM_CAPACITY) {
+            if (size == MAXIMUM_CAPACITY - 1)
+                throw new IllegalStateException("Capacity exhausted.");
+            return false;
+        }
+        if (oldLength >= newLength)
+            return false;
+        final Object[] newTable = new Object[newLength];
+        for (int j = 0; j < oldLength; j += 2) {
+            Object key = oldTable[j];
+            if (key != null) {
+                int i = hash(key, newLength);
+                while (newTable[i] != null)
+                    i = nextKeyIndex(i, newLength);
+                newTable[i] = key;
+                newTable[i + 1] = oldTable[j + 1];
+            }
+        }
+        table = newTable;
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        int i = indexOf(key);
+        if (i < 0)
+            return null;
+        V oldValue = (V) table[i + 1];
+        removeAt(i);
+        return oldValue;
+    }
+
+    public boolean remove(Object key, Object value) {
+        int i = indexOf(key);
+        if (i < 0 || table[i + 1] != value)
+            return false;
+        removeAt(i);
+        return true;
+    }
+
+    /**
+     * Empties the key slot d and moves back each later entry of its run
+     * whose home is not cyclically in (d, i], so that no probe for it
+     * crosses the hole.  The run ends at an empty slot.
+     */
+    private void removeAt(int d) {
+        final Object[] tab = table;
+        final int len = tab.length;
+        modCount++;
+        size--;
+        Object item;
+        for (int i = nextKeyIndex(d, len); (item = tab[i]) != null; i = nextKeyIndex(i, len)) {
+            int r = hash(item, len);
+            if ((i < r && (r <= d || d <= i)) || (r <= d && d <= i)) {
+                tab[d] = item;
+                tab[d + 1] = tab[i + 1];
+                d = i;
+            }
+        }
+        tab[d] = null;
+        tab[d + 1] = null;
+    }
+
+    public void clear() {
+        modCount++;
+        Arrays.fill(table, null);
+        size = 0;
+    }
+
+    public boolean containsValue(Object value) {
+        final Object[] tab = table;
+        for (int i = 1; i < tab.length; i += 2) {
+            if (tab[i] == value && tab[i - 1] != null)
+                return true;
+        }
+        return false;
+    }
+
+    public Set<Entry<K,V>> entrySet() {
+        Set<Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Entry<K,V>> {
+        public final int size()                 { return size; }
+        public final void clear()               { IdentityHashMapOrig.this.clear(); }
+        public final Iterator<Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+    }
+
+    final class EntryIterator implements Iterator<Entry<K,V>> {
+        final Object[] tab = table;
+        int expectedModCount = modCount;
+        int index = advance(0);
+
+        private int advance(int i) {
+            while (i < tab.length && tab[i] == null)
+                i += 2;
+            return i;
+        }
+
+        public final boolean hasNext() {
+            return index < tab.length;
+        }
+
+        @SuppressWarnings("unchecked")
+        public final Entry<K,V> next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (!hasNext())
+                throw new NoSuchElementException();
+            int i = index;
+            index = advance(i + 2);
+            return new SimpleImmutableEntry<>((K) unmaskNull(tab[i]), (V) tab[i + 1]);
+        }
+    }
+
+    /**
+     * Print stats of the table to the a stream.
+     * @param out a stream
+     */
+    public void dumpStats(PrintStream out) {
+        out.printf("%s instance: size: %d%n", this.getClass().getName(), this.size());
+        long size = HeapLayout.sizeOf(this) + HeapLayout.sizeOf(table);
+        long bytesPer = (this.size != 0) ? size / this.size() : 0;
+        int capacity = table.length / 2;
+        out.printf("    heap size: %d(bytes), avg bytes per entry: %d, table len: %d%n",
+                size, bytesPer, capacity);
+        out.printf("    values: %d, empty: %d%n", this.size, capacity - this.size);
+        ProbeStats.print(out, "hitProbes      ", entryProbes());
+        ProbeStats.print(out, "missProbes     ", missProbes());
+    }
+
+    // Returns a histogram of the number of key slots looked at to find each key.
+    private int[] entryProbes() {
+        final Object[] tab = table;
+        final int len = tab.length;
+        int[] counts = new int[len / 2 + 1];
+        for (int i = 0; i < len; i += 2) {
+            if (tab[i] != null)
+                counts[((i - hash(tab[i], len)) & (len - 1)) / 2 + 1]++;
+        }
+        return ProbeStats.trim(counts);
+    }
+
+    // Returns a histogram of the number of key slots looked at before giving
+    // up on an absent key, taking each key slot in turn as the key's home.
+    private int[] missProbes() {
+        final Object[] tab = table;
+        final int len = tab.length;
+        int[] counts = new int[len / 2 + 1];
+        // A miss from home i looks at the rest of i's run and the empty slot
+        // after it, so walk backwards from each empty slot.
+        int empty = 0;
+        while (tab[empty] != null)
+            empty += 2;
+        for (int n = 0, i = empty, p = 1; n < len / 2; n++, i = (i - 2) & (len - 1)) {
+            if (tab[i] == null)
+                p = 1;
+            counts[p++]++;
+        }
+        return ProbeStats.trim(counts);
+    }
+}
@@ -1 +0,0 @@
-/home/d/repo/hash/nhash/src/main/java/newhash/OpenHashMap.java
\ No newline at end of file
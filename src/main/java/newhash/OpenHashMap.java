@@ -0,0 +1,415 @@
+/*
+ * Copyright (c) 2019, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package newhash;
+
+import mapprotos.HeapLayout;
+
+import java.io.PrintStream;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Open addressing with linear probing.  A key lives in the first free slot
+ * at or after its home slot, {@code hash & (length - 1)}, of the parallel
+ * {@code keys} and {@code values} arrays.  There are no nodes: a lookup
+ * scans forward from the home slot until it finds the key or an empty slot,
+ * which usually stays within one cache line of keys.  Removal shifts later
+ * entries of the run back into the hole (Knuth's Algorithm R) instead of
+ * leaving tombstones, so misses never scan deleted slots.
+ *
+ * <p>Runs grow quickly with the load: a miss at load a looks at about
+ * (1 + 1 / (1 - a)^2) / 2 slots, 2.5 at 0.5 but 8.5 at 0.75, hence the
+ * lower default load factor.
+ *
+ * <p>Null keys and values are permitted.  Iterators do not support remove.
+ */
+public class OpenHashMap<K,V> extends AbstractMap<K,V> {
+
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4; // aka 16
+
+    /**
+     * The maximum capacity, MUST be a power of two <= 1<<30.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The load factor used when none specified in constructor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.5f;
+
+    /**
+     * Stands for the null key in {@code keys}, where null marks an empty slot.
+     */
+    static final Object NULL_KEY = new Object();
+
+    /* ---------------- Static utilities -------------- */
+
+    static Object maskNull(Object key) {
+        return (key == null) ? NULL_KEY : key;
+    }
+
+    static Object unmaskNull(Object key) {
+        return (key == NULL_KEY) ? null : key;
+    }
+
+    /**
+     * Spreads the hash code of a masked key so its low bits, which pick the
+     * home slot, depend on all of its bits.  Sequential hash codes would
+     * otherwise fill one long run.
+     */
+    static int hash(Object k) {
+        int h = k.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    static final int tableSizeFor(int cap) {
+        int n = -1 >>> Integer.numberOfLeadingZeros(cap - 1);
+        return (n < 0) ? 1 : (n >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY : n + 1;
+    }
+
+    /* ---------------- Fields -------------- */
+
+    /**
+     * The table, allocated on first use, as two arrays of the same power
+     * of two length.
+     */
+    transient Object[] keys;
+    transient Object[] values;
+
+    transient Set<Entry<K,V>> entrySet;
+
+    transient int size;
+
+    transient int modCount;
+
+    /**
+     * The next size value at which to resize.  If the table has not been
+     * allocated this holds the initial capacity, or zero for
+     * DEFAULT_INITIAL_CAPACITY.
+     */
+    int threshold;
+
+    final float loadFactor;
+
+    /* ---------------- Public operations -------------- */
+
+    public OpenHashMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                    loadFactor);
+        this.loadFactor = loadFactor;
+        this.threshold = tableSizeFor(initialCapacity);
+    }
+
+    public OpenHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    public OpenHashMap() {
+        this.loadFactor = DEFAULT_LOAD_FACTOR; // all other fields defaulted
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int i = indexOf(key);
+        return (i >= 0) ? (V) values[i] : null;
+    }
+
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Returns the slot holding key, or -1 if there is none.
+     */
+    final int indexOf(Object key) {
+        final Object[] ks;
+        if ((ks = keys) == null)
+            return -1;
+        final Object k = maskNull(key);
+        final int mask = ks.length - 1;
+        for (int i = hash(k) & mask; ; i = (i + 1) & mask) {
+            Object x = ks[i];
+            if (x == null)
+                return -1;
+            if (x == k || k.equals(x))
+                return i;
+        }
+    }
+
+    public V put(K key, V value) {
+        return putVal(key, value, false);
+    }
+
+    public V putIfAbsent(K key, V value) {
+        return putVal(key, value, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V putVal(K key, V value, boolean onlyIfAbsent) {
+        if (keys == null)
+            resize();
+        final Object k = maskNull(key);
+        final Object[] ks = keys;
+        final int mask = ks.length - 1;
+        int i = hash(k) & mask;
+        for (Object x; (x = ks[i]) != null; i = (i + 1) & mask) {
+            if (x == k || k.equals(x)) {
+                V oldValue = (V) values[i];
+                if (!onlyIfAbsent || oldValue == null)
+                    values[i] = value;
+                return oldValue;
+            }
+        }
+        ks[i] = k;
+        values[i] = value;
+        ++modCount;
+        if (++size > threshold)
+            resize();
+        return null;
+    }
+
+    /**
+     * Initializes or doubles the table, placing each entry again from its
+     * home slot in the new one.
+     */
+    final void resize() {
+        final Object[] oldKeys = keys;
+        final Object[] oldValues = values;
+        int oldCap = (oldKeys == null) ? 0 : oldKeys.length;
+        int newCap;
+        if (oldCap > 0) {
+            if (oldCap >= MAXIMUM_CAPACITY) {
+                if (size >= MAXIMUM_CAPACITY - 1)
+                    throw new IllegalStateException("OpenHashMap is full");
+                threshold = MAXIMUM_CAPACITY - 1;
+                return;
+            }
+            newCap = oldCap << 1;
+        } else if (threshold > 0) { // initial capacity was placed in threshold
+            newCap = Math.max(threshold, 2);
+        } else {
+            newCap = DEFAULT_INITIAL_CAPACITY;
+        }
+        // There must always be an empty slot to end a probe.
+        threshold = Math.min((int) (newCap * loadFactor), newCap - 1);
+        final Object[] ks = new Object[newCap];
+        final Object[] vs = new Object[newCap];
+        final int mask = newCap - 1;
+        for (int j = 0; j < oldCap; j++) {
+            Object k = oldKeys[j];
+            if (k != null) {
+                int i = hash(k) & mask;
+                while (ks[i] != null)
+                    i = (i + 1) & mask;
+                ks[i] = k;
+                vs[i] = oldValues[j];
+            }
+        }
+        keys = ks;
+        values = vs;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        int i = indexOf(key);
+        if (i < 0)
+            return null;
+        V oldValue = (V) values[i];
+        removeAt(i);
+        return oldValue;
+    }
+
+    public boolean remove(Object key, Object value) {
+        int i = indexOf(key);
+        if (i < 0 || !Objects.equals(values[i], value))
+            return false;
+        removeAt(i);
+        return true;
+    }
+
+    /**
+     * Empties slot d and moves back each later entry of its run whose home
+     * slot is not cyclically in (d, i], so that no probe for it crosses the
+     * hole.  The run ends at an empty slot.
+     */
+    private void removeAt(int d) {
+        final Object[] ks = keys;
+        final Object[] vs = values;
+        final int mask = ks.length - 1;
+        ++modCount;
+        --size;
+        Object x;
+        for (int i = (d + 1) & mask; (x = ks[i]) != null; i = (i + 1) & mask) {
+            int r = hash(x) & mask;
+            if ((i < r && (r <= d || d <= i)) || (r <= d && d <= i)) {
+                ks[d] = x;
+                vs[d] = vs[i];
+                d = i;
+            }
+        }
+        ks[d] = null;
+        vs[d] = null;
+    }
+
+    public void clear() {
+        modCount++;
+        if (keys != null && size > 0) {
+            size = 0;
+            Arrays.fill(keys, null);
+            Arrays.fill(values, null);
+        }
+    }
+
+    public boolean containsValue(Object value) {
+        if (keys != null && size > 0) {
+            final Object[] ks = keys;
+            final Object[] vs = values;
+            for (int i = 0; i < ks.length; i++) {
+                if (ks[i] != null && Objects.equals(vs[i], value))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    public Set<Entry<K,V>> entrySet() {
+        Set<Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Entry<K,V>> {
+        public final int size()                 { return size; }
+        public final void clear()               { OpenHashMap.this.clear(); }
+        public final Iterator<Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+    }
+
+    final class EntryIterator implements Iterator<Entry<K,V>> {
+        final Object[] ks = keys;
+        int expectedModCount = modCount;
+        int index = advance(0);
+
+        private int advance(int i) {
+            if (ks == null)
+                return 0;
+            while (i < ks.length && ks[i] == null)
+                i++;
+            return i;
+        }
+
+        public final boolean hasNext() {
+            return ks != null && index < ks.length;
+        }
+
+        @SuppressWarnings("unchecked")
+        public final Entry<K,V> next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (!hasNext())
+                throw new NoSuchElementException();
+            int i = index;
+            index = advance(i + 1);
+            return new SimpleImmutableEntry<>((K) unmaskNull(ks[i]), (V) values[i]);
+        }
+    }
+
+    /**
+     * Print stats of the table to the a stream.
+     * @param out a stream
+     */
+    public void dumpStats(PrintStream out) {
+        out.printf("%s instance: size: %d%n", this.getClass().getName(), this.size());
+        long size = heapSize();
+        long bytesPer = (this.size != 0) ? size / this.size() : 0;
+        int len = (keys != null) ? keys.length : 0;
+        out.printf("    heap size: %d(bytes), avg bytes per entry: %d, table len: %d%n",
+                size, bytesPer, len);
+        out.printf("    values: %d, empty: %d%n", this.size, len - this.size);
+        ProbeStats.print(out, "hitProbes      ", entryProbes());
+        ProbeStats.print(out, "missProbes     ", missProbes());
+    }
+
+    // Returns a histogram of the number of slots looked at to find each key.
+    private int[] entryProbes() {
+        final Object[] ks = keys;
+        if (ks == null)
+            return new int[0];
+        final int mask = ks.length - 1;
+        int[] counts = new int[ks.length + 1];
+        for (int i = 0; i < ks.length; i++) {
+            if (ks[i] != null)
+                counts[((i - hash(ks[i])) & mask) + 1]++;
+        }
+        return ProbeStats.trim(counts);
+    }
+
+    // Returns a histogram of the number of slots looked at before giving up
+    // on an absent key, taking each slot in turn as the key's home slot.
+    private int[] missProbes() {
+        final Object[] ks = keys;
+        if (ks == null)
+            return new int[0];
+        final int mask = ks.length - 1;
+        int[] counts = new int[ks.length + 1];
+        // A miss from home slot i looks at the rest of i's run and the empty
+        // slot after it, so walk backwards from each empty slot.
+        int empty = 0;
+        while (ks[empty] != null)
+            empty++;
+        for (int n = 0, i = empty, p = 1; n < ks.length; n++, i = (i - 1) & mask) {
+            if (ks[i] == null)
+                p = 1;
+            counts[p++]++;
+        }
+        return ProbeStats.trim(counts);
+    }
+
+    private long heapSize() {
+        long acc = HeapLayout.sizeOf(this);
+        return acc + HeapLayout.sizeOf(keys) + HeapLayout.sizeOf(values);
+    }
+}
@@ -0,0 +1,54 @@
+package mapprotos;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveSmallMapTest {
+
+  @Test
+  void putGetRemove_matchesHashMapTest() {
+    Random rnd = new Random(17);
+    // Key ranges on both sides of INFLATE_THRESHOLD.
+    for (int keys : new int[] {1, 3, 16, 17, 64}) {
+      final AdaptiveSmallMap<Integer, Integer> map = new AdaptiveSmallMap<>(0);
+      final Map<Integer, Integer> expected = new HashMap<>();
+      Differential.putGetRemove(rnd, 20_000, expected, map, r -> r.nextInt(keys) - keys / 2);
+      assertEquals(expected, map, "keys:" + keys);
+      for (Iterator<Integer> it = map.keySet().iterator(); it.hasNext(); ) {
+        Integer k = it.next();
+        if ((k & 1) != 0) {
+          it.remove();
+          expected.remove(k);
+        }
+      }
+      assertEquals(expected, map, "keys:" + keys);
+    }
+  }
+
+  @Test
+  void put_inflatesPastThresholdTest() {
+    final AdaptiveSmallMap<Integer, Integer> map = new AdaptiveSmallMap<>();
+    for (int k = 0; k < AdaptiveSmallMap.INFLATE_THRESHOLD; k++) {
+      map.put(k, k);
+      assertFalse(map.isInflated(), "k:" + k);
+    }
+    map.put(AdaptiveSmallMap.INFLATE_THRESHOLD, 0);
+    assertTrue(map.isInflated());
+    assertEquals(AdaptiveSmallMap.INFLATE_THRESHOLD + 1, map.size());
+    for (int k = 0; k < AdaptiveSmallMap.INFLATE_THRESHOLD; k++) {
+      assertEquals(k, map.get(k), "k:" + k);
+    }
+    map.clear();
+    assertFalse(map.isInflated());
+    map.put(1, 1);
+    assertEquals(Map.of(1, 1), map);
+  }
+}
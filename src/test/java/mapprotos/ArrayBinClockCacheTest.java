@@ -0,0 +1,72 @@
+package mapprotos;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ArrayBinClockCacheTest {
+
+  @Test
+  void putGetRemove_matchesHashMapBelowMaxSizeTest() {
+    // 8192 keys over 8192 bins of 8, no bin fills, so nothing is evicted.
+    final ArrayBinClockCache<Integer, Integer> map = new ArrayBinClockCache<>(8192 * 8);
+    final Map<Integer, Integer> expected = new HashMap<>();
+    Differential.putGetRemove(expected, map, rnd -> (rnd.nextInt(8192) - 4096) * 64);
+    assertEquals(expected, map);
+    for (Iterator<Integer> it = map.keySet().iterator(); it.hasNext(); ) {
+      Integer k = it.next();
+      if ((k & 128) != 0) {
+        it.remove();
+        expected.remove(k);
+      }
+    }
+    assertEquals(expected, map);
+    assertEquals(0, map.evictions());
+  }
+
+  @Test
+  void put_evictsEntriesNotUsedSinceTheHandPassedTest() {
+    // One bin: the hand passes 0..3, which were used, and takes 4..7 in turn.
+    final ArrayBinClockCache<Integer, Integer> map = new ArrayBinClockCache<>(8);
+    for (int k = 0; k < 8; k++) {
+      map.put(k, k);
+    }
+    for (int k = 0; k < 4; k++) {
+      assertEquals(k, map.get(k), "k:" + k);
+    }
+    for (int k = 8; k < 12; k++) {
+      map.put(k, k);
+      assertEquals(8, map.size(), "k:" + k);
+    }
+    for (int k = 0; k < 12; k++) {
+      assertEquals(k < 4 || k >= 8, map.containsKey(k), "k:" + k);
+    }
+    assertEquals(4, map.evictions());
+  }
+
+  @Test
+  void put_staysWithinMaxSizeTest() {
+    // 13 bins of 8 ways, more than the 100 entries allowed.
+    final ArrayBinClockCache<Integer, Integer> map = new ArrayBinClockCache<>(100);
+    Random rnd = new Random(17);
+    for (int op = 0; op < 100_000; op++) {
+      int k = rnd.nextInt(1000);
+      if (rnd.nextInt(10) == 0) {
+        map.remove(k);
+        assertNull(map.get(k), "op:" + op);
+      } else if (map.get(k) == null) {
+        map.put(k, k);
+      }
+      assertTrue(map.size() <= 100, "op:" + op);
+    }
+    assertEquals(map.size(), map.entrySet().stream().count());
+    map.forEach((k, v) -> assertEquals(k, v));
+  }
+}
@@ -3,12 +3,18 @@ package mapprotos;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ArrayBinHashMapTest {
 
@@ -44,6 +50,286 @@ class ArrayBinHashMapTest {
     }
   }
 
+  @Test
+  void remove_compactsBinsTest() {
+    final Map<Integer, Integer> map = new ArrayBinHashMap<>(16);
+    for (int p = 0; p < NUM_KEYS; p++) {
+      map.put(keys[p], p);
+    }
+    for (int r = 0; r < NUM_KEYS; r += 2) {
+      assertEquals(r, map.remove(keys[r]), "r:" + r);
+      assertNull(map.remove(keys[r]), "r:" + r);
+    }
+    assertEquals(NUM_KEYS / 2, map.size());
+    for (int g = 0; g < NUM_KEYS; g++) {
+      assertEquals(g % 2 == 0 ? null : g, map.get(keys[g]), "g:" + g);
+    }
+
+    // Freed bin slots are reused, removing everything empties the table.
+    for (int p = 0; p < NUM_KEYS; p += 2) {
+      map.put(keys[p], p);
+    }
+    for (int g = 0; g < NUM_KEYS; g++) {
+      assertEquals(g, map.get(keys[g]), "g:" + g);
+    }
+    for (int r = 0; r < NUM_KEYS; r++) {
+      assertFalse(map.remove(keys[r], -1));
+      assertEquals(r, map.remove(keys[r]), "r:" + r);
+    }
+    assertEquals(0, map.size());
+    for (int g = 0; g < NUM_KEYS; g++) {
+      assertNull(map.get(keys[g]), "g:" + g);
+    }
+  }
+
+  @Test
+  void iterator_walksAndRemovesTest() {
+    final Map<Integer, Integer> map = new ArrayBinHashMap<>(16);
+    long sum = 0;
+    for (int p = 0; p < NUM_KEYS; p++) {
+      map.put(keys[p], p);
+      sum += keys[p];
+    }
+    long walked = 0;
+    int count = 0;
+    for (Integer k : map.keySet()) {
+      walked += k;
+      count++;
+    }
+    assertEquals(NUM_KEYS, count);
+    assertEquals(sum, walked);
+    assertEquals(sum, map.keySet().parallelStream().mapToLong(Integer::longValue).sum());
+    assertEquals(NUM_KEYS, map.entrySet().parallelStream().filter(e -> map.get(e.getKey()).equals(e.getValue())).count());
+    assertEquals(NUM_KEYS, map.keySet().toArray().length);
+
+    // Removing through the iterator must not skip the node shifted into the removed one's place.
+    count = 0;
+    for (Iterator<Integer> it = map.values().iterator(); it.hasNext(); ) {
+      if (it.next() % 2 == 0) {
+        it.remove();
+      }
+      count++;
+    }
+    assertEquals(NUM_KEYS, count);
+    assertEquals(NUM_KEYS / 2, map.size());
+    for (int g = 0; g < NUM_KEYS; g++) {
+      assertEquals(g % 2 == 0 ? null : g, map.get(keys[g]), "g:" + g);
+    }
+  }
+
+  @Test
+  void put_growsBinsAndResizesTest() {
+    // Keys sharing one hash pile into a single bin, which grows with spare capacity.
+    final Map<Collider, Integer> colliding = new ArrayBinHashMap<>(16);
+    for (int p = 0; p < NUM_KEYS; p++) {
+      assertNull(colliding.put(new Collider(p), p), "p:" + p);
+    }
+    for (int r = 0; r < NUM_KEYS; r += 3) {
+      assertEquals(r, colliding.remove(new Collider(r)), "r:" + r);
+    }
+    for (int p = 0; p < NUM_KEYS; p += 3) {
+      assertNull(colliding.put(new Collider(p), p), "p:" + p);
+    }
+    assertEquals(NUM_KEYS, colliding.size());
+    for (int g = 0; g < NUM_KEYS; g++) {
+      assertEquals(g, colliding.get(new Collider(g)), "g:" + g);
+    }
+
+    // Starting small forces every resize to split bins with spare slots.
+    final Map<Integer, Integer> justPutGet = new ArrayBinHashMapJustPutGet<>(1);
+    for (int p = 0; p < NUM_KEYS; p++) {
+      assertNull(justPutGet.put(keys[p] >> 4, p), "p:" + p);
+    }
+    assertEquals(NUM_KEYS, justPutGet.size());
+    for (int g = 0; g < NUM_KEYS; g++) {
+      assertEquals(g, justPutGet.get(keys[g] >> 4), "g:" + g);
+    }
+  }
+
+  @Test
+  void treeBins_matchHashMapTest() {
+    // Comparable keys in a few colliding hashes make multi-level BTreeBins, and non-Comparable
+    // Colliders sharing one of those hashes tie with each other.
+    final Map<Object, Integer> map = new ArrayBinHashMap<>(64);
+    final Map<Object, Integer> expected = new HashMap<>();
+    Differential.putRemove(expected, map, rnd -> {
+      int id = rnd.nextInt(3000);
+      return (id % 10 == 0) ? new Collider(id) : new ComparableCollider(id);
+    });
+    for (int id = 0; id < 3000; id++) {
+      assertEquals(expected.get(new Collider(id)), map.get(new Collider(id)), "id:" + id);
+      assertEquals(expected.get(new ComparableCollider(id)), map.get(new ComparableCollider(id)), "id:" + id);
+    }
+    assertEquals(expected, map);
+    assertEquals(expected.size(), map.keySet().stream().count());
+  }
+
+  @Test
+  void treeBin_untreeifiesAtSameSizeAsSplitTest() {
+    // Ten keys of hash 42 make one tree bin; removes and resizes both turn it back at UNTREEIFY_THRESHOLD.
+    final ArrayBinHashMap<Object, Integer> map = new ArrayBinHashMap<>(64);
+    for (int id = 0; id < 30; id += 3) {
+      map.put(new ComparableCollider(id), id);
+    }
+    assertEquals(BTreeBin.class, binOf(map).getClass());
+    for (int id = 0; map.size() > ArrayBinHashMap.UNTREEIFY_THRESHOLD + 1; id += 3) {
+      map.remove(new ComparableCollider(id));
+    }
+    assertEquals(BTreeBin.class, binOf(map).getClass());
+    map.remove(new ComparableCollider(12));
+    assertEquals(ArrayBinHashMap.UNTREEIFY_THRESHOLD, map.size());
+    assertTrue(binOf(map) instanceof Object[], binOf(map).getClass().getName());
+  }
+
+  // Returns the only non-empty bin of map.
+  private static Object binOf(ArrayBinHashMap<?, ?> map) {
+    Object bin = null;
+    for (Object b : map.table) {
+      if (b != null) {
+        assertEquals(null, bin);
+        bin = b;
+      }
+    }
+    return bin;
+  }
+
+  @Test
+  void seededHash_scattersFloodingKeysTest() {
+    // (k << 16) | k all spread to hashes with zero low bits when unseeded
+    ArrayBinHashMap<Integer, Integer> map = new ArrayBinHashMap<>(0, true);
+    Map<Integer, Integer> expected = new HashMap<>();
+    for (int k = 0; k < 4096; k++) {
+      int key = (k << 16) | k;
+      map.put(key, k);
+      expected.put(key, k);
+    }
+    assertEquals(expected, map);
+    for (int k = 0; k < 4096; k += 2) {
+      assertEquals(k, map.remove((k << 16) | k), "k:" + k);
+    }
+    for (int k = 0; k < 4096; k++) {
+      assertEquals((k & 1) == 0 ? null : k, map.get((k << 16) | k), "k:" + k);
+    }
+    int[] hist = map.binLengthHistogram();
+    int longBins = 0;
+    for (int i = 8; i < hist.length; i++) {
+      longBins += hist[i];
+    }
+    assertEquals(0, longBins);
+  }
+
+  @Test
+  void fibonacciIndex_spreadsStridedKeysTest() {
+    // 7 + i * 128 keys share their low 7 bits, which (n - 1) & hash indexing leans on.
+    final int numKeys = 4096;
+    ArrayBinHashMap<Object, Integer> map = new ArrayBinHashMapFibonacci<>(1);
+    HashMapJustPutGet<Integer, Integer> justPutGet = new HashMapJustPutGetFibonacci<>(numKeys * 2);
+    Map<Object, Integer> expected = new HashMap<>();
+    for (int i = 0; i < numKeys; i++) {
+      map.put(7 + i * 128, i);
+      justPutGet.put(7 + i * 128, i);
+      expected.put(7 + i * 128, i);
+    }
+    assertEquals(expected, map);
+    for (int i = 0; i < numKeys; i++) {
+      assertEquals(i, justPutGet.get(7 + i * 128), "i:" + i);
+    }
+    assertTrue(map.binLengthHistogram().length <= 8, Arrays.toString(map.binLengthHistogram()));
+    assertTrue(justPutGet.binLengthHistogram().length <= 8, Arrays.toString(justPutGet.binLengthHistogram()));
+
+    // Colliding keys make tree bins, which resizes split into bins 2i and 2i + 1.
+    for (int id = 0; id < numKeys; id++) {
+      map.put(new ComparableCollider(id), id);
+      expected.put(new ComparableCollider(id), id);
+    }
+    for (int i = 0; i < numKeys; i += 2) {
+      assertEquals(expected.remove(7 + i * 128), map.remove(7 + i * 128), "i:" + i);
+    }
+    assertEquals(expected, map);
+  }
+
+  @Test
+  void getAll_matchesGetTest() {
+    // NodeRef, array and tree bins, the null key, and absent keys, over a partial last block.
+    final ArrayBinHashMap<Object, Integer> map = new ArrayBinHashMap<>(64);
+    final HashMapJustPutGet<Object, Integer> justPutGet = new HashMapJustPutGet<>(8192);
+    Object[] lookups = new Object[3 * NUM_KEYS + 1];
+    for (int i = 0; i < NUM_KEYS; i++) {
+      Object k = (i % 3 == 0) ? keys[i] : (i % 3 == 1) ? new ComparableCollider(i) : new Collider(i);
+      map.put(k, i);
+      justPutGet.put(k, i);
+      lookups[3 * i] = k;
+      lookups[3 * i + 1] = keys[i] + 1;
+      lookups[3 * i + 2] = new ComparableCollider(-i - 1);
+    }
+    map.put(null, -1);
+    justPutGet.put(null, -1);
+    Integer[] out = new Integer[lookups.length];
+    map.getAll(lookups, out);
+    for (int i = 0; i < lookups.length; i++) {
+      assertEquals(map.get(lookups[i]), out[i], "i:" + i);
+    }
+    Arrays.fill(out, -2);
+    justPutGet.getAll(lookups, out);
+    for (int i = 0; i < lookups.length; i++) {
+      assertEquals(justPutGet.get(lookups[i]), out[i], "i:" + i);
+    }
+  }
+
+  @Test
+  void parallelPutAll_matchesPutTest() {
+    // Existing and new mappings, duplicate keys, and colliding keys that make array and tree bins.
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for (ArrayBinHashMap<Object, Integer> map : List.of(new ArrayBinHashMap<Object, Integer>(16),
+                                                           new ArrayBinHashMapFibonacci<Object, Integer>(16))) {
+        final Map<Object, Integer> expected = new HashMap<>();
+        Random rnd = new Random(17);
+        for (int p = 0; p < 1000; p++) {
+          Object k = (p % 10 == 0) ? new ComparableCollider(p) : rnd.nextInt(60_000);
+          map.put(k, -p);
+          expected.put(k, -p);
+        }
+        Object[] keys = new Object[100_000];
+        Integer[] values = new Integer[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+          int id = rnd.nextInt(60_000);
+          keys[i] = (id % 100 == 0) ? new ComparableCollider(id) : (id % 101 == 0) ? new Collider(id) : id;
+          values[i] = i;
+          expected.put(keys[i], i);
+        }
+        map.parallelPutAll(keys, values, pool);
+        assertEquals(expected, map);
+        assertEquals(expected.size(), map.keySet().stream().count());
+        for (int i = 0; i < keys.length; i += 3) {
+          assertEquals(expected.remove(keys[i]), map.remove(keys[i]), "i:" + i);
+        }
+        assertEquals(expected, map);
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  record ComparableCollider(int id) implements Comparable<ComparableCollider> {
+    @Override
+    public int hashCode() {
+      return (id % 3 == 0) ? 42 : id % 7;
+    }
+
+    @Override
+    public int compareTo(ComparableCollider o) {
+      return Integer.compare(id, o.id);
+    }
+  }
+
+  record Collider(int id) {
+    @Override
+    public int hashCode() {
+      return 42;
+    }
+  }
+
   private Map<Integer,Integer> initMap(int initSize) {
     Map<Integer,Integer> map =  new ArrayBinHashMap<>(initSize)  /*new HashMap<>(initSize)*/;
     for (int p = 0; p < NUM_KEYS; p++) {
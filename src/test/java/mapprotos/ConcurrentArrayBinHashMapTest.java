@@ -0,0 +1,107 @@
+package mapprotos;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrentArrayBinHashMapTest {
+
+  @Test
+  void putReplaceRemove_matchesHashMapTest() {
+    final ConcurrentArrayBinHashMap<Object, Integer> map = new ConcurrentArrayBinHashMap<>(0);
+    final Map<Object, Integer> expected = new HashMap<>();
+    // Some keys share a hash, so bins hold several nodes.
+    Differential.replay(expected, map, Map::size, rnd -> {
+          int id = rnd.nextInt(6000);
+          return (id % 10 == 0) ? new ArrayBinHashMapTest.Collider(id) : id;
+        },
+        Differential.remove(),
+        (e, m, k, op) -> assertEquals(e.putIfAbsent(k, op), m.putIfAbsent(k, op), "op:" + op),
+        (e, m, k, op) -> assertEquals(e.replace(k, op), m.replace(k, op), "op:" + op),
+        Differential.put(), Differential.put());
+    assertEquals(expected, map);
+    Object k = expected.keySet().iterator().next();
+    assertFalse(map.remove(k, -1));
+    assertFalse(map.replace(k, -1, 0));
+    assertTrue(map.replace(k, expected.get(k), -2));
+    assertTrue(map.remove(k, -2));
+    assertNull(map.get(k));
+
+    map.keySet().removeIf(key -> key instanceof Integer i && i % 2 == 0);
+    expected.keySet().removeIf(key -> key instanceof Integer i && i % 2 == 0);
+    expected.remove(k);
+    assertEquals(expected, map);
+  }
+
+  @Test
+  void put_growsByTotalSizeNotOneStripeTest() {
+    // Multiples of 64 all fall in stripe 0, yet need no bigger a table than sequential keys.
+    final ConcurrentArrayBinHashMap<Integer, Integer> strided = new ConcurrentArrayBinHashMap<>(0);
+    final ConcurrentArrayBinHashMap<Integer, Integer> sequential = new ConcurrentArrayBinHashMap<>(0);
+    for (int k = 0; k < 1000; k++) {
+      strided.put(k * 64, k);
+      sequential.put(k, k);
+    }
+    assertEquals(2048, sequential.table.length);
+    assertEquals(sequential.table.length, strided.table.length);
+    for (int k = 0; k < 1000; k++) {
+      assertEquals(k, strided.get(k * 64), "k:" + k);
+    }
+  }
+
+  @Test
+  void concurrentWriters_resizeWhileReadersReadTest() throws InterruptedException {
+    // Writers grow the map from its smallest table while readers check that no written key goes missing.
+    final int writers = 4;
+    final int perWriter = 50_000;
+    final ConcurrentArrayBinHashMap<Integer, Integer> map = new ConcurrentArrayBinHashMap<>(0);
+    final Map<Integer, Integer> progress = new ConcurrentHashMap<>();
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread[] threads = new Thread[writers * 2];
+    for (int w = 0; w < writers; w++) {
+      final int base = w * perWriter;
+      threads[w] = new Thread(() -> {
+        for (int i = 0; i < perWriter; i++) {
+          map.put(base + i, i);
+          if (i % 2 == 1)
+            map.remove(base + i - 1);
+          progress.put(base, i);
+        }
+      });
+      threads[writers + w] = new Thread(() -> {
+        while (progress.getOrDefault(base, 0) < perWriter - 1) {
+          int done = progress.getOrDefault(base, 0);
+          for (int i = 1; i <= done; i += 2) {
+            if (!Integer.valueOf(i).equals(map.get(base + i))) {
+              failure.compareAndSet(null, new AssertionError("base:" + base + " i:" + i));
+              return;
+            }
+          }
+        }
+      });
+    }
+    for (Thread t : threads) {
+      t.setUncaughtExceptionHandler((th, ex) -> failure.compareAndSet(null, ex));
+      t.start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertNull(failure.get());
+    assertEquals(writers * perWriter / 2, map.size());
+    for (int w = 0; w < writers; w++) {
+      for (int i = 0; i < perWriter; i++) {
+        assertEquals(i % 2 == 1 ? i : null, map.get(w * perWriter + i), "w:" + w + " i:" + i);
+      }
+    }
+    assertEquals(writers * perWriter / 2, map.entrySet().stream().count());
+  }
+}
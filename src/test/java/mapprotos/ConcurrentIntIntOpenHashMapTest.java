@@ -0,0 +1,139 @@
+package mapprotos;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Objects.requireNonNullElse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ConcurrentIntIntOpenHashMapTest {
+
+  @Test
+  void putAddRemove_matchesHashMapTest() {
+    final ConcurrentIntIntOpenHashMap map = new ConcurrentIntIntOpenHashMap(0);
+    final Map<Integer, Integer> expected = new HashMap<>();
+    // A small key range includes 0, and removes leave DELETED slots for resizes to drop.
+    Differential.replay(expected, map, ConcurrentIntIntOpenHashMap::size, rnd -> rnd.nextInt(4096) - 2048,
+        (e, m, k, op) -> assertEquals(requireNonNullElse(e.remove(k), ConcurrentIntIntOpenHashMap.NO_VALUE), m.remove(k), "op:" + op),
+        (e, m, k, op) -> assertEquals(requireNonNullElse(e.putIfAbsent(k, op), ConcurrentIntIntOpenHashMap.NO_VALUE), m.putIfAbsent(k, op), "op:" + op),
+        (e, m, k, op) -> assertEquals((int) e.merge(k, 3, Integer::sum), m.addAndGet(k, 3), "op:" + op),
+        (e, m, k, op) -> assertEquals(requireNonNullElse(e.put(k, op), ConcurrentIntIntOpenHashMap.NO_VALUE), m.put(k, op), "op:" + op));
+    for (int k = -2048; k < 2048; k++) {
+      assertEquals(expected.containsKey(k), map.containsKey(k), "k:" + k);
+      assertEquals(expected.getOrDefault(k, -1), map.getOrDefault(k, -1), "k:" + k);
+    }
+  }
+
+  @Test
+  void concurrentCounters_resizeWhileReadersReadTest() throws InterruptedException {
+    // Writers count into shared keys from the smallest table, so every resize is copied under contention.
+    final int writers = 4;
+    final int numKeys = 20_000;
+    final int rounds = 20;
+    final ConcurrentIntIntOpenHashMap map = new ConcurrentIntIntOpenHashMap(0);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread[] threads = new Thread[writers + 2];
+    for (int w = 0; w < writers; w++) {
+      final int offset = w * (numKeys / writers);
+      threads[w] = new Thread(() -> {
+        for (int r = 0; r < rounds; r++) {
+          for (int j = 0; j < numKeys; j++) {
+            map.addAndGet((offset + j) % numKeys, 1);
+          }
+        }
+      });
+    }
+    for (int reader = writers; reader < threads.length; reader++) {
+      threads[reader] = new Thread(() -> {
+        // Counts only grow, so a smaller count than one read before means an update was lost.
+        int[] last = new int[numKeys];
+        while (map.get(numKeys - 1) < writers * rounds) {
+          for (int k = 0; k < numKeys; k++) {
+            int count = map.get(k);
+            if (count < last[k]) {
+              failure.compareAndSet(null, new AssertionError("k:" + k + " " + count + " < " + last[k]));
+              return;
+            }
+            last[k] = count;
+          }
+        }
+      });
+    }
+    for (Thread t : threads) {
+      t.setUncaughtExceptionHandler((th, ex) -> failure.compareAndSet(null, ex));
+      t.start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertNull(failure.get());
+    assertEquals(numKeys, map.size());
+    for (int k = 0; k < numKeys; k++) {
+      assertEquals(writers * rounds, map.get(k), "k:" + k);
+    }
+  }
+
+  @Test
+  void staleInsert_pastMovedFreeSlotKeepsCountTest() {
+    // Replays, one writer at a time, a race where a writer that read no next table claims a slot a
+    // copier has passed.  Fill keys stay in the first copy chunk so the slots of key and other are
+    // not copied until the end.
+    final int slots = 2048;
+    final int mask = slots - 1;
+    int key = 1;
+    while ((IntIntOpenHashMap.hash(key) & mask) < slots - 64) {
+      key++;
+    }
+    final int home = IntIntOpenHashMap.hash(key) & mask;
+    int other = key + 1;
+    while ((IntIntOpenHashMap.hash(other) & mask) != home) {
+      other++;
+    }
+    StaleNextMap map = new StaleNextMap(slots);
+    int fill = 0;
+    int lastFill = 0;
+    // Threshold + 1 claims start a copy.
+    for (int k = -1; fill <= (int) (slots * ConcurrentIntIntOpenHashMap.LOAD_FACTOR); k--) {
+      if ((IntIntOpenHashMap.hash(k) & mask) < ConcurrentIntIntOpenHashMap.COPY_CHUNK / 2) {
+        map.put(k, k);
+        fill++;
+        lastFill = k;
+      }
+    }
+    // Copies the first chunk, then moves key's free home slot and puts key in the next table.
+    assertEquals(1, map.addAndGet(key, 1));
+    // Sees no copy, claims the moved home slot for other, and follows MOVED to the next table.
+    map.staleReads = 1;
+    assertEquals(1, map.addAndGet(other, 1));
+    // Sees no copy and probes past other's slot to the free one after it.
+    map.staleReads = 1;
+    assertEquals(2, map.addAndGet(key, 1));
+    // Finishes the copy.
+    map.put(lastFill, lastFill);
+    assertEquals(fill + 2, map.size());
+    assertEquals(2, map.get(key));
+    assertEquals(1, map.get(other));
+  }
+
+  // Hands update a null next table for the next staleReads reads.
+  static final class StaleNextMap extends ConcurrentIntIntOpenHashMap {
+    int staleReads;
+
+    StaleNextMap(int initialCapacity) {
+      super(initialCapacity);
+    }
+
+    @Override
+    Table nextOf(Table t) {
+      if (staleReads > 0) {
+        staleReads--;
+        return null;
+      }
+      return t.next;
+    }
+  }
+}
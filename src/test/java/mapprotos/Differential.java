@@ -0,0 +1,74 @@
+package mapprotos;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Replays one seeded stream of random operations against a map and a model map, such as a HashMap,
+// checking after every operation that both answered the same and hold as many entries.  Public so the
+// newhash tests can use it too.
+public final class Differential {
+
+  public static final long SEED = 17;
+  public static final int OPS = 200_000;
+
+  private Differential() {
+  }
+
+  // One kind of operation: applies it with key and a value made from op to expected and to map,
+  // and asserts that they answered the same.
+  @FunctionalInterface
+  public interface Op<K, V, M> {
+    void apply(Map<K, V> expected, M map, K key, int op);
+  }
+
+  // Draws count keys from keys, picks one of ops uniformly for each, and applies it; repeat an op to weight it.
+  @SafeVarargs
+  public static <K, V, M> void replay(Random rnd, int count, Map<K, V> expected, M map,
+      ToLongFunction<M> size, Function<Random, K> keys, Op<K, V, M>... ops) {
+    for (int op = 0; op < count; op++) {
+      K k = keys.apply(rnd);
+      ops[rnd.nextInt(ops.length)].apply(expected, map, k, op);
+      assertEquals(expected.size(), size.applyAsLong(map), "op:" + op);
+    }
+  }
+
+  @SafeVarargs
+  public static <K, V, M> void replay(Map<K, V> expected, M map, ToLongFunction<M> size,
+      Function<Random, K> keys, Op<K, V, M>... ops) {
+    replay(new Random(SEED), OPS, expected, map, size, keys, ops);
+  }
+
+  // A remove for every two puts.
+  public static <K> void putRemove(Map<K, Integer> expected, Map<K, Integer> map, Function<Random, K> keys) {
+    replay(expected, map, Map::size, keys, remove(), put(), put());
+  }
+
+  // Removes, gets and puts in equal numbers.
+  public static <K> void putGetRemove(Random rnd, int count, Map<K, Integer> expected, Map<K, Integer> map,
+      Function<Random, K> keys) {
+    replay(rnd, count, expected, map, Map::size, keys, remove(), get(), put());
+  }
+
+  public static <K> void putGetRemove(Map<K, Integer> expected, Map<K, Integer> map, Function<Random, K> keys) {
+    putGetRemove(new Random(SEED), OPS, expected, map, keys);
+  }
+
+  public static <K> Op<K, Integer, Map<K, Integer>> put() {
+    return (expected, map, k, op) -> {
+      Integer v = op; // one box, identity maps compare values by identity too
+      assertEquals(expected.put(k, v), map.put(k, v), "op:" + op);
+    };
+  }
+
+  public static <K> Op<K, Integer, Map<K, Integer>> get() {
+    return (expected, map, k, op) -> assertEquals(expected.get(k), map.get(k), "op:" + op);
+  }
+
+  public static <K> Op<K, Integer, Map<K, Integer>> remove() {
+    return (expected, map, k, op) -> assertEquals(expected.remove(k), map.remove(k), "op:" + op);
+  }
+}
@@ -0,0 +1,60 @@
+package mapprotos;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrozenMapTest {
+
+  @Test
+  void freeze_matchesSourceMapTest() {
+    Random rnd = new Random(17);
+    for (int n : new int[] {0, 1, 2, 3, 5, 100, 100_000}) {
+      final ArrayBinHashMap<Integer, Integer> source = new ArrayBinHashMap<>(0);
+      for (int i = 0; i < n; i++) {
+        source.put(rnd.nextInt(), i);
+      }
+      final FrozenMap<Integer, Integer> frozen = source.freeze();
+      assertEquals(source, frozen, "n:" + n);
+      assertEquals(source.size(), frozen.entrySet().stream().count(), "n:" + n);
+      for (Map.Entry<Integer, Integer> e : source.entrySet()) {
+        assertEquals(e.getValue(), frozen.get(e.getKey()), "n:" + n + " key:" + e.getKey());
+      }
+      for (int i = 0; i < 1000; i++) {
+        int k = rnd.nextInt();
+        assertEquals(source.get(k), frozen.get(k), "n:" + n + " k:" + k);
+      }
+    }
+  }
+
+  record SameHash(int id) {
+    @Override
+    public int hashCode() {
+      return id % 3;
+    }
+  }
+
+  @Test
+  void freeze_keepsKeysWithEqualHashCodesTest() {
+    final HashMapCpy<SameHash, Integer> source = new HashMapCpy<>();
+    final Map<SameHash, Integer> expected = new HashMap<>();
+    for (int i = 0; i < 30; i++) {
+      source.put(new SameHash(i), i);
+      expected.put(new SameHash(i), i);
+    }
+    source.put(null, -1);
+    expected.put(null, -1);
+    final FrozenMap<SameHash, Integer> frozen = source.freeze();
+    assertEquals(expected, frozen);
+    assertTrue(frozen.containsKey(null));
+    assertNull(frozen.get(new SameHash(30)));
+    assertThrows(UnsupportedOperationException.class, () -> frozen.put(new SameHash(0), 0));
+  }
+}
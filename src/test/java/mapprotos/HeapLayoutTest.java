@@ -0,0 +1,38 @@
+package mapprotos;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class HeapLayoutTest {
+
+  @Test
+  void sizeOf_compressedLayoutTest() {
+    assumeTrue(HeapLayout.COMPRESSED_OOPS && HeapLayout.COMPRESSED_CLASS_POINTERS
+        && HeapLayout.OBJECT_ALIGNMENT == 8, "default 64-bit layout");
+    assertEquals(16, HeapLayout.sizeOf(Integer.valueOf(1_000_000)));
+    assertEquals(24, HeapLayout.sizeOf(Long.valueOf(1_000_000)));
+    assertEquals(16, HeapLayout.sizeOf(new Object[0]));
+    assertEquals(24, HeapLayout.sizeOf(new Object[1]));
+    assertEquals(32, HeapLayout.sizeOf(new Object[3]));
+    assertEquals(24, HeapLayout.sizeOf(new long[1]));
+    assertEquals(24, HeapLayout.sizeOf(new byte[5]));
+    assertEquals(0, HeapLayout.sizeOf(null));
+  }
+
+  @Test
+  void heapBytes_hashMapNearLoadFactorTest() {
+    assumeTrue(HeapLayout.COMPRESSED_OOPS && HeapLayout.COMPRESSED_CLASS_POINTERS
+        && HeapLayout.OBJECT_ALIGNMENT == 8, "default 64-bit layout");
+    // 3/4 full: 32 byte nodes plus 4/0.75 bytes of table per entry, the 37 in README.md.
+    final HashMapCpy<Integer, Integer> map = new HashMapCpy<>(16384);
+    for (int k = 0; k < 12288; k++) {
+      Integer boxed = k;
+      map.put(boxed, boxed);
+    }
+    assertEquals(37, Math.round(map.bytesPerEntry()));
+    // Keys and values are the same 12288 Integers.
+    assertEquals(12288 * 16, map.keyValueBytes());
+  }
+}
@@ -0,0 +1,95 @@
+package mapprotos;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static java.util.Objects.requireNonNullElse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntIntOpenHashMapTest {
+
+  @Test
+  void putGetRemove_matchesHashMapTest() {
+    final IntIntOpenHashMap map = new IntIntOpenHashMap(0);
+    final Map<Integer, Integer> expected = new HashMap<>();
+    final Differential.Op<Integer, Integer, IntIntOpenHashMap> put = (e, m, k, op) ->
+        assertEquals(requireNonNullElse(e.put(k, op), IntIntOpenHashMap.NO_VALUE), m.put(k, op), "op:" + op);
+    // A small key range keeps probe runs long and includes the free key 0.
+    Differential.replay(expected, map, IntIntOpenHashMap::size, rnd -> rnd.nextInt(4096) - 2048,
+        (e, m, k, op) -> assertEquals(requireNonNullElse(e.remove(k), IntIntOpenHashMap.NO_VALUE), m.remove(k), "op:" + op),
+        put, put);
+    for (int k = -2048; k < 2048; k++) {
+      assertEquals(expected.containsKey(k), map.containsKey(k), "k:" + k);
+      assertEquals(expected.getOrDefault(k, -1), map.getOrDefault(k, -1), "k:" + k);
+    }
+    // Not a whole number of getAll blocks.
+    int[] lookups = new int[4096 + 7];
+    for (int i = 0; i < lookups.length; i++) {
+      lookups[i] = i - 2048;
+    }
+    int[] out = new int[lookups.length];
+    map.getAll(lookups, out);
+    for (int i = 0; i < lookups.length; i++) {
+      assertEquals(map.get(lookups[i]), out[i], "k:" + lookups[i]);
+    }
+  }
+
+  @Test
+  void parallelPutAll_matchesPutTest() {
+    // A high load factor makes probe runs that cross range ends; duplicates and the free key 0 are put too.
+    final IntIntOpenHashMap map = new IntIntOpenHashMap(0, 0.95f);
+    final Map<Integer, Integer> expected = new HashMap<>();
+    Random rnd = new Random(17);
+    for (int p = 0; p < 1000; p++) {
+      int k = rnd.nextInt(60_000) - 30_000;
+      map.put(k, -p);
+      expected.put(k, -p);
+    }
+    int[] keys = new int[100_000];
+    int[] values = new int[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = rnd.nextInt(60_000) - 30_000;
+      values[i] = i;
+      expected.put(keys[i], i);
+    }
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      map.parallelPutAll(keys, values, pool);
+    } finally {
+      pool.shutdown();
+    }
+    assertEquals(expected.size(), map.size());
+    for (int k = -30_000; k < 30_000; k++) {
+      assertEquals(expected.getOrDefault(k, -1), map.getOrDefault(k, -1), "k:" + k);
+    }
+    for (int k = -30_000; k < 30_000; k += 2) {
+      assertEquals(expected.getOrDefault(k, IntIntOpenHashMap.NO_VALUE), map.remove(k), "k:" + k);
+    }
+    for (int k = -30_000; k < 30_000; k++) {
+      assertEquals((k & 1) == 0 ? -1 : expected.getOrDefault(k, -1), map.getOrDefault(k, -1), "k:" + k);
+    }
+  }
+
+  @Test
+  void adapter_boxedViewTest() {
+    final IntIntOpenHashMapAdapter map = new IntIntOpenHashMapAdapter(0);
+    for (int p = 0; p < 1_401; p++) {
+      assertEquals(null, map.put(p * 100, p));
+    }
+    assertEquals(0, map.put(0, 0));
+    assertTrue(map.containsKey(0));
+    assertFalse(map.containsKey(1));
+    long sum = 0;
+    for (Map.Entry<Integer, Integer> e : map.entrySet()) {
+      assertEquals(e.getKey() / 100, e.getValue());
+      sum += e.getValue();
+    }
+    assertEquals(1_400L * 1_401 / 2, sum);
+  }
+}
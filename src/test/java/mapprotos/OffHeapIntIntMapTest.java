@@ -0,0 +1,47 @@
+package mapprotos;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNullElse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OffHeapIntIntMapTest {
+
+  @Test
+  void putGetRemove_matchesHashMapTest() {
+    final Map<Integer, Integer> expected = new HashMap<>();
+    try (OffHeapIntIntMap map = new OffHeapIntIntMap(0)) {
+      final Differential.Op<Integer, Integer, OffHeapIntIntMap> put = (e, m, k, op) ->
+          assertEquals(requireNonNullElse(e.put(k, op), OffHeapIntIntMap.NO_VALUE), m.put(k, op), "op:" + op);
+      // A small key range keeps probe runs long and includes the free key 0.
+      Differential.replay(expected, map, OffHeapIntIntMap::size, rnd -> rnd.nextInt(4096) - 2048,
+          (e, m, k, op) -> assertEquals(requireNonNullElse(e.remove(k), OffHeapIntIntMap.NO_VALUE), m.remove(k), "op:" + op),
+          put, put);
+      for (int k = -2048; k < 2048; k++) {
+        assertEquals(expected.containsKey(k), map.containsKey(k), "k:" + k);
+        assertEquals(expected.getOrDefault(k, -1), map.getOrDefault(k, -1), "k:" + k);
+      }
+      map.clear();
+      assertEquals(0, map.size());
+      assertEquals(OffHeapIntIntMap.NO_VALUE, map.get(0));
+    }
+  }
+
+  @Test
+  void close_freesTableTest() {
+    OffHeapIntIntMap map = new OffHeapIntIntMap(100);
+    map.put(1, 2);
+    assertEquals(128 << OffHeapIntIntMap.SLOT_SHIFT, map.offHeapBytes());
+    map.close();
+    assertEquals(0, map.offHeapBytes());
+    assertEquals(0, map.size());
+    assertThrows(IllegalStateException.class, () -> map.get(1));
+    assertThrows(IllegalStateException.class, () -> map.put(1, 2));
+    // A second close has no effect.
+    map.close();
+  }
+}
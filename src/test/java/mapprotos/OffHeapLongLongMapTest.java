@@ -0,0 +1,49 @@
+package mapprotos;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNullElse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OffHeapLongLongMapTest {
+
+  @Test
+  void putGetRemove_matchesHashMapTest() {
+    final Map<Long, Long> expected = new HashMap<>();
+    try (OffHeapLongLongMap map = new OffHeapLongLongMap(0)) {
+      // Values use both halves of the long.
+      final Differential.Op<Long, Long, OffHeapLongLongMap> put = (e, m, k, op) ->
+          assertEquals(requireNonNullElse(e.put(k, op * 0x1_0000_0001L), OffHeapLongLongMap.NO_VALUE), m.put(k, op * 0x1_0000_0001L), "op:" + op);
+      // A small key range keeps probe runs long and includes the free key 0; the keys
+      // differ only above bit 40, which the hash must still spread.
+      Differential.replay(expected, map, OffHeapLongLongMap::size, rnd -> (long) (rnd.nextInt(4096) - 2048) << 40,
+          (e, m, k, op) -> assertEquals(requireNonNullElse(e.remove(k), OffHeapLongLongMap.NO_VALUE), m.remove(k), "op:" + op),
+          put, put);
+      for (long k = -2048L << 40; k < 2048L << 40; k += 1L << 40) {
+        assertEquals(expected.containsKey(k), map.containsKey(k), "k:" + k);
+        assertEquals(expected.getOrDefault(k, (long) -1), map.getOrDefault(k, -1), "k:" + k);
+      }
+      map.clear();
+      assertEquals(0, map.size());
+      assertEquals(OffHeapLongLongMap.NO_VALUE, map.get(0));
+    }
+  }
+
+  @Test
+  void close_freesTableTest() {
+    OffHeapLongLongMap map = new OffHeapLongLongMap(100);
+    map.put(1, 2);
+    assertEquals(128 << OffHeapLongLongMap.SLOT_SHIFT, map.offHeapBytes());
+    map.close();
+    assertEquals(0, map.offHeapBytes());
+    assertEquals(0, map.size());
+    assertThrows(IllegalStateException.class, () -> map.get(1));
+    assertThrows(IllegalStateException.class, () -> map.put(1, 2));
+    // A second close has no effect.
+    map.close();
+  }
+}
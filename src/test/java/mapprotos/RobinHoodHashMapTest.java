@@ -0,0 +1,24 @@
+package mapprotos;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RobinHoodHashMapTest {
+
+  @Test
+  void putGetRemove_matchesHashMapTest() {
+    final Map<Integer, Integer> map = new RobinHoodHashMap<>(0);
+    final Map<Integer, Integer> expected = new HashMap<>();
+    // Multiples of 64 share low bits, so probe runs get long and overlap.
+    Differential.putRemove(expected, map, rnd -> (rnd.nextInt(4096) - 2048) * 64);
+    for (int k = -2048; k < 2048; k++) {
+      assertEquals(expected.get(k * 64), map.get(k * 64), "k:" + k);
+      assertEquals(expected.get(k * 64 + 1), map.get(k * 64 + 1), "k:" + k);
+    }
+    assertEquals(expected, map);
+  }
+}
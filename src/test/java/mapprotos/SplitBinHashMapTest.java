@@ -0,0 +1,38 @@
+package mapprotos;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SplitBinHashMapTest {
+
+  @Test
+  void putGetRemove_matchesHashMapTest() {
+    final Map<Integer, Integer> map = new SplitBinHashMap<>(0);
+    final Map<Integer, Integer> expected = new HashMap<>();
+    // Multiples of 64 share low bits, so bins get long and both halves fill.
+    Differential.putRemove(expected, map, rnd -> (rnd.nextInt(4096) - 2048) * 64);
+    for (int k = -2048; k < 2048; k++) {
+      assertEquals(expected.get(k * 64), map.get(k * 64), "k:" + k);
+      assertEquals(expected.get(k * 64 + 1), map.get(k * 64 + 1), "k:" + k);
+    }
+    assertEquals(expected, map);
+  }
+
+  @Test
+  void put_splitsBinsOnResizeTest() {
+    final Map<Integer, Integer> map = new SplitBinHashMap<>(1);
+    Random rnd = new Random(17);
+    int[] keys = rnd.ints(100_000).toArray();
+    final Map<Integer, Integer> expected = new HashMap<>();
+    for (int p = 0; p < keys.length; p++) {
+      assertEquals(expected.put(keys[p], p), map.put(keys[p], p), "p:" + p);
+    }
+    assertEquals(expected, map);
+    assertEquals(expected.size(), map.entrySet().stream().count());
+  }
+}
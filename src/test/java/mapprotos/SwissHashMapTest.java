@@ -0,0 +1,43 @@
+package mapprotos;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SwissHashMapTest {
+
+  @Test
+  void matchTag_flagsExactlyEqualBytesTest() {
+    Random rnd = new Random(17);
+    for (int t = 0; t < 10_000; t++) {
+      long group = rnd.nextLong();
+      int tag = rnd.nextInt(0x80);
+      long expected = 0;
+      for (int b = 0; b < 8; b++) {
+        if (((group >>> (b * 8)) & 0xFF) == tag) {
+          expected |= 0x80L << (b * 8);
+        }
+      }
+      assertEquals(expected, SwissHashMap.matchTag(group, tag), "t:" + t);
+      // Random bytes rarely equal the tag, so also plant it in one byte.
+      long withTag = group & ~(0xFFL << 8 * (t & 7)) | ((long) tag << 8 * (t & 7));
+      assertEquals(0x80L << 8 * (t & 7), SwissHashMap.matchTag(withTag, tag) & (0x80L << 8 * (t & 7)), "t:" + t);
+    }
+  }
+
+  @Test
+  void putGetRemove_matchesHashMapTest() {
+    final Map<Integer, Integer> map = new SwissHashMap<>(0);
+    final Map<Integer, Integer> expected = new HashMap<>();
+    // A small key range churns DELETED slots and forces same size rehashes.
+    Differential.putRemove(expected, map, rnd -> rnd.nextInt(100) == 0 ? null : rnd.nextInt(4096) - 2048);
+    for (int k = -4096; k < 4096; k++) {
+      assertEquals(expected.get(k), map.get(k), "k:" + k);
+    }
+    assertEquals(expected, map);
+  }
+}
@@ -0,0 +1,55 @@
+package mapprotos;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WTinyLfuCacheTest {
+
+  @Test
+  void putGetRemove_matchesHashMapBelowMaxSizeTest() {
+    final WTinyLfuCache<Integer, Integer> map = new WTinyLfuCache<>(8192);
+    final Map<Integer, Integer> expected = new HashMap<>();
+    Differential.putGetRemove(expected, map, rnd -> (rnd.nextInt(8192) - 4096) * 64);
+    assertEquals(expected, map);
+    for (Iterator<Integer> it = map.keySet().iterator(); it.hasNext(); ) {
+      Integer k = it.next();
+      if ((k & 128) != 0) {
+        it.remove();
+        expected.remove(k);
+      }
+    }
+    assertEquals(expected, map);
+    assertEquals(0, map.evictions());
+  }
+
+  @Test
+  void put_keepsFrequentKeysThroughAScanTest() {
+    final WTinyLfuCache<Integer, Integer> map = new WTinyLfuCache<>(100);
+    for (int round = 0; round < 10; round++) {
+      for (int k = 0; k < 50; k++) {
+        if (map.get(k) == null) {
+          map.put(k, k);
+        }
+      }
+    }
+    // Three keys seen once for every hot key use: an LRU of 100 would see
+    // 150 other keys between two uses of a hot key and lose all of them.
+    for (int k = 1000; k < 31_000; k++) {
+      Integer key = (k % 4 == 0) ? (k / 4) % 50 : k;
+      if (map.get(key) == null) {
+        map.put(key, key);
+      }
+      assertTrue(map.size() <= 100, "k:" + k);
+    }
+    for (int k = 0; k < 50; k++) {
+      assertTrue(map.containsKey(k), "k:" + k);
+    }
+    assertEquals(100, map.entrySet().stream().count());
+  }
+}
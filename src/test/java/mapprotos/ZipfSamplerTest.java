@@ -0,0 +1,42 @@
+package mapprotos;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ZipfSamplerTest {
+
+  @Test
+  void sample_rankFrequenciesFollowPowerLawTest() {
+    final int n = 1000;
+    final int samples = 1_000_000;
+    for (double s : new double[] {0.8, 1.0, 1.2}) {
+      ZipfSampler zipf = new ZipfSampler(n, s);
+      Random rnd = new Random(17);
+      long[] counts = new long[n + 1];
+      for (int i = 0; i < samples; i++) {
+        int k = zipf.sample(rnd);
+        assertTrue(k >= 1 && k <= n, "s:" + s + " k:" + k);
+        counts[k]++;
+      }
+      double harmonic = 0;
+      for (int k = 1; k <= n; k++) {
+        harmonic += Math.pow(k, -s);
+      }
+      // Ranks below 16 one at a time, then ranges that double, so every group expects
+      // thousands of draws; a correct sampler stays within 5 standard deviations.
+      for (int lo = 1, hi = 1; lo <= n; lo = hi + 1, hi = (lo < 16) ? lo : Math.min(2 * lo - 1, n)) {
+        long observed = 0;
+        double expected = 0;
+        for (int k = lo; k <= hi; k++) {
+          observed += counts[k];
+          expected += samples * Math.pow(k, -s) / harmonic;
+        }
+        assertTrue(Math.abs(observed - expected) <= 5 * Math.sqrt(expected),
+            "s:" + s + " ranks:" + lo + "-" + hi + " observed:" + observed + " expected:" + expected);
+      }
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package newhash;
+
+import mapprotos.Differential;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OpenHashMapTest {
+
+  @Test
+  void putGetRemove_matchesHashMapTest() {
+    final Map<Integer, Integer> map = new OpenHashMap<>(0);
+    final Map<Integer, Integer> expected = new HashMap<>();
+    // A few hundred keys in a small table make runs that wrap around its end.
+    Differential.putRemove(expected, map, rnd -> (rnd.nextInt(10) == 0) ? null : rnd.nextInt(512) - 256);
+    for (int k = -300; k < 300; k++) {
+      assertEquals(expected.get(k), map.get(k), "k:" + k);
+    }
+    assertEquals(expected.get(null), map.get(null));
+    assertEquals(expected, map);
+  }
+
+  @Test
+  void identityMaps_matchIdentityHashMapTest() {
+    for (Map<String, Integer> map : List.<Map<String, Integer>>of(
+        new IdentityHashMapOrig<>(0), new IdentityHashMapFibonacci<>(0))) {
+      final Map<String, Integer> expected = new IdentityHashMap<>();
+      // Equal but distinct Strings are different keys.
+      String[] keys = new String[600];
+      for (int i = 0; i < keys.length; i++) {
+        keys[i] = new String("k" + (i % 300));
+      }
+      // Puts box each value once, as entry sets compare values by identity too.
+      Differential.putRemove(expected, map, rnd -> (rnd.nextInt(10) == 0) ? null : keys[rnd.nextInt(keys.length)]);
+      for (String k : keys) {
+        assertEquals(expected.get(k), map.get(k), "k:" + k);
+        assertEquals(expected.containsKey(k), map.containsKey(k), "k:" + k);
+      }
+      assertEquals(expected.get(null), map.get(null));
+      assertEquals(expected.entrySet(), map.entrySet());
+    }
+  }
+}